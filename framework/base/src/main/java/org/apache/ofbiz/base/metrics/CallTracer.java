@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.metrics;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.ofbiz.base.lang.ThreadSafe;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Lightweight in-process tracing of nested calls (services, entity operations, ECA rules).
+ * <p>Each thread keeps its own stack of open spans, so entering and leaving a span needs no
+ * locking. One out of <code>trace.sample.rate</code> top level calls per thread is traced; the
+ * spans of the other calls are only counted on the stack. When a traced top level call
+ * completes its spans are published to a fixed size ring buffer, overwriting the oldest trace.
+ * The buffer can be exported as an aggregated call tree or as folded stacks for flame graphs.</p>
+ * <p>Callers open a span with {@link #enter(String, String)} and, only when it returned
+ * <code>true</code>, close it with {@link #exit()} in a finally block.</p>
+ */
+@ThreadSafe
+public final class CallTracer {
+
+    public static final String module = CallTracer.class.getName();
+
+    // guards against runaway recursion and very large traces
+    private static final int MAX_DEPTH = 128;
+    private static final int MAX_SPANS = 4096;
+
+    private static volatile boolean enabled = UtilProperties.getPropertyAsBoolean("serverstats", "trace.enable", false);
+    private static final int sampleRate = Math.max(1, UtilProperties.getPropertyAsInteger("serverstats", "trace.sample.rate", 100));
+    private static final AtomicReferenceArray<Trace> traces = new AtomicReferenceArray<Trace>(Math.max(1, UtilProperties.getPropertyAsInteger("serverstats", "trace.buffer.size", 1000)));
+    private static final AtomicLong traceCount = new AtomicLong();
+    private static final AtomicLong truncatedCount = new AtomicLong();
+
+    private static final ThreadLocal<SpanStack> spanStack = new ThreadLocal<SpanStack>() {
+        @Override
+        protected SpanStack initialValue() {
+            return new SpanStack();
+        }
+    };
+
+    private CallTracer() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Switches tracing on or off; spans already open when switched off are still closed normally. */
+    public static void setEnabled(boolean enabled) {
+        CallTracer.enabled = enabled;
+    }
+
+    public static int getSampleRate() {
+        return sampleRate;
+    }
+
+    /** Returns the number of traces published since startup, including the ones overwritten in the buffer. */
+    public static long getTraceCount() {
+        return traceCount.get();
+    }
+
+    /** Returns the number of traces that were cut short because they exceeded the span limit. */
+    public static long getTruncatedCount() {
+        return truncatedCount.get();
+    }
+
+    /**
+     * Opens a span for the current thread.
+     * @param type The kind of call, for example "service"
+     * @param name The name of the called service, entity, rule...
+     * @return true if a span was opened and {@link #exit()} must be called, false if tracing is off
+     */
+    public static boolean enter(String type, String name) {
+        if (!enabled) {
+            return false;
+        }
+        spanStack.get().push(type, name);
+        return true;
+    }
+
+    /** Closes the innermost span opened by {@link #enter(String, String)} on the current thread. */
+    public static void exit() {
+        spanStack.get().pop();
+    }
+
+    /** Removes all traces from the buffer. */
+    public static void clear() {
+        for (int i = 0; i < traces.length(); i++) {
+            traces.set(i, null);
+        }
+    }
+
+    /**
+     * Aggregates the buffered traces into a call tree. The tree is returned depth first with the
+     * most expensive children first; each node is a Map with the depth, name, calls,
+     * totalMillis and selfMillis entries.
+     */
+    public static List<Map<String, Object>> getCallTree() {
+        CallNode root = new CallNode(null);
+        for (Trace trace : getTraces()) {
+            for (int i = 0; i < trace.paths.length; i++) {
+                CallNode node = root;
+                for (String frame : trace.paths[i].split(";")) {
+                    node = node.getChild(frame);
+                }
+                node.calls++;
+                node.totalNanos += trace.totalNanos[i];
+                node.selfNanos += trace.selfNanos[i];
+            }
+        }
+        List<Map<String, Object>> callTree = new ArrayList<Map<String, Object>>();
+        root.addChildren(callTree, 0);
+        return callTree;
+    }
+
+    /**
+     * Returns the buffered traces as folded stacks, one "frame;frame;frame selfMicros" line per
+     * distinct call path, the input format of the common flame graph tools.
+     */
+    public static String getFoldedStacks() {
+        Map<String, Long> selfNanosByPath = new TreeMap<String, Long>();
+        for (Trace trace : getTraces()) {
+            for (int i = 0; i < trace.paths.length; i++) {
+                Long selfNanos = selfNanosByPath.get(trace.paths[i]);
+                selfNanosByPath.put(trace.paths[i], selfNanos == null ? trace.selfNanos[i] : selfNanos + trace.selfNanos[i]);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : selfNanosByPath.entrySet()) {
+            sb.append(entry.getKey().replace(' ', '_')).append(' ').append(entry.getValue() / 1000).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static List<Trace> getTraces() {
+        List<Trace> result = new ArrayList<Trace>(traces.length());
+        for (int i = 0; i < traces.length(); i++) {
+            Trace trace = traces.get(i);
+            if (trace != null) {
+                result.add(trace);
+            }
+        }
+        return result;
+    }
+
+    private static void publish(Trace trace) {
+        int slot = (int) (traceCount.getAndIncrement() % traces.length());
+        traces.set(slot, trace);
+    }
+
+    private static BigDecimal toMillis(long nanos) {
+        return BigDecimal.valueOf(nanos / 1000, 3);
+    }
+
+    /** The completed spans of one traced top level call. */
+    private static final class Trace {
+        private final String[] paths;
+        private final long[] totalNanos;
+        private final long[] selfNanos;
+
+        private Trace(String[] paths, long[] totalNanos, long[] selfNanos) {
+            this.paths = paths;
+            this.totalNanos = totalNanos;
+            this.selfNanos = selfNanos;
+        }
+    }
+
+    /** The open spans of one thread, only accessed by that thread. */
+    private static final class SpanStack {
+        private int depth = 0;
+        private int calls = 0;
+        private boolean sampled = false;
+        private boolean truncated = false;
+        private final String[] openPaths = new String[MAX_DEPTH];
+        private final long[] openStarts = new long[MAX_DEPTH];
+        private final long[] openChildNanos = new long[MAX_DEPTH];
+        private int spanCount = 0;
+        private String[] spanPaths = new String[16];
+        private long[] spanTotalNanos = new long[16];
+        private long[] spanSelfNanos = new long[16];
+
+        private void push(String type, String name) {
+            if (depth == 0) {
+                calls++;
+                sampled = calls >= sampleRate;
+                if (sampled) {
+                    calls = 0;
+                }
+            }
+            if (sampled && depth < MAX_DEPTH) {
+                String frame = type + ":" + name;
+                openPaths[depth] = depth == 0 ? frame : openPaths[depth - 1] + ";" + frame;
+                openChildNanos[depth] = 0;
+                openStarts[depth] = System.nanoTime();
+            }
+            depth++;
+        }
+
+        private void pop() {
+            if (depth == 0) {
+                return;
+            }
+            depth--;
+            if (!sampled || depth >= MAX_DEPTH) {
+                return;
+            }
+            long totalNanos = System.nanoTime() - openStarts[depth];
+            if (depth > 0) {
+                openChildNanos[depth - 1] += totalNanos;
+            }
+            if (spanCount < MAX_SPANS) {
+                if (spanCount == spanPaths.length) {
+                    int newLength = Math.min(MAX_SPANS, spanCount * 2);
+                    spanPaths = Arrays.copyOf(spanPaths, newLength);
+                    spanTotalNanos = Arrays.copyOf(spanTotalNanos, newLength);
+                    spanSelfNanos = Arrays.copyOf(spanSelfNanos, newLength);
+                }
+                spanPaths[spanCount] = openPaths[depth];
+                spanTotalNanos[spanCount] = totalNanos;
+                spanSelfNanos[spanCount] = totalNanos - openChildNanos[depth];
+                spanCount++;
+            } else {
+                truncated = true;
+            }
+            openPaths[depth] = null;
+            if (depth == 0) {
+                publish(new Trace(Arrays.copyOf(spanPaths, spanCount), Arrays.copyOf(spanTotalNanos, spanCount), Arrays.copyOf(spanSelfNanos, spanCount)));
+                if (truncated) {
+                    truncatedCount.incrementAndGet();
+                }
+                Arrays.fill(spanPaths, 0, spanCount, null);
+                spanCount = 0;
+                truncated = false;
+                sampled = false;
+            }
+        }
+    }
+
+    /** A node of the aggregated call tree. */
+    private static final class CallNode {
+        private final String name;
+        private final Map<String, CallNode> children = new HashMap<String, CallNode>();
+        private long calls = 0;
+        private long totalNanos = 0;
+        private long selfNanos = 0;
+
+        private CallNode(String name) {
+            this.name = name;
+        }
+
+        private CallNode getChild(String frame) {
+            CallNode child = children.get(frame);
+            if (child == null) {
+                child = new CallNode(frame);
+                children.put(frame, child);
+            }
+            return child;
+        }
+
+        private void addChildren(List<Map<String, Object>> callTree, int depth) {
+            List<CallNode> sortedChildren = new ArrayList<CallNode>(children.values());
+            Collections.sort(sortedChildren, new Comparator<CallNode>() {
+                @Override
+                public int compare(CallNode node1, CallNode node2) {
+                    return Long.compare(node2.totalNanos, node1.totalNanos);
+                }
+            });
+            for (CallNode child : sortedChildren) {
+                Map<String, Object> nodeMap = new LinkedHashMap<String, Object>();
+                nodeMap.put("depth", depth);
+                nodeMap.put("name", child.name);
+                nodeMap.put("calls", child.calls);
+                nodeMap.put("totalMillis", toMillis(child.totalNanos));
+                nodeMap.put("selfMillis", toMillis(child.selfNanos));
+                callTree.add(nodeMap);
+                child.addChildren(callTree, depth + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+
+/**
+ * Creates the bounded map that holds the lines of a {@link UtilCache}; the backend decides which entries
+ * are evicted when the cache is full. The backend of a cache is selected with the <code>backend</code>
+ * property in cache.properties, either one of the built-in names (<code>lru</code>, <code>tinylfu</code>)
+ * or the name of a class implementing this interface that has a public no-argument constructor.
+ */
+public interface CacheBackend {
+
+    /**
+     * Creates the map for a bounded cache; at least one of the bounds is greater than 0.
+     * @param cacheName The name of the cache the map is created for
+     * @param maxInMemory The maximum number of entries, 0 for no limit on the number of entries
+     * @param maxMemory The maximum total weight of the entries as computed by the weigher, 0 for no limit
+     * @param weigher Computes the weight of an entry, only needed when maxMemory is greater than 0
+     * @param listener Receives the entries that are evicted, may be null
+     * @return The new map
+     */
+    public <K, V> ConcurrentMap<K, V> createMap(String cacheName, int maxInMemory, long maxMemory, Weigher<? super K, ? super V> weigher, EvictionListener<K, V> listener);
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+/**
+ * Converts the values of a cache to and from bytes, so they can be kept outside of the Java heap
+ * by the overflow tier of a {@link UtilCache}.
+ */
+public interface CacheCodec<V> {
+
+    /**
+     * @param value The value to encode
+     * @return The encoded value, or null if this value cannot be encoded
+     */
+    public byte[] encode(V value);
+
+    /**
+     * @param data Bytes returned by {@link #encode}
+     * @return The decoded value, or null if the data can no longer be decoded (for example when the
+     * definition of the value changed)
+     */
+    public V decode(byte[] data);
+}
@@ -21,6 +21,11 @@ package org.apache.ofbiz.base.util.cache;
 import org.apache.ofbiz.base.concurrent.ExecutionPool;
 
 public abstract class CacheLine<V> extends ExecutionPool.Pulse {
+    /** The weight of the line as counted in the size of its cache */
+    long weight = 0;
+    /** Whether the weight is not yet, is, or is no longer counted in the size of the cache */
+    int weightState = 0;
+
     protected CacheLine(long loadTimeNanos, long expireTimeNanos) {
         super(loadTimeNanos, expireTimeNanos);
     }
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.ofbiz.base.util.Debug;
+
+/**
+ * The second-level tier of a {@link UtilCache}: keeps the values evicted from the cache in encoded form
+ * in an {@link OffHeapStore}. Only the keys and the record addresses stay on the heap. A value is
+ * handed back to the cache (and removed from the tier) when it is read again.
+ * <p>
+ * A value keeps the load time and expire time it had in the cache, so it expires while off-heap as it
+ * would have in the cache; an expired value is handled as if it was not in the tier.
+ */
+final class CacheOverflow<V> {
+
+    public static final String module = CacheOverflow.class.getName();
+
+    private final OffHeapStore store;
+    private final CacheCodec<V> codec;
+    private final ConcurrentHashMap<Object, Slot> index = new ConcurrentHashMap<Object, Slot>();
+    private final AtomicLong writeCount = new AtomicLong();
+
+    CacheOverflow(OffHeapStore store, CacheCodec<V> codec) {
+        this.store = store;
+        this.codec = codec;
+    }
+
+    private static final class Slot {
+        private final long address;
+        private final int length;
+        private final long checksum;
+        private final long loadTimeNanos;
+        private final long expireTimeNanos;
+
+        private Slot(long address, int length, long checksum, long loadTimeNanos, long expireTimeNanos) {
+            this.address = address;
+            this.length = length;
+            this.checksum = checksum;
+            this.loadTimeNanos = loadTimeNanos;
+            this.expireTimeNanos = expireTimeNanos;
+        }
+
+        private boolean isExpired() {
+            return loadTimeNanos > 0 && System.nanoTime() - loadTimeNanos >= expireTimeNanos;
+        }
+    }
+
+    /** A value removed from the tier, with the load time and expire time it had in the cache */
+    static final class Entry<V> {
+        final V value;
+        final long loadTimeNanos;
+        final long expireTimeNanos;
+
+        private Entry(V value, long loadTimeNanos, long expireTimeNanos) {
+            this.value = value;
+            this.loadTimeNanos = loadTimeNanos;
+            this.expireTimeNanos = expireTimeNanos;
+        }
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    /** Stores the value of a key, replacing the stored value if any.
+     * @param loadTimeNanos The time the value was loaded in the cache, 0 if it does not expire
+     * @param expireTimeNanos The time to live of the value from its load time
+     */
+    void put(Object key, V value, long loadTimeNanos, long expireTimeNanos) {
+        byte[] data = null;
+        try {
+            data = codec.encode(value);
+        } catch (RuntimeException e) {
+            Debug.logWarning(e, "Could not encode a cache value for the off-heap tier", module);
+        }
+        long address = data != null ? store.write(data) : -1;
+        if (address < 0) {
+            index.remove(key);
+            return;
+        }
+        index.put(key, new Slot(address, data.length, checksum(data), loadTimeNanos, expireTimeNanos));
+        if ((writeCount.incrementAndGet() & 1023) == 0) {
+            purge();
+        }
+    }
+
+    /** Removes the value of a key and returns it, null if it was not found, was overwritten or has expired */
+    Entry<V> remove(Object key) {
+        Slot slot = index.remove(key);
+        V value = decode(slot);
+        return value == null ? null : new Entry<V>(value, slot.loadTimeNanos, slot.expireTimeNanos);
+    }
+
+    /** Returns the value of a key without removing it, null if it was not found, was overwritten or has expired */
+    V get(Object key) {
+        return decode(index.get(key));
+    }
+
+    private V decode(Slot slot) {
+        if (slot == null || slot.isExpired()) {
+            return null;
+        }
+        byte[] data = store.read(slot.address, slot.length);
+        if (data == null || checksum(data) != slot.checksum) {
+            return null;
+        }
+        try {
+            return codec.decode(data);
+        } catch (RuntimeException e) {
+            Debug.logWarning(e, "Could not decode a cache value from the off-heap tier", module);
+            return null;
+        }
+    }
+
+    /** Removes the value of a key without reading it, returns true if a valid value was removed */
+    boolean discard(Object key) {
+        Slot slot = index.remove(key);
+        return slot != null && isLive(slot);
+    }
+
+    boolean containsKey(Object key) {
+        Slot slot = index.get(key);
+        return slot != null && isLive(slot);
+    }
+
+    /** Returns true if the record of a slot was not overwritten in the store and has not expired */
+    private boolean isLive(Slot slot) {
+        return store.isValid(slot.address) && !slot.isExpired();
+    }
+
+    void clear() {
+        index.clear();
+    }
+
+    /** Returns a copy of the keys of the values still in the store */
+    Set<Object> keySet() {
+        purge();
+        return new HashSet<Object>(index.keySet());
+    }
+
+    int size() {
+        purge();
+        return index.size();
+    }
+
+    long getSizeInBytes() {
+        long size = 0;
+        for (Slot slot: index.values()) {
+            if (isLive(slot)) {
+                size += slot.length;
+            }
+        }
+        return size;
+    }
+
+    /** Forgets the keys of the records overwritten in the store or expired */
+    private void purge() {
+        Iterator<Map.Entry<Object, Slot>> it = index.entrySet().iterator();
+        while (it.hasNext()) {
+            if (!isLive(it.next().getValue())) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ofbiz.base.util.Debug;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+
+/**
+ * The default cache backend: a {@link ConcurrentLinkedHashMap} evicting the least recently used entry.
+ * When maxMemory is set the map is bounded by weight only, the maxInMemory entry limit is then ignored.
+ */
+public class LruCacheBackend implements CacheBackend {
+
+    public static final String module = LruCacheBackend.class.getName();
+    /** Largest capacity accepted by ConcurrentLinkedHashMap */
+    private static final int maximumCapacity = 1 << 30;
+
+    public <K, V> ConcurrentMap<K, V> createMap(String cacheName, int maxInMemory, long maxMemory, final Weigher<? super K, ? super V> weigher, EvictionListener<K, V> listener) {
+        Builder<K, V> builder = new Builder<K, V>();
+        if (listener != null) {
+            builder.listener(listener);
+        }
+        if (maxMemory > 0) {
+            if (maxInMemory > 0) {
+                Debug.logWarning("Cache [" + cacheName + "] has both maxInMemory and maxMemory set, the lru backend only enforces maxMemory", module);
+            }
+            builder.maximumWeightedCapacity((int) Math.min(maxMemory, maximumCapacity));
+            builder.weigher(new com.googlecode.concurrentlinkedhashmap.Weigher<V>() {
+                public int weightOf(V value) {
+                    // the ConcurrentLinkedHashMap weigher only sees the value
+                    return (int) Math.max(1, Math.min(weigher.weigh(null, value), maximumCapacity));
+                }
+            });
+        } else {
+            builder.maximumWeightedCapacity(maxInMemory);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The default {@link Weigher}: estimates the heap size in bytes of the key and value of a cache entry
+ * from their type, without serializing them. Common value types (strings, numbers, dates, arrays,
+ * collections and maps) are estimated directly; other types can register an {@link Estimator}, like
+ * the entity engine does for GenericEntity. Objects of an unknown type count as an empty object.
+ * <p>
+ * The estimates assume a 64-bit JVM and are meant for comparing caches and setting memory budgets,
+ * not for exact measurement.
+ */
+public final class ObjectSizeWeigher implements Weigher<Object, Object> {
+
+    public static final ObjectSizeWeigher INSTANCE = new ObjectSizeWeigher();
+
+    public static final int OBJECT_HEADER = 16;
+    public static final int REFERENCE = 8;
+    /** A cache line plus the map entry holding it */
+    public static final int ENTRY_OVERHEAD = 80;
+    /** Container nesting deeper than this is not estimated, guarding against cycles */
+    private static final int maxDepth = 8;
+
+    private static final ConcurrentHashMap<Class<?>, Estimator<Object>> estimators = new ConcurrentHashMap<Class<?>, Estimator<Object>>();
+    private static final Estimator<Object> noEstimator = new Estimator<Object>() {
+        public long estimate(Object object) {
+            return -1;
+        }
+    };
+
+    /** Estimates the size of the objects of a type registered with {@link ObjectSizeWeigher#registerEstimator}. */
+    public interface Estimator<T> {
+        /**
+         * @param object The object to estimate, never null
+         * @return The estimated size in bytes of the object and the objects it owns
+         */
+        public long estimate(T object);
+    }
+
+    public ObjectSizeWeigher() {
+    }
+
+    /** Registers the estimator used for objects of the given type and its subtypes. */
+    @SuppressWarnings("unchecked")
+    public static <T> void registerEstimator(Class<T> type, Estimator<? super T> estimator) {
+        estimators.put(type, (Estimator<Object>) estimator);
+        // forget the lookups resolved before this registration
+        for (Map.Entry<Class<?>, Estimator<Object>> entry: estimators.entrySet()) {
+            if (entry.getValue() == noEstimator) {
+                estimators.remove(entry.getKey(), noEstimator);
+            }
+        }
+    }
+
+    public long weigh(Object key, Object value) {
+        return ENTRY_OVERHEAD + estimate(key) + estimate(value);
+    }
+
+    /** Returns the estimated size in bytes of the object and the objects it owns. */
+    public static long estimate(Object object) {
+        return estimate(object, 0);
+    }
+
+    private static long estimate(Object object, int depth) {
+        if (object == null) {
+            return 0;
+        }
+        if (object instanceof String) {
+            return estimateString((String) object);
+        }
+        if (object instanceof Integer || object instanceof Boolean || object instanceof Character || object instanceof Short || object instanceof Byte) {
+            return OBJECT_HEADER;
+        }
+        if (object instanceof Long || object instanceof Double || object instanceof Float) {
+            return OBJECT_HEADER + 8;
+        }
+        if (object instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) object;
+            // the unscaled value is only kept in a BigInteger when it does not fit in a long
+            return OBJECT_HEADER + 24 + (decimal.precision() > 18 ? estimateBigInteger(decimal.unscaledValue()) : 0);
+        }
+        if (object instanceof BigInteger) {
+            return estimateBigInteger((BigInteger) object);
+        }
+        if (object instanceof java.util.Date) {
+            // java.sql.Timestamp adds the nanos to the millisecond time
+            return OBJECT_HEADER + 16 + (object instanceof java.sql.Timestamp ? 8 : 0);
+        }
+        if (object instanceof byte[]) {
+            return align(OBJECT_HEADER + ((byte[]) object).length);
+        }
+        if (object instanceof char[]) {
+            return align(OBJECT_HEADER + 2L * ((char[]) object).length);
+        }
+        if (depth >= maxDepth) {
+            return OBJECT_HEADER;
+        }
+        Estimator<Object> estimator = findEstimator(object.getClass());
+        if (estimator != noEstimator) {
+            return estimator.estimate(object);
+        }
+        if (object instanceof Map<?, ?>) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            long size = OBJECT_HEADER + 32 + align(OBJECT_HEADER + (long) REFERENCE * tableLength(map.size()));
+            for (Map.Entry<?, ?> entry: map.entrySet()) {
+                size += 32 + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (object instanceof Collection<?>) {
+            Collection<?> collection = (Collection<?>) object;
+            // an array list slot, or the node of a linked collection
+            long size = OBJECT_HEADER + 16 + align(OBJECT_HEADER + (long) REFERENCE * collection.size());
+            for (Object element: collection) {
+                size += estimate(element, depth + 1);
+            }
+            return size;
+        }
+        if (object instanceof Object[]) {
+            Object[] array = (Object[]) object;
+            long size = align(OBJECT_HEADER + (long) REFERENCE * array.length);
+            for (Object element: array) {
+                size += estimate(element, depth + 1);
+            }
+            return size;
+        }
+        return OBJECT_HEADER;
+    }
+
+    /** Estimates a nested value from within an {@link Estimator}. */
+    public static long estimateNested(Object object) {
+        return estimate(object, 1);
+    }
+
+    public static long estimateString(String string) {
+        // the String object and its char array
+        return OBJECT_HEADER + 8 + align(OBJECT_HEADER + 2L * string.length());
+    }
+
+    private static long estimateBigInteger(BigInteger integer) {
+        return OBJECT_HEADER + 16 + align(OBJECT_HEADER + 4L * ((integer.bitLength() >> 5) + 1));
+    }
+
+    private static Estimator<Object> findEstimator(Class<?> type) {
+        Estimator<Object> estimator = estimators.get(type);
+        if (estimator == null) {
+            estimator = noEstimator;
+            for (Class<?> superType = type.getSuperclass(); superType != null; superType = superType.getSuperclass()) {
+                Estimator<Object> superEstimator = estimators.get(superType);
+                if (superEstimator != null && superEstimator != noEstimator) {
+                    estimator = superEstimator;
+                    break;
+                }
+            }
+            estimators.putIfAbsent(type, estimator);
+        }
+        return estimator;
+    }
+
+    private static long tableLength(int size) {
+        return size == 0 ? 0 : Integer.highestOneBit(Math.max(1, size * 4 / 3) - 1 | 1) << 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
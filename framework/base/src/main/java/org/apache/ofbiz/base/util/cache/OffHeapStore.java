@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+
+/**
+ * A fixed size ring buffer outside of the Java heap, shared by the overflow tiers of all caches.
+ * <p>
+ * Records are appended at the write position, overwriting the oldest records when the buffer is full,
+ * so the store needs no eviction bookkeeping. A record is addressed by its logical position (the total
+ * number of bytes written before it) and is valid as long as less than the capacity of the buffer was
+ * written after it. The buffer is either direct memory or a memory-mapped file, set with the
+ * offheap.maxMemory and offheap.file properties in cache.properties. The contents are not kept across
+ * restarts.
+ */
+public final class OffHeapStore {
+
+    public static final String module = OffHeapStore.class.getName();
+
+    private static volatile OffHeapStore instance = null;
+    private static boolean initialized = false;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    /** The largest record accepted; larger records would push out too many others */
+    private final int maxRecordLength;
+    private final Object writeLock = new Object();
+    /** The logical end of the written region, moved before the bytes are written */
+    private volatile long reserved = 0;
+
+    private OffHeapStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+        this.maxRecordLength = Math.max(1, capacity / 16);
+    }
+
+    /**
+     * Returns the shared store, or null if no off-heap memory is configured.
+     */
+    public static OffHeapStore getInstance() {
+        if (!initialized) {
+            synchronized (OffHeapStore.class) {
+                if (!initialized) {
+                    instance = create(UtilProperties.getPropertyAsLong("cache", "offheap.maxMemory", 0), UtilProperties.getPropertyValue("cache", "offheap.file"));
+                    initialized = true;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a store with its own buffer.
+     * @param maxMemory The size of the buffer in bytes, at most 2GB
+     * @param fileName The file to map the buffer to, or empty to use direct memory
+     * @return The new store, or null if maxMemory is not greater than 0 or the buffer could not be allocated
+     */
+    public static OffHeapStore create(long maxMemory, String fileName) {
+        if (maxMemory <= 0) {
+            return null;
+        }
+        int size = (int) Math.min(maxMemory, Integer.MAX_VALUE);
+        try {
+            ByteBuffer buffer;
+            if (UtilValidate.isEmpty(fileName)) {
+                buffer = ByteBuffer.allocateDirect(size);
+            } else {
+                File file = new File(fileName);
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                } finally {
+                    // the mapping stays valid after the channel is closed
+                    channel.close();
+                }
+            }
+            Debug.logInfo("Created off-heap cache store of " + size + " bytes" + (UtilValidate.isEmpty(fileName) ? "" : " mapped to " + fileName), module);
+            return new OffHeapStore(buffer);
+        } catch (IOException e) {
+            Debug.logError(e, "Could not create the off-heap cache store file " + fileName, module);
+        } catch (OutOfMemoryError e) {
+            Debug.logError(e, "Could not allocate " + size + " bytes of direct memory for the off-heap cache store", module);
+        }
+        return null;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Appends a record.
+     * @return The address of the record, or -1 if it is too large to be stored
+     */
+    public long write(byte[] data) {
+        int length = data.length;
+        if (length > maxRecordLength) {
+            return -1;
+        }
+        synchronized (writeLock) {
+            long address = reserved;
+            int offset = (int) (address % capacity);
+            if (offset + length > capacity) {
+                // records do not wrap around the end of the buffer
+                address += capacity - offset;
+                offset = 0;
+            }
+            reserved = address + length;
+            ByteBuffer target = buffer.duplicate();
+            target.position(offset);
+            target.put(data);
+            return address;
+        }
+    }
+
+    /**
+     * Reads a record.
+     * @return The bytes of the record, or null if the record was overwritten
+     */
+    public byte[] read(long address, int length) {
+        if (!isValid(address)) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position((int) (address % capacity));
+        source.get(data);
+        // the record may have been overwritten while it was copied
+        return isValid(address) ? data : null;
+    }
+
+    /** Returns true if the record at the address was not overwritten yet */
+    public boolean isValid(long address) {
+        return reserved - address <= capacity;
+    }
+}
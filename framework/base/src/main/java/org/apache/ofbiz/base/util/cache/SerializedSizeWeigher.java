@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.io.Serializable;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilObject;
+
+/**
+ * Weighs cache entries by the size of their serialized form. Entries that cannot be serialized weigh 0.
+ */
+public final class SerializedSizeWeigher implements Weigher<Object, Object> {
+
+    public static final String module = SerializedSizeWeigher.class.getName();
+    public static final SerializedSizeWeigher INSTANCE = new SerializedSizeWeigher();
+
+    public SerializedSizeWeigher() {
+    }
+
+    public long weigh(Object key, Object value) {
+        return byteCount(key) + byteCount(value);
+    }
+
+    private static long byteCount(Object o) {
+        if (!(o instanceof Serializable)) {
+            return 0;
+        }
+        try {
+            return UtilObject.getByteCount(o);
+        } catch (Exception e) {
+            if (Debug.verboseOn()) Debug.logVerbose("Unable to compute serialized size for object of " + o.getClass() + ": " + e.toString(), module);
+            return 0;
+        }
+    }
+}
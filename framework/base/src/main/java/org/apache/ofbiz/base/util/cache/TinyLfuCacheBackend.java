@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+
+/**
+ * Cache backend using the W-TinyLFU policy implemented by {@link TinyLfuMap}. It keeps frequently used
+ * entries when one-off scans go through the cache, and enforces both the entry count and the weight bound.
+ */
+public class TinyLfuCacheBackend implements CacheBackend {
+
+    public <K, V> ConcurrentMap<K, V> createMap(String cacheName, int maxInMemory, long maxMemory, Weigher<? super K, ? super V> weigher, EvictionListener<K, V> listener) {
+        return new TinyLfuMap<K, V>(maxInMemory, maxMemory, weigher, listener);
+    }
+}
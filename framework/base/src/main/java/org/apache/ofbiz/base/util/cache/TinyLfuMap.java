@@ -0,0 +1,539 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ofbiz.base.util.UtilObject;
+
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+
+/**
+ * A bounded map using the W-TinyLFU eviction policy.
+ * <p>
+ * New entries go into a small LRU window (1% of the capacity). Entries pushed out of the window
+ * are candidates for the main space, and are only admitted when a {@link FrequencySketch} says they
+ * are used more often than the entry that would be evicted for them. The main space is a segmented
+ * LRU: entries used again while on probation are promoted to the protected segment (80% of the main space).
+ * This way a scan over many keys that are used only once cannot push out the frequently used ones.
+ * <p>
+ * Reads are lock-free; they record the access only when the policy lock is free, so under heavy
+ * contention some accesses are not counted. Writes take the policy lock.
+ */
+public class TinyLfuMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<K, Node<K, V>>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<K, V>();
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<K, V>();
+    private final AccessOrderDeque<K, V> protectedSegment = new AccessOrderDeque<K, V>();
+    private final Weigher<? super K, ? super V> weigher;
+    private final EvictionListener<K, V> listener;
+    private final FrequencySketch sketch;
+
+    private volatile long maximumSize;
+    private volatile long maximumWeight;
+    private long windowMaximum;
+    private long protectedMaximum;
+    private volatile long totalWeight;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * @param maximumSize The maximum number of entries, 0 for no limit on the number of entries
+     * @param maximumWeight The maximum total weight of the entries, 0 for no limit on the weight
+     * @param weigher Computes the entry weights, may be null when maximumWeight is 0
+     * @param listener Receives the evicted entries once the policy lock is released, may be null
+     */
+    public TinyLfuMap(long maximumSize, long maximumWeight, Weigher<? super K, ? super V> weigher, EvictionListener<K, V> listener) {
+        if (maximumWeight > 0 && weigher == null) {
+            throw new IllegalArgumentException("A weigher is required when the maximum weight is set");
+        }
+        this.weigher = weigher;
+        this.listener = listener;
+        this.sketch = new FrequencySketch(maximumSize > 0 ? maximumSize : 1024);
+        setMaximum(maximumSize, maximumWeight);
+    }
+
+    /** Changes the bounds of the map, evicting entries if needed. */
+    public void setMaximum(long maximumSize, long maximumWeight) {
+        if (maximumSize <= 0 && maximumWeight <= 0) {
+            throw new IllegalArgumentException("Either the maximum size or the maximum weight must be greater than 0");
+        }
+        List<Node<K, V>> evicted;
+        policyLock.lock();
+        try {
+            this.maximumSize = Math.max(maximumSize, 0);
+            this.maximumWeight = Math.max(maximumWeight, 0);
+            // the segments are sized in the unit of the primary bound
+            long capacity = isWeighted() ? this.maximumWeight : this.maximumSize;
+            this.windowMaximum = Math.max(1, capacity / 100);
+            this.protectedMaximum = (long) ((capacity - windowMaximum) * 0.8);
+            if (this.maximumSize > 0) {
+                sketch.ensureCapacity(this.maximumSize);
+            }
+            evicted = evict();
+        } finally {
+            policyLock.unlock();
+        }
+        notifyEvicted(evicted);
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /** Returns the total weight of the entries, 0 when the map is not bounded by weight. */
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    private boolean isWeighted() {
+        return maximumWeight > 0;
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (policyLock.tryLock()) {
+            try {
+                if (node.queue >= 0) {
+                    onAccess(node);
+                }
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        V oldValue = null;
+        List<Node<K, V>> evicted;
+        policyLock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                oldValue = node.value;
+                if (!onlyIfAbsent) {
+                    updateValue(node, value);
+                }
+                onAccess(node);
+            } else {
+                node = new Node<K, V>(key, value, weigh(key, value));
+                data.put(key, node);
+                node.queue = WINDOW;
+                window.addLast(node);
+                totalWeight += node.weight;
+                if (maximumSize <= 0 && data.size() > sketch.capacity()) {
+                    // only bounded by weight: grow the sketch with the number of entries
+                    sketch.ensureCapacity(data.size() * 2L);
+                }
+                sketch.increment(key);
+            }
+            evicted = evict();
+        } finally {
+            policyLock.unlock();
+        }
+        notifyEvicted(evicted);
+        return oldValue;
+    }
+
+    public V replace(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        V oldValue;
+        List<Node<K, V>> evicted;
+        policyLock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node == null) {
+                return null;
+            }
+            oldValue = node.value;
+            updateValue(node, value);
+            evicted = evict();
+        } finally {
+            policyLock.unlock();
+        }
+        notifyEvicted(evicted);
+        return oldValue;
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (newValue == null) {
+            throw new NullPointerException();
+        }
+        List<Node<K, V>> evicted;
+        policyLock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node == null || !UtilObject.equalsHelper(node.value, oldValue)) {
+                return false;
+            }
+            updateValue(node, newValue);
+            evicted = evict();
+        } finally {
+            policyLock.unlock();
+        }
+        notifyEvicted(evicted);
+        return true;
+    }
+
+    @Override
+    public V remove(Object key) {
+        policyLock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+            return node.value;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        policyLock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node == null || !UtilObject.equalsHelper(node.value, value)) {
+                return false;
+            }
+            data.remove(key);
+            unlink(node);
+            return true;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        policyLock.lock();
+        try {
+            for (Node<K, V> node: data.values()) {
+                unlink(node);
+            }
+            data.clear();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        if (es == null) {
+            es = new EntrySet();
+            entrySet = es;
+        }
+        return es;
+    }
+
+    private long weigh(K key, V value) {
+        if (!isWeighted()) {
+            return 1;
+        }
+        return Math.max(0, weigher.weigh(key, value));
+    }
+
+    private void updateValue(Node<K, V> node, V value) {
+        long weight = weigh(node.key, value);
+        long delta = weight - node.weight;
+        node.value = value;
+        node.weight = weight;
+        totalWeight += delta;
+        dequeOf(node).weight += delta;
+    }
+
+    private AccessOrderDeque<K, V> dequeOf(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.queue < 0) {
+            return;
+        }
+        dequeOf(node).remove(node);
+        node.queue = -1;
+        totalWeight -= node.weight;
+    }
+
+    private void onAccess(Node<K, V> node) {
+        sketch.increment(node.key);
+        if (node.queue == WINDOW) {
+            window.moveToBack(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedSegment.addLast(node);
+            // keep the protected segment within its share, demoting its least recently used entries
+            while (protectedSegment.weight > protectedMaximum && protectedSegment.size > 1) {
+                Node<K, V> demoted = protectedSegment.pollFirst();
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else {
+            protectedSegment.moveToBack(node);
+        }
+    }
+
+    private boolean isOverCapacity() {
+        return (maximumSize > 0 && data.size() > maximumSize) || (maximumWeight > 0 && totalWeight > maximumWeight);
+    }
+
+    /**
+     * Evicts entries until the map is within its bounds. Must be called with the policy lock held;
+     * the evicted nodes are returned so that the listener can be notified once the lock is released.
+     */
+    private List<Node<K, V>> evict() {
+        List<Node<K, V>> evicted = Collections.emptyList();
+        // entries pushed out of the window become candidates at the end of the probation segment
+        int candidates = 0;
+        while (window.weight > windowMaximum && window.size > 1) {
+            Node<K, V> node = window.pollFirst();
+            node.queue = PROBATION;
+            probation.addLast(node);
+            candidates++;
+        }
+        while (isOverCapacity()) {
+            Node<K, V> victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedSegment.peekFirst();
+                if (victim == null) {
+                    victim = window.peekFirst();
+                }
+                if (victim == null) {
+                    break;
+                }
+                evicted = evictNode(victim, evicted);
+                continue;
+            }
+            Node<K, V> candidate = candidates > 0 ? probation.peekLast() : null;
+            if (candidate == null || candidate == victim) {
+                if (candidate == victim) {
+                    candidates--;
+                }
+                evicted = evictNode(victim, evicted);
+            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evicted = evictNode(victim, evicted);
+            } else {
+                evicted = evictNode(candidate, evicted);
+                candidates--;
+            }
+        }
+        return evicted;
+    }
+
+    private List<Node<K, V>> evictNode(Node<K, V> node, List<Node<K, V>> evicted) {
+        data.remove(node.key, node);
+        unlink(node);
+        if (listener == null) {
+            return evicted;
+        }
+        if (evicted.isEmpty()) {
+            evicted = new LinkedList<Node<K, V>>();
+        }
+        evicted.add(node);
+        return evicted;
+    }
+
+    private void notifyEvicted(List<Node<K, V>> evicted) {
+        for (Node<K, V> node: evicted) {
+            listener.onEviction(node.key, node.value);
+        }
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        private long weight;
+        private int queue = -1;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** A doubly linked list of nodes ordered from least to most recently used, guarded by the policy lock. */
+    private static final class AccessOrderDeque<K, V> {
+        private final Node<K, V> head = new Node<K, V>(null, null, 0);
+        private long weight;
+        private int size;
+
+        private AccessOrderDeque() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        private void addLast(Node<K, V> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            weight += node.weight;
+            size++;
+        }
+
+        private void remove(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+            size--;
+        }
+
+        private void moveToBack(Node<K, V> node) {
+            if (head.prev != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private Node<K, V> peekFirst() {
+            return head.next == head ? null : head.next;
+        }
+
+        private Node<K, V> peekLast() {
+            return head.prev == head ? null : head.prev;
+        }
+
+        private Node<K, V> pollFirst() {
+            Node<K, V> node = peekFirst();
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return data.size();
+        }
+
+        @Override
+        public void clear() {
+            TinyLfuMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            final Iterator<Node<K, V>> it = data.values().iterator();
+            return new Iterator<Map.Entry<K, V>>() {
+                private Node<K, V> current;
+
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                public Map.Entry<K, V> next() {
+                    current = it.next();
+                    return new WriteThroughEntry(current.key, current.value);
+                }
+
+                public void remove() {
+                    if (current == null) {
+                        throw new IllegalStateException();
+                    }
+                    TinyLfuMap.this.remove(current.key);
+                    current = null;
+                }
+            };
+        }
+    }
+
+    private final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private WriteThroughEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            TinyLfuMap.this.replace(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -18,7 +18,6 @@
  *******************************************************************************/
 package org.apache.ofbiz.base.util.cache;
 
-import java.io.NotSerializableException;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
@@ -42,21 +41,22 @@ import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.ObjectType;
 import org.apache.ofbiz.base.util.UtilGenerics;
-import org.apache.ofbiz.base.util.UtilObject;
 import org.apache.ofbiz.base.util.UtilValidate;
 
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
-import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
 import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 
 /**
  * Generalized caching utility. Provides a number of caching features:
  * <ul>
- *   <li>Limited or unlimited element capacity
- *   <li>If limited, removes elements with the LRU (Least Recently Used) algorithm
+ *   <li>Limited or unlimited element capacity, by number of elements or by memory
+ *   <li>If limited, removes elements with the LRU (Least Recently Used) algorithm, or the
+ *       policy of the {@link CacheBackend} configured with the <code>backend</code> property
  *   <li>Keeps track of when each element was loaded into the cache
  *   <li>Using the expireTime can report whether a given element has expired
  *   <li>Counts misses and hits
+ *   <li>If the <code>overflow</code> property is set and a {@link CacheCodec} is given, keeps the
+ *       evicted elements in encoded form in the shared {@link OffHeapStore}
  * </ul>
  *
  */
@@ -65,6 +65,13 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     public static final String module = UtilCache.class.getName();
 
+    /** The built-in cache backends, by the name used in the backend property. */
+    private static final ConcurrentHashMap<String, CacheBackend> cacheBackends = new ConcurrentHashMap<String, CacheBackend>();
+    static {
+        cacheBackends.put("lru", new LruCacheBackend());
+        cacheBackends.put("tinylfu", new TinyLfuCacheBackend());
+    }
+
     /** A static Map to keep track of all of the UtilCache instances. */
     private static final ConcurrentHashMap<String, UtilCache<?, ?>> utilCacheTable = new ConcurrentHashMap<String, UtilCache<?, ?>>();
 
@@ -95,6 +102,31 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     protected int sizeLimit = 0;
     protected int maxInMemory = 0;
 
+    /** The maximum memory used by the elements in the cache, as estimated by the weigher.
+     * If set to 0, there will be no limit on the memory used by the cache.
+     */
+    protected long maxMemory = 0;
+
+    /** The name of the backend evicting elements when the cache is full, defaults to lru */
+    protected String backendName = "lru";
+
+    /** Computes the weight of the elements, an estimate of their size in bytes */
+    protected Weigher<Object, Object> weigher = ObjectSizeWeigher.INSTANCE;
+
+    /** The total weight of the elements in the cache, kept up to date as elements are added and removed;
+     * the elements of every cache are weighed, only the caches with a maxMemory evict by weight
+     */
+    protected AtomicLong sizeInBytes = new AtomicLong(0);
+
+    /** Specifies whether or not to keep the evicted elements in the off-heap store, defaults to false */
+    protected boolean useOverflow = false;
+
+    /** The off-heap tier of this cache, null until enabled with setOverflowCodec */
+    protected transient volatile CacheOverflow<V> overflow = null;
+
+    /** A count of the number of cache hits served by the off-heap tier */
+    protected AtomicLong overflowHitCount = new AtomicLong(0);
+
     /** Specifies the amount of time since initial loading before an element will be reported as expired.
      * If set to 0, elements will never expire.
      */
@@ -125,14 +157,37 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         setPropertiesParams(propNames);
         int maxMemSize = this.maxInMemory;
         if (maxMemSize == 0) maxMemSize = sizeLimit;
-        if (maxMemSize == 0) {
-            memoryTable = new ConcurrentHashMap<Object, CacheLine<V>>();
-        } else {
-            memoryTable = new Builder<Object, CacheLine<V>>()
-            .maximumWeightedCapacity(maxMemSize)
-            .listener(this)
-            .build();
+        memoryTable = createMemoryTable(maxMemSize);
+    }
+
+    private ConcurrentMap<Object, CacheLine<V>> createMemoryTable(int maxMemSize) {
+        if (maxMemSize == 0 && maxMemory == 0) {
+            return new ConcurrentHashMap<Object, CacheLine<V>>();
+        }
+        Weigher<Object, CacheLine<V>> lineWeigher = new Weigher<Object, CacheLine<V>>() {
+            public long weigh(Object key, CacheLine<V> line) {
+                // weighed once in createCacheLine
+                return line.weight;
+            }
+        };
+        return getCacheBackend(backendName).createMap(name, maxMemSize, maxMemory, lineWeigher, this);
+    }
+
+    private static CacheBackend getCacheBackend(String backendName) {
+        CacheBackend backend = cacheBackends.get(backendName);
+        if (backend == null) {
+            try {
+                backend = (CacheBackend) ObjectType.loadClass(backendName).newInstance();
+                CacheBackend existing = cacheBackends.putIfAbsent(backendName, backend);
+                if (existing != null) {
+                    backend = existing;
+                }
+            } catch (Exception e) {
+                Debug.logError(e, "Could not load cache backend [" + backendName + "], using lru", module);
+                backend = cacheBackends.get("lru");
+            }
         }
+        return backend;
     }
 
     private static String getNextDefaultIndex(String cacheName) {
@@ -190,6 +245,26 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
             if (value != null) {
                 useSoftReference = "true".equals(value);
             }
+            value = getPropertyParam(res, propNames, "maxMemory");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.maxMemory = Long.parseLong(value);
+            }
+            value = getPropertyParam(res, propNames, "backend");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.backendName = value;
+            }
+            value = getPropertyParam(res, propNames, "overflow");
+            if (value != null) {
+                useOverflow = "true".equals(value);
+            }
+            value = getPropertyParam(res, propNames, "weigher");
+            if (UtilValidate.isNotEmpty(value)) {
+                try {
+                    this.weigher = UtilGenerics.cast(ObjectType.loadClass(value).newInstance());
+                } catch (Exception e) {
+                    Debug.logError(e, "Could not load cache weigher [" + value + "] for cache " + this.name + ", using the default", module);
+                }
+            }
         }
     }
 
@@ -279,13 +354,60 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     }
 
     private CacheLine<V> createCacheLine(K key, V value, long expireTimeNanos) {
-        long loadTimeNanos = expireTimeNanos > 0 ? System.nanoTime() : 0;
+        return createCacheLine(key, value, expireTimeNanos > 0 ? System.nanoTime() : 0, expireTimeNanos);
+    }
+
+    private CacheLine<V> createCacheLine(K key, V value, long loadTimeNanos, long expireTimeNanos) {
+        CacheLine<V> line;
         if (useSoftReference) {
-            return createSoftRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
+            line = createSoftRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
         } else {
-            return createHardRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
+            line = createHardRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
+        }
+        line.weight = weigh(key, value);
+        return line;
+    }
+
+    private long weigh(Object key, Object value) {
+        try {
+            return Math.max(0, weigher.weigh(key, value));
+        } catch (RuntimeException e) {
+            Debug.logWarning(e, "Unable to compute the weight of an element in cache " + this.name, module);
+            return 0;
         }
     }
+
+    /** Counts the weight of a line that was added to the memoryTable */
+    private void acquireWeight(CacheLine<V> line) {
+        synchronized (line) {
+            if (line.weightState == 0) {
+                sizeInBytes.addAndGet(line.weight);
+                line.weightState = 1;
+            }
+        }
+    }
+
+    /** Stops counting the weight of a line that was removed from the memoryTable */
+    private void releaseWeight(CacheLine<V> line) {
+        synchronized (line) {
+            if (line.weightState == 1) {
+                sizeInBytes.addAndGet(-line.weight);
+            }
+            line.weightState = 2;
+        }
+    }
+
+    /** Moves the counted weight to the line replacing an existing one */
+    private CacheLine<V> transferWeight(CacheLine<V> oldLine, CacheLine<V> newLine) {
+        if (newLine != oldLine) {
+            synchronized (oldLine) {
+                newLine.weight = oldLine.weight;
+                newLine.weightState = oldLine.weightState;
+                oldLine.weightState = 2;
+            }
+        }
+        return newLine;
+    }
     private V cancel(CacheLine<V> line) {
         // FIXME: this is a race condition, the item could expire
         // between the time it is replaced, and it is cancelled
@@ -310,7 +432,16 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     V putInternal(K key, V value, long expireTimeNanos) {
         Object nulledKey = fromKey(key);
-        CacheLine<V> oldCacheLine = memoryTable.put(nulledKey, createCacheLine(key, value, expireTimeNanos));
+        CacheOverflow<V> overflow = this.overflow;
+        if (overflow != null) {
+            overflow.discard(nulledKey);
+        }
+        CacheLine<V> newCacheLine = createCacheLine(key, value, expireTimeNanos);
+        CacheLine<V> oldCacheLine = memoryTable.put(nulledKey, newCacheLine);
+        acquireWeight(newCacheLine);
+        if (oldCacheLine != null) {
+            releaseWeight(oldCacheLine);
+        }
         V oldValue = oldCacheLine == null ? null : cancel(oldCacheLine);
         if (oldValue == null) {
             noteAddition(key, value);
@@ -324,9 +455,13 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     V putIfAbsentInternal(K key, V value, long expireTimeNanos) {
         Object nulledKey = fromKey(key);
         V oldValue;
+        if (promote(nulledKey) != null) {
+            overflowHitCount.incrementAndGet();
+        }
         CacheLine<V> newCacheLine = createCacheLine(key, value, expireTimeNanos);
         CacheLine<V> oldCacheLine = memoryTable.putIfAbsent(nulledKey, newCacheLine);
         if (oldCacheLine == null) {
+            acquireWeight(newCacheLine);
             oldValue = null;
         } else {
             oldValue = oldCacheLine.getValue();
@@ -349,11 +484,39 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         Object nulledKey = fromKey(key);
         CacheLine<V> line = memoryTable.get(nulledKey);
         if (line == null) {
-            missCountNotFound.incrementAndGet();
-        } else {
-            if (countGet) hitCount.incrementAndGet();
+            line = promote(nulledKey);
+            if (line == null) {
+                missCountNotFound.incrementAndGet();
+                return null;
+            }
+            overflowHitCount.incrementAndGet();
         }
-        return line != null ? line.getValue() : null;
+        if (countGet) hitCount.incrementAndGet();
+        return line.getValue();
+    }
+
+    /** Moves an element from the off-heap tier back into the memoryTable, without notifying the listeners
+     * as the element did not change. The element keeps its load time, so it expires when it would have
+     * if it had stayed in the memoryTable; an element that expired off-heap is dropped.
+     * @return The line of the element in the memoryTable, or null if the element was not in the off-heap tier
+     */
+    private CacheLine<V> promote(Object nulledKey) {
+        CacheOverflow<V> overflow = this.overflow;
+        if (overflow == null) {
+            return null;
+        }
+        CacheOverflow.Entry<V> entry = overflow.remove(nulledKey);
+        if (entry == null) {
+            return null;
+        }
+        CacheLine<V> newCacheLine = createCacheLine(toKey(nulledKey), entry.value, entry.loadTimeNanos, entry.expireTimeNanos);
+        CacheLine<V> oldCacheLine = memoryTable.putIfAbsent(nulledKey, newCacheLine);
+        if (oldCacheLine == null) {
+            acquireWeight(newCacheLine);
+            return newCacheLine;
+        }
+        cancel(newCacheLine);
+        return oldCacheLine;
     }
 
     public Collection<V> values() {
@@ -364,37 +527,66 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return valuesList;
     }
 
-    private long findSizeInBytes(Object o) {
-        try {
-            if (o == null) {
-                if (Debug.infoOn()) Debug.logInfo("Found null object in cache: " + getName(), module);
-                return 0;
-            }
-            if (o instanceof Serializable) {
-                return UtilObject.getByteCount(o);
-            } else {
-                if (Debug.infoOn()) Debug.logInfo("Unable to compute memory size for non serializable object; returning 0 byte size for object of " + o.getClass(), module);
-                return 0;
-            }
-        } catch (NotSerializableException e) {
-            // this happens when we try to get the byte count for an object which itself is
-            // serializable, but fails to be serialized, such as a map holding unserializable objects
-            if (Debug.warningOn()) {
-                Debug.logWarning("NotSerializableException while computing memory size; returning 0 byte size for object of " + e.getMessage(), module);
+    /** Returns the estimated memory used by the elements in the cache, as computed by the weigher
+     * when the elements were put in the cache.
+     * @return The estimated size in bytes of the elements
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    /** Computes the weight of an element again, for values that were changed while in the cache.
+     * For a value changed one entry at a time, like the maps of the entity condition caches,
+     * {@link #reweighEntry} only weighs the changed entry.
+     * @param key The key of the element
+     */
+    public void reweigh(K key) {
+        Object nulledKey = fromKey(key);
+        CacheLine<V> line = memoryTable.get(nulledKey);
+        if (line == null) {
+            return;
+        }
+        V value = line.getValue();
+        if (value == null) {
+            return;
+        }
+        long weight = weigh(key, value);
+        synchronized (line) {
+            if (line.weightState == 1) {
+                sizeInBytes.addAndGet(weight - line.weight);
             }
-            return 0;
-        } catch (Exception e) {
-            Debug.logWarning(e, "Unable to compute memory size for object of " + o.getClass(), module);
-            return 0;
+            line.weight = weight;
         }
+        // let a bounded memoryTable see the new weight
+        memoryTable.replace(nulledKey, line, line);
     }
 
-    public long getSizeInBytes() {
-        long totalSize = 0;
-        for (CacheLine<V> line: memoryTable.values()) {
-            totalSize += findSizeInBytes(line.getValue());
+    /** Adds the weight change of an entry of a map value to the weight of its element, for the
+     * map values that are changed while in the cache like the maps of the entity condition caches.
+     * @param key The key of the element
+     * @param entryKey The key of the changed entry of the map value
+     * @param oldEntryValue The value of the entry before the change, null if the entry was added
+     * @param newEntryValue The value of the entry after the change, null if the entry was removed
+     */
+    public void reweighEntry(K key, Object entryKey, Object oldEntryValue, Object newEntryValue) {
+        Object nulledKey = fromKey(key);
+        CacheLine<V> line = memoryTable.get(nulledKey);
+        if (line == null) {
+            return;
         }
-        return totalSize;
+        long delta = (newEntryValue != null ? weigh(entryKey, newEntryValue) : 0) - (oldEntryValue != null ? weigh(entryKey, oldEntryValue) : 0);
+        if (delta == 0) {
+            return;
+        }
+        synchronized (line) {
+            long weight = Math.max(0, line.weight + delta);
+            if (line.weightState == 1) {
+                sizeInBytes.addAndGet(weight - line.weight);
+            }
+            line.weight = weight;
+        }
+        // let a bounded memoryTable see the new weight
+        memoryTable.replace(nulledKey, line, line);
     }
 
     /** Removes an element from the cache according to the specified key
@@ -417,8 +609,15 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         oldCacheLine = memoryTable.remove(nulledKey);
         oldValue = oldCacheLine != null ? oldCacheLine.getValue() : null;
         if (oldCacheLine != null) {
+            releaseWeight(oldCacheLine);
             cancel(oldCacheLine);
         }
+        CacheOverflow<V> overflow = this.overflow;
+        if (overflow != null && overflow.discard(nulledKey) && oldValue == null) {
+            // the value is not decoded just to be returned
+            if (countRemove) removeHitCount.incrementAndGet();
+            return null;
+        }
         if (oldValue != null) {
             noteRemoval((K) key, oldValue);
             if (countRemove) removeHitCount.incrementAndGet();
@@ -432,9 +631,14 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     protected synchronized void removeInternal(Object key, CacheLine<V> existingCacheLine) {
         Object nulledKey = fromKey(key);
         cancel(existingCacheLine);
+        CacheOverflow<V> overflow = this.overflow;
+        if (overflow != null) {
+            overflow.discard(nulledKey);
+        }
         if (!memoryTable.remove(nulledKey, existingCacheLine)) {
             return;
         }
+        releaseWeight(existingCacheLine);
         noteRemoval(UtilGenerics.<K>cast(key), existingCacheLine.getValue());
     }
 
@@ -446,7 +650,9 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
             noteRemoval(toKey(entry.getKey()), entry.getValue().getValue());
             removeHitCount.incrementAndGet();
             it.remove();
+            releaseWeight(entry.getValue());
         }
+        clearOverflow();
     }
 
     public void clear() {
@@ -527,20 +733,22 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         this.missCountSoftRef.set(0);
         this.removeHitCount.set(0);
         this.removeMissCount.set(0);
+        this.overflowHitCount.set(0);
     }
 
     public void setMaxInMemory(int newInMemory) {
         this.maxInMemory = newInMemory;
         Map<Object, CacheLine<V>> oldmap = this.memoryTable;
 
-        if (newInMemory > 0) {
-            if (this.memoryTable instanceof ConcurrentLinkedHashMap<?, ?>) {
+        if (newInMemory > 0 || maxMemory > 0) {
+            if (this.memoryTable instanceof ConcurrentLinkedHashMap<?, ?> && maxMemory == 0) {
                 ((ConcurrentLinkedHashMap<?, ?>) this.memoryTable).setCapacity(newInMemory);
                 return;
+            } else if (this.memoryTable instanceof TinyLfuMap<?, ?>) {
+                ((TinyLfuMap<?, ?>) this.memoryTable).setMaximum(newInMemory, maxMemory);
+                return;
             } else {
-                this.memoryTable =new Builder<Object, CacheLine<V>>()
-                    .maximumWeightedCapacity(newInMemory)
-                    .build();
+                this.memoryTable = createMemoryTable(newInMemory);
             }
         } else {
             this.memoryTable = new ConcurrentHashMap<Object, CacheLine<V>>();
@@ -553,6 +761,105 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return maxInMemory;
     }
 
+    /** Returns the maximum memory used by the elements in the cache, 0 if there is no limit */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /** Returns the name of the backend evicting elements when the cache is full */
+    public String getBackendName() {
+        return backendName;
+    }
+
+    /** Returns true if the overflow property of this cache is set, the off-heap tier is only used once
+     * a codec is given with {@link #setOverflowCodec}
+     */
+    public boolean getUseOverflow() {
+        return useOverflow;
+    }
+
+    /** Enables the off-heap tier of this cache, if the overflow property is set and an off-heap store
+     * is configured in cache.properties. The evicted elements are encoded with the codec and written
+     * to the store, and are moved back into the cache when they are read again.
+     * @param codec The codec of the values of this cache, the elements it cannot encode are dropped on eviction
+     * @return True if the off-heap tier is in use
+     */
+    public boolean setOverflowCodec(CacheCodec<V> codec) {
+        if (this.overflow != null) {
+            return true;
+        }
+        if (!useOverflow) {
+            return false;
+        }
+        return setOverflowCodec(codec, OffHeapStore.getInstance());
+    }
+
+    /** Enables the off-heap tier of this cache with the given store, whether or not the overflow property is set.
+     * @param codec The codec of the values of this cache
+     * @param store The store keeping the encoded values
+     * @return True if the off-heap tier is in use
+     */
+    public boolean setOverflowCodec(CacheCodec<V> codec, OffHeapStore store) {
+        if (this.overflow != null) {
+            return true;
+        }
+        if (codec == null || store == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (this.overflow == null) {
+                this.overflow = new CacheOverflow<V>(store, codec);
+            }
+        }
+        return true;
+    }
+
+    /** Returns the keys of the elements in the off-heap tier, which are not returned by getCacheLineKeys */
+    public Set<? extends K> getOverflowKeys() {
+        CacheOverflow<V> overflow = this.overflow;
+        if (overflow == null) {
+            return Collections.emptySet();
+        }
+        Set<K> keys = new HashSet<K>();
+        for (Object nulledKey: overflow.keySet()) {
+            keys.add(toKey(nulledKey));
+        }
+        return keys;
+    }
+
+    /** Returns the value of an element in the off-heap tier without moving it back into the cache, or
+     * null if the tier does not have it; the hit is not counted
+     */
+    public V getOverflowValue(K key) {
+        CacheOverflow<V> overflow = this.overflow;
+        return overflow == null ? null : overflow.get(fromKey(key));
+    }
+
+    /** Returns the number of elements in the off-heap tier */
+    public int getOverflowSize() {
+        CacheOverflow<V> overflow = this.overflow;
+        return overflow == null ? 0 : overflow.size();
+    }
+
+    /** Returns the size of the encoded elements in the off-heap tier */
+    public long getOverflowSizeInBytes() {
+        CacheOverflow<V> overflow = this.overflow;
+        return overflow == null ? 0 : overflow.getSizeInBytes();
+    }
+
+    /** Returns the number of cache hits served by the off-heap tier, these are also counted as hits */
+    public long getOverflowHitCount() {
+        return this.overflowHitCount.get();
+    }
+
+    /** Removes all elements from the off-heap tier, without notifying the listeners */
+    public void clearOverflow() {
+        CacheOverflow<V> overflow = this.overflow;
+        if (overflow != null) {
+            overflow.clear();
+        }
+    }
+
     public void setSizeLimit(int newSizeLimit) {
         this.sizeLimit = newSizeLimit;
     }
@@ -570,7 +877,7 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         if (expireTimeMillis > 0) {
             this.expireTimeNanos = TimeUnit.NANOSECONDS.convert(expireTimeMillis, TimeUnit.MILLISECONDS);
             for (Map.Entry<?, CacheLine<V>> entry: memoryTable.entrySet()) {
-                entry.setValue(entry.getValue().changeLine(useSoftReference, expireTimeNanos));
+                entry.setValue(transferWeight(entry.getValue(), entry.getValue().changeLine(useSoftReference, expireTimeNanos)));
             }
         } else {
             this.expireTimeNanos = 0;
@@ -590,7 +897,7 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         if (this.useSoftReference != useSoftReference) {
             this.useSoftReference = useSoftReference;
             for (Map.Entry<?, CacheLine<V>> entry: memoryTable.entrySet()) {
-                entry.setValue(entry.getValue().changeLine(useSoftReference, expireTimeNanos));
+                entry.setValue(transferWeight(entry.getValue(), entry.getValue().changeLine(useSoftReference, expireTimeNanos)));
             }
         }
     }
@@ -614,7 +921,11 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     public boolean containsKey(Object key) {
         Object nulledKey = fromKey(key);
         CacheLine<V> line = memoryTable.get(nulledKey);
-        return line != null;
+        if (line != null) {
+            return true;
+        }
+        CacheOverflow<V> overflow = this.overflow;
+        return overflow != null && overflow.containsKey(nulledKey);
     }
 
     /**
@@ -648,7 +959,7 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         if (line.getLoadTimeNanos() > 0) {
             lineInfo.put("expireTimeMillis", TimeUnit.MILLISECONDS.convert(line.getExpireTimeNanos() - System.nanoTime(), TimeUnit.NANOSECONDS));
         }
-        lineInfo.put("lineSize", findSizeInBytes(line.getValue()));
+        lineInfo.put("lineSize", line.weight);
         lineInfo.put("keyNum", keyNum);
         return lineInfo;
     }
@@ -786,6 +1097,19 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     @Override
     public void onEviction(Object key, CacheLine<V> value) {
+        releaseWeight(value);
         ExecutionPool.removePulse(value);
+        V evictedValue = value.getValue();
+        if (evictedValue == null) {
+            return;
+        }
+        CacheOverflow<V> overflow = this.overflow;
+        long loadTimeNanos = value.getLoadTimeNanos();
+        if (overflow != null && (loadTimeNanos == 0 || value.getDelay(TimeUnit.NANOSECONDS) > 0)) {
+            overflow.put(key, evictedValue, loadTimeNanos, value.getExpireTimeNanos() - loadTimeNanos);
+        } else {
+            // the element is gone, unlike the ones moved to the off-heap tier
+            noteRemoval(toKey(key), evictedValue);
+        }
     }
 }
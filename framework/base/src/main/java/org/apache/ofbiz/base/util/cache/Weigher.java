@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+/**
+ * Computes the weight of a cache entry, used to bound a cache by memory instead of by entry count.
+ * The weight is computed once when the entry is stored, so it should be cheap and must not change
+ * while the entry is in the cache.
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * Returns the weight of the entry, usually an estimate of its size in bytes.
+     * @param key The key of the entry, may be null
+     * @param value The value of the entry
+     * @return The weight of the entry, never negative
+     */
+    public long weigh(K key, V value);
+}
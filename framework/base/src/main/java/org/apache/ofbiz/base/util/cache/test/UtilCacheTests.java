@@ -22,6 +22,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -31,8 +32,13 @@ import java.util.Set;
 import org.apache.ofbiz.base.test.GenericTestCaseBase;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilObject;
+import org.apache.ofbiz.base.util.cache.CacheCodec;
 import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.ObjectSizeWeigher;
+import org.apache.ofbiz.base.util.cache.OffHeapStore;
+import org.apache.ofbiz.base.util.cache.TinyLfuMap;
 import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.base.util.cache.Weigher;
 
 @SuppressWarnings("serial")
 public class UtilCacheTests extends GenericTestCaseBase implements Serializable {
@@ -425,4 +431,154 @@ public class UtilCacheTests extends GenericTestCaseBase implements Serializable
         assertNull("not-key(0)", cache.get("0"));
         assertTrue("empty", cache.isEmpty());
     }
+
+    public void testTinyLfuScanResistance() throws Exception {
+        int size = 100;
+        TinyLfuMap<String, String> map = new TinyLfuMap<String, String>(size, 0, null, null);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < size; i++) {
+                String key = "hot" + i;
+                if (map.get(key) == null) {
+                    map.put(key, key);
+                }
+            }
+        }
+        // a scan over many keys used only once, like a findAll on a large entity, while the hot keys are still in use
+        int hotMisses = 0;
+        for (int i = 0; i < size * 20; i++) {
+            map.put("scan" + i, "scan" + i);
+            String key = "hot" + (i % size);
+            if (map.get(key) == null) {
+                hotMisses++;
+                map.put(key, key);
+            }
+        }
+        assertThat(size, greaterThan(hotMisses));
+        assertEquals("size", size, map.size());
+        int hotKeys = 0;
+        for (int i = 0; i < size; i++) {
+            if (map.containsKey("hot" + i)) {
+                hotKeys++;
+            }
+        }
+        assertThat(hotKeys, greaterThan(size * 9 / 10));
+    }
+
+    public void testTinyLfuMaxWeight() throws Exception {
+        Weigher<String, String> lengthWeigher = new Weigher<String, String>() {
+            public long weigh(String key, String value) {
+                return value.length();
+            }
+        };
+        TinyLfuMap<String, String> map = new TinyLfuMap<String, String>(0, 1000, lengthWeigher, null);
+        for (int i = 0; i < 100; i++) {
+            map.put(Integer.toString(i), "0123456789" + "0123456789");
+            assertTrue("weight bound", map.getTotalWeight() <= 1000);
+        }
+        assertEquals("entries within weight", 50, map.size());
+        map.put("0", "0");
+        map.remove("1");
+        long total = 0;
+        for (String value: map.values()) {
+            total += value.length();
+        }
+        assertEquals("total weight", total, map.getTotalWeight());
+        map.clear();
+        assertEquals("cleared weight", 0, map.getTotalWeight());
+    }
+
+    public void testSizeInBytes() throws Exception {
+        UtilCache<String, Serializable> cache = createUtilCache(0, 0, 0, false);
+        assertEquals("empty", 0, cache.getSizeInBytes());
+        HashMap<String, Serializable> value = new HashMap<String, Serializable>();
+        value.put("name", "value");
+        cache.put("one", "uno");
+        cache.put("two", value);
+        long expected = ObjectSizeWeigher.INSTANCE.weigh("one", "uno") + ObjectSizeWeigher.INSTANCE.weigh("two", value);
+        assertEquals("two entries", expected, cache.getSizeInBytes());
+        value.put("other", "another value");
+        cache.reweigh("two");
+        expected = ObjectSizeWeigher.INSTANCE.weigh("one", "uno") + ObjectSizeWeigher.INSTANCE.weigh("two", value);
+        assertEquals("reweighed", expected, cache.getSizeInBytes());
+        cache.put("one", "single");
+        cache.remove("two");
+        assertEquals("replaced and removed", ObjectSizeWeigher.INSTANCE.weigh("one", "single"), cache.getSizeInBytes());
+        for (Map<String, Object> lineInfo: cache.getLineInfos()) {
+            assertEquals("line size", ObjectSizeWeigher.INSTANCE.weigh("one", "single"), ((Long) lineInfo.get("lineSize")).longValue());
+        }
+        cache.setExpireTime(60000);
+        assertEquals("changed lines", ObjectSizeWeigher.INSTANCE.weigh("one", "single"), cache.getSizeInBytes());
+        cache.erase();
+        assertEquals("erased", 0, cache.getSizeInBytes());
+    }
+
+    private static final CacheCodec<String> STRING_CODEC = new CacheCodec<String>() {
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String decode(byte[] data) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    };
+
+    public void testOverflow() throws Exception {
+        int size = 10;
+        UtilCache<String, String> cache = createUtilCache(size, size, 0, false);
+        assertTrue("overflow enabled", cache.setOverflowCodec(STRING_CODEC, OffHeapStore.create(64 * 1024, null)));
+        for (int i = 0; i < size * 2; i++) {
+            cache.put(Integer.toString(i), "value " + i);
+        }
+        assertEquals("in memory", size, cache.size());
+        assertEquals("overflowed", size, cache.getOverflowSize());
+        for (int i = 0; i < size * 2; i++) {
+            String s = Integer.toString(i);
+            assertTrue("contains " + s, cache.containsKey(s));
+            assertEquals("value " + s, "value " + i, cache.get(s));
+        }
+        assertEquals("no misses", 0, cache.getMissCountTotal());
+        assertThat("overflow hits", cache.getOverflowHitCount(), greaterThan(0L));
+        Set<? extends String> overflowKeys = cache.getOverflowKeys();
+        String key = overflowKeys.iterator().next();
+        cache.remove(key);
+        assertFalse("removed from overflow", cache.containsKey(key));
+        assertNull("removed value", cache.get(key));
+        cache.erase();
+        assertEquals("erased", 0, cache.getOverflowSize());
+    }
+
+    public void testOverflowExpire() throws Exception {
+        int size = 10;
+        long ttl = 1000;
+        UtilCache<String, String> cache = createUtilCache(size, size, ttl, false);
+        assertTrue("overflow enabled", cache.setOverflowCodec(STRING_CODEC, OffHeapStore.create(64 * 1024, null)));
+        for (int i = 0; i < size * 2; i++) {
+            cache.put(Integer.toString(i), "value " + i);
+        }
+        assertEquals("overflowed", size, cache.getOverflowSize());
+        String key = cache.getOverflowKeys().iterator().next();
+        Thread.sleep(ttl / 2);
+        // the promoted element keeps its load time instead of starting a new time to live
+        assertNotNull("promoted " + key, cache.get(key));
+        Thread.sleep(ttl / 2 + 300);
+        assertNull("expired " + key, cache.get(key));
+        for (int i = 0; i < size * 2; i++) {
+            String s = Integer.toString(i);
+            assertNull("expired " + s, cache.get(s));
+        }
+        assertEquals("expired off-heap", 0, cache.getOverflowSize());
+    }
+
+    public void testOffHeapStoreOverwrite() throws Exception {
+        OffHeapStore store = OffHeapStore.create(1024, null);
+        byte[] data = new byte[40];
+        long first = store.write(data);
+        assertEquals("read", data.length, store.read(first, data.length).length);
+        assertEquals("too large", -1, store.write(new byte[store.getCapacity()]));
+        for (int i = 0; i < 1024 / data.length + 1; i++) {
+            store.write(data);
+        }
+        assertFalse("overwritten", store.isValid(first));
+        assertNull("overwritten read", store.read(first, data.length));
+    }
 }
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the cache backends on an access trace: the hit rate of a single-threaded replay, and the
+ * throughput of several threads replaying the trace concurrently.
+ * <p>
+ * Usage: <code>UtilCacheBenchmark [capacity] [threads] [trace-file]</code>. The trace file has one key
+ * per line, for example the entity name and primary key of each entity cache lookup. Without a trace
+ * file a synthetic one is used: Zipf distributed keys interrupted by scans over keys used only once,
+ * which is how a findAll on a large entity looks to the entity condition caches.
+ * <p>
+ * This is not run by the unit tests.
+ */
+public final class UtilCacheBenchmark {
+
+    private static final Weigher<Object, Object> unitWeigher = new Weigher<Object, Object>() {
+        public long weigh(Object key, Object value) {
+            return 1;
+        }
+    };
+
+    private UtilCacheBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String[] trace = args.length > 2 ? readTrace(args[2]) : syntheticTrace(1000000, capacity * 50, capacity * 5);
+        System.out.println("trace length " + trace.length + ", capacity " + capacity + ", threads " + threads);
+        String[] backends = { "lru", "tinylfu" };
+        for (String backendName: backends) {
+            CacheBackend backend = "lru".equals(backendName) ? new LruCacheBackend() : new TinyLfuCacheBackend();
+            double hitRate = hitRate(backend, capacity, trace);
+            double opsPerSecond = throughput(backend, capacity, threads, trace);
+            System.out.println(String.format("%-8s hit rate %6.2f%%  throughput %,12.0f ops/s", backendName, hitRate * 100, opsPerSecond));
+        }
+    }
+
+    private static ConcurrentMap<String, String> createMap(CacheBackend backend, int capacity) {
+        return backend.createMap("benchmark", capacity, 0, unitWeigher, null);
+    }
+
+    private static double hitRate(CacheBackend backend, int capacity, String[] trace) {
+        ConcurrentMap<String, String> map = createMap(backend, capacity);
+        long hits = 0;
+        for (String key: trace) {
+            if (map.get(key) != null) {
+                hits++;
+            } else {
+                map.put(key, key);
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    private static double throughput(CacheBackend backend, int capacity, int threads, final String[] trace) throws InterruptedException {
+        final ConcurrentMap<String, String> map = createMap(backend, capacity);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong operations = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * (trace.length / threads);
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < trace.length; i++) {
+                            String key = trace[(offset + i) % trace.length];
+                            if (map.get(key) == null) {
+                                map.put(key, key);
+                            }
+                        }
+                        operations.addAndGet(trace.length);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            thread.start();
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - startTime;
+        return operations.get() * 1e9 / elapsed;
+    }
+
+    private static String[] readTrace(String fileName) throws Exception {
+        List<String> keys = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    keys.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    private static String[] syntheticTrace(int length, int keySpace, int scanLength) {
+        Random random = new Random(42);
+        // cumulative Zipf distribution with exponent 0.9
+        double[] cumulative = new double[keySpace];
+        double sum = 0;
+        for (int i = 0; i < keySpace; i++) {
+            sum += 1 / Math.pow(i + 1, 0.9);
+            cumulative[i] = sum;
+        }
+        String[] trace = new String[length];
+        // about a fifth of the accesses are scans
+        int scanCount = 0;
+        int i = 0;
+        while (i < length) {
+            if (random.nextInt(scanLength * 4) == 0) {
+                for (int j = 0; j < scanLength && i < length; j++) {
+                    trace[i++] = "scan" + scanCount + ":" + j;
+                }
+                scanCount++;
+            } else {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                trace[i++] = "key" + (index < 0 ? -index - 1 : index);
+            }
+        }
+        return trace;
+    }
+}
@@ -52,6 +52,7 @@ import org.apache.ofbiz.entity.condition.EntityFunction;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.util.EntityKeyset;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtil;
@@ -420,6 +421,8 @@ public class FindServices {
      *                              viewSize: the length of the page (number of records)
      *  Extra output parameter: listSize: size of the totallist
      *                                         list : the list itself.
+     *  With paginateMode keyset the page is read after the keysetAfter cursor, or before the keysetBefore cursor,
+     *  instead of skipping the rows of the previous pages, and the page is also returned as keysetPage.
      *
      * @param dctx
      * @param context
@@ -433,6 +436,15 @@ public class FindServices {
         if (viewIndex == null)  viewIndex = Integer.valueOf(0);  // default
         context.put("viewIndex", viewIndex);
 
+        if ("keyset".equals(context.get("paginateMode"))) {
+            try {
+                return performFindKeysetList(dctx, context, viewIndex.intValue(), viewSize.intValue());
+            } catch (IllegalArgumentException e) {
+                // e.g. ordered by an expression, read the page by offset
+                Debug.logWarning("Cannot use keyset pagination for entity [" + context.get("entityName") + "], using offset pagination: " + e.getMessage(), module);
+            }
+        }
+
         Map<String, Object> result = performFind(dctx,context);
 
         int start = viewIndex.intValue() * viewSize.intValue();
@@ -453,6 +465,57 @@ public class FindServices {
         return result;
     }
 
+    private static Map<String, Object> performFindKeysetList(DispatchContext dctx, Map<String, Object> context, int viewIndex, int viewSize) {
+        String entityName = (String) context.get("entityName");
+        String keysetAfter = (String) context.get("keysetAfter");
+        String keysetBefore = (String) context.get("keysetBefore");
+        Locale locale = (Locale) context.get("locale");
+        Delegator delegator = dctx.getDelegator();
+        String noConditionFind = getNoConditionFind(delegator, context);
+
+        Map<String, Object> prepareResult = null;
+        try {
+            prepareResult = runPrepareFind(dctx, context, noConditionFind);
+        } catch (GenericServiceException gse) {
+            return ServiceUtil.returnError(UtilProperties.getMessage(resource, "CommonFindErrorPreparingConditions", UtilMisc.toMap("errorString", gse.getMessage()), locale));
+        }
+        EntityConditionList<EntityCondition> exprList = UtilGenerics.cast(prepareResult.get("entityConditionList"));
+        List<String> orderByList = checkList(prepareResult.get("orderByList"), String.class);
+
+        List<GenericValue> list = null;
+        EntityKeyset.Page page = null;
+        long listSize = 0;
+        if ("Y".equals(noConditionFind) || (exprList != null && exprList.getConditionListSize() > 0)) {
+            EntityQuery query = EntityQuery.use(delegator).from(entityName).where(exprList).orderBy(orderByList);
+            if (UtilValidate.isNotEmpty(keysetBefore)) {
+                query.seekBefore(keysetBefore);
+            } else {
+                query.seekAfter(keysetAfter);
+            }
+            try {
+                listSize = "cached".equals(context.get("countMode")) ? query.queryCachedCount() : query.queryCount();
+                int pageSize = viewSize;
+                if (EntityKeyset.LAST_PAGE_CURSOR.equals(keysetBefore) && listSize % viewSize != 0) {
+                    // the last page only has the rows after the last full page, so the pages before it
+                    // start at a multiple of viewSize like the ones read from the start
+                    pageSize = (int) (listSize % viewSize);
+                }
+                page = query.queryKeysetPage(viewIndex, pageSize);
+            } catch (GenericEntityException e) {
+                return ServiceUtil.returnError(UtilProperties.getMessage(resource, "CommonFindErrorRunning", UtilMisc.toMap("entityName", entityName, "errorString", e.getMessage()), locale));
+            }
+            list = page.getData();
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("listSize", Integer.valueOf((int) listSize));
+        result.put("list", list);
+        result.put("keysetPage", page);
+        result.put("queryString", prepareResult.get("queryString"));
+        result.put("queryStringMap", prepareResult.get("queryStringMap"));
+        return result;
+    }
+
     /**
      * performFind
      *
@@ -461,38 +524,10 @@ public class FindServices {
      */
     public static Map<String, Object> performFind(DispatchContext dctx, Map<String, ?> context) {
         String entityName = (String) context.get("entityName");
-        String orderBy = (String) context.get("orderBy");
-        Map<String, ?> inputFields = checkMap(context.get("inputFields"), String.class, Object.class); // Input
-        String noConditionFind = (String) context.get("noConditionFind");
         String distinct = (String) context.get("distinct");
         List<String> fieldList =  UtilGenerics.<String>checkList(context.get("fieldList"));
-        GenericValue userLogin = (GenericValue) context.get("userLogin");
         Locale locale = (Locale) context.get("locale");
-        Delegator delegator = dctx.getDelegator();
-        if (UtilValidate.isEmpty(noConditionFind)) {
-            // try finding in inputFields Map
-            noConditionFind = (String) inputFields.get("noConditionFind");
-        }
-        if (UtilValidate.isEmpty(noConditionFind)) {
-            // Use configured default
-            noConditionFind = EntityUtilProperties.getPropertyValue("widget", "widget.defaultNoConditionFind", delegator);
-        }
-        String filterByDate = (String) context.get("filterByDate");
-        if (UtilValidate.isEmpty(filterByDate)) {
-            // try finding in inputFields Map
-            filterByDate = (String) inputFields.get("filterByDate");
-        }
-        Timestamp filterByDateValue = (Timestamp) context.get("filterByDateValue");
-        String fromDateName = (String) context.get("fromDateName");
-        if (UtilValidate.isEmpty(fromDateName)) {
-            // try finding in inputFields Map
-            fromDateName = (String) inputFields.get("fromDateName");
-        }
-        String thruDateName = (String) context.get("thruDateName");
-        if (UtilValidate.isEmpty(thruDateName)) {
-            // try finding in inputFields Map
-            thruDateName = (String) inputFields.get("thruDateName");
-        }
+        String noConditionFind = getNoConditionFind(dctx.getDelegator(), context);
 
         Integer viewSize = (Integer) context.get("viewSize");
         Integer viewIndex = (Integer) context.get("viewIndex");
@@ -505,10 +540,7 @@ public class FindServices {
 
         Map<String, Object> prepareResult = null;
         try {
-            prepareResult = dispatcher.runSync("prepareFind", UtilMisc.toMap("entityName", entityName, "orderBy", orderBy,
-                                               "inputFields", inputFields, "filterByDate", filterByDate, "noConditionFind", noConditionFind,
-                                               "filterByDateValue", filterByDateValue, "userLogin", userLogin, "fromDateName", fromDateName, "thruDateName", thruDateName,
-                                               "locale", context.get("locale"), "timeZone", context.get("timeZone")));
+            prepareResult = runPrepareFind(dctx, context, noConditionFind);
         } catch (GenericServiceException gse) {
             return ServiceUtil.returnError(UtilProperties.getMessage(resource, "CommonFindErrorPreparingConditions", UtilMisc.toMap("errorString", gse.getMessage()), locale));
         }
@@ -538,6 +570,47 @@ public class FindServices {
         return results;
     }
 
+    private static String getNoConditionFind(Delegator delegator, Map<String, ?> context) {
+        Map<String, ?> inputFields = checkMap(context.get("inputFields"), String.class, Object.class);
+        String noConditionFind = (String) context.get("noConditionFind");
+        if (UtilValidate.isEmpty(noConditionFind)) {
+            // try finding in inputFields Map
+            noConditionFind = (String) inputFields.get("noConditionFind");
+        }
+        if (UtilValidate.isEmpty(noConditionFind)) {
+            // Use configured default
+            noConditionFind = EntityUtilProperties.getPropertyValue("widget", "widget.defaultNoConditionFind", delegator);
+        }
+        return noConditionFind;
+    }
+
+    private static Map<String, Object> runPrepareFind(DispatchContext dctx, Map<String, ?> context, String noConditionFind) throws GenericServiceException {
+        String entityName = (String) context.get("entityName");
+        String orderBy = (String) context.get("orderBy");
+        Map<String, ?> inputFields = checkMap(context.get("inputFields"), String.class, Object.class); // Input
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        String filterByDate = (String) context.get("filterByDate");
+        if (UtilValidate.isEmpty(filterByDate)) {
+            // try finding in inputFields Map
+            filterByDate = (String) inputFields.get("filterByDate");
+        }
+        Timestamp filterByDateValue = (Timestamp) context.get("filterByDateValue");
+        String fromDateName = (String) context.get("fromDateName");
+        if (UtilValidate.isEmpty(fromDateName)) {
+            // try finding in inputFields Map
+            fromDateName = (String) inputFields.get("fromDateName");
+        }
+        String thruDateName = (String) context.get("thruDateName");
+        if (UtilValidate.isEmpty(thruDateName)) {
+            // try finding in inputFields Map
+            thruDateName = (String) inputFields.get("thruDateName");
+        }
+        return dctx.getDispatcher().runSync("prepareFind", UtilMisc.toMap("entityName", entityName, "orderBy", orderBy,
+                                            "inputFields", inputFields, "filterByDate", filterByDate, "noConditionFind", noConditionFind,
+                                            "filterByDateValue", filterByDateValue, "userLogin", userLogin, "fromDateName", fromDateName, "thruDateName", thruDateName,
+                                            "locale", context.get("locale"), "timeZone", context.get("timeZone")));
+    }
+
     /**
      * prepareFind
      *
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.ofbiz.entity.model.ModelFieldLayout;
+
+/**
+ * The compact field storage of GenericEntity: the values in an array indexed by the position of the
+ * fields in the ModelEntity, so a value costs one array slot instead of a HashMap node and its share
+ * of the table. Like the HashMap it replaces it tells a field set to null from a field not set. Names
+ * that are not fields of the layout are kept in a HashMap created when needed.
+ * <p>
+ * When serialized it is written as a HashMap.
+ */
+@SuppressWarnings("serial")
+final class CompactFieldMap extends AbstractMap<String, Object> implements Serializable {
+
+    /** Marks the fields that are not set */
+    private static final Object ABSENT = new Object();
+
+    private final transient ModelFieldLayout layout;
+    private final transient Object[] values;
+    private transient int size = 0;
+    private transient Map<String, Object> otherFields = null;
+    private transient boolean readOnly = false;
+
+    CompactFieldMap(ModelFieldLayout layout) {
+        this.layout = layout;
+        this.values = new Object[layout.size()];
+        Arrays.fill(this.values, ABSENT);
+    }
+
+    CompactFieldMap(ModelFieldLayout layout, Map<String, ? extends Object> fields) {
+        this(layout);
+        putAll(fields);
+    }
+
+    /** Creates a modifiable copy */
+    CompactFieldMap(CompactFieldMap fields) {
+        this.layout = fields.layout;
+        this.values = fields.values.clone();
+        this.size = fields.size;
+        if (fields.otherFields != null) {
+            this.otherFields = new HashMap<String, Object>(fields.otherFields);
+        }
+    }
+
+    /** Makes the map unmodifiable, like Collections.unmodifiableMap */
+    void setReadOnly() {
+        this.readOnly = true;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /** Returns the position of a field in the layout, or -1 */
+    int indexOf(String name) {
+        return layout.indexOf(name);
+    }
+
+    /** Returns the value of the field at a position of the layout */
+    Object getAt(int index) {
+        Object value = values[index];
+        return value == ABSENT ? null : value;
+    }
+
+    @Override
+    public int size() {
+        return otherFields == null ? size : size + otherFields.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = layout.indexOf(key);
+        if (index >= 0) {
+            return values[index] != ABSENT;
+        }
+        return otherFields != null && otherFields.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = layout.indexOf(key);
+        if (index >= 0) {
+            Object value = values[index];
+            return value == ABSENT ? null : value;
+        }
+        return otherFields != null ? otherFields.get(key) : null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        checkWritable();
+        int index = layout.indexOf(key);
+        if (index >= 0) {
+            Object old = values[index];
+            values[index] = value;
+            if (old == ABSENT) {
+                size++;
+                return null;
+            }
+            return old;
+        }
+        if (otherFields == null) {
+            otherFields = new HashMap<String, Object>();
+        }
+        return otherFields.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        checkWritable();
+        int index = layout.indexOf(key);
+        if (index >= 0) {
+            return removeAt(index);
+        }
+        return otherFields != null ? otherFields.remove(key) : null;
+    }
+
+    private Object removeAt(int index) {
+        Object old = values[index];
+        if (old == ABSENT) {
+            return null;
+        }
+        values[index] = ABSENT;
+        size--;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        Arrays.fill(values, ABSENT);
+        size = 0;
+        otherFields = null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return CompactFieldMap.this.size();
+            }
+        };
+    }
+
+    private final class FieldEntry implements Map.Entry<String, Object> {
+        private final int index;
+
+        private FieldEntry(int index) {
+            this.index = index;
+        }
+
+        public String getKey() {
+            return layout.getFieldName(index);
+        }
+
+        public Object getValue() {
+            return getAt(index);
+        }
+
+        public Object setValue(Object value) {
+            checkWritable();
+            Object old = getAt(index);
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+            Map.Entry<?, ?> that = (Map.Entry<?, ?>) obj;
+            Object value = getValue();
+            return getKey().equals(that.getKey()) && (value == null ? that.getValue() == null : value.equals(that.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next = -1;
+        private int current = -1;
+        private Iterator<Map.Entry<String, Object>> otherIterator = null;
+        private boolean lastFromOther = false;
+
+        private EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next++;
+            while (next < values.length && values[next] == ABSENT) {
+                next++;
+            }
+        }
+
+        public boolean hasNext() {
+            if (next < values.length) {
+                return true;
+            }
+            if (otherIterator == null && otherFields != null) {
+                otherIterator = otherFields.entrySet().iterator();
+            }
+            return otherIterator != null && otherIterator.hasNext();
+        }
+
+        public Map.Entry<String, Object> next() {
+            if (next < values.length) {
+                current = next;
+                lastFromOther = false;
+                advance();
+                return new FieldEntry(current);
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = -1;
+            lastFromOther = true;
+            return otherIterator.next();
+        }
+
+        public void remove() {
+            checkWritable();
+            if (lastFromOther) {
+                otherIterator.remove();
+            } else if (current >= 0) {
+                removeAt(current);
+                current = -1;
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private Object writeReplace() {
+        return new HashMap<String, Object>(this);
+    }
+}
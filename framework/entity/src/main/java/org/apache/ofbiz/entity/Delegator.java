@@ -164,6 +164,22 @@ public interface Delegator {
      */
     GenericValue create(GenericValue value) throws GenericEntityException;
 
+    /**
+     * Creates the Entities from the List of GenericValue instances in the
+     * datasource, in one transaction. <br/>Consecutive values of the same
+     * entity are inserted with JDBC batches; unlike storeAll there is no
+     * existence check, so a value whose primary key already exists makes the
+     * whole operation fail. The entity ECA rules run for each value, but the
+     * validate and run rules of a batch are evaluated before its rows are
+     * written.
+     *
+     * @param values
+     *            List of GenericValue instances containing the entities to
+     *            create
+     * @return int representing number of rows effected by this operation
+     */
+    int createAll(List<GenericValue> values) throws GenericEntityException;
+
     /**
      * Creates a Entity in the form of a GenericValue and write it to the
      * database
@@ -360,6 +376,21 @@ public interface Delegator {
      */
     EntityListIterator findListIteratorByCondition(DynamicViewEntity dynamicViewEntity, EntityCondition whereEntityCondition, EntityCondition havingEntityCondition, Collection<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions) throws GenericEntityException;
 
+    /**
+     * Find a number of Generic Entities of the same entity by their primary keys.
+     * With useCache the values found in the primary key cache are returned from
+     * there and only the missing keys are selected from the database, with one
+     * query per chunk of keys; the result of that query, including keys that
+     * were not found, is then put in the cache.
+     *
+     * @param entityName The Name of the Entity as defined in the entity XML file
+     * @param primaryKeys The primary keys to find by, all of the named entity
+     * @param useCache Retrieve the Generic Entities from the cache when <code>true</code>
+     * @return List of the GenericValues found, in the order of the passed keys; keys not found are not included
+     * @throws GenericEntityException
+     */
+    List<GenericValue> findAllByPrimaryKeys(String entityName, Collection<GenericPK> primaryKeys, boolean useCache) throws GenericEntityException;
+
     /**
      * Find a Generic Entity by its primary key.
      *
@@ -882,7 +913,11 @@ public interface Delegator {
      * appropriate. <br/>These updates all happen in one transaction, so they
      * will either all succeed or all fail, if the data source supports
      * transactions. This is just like to othersToStore feature of the
-     * GenericEntity on a create or store.
+     * GenericEntity on a create or store. <br/>When the store options specify a
+     * batch size greater than 1, consecutive values of the same entity are
+     * checked for existence with one query and written with JDBC batches; the
+     * entity ECA rules still run for each value, but the validate and run rules
+     * of a whole batch are evaluated before its rows are written.
      *
      * @param storeOptions
      *            An instance of EntityStoreOptions that specifies advanced store
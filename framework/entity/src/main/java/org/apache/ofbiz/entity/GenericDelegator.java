@@ -22,9 +22,12 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +54,7 @@ import org.apache.ofbiz.base.util.UtilObject;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.entity.cache.Cache;
+import org.apache.ofbiz.entity.cache.EntityReadRecorder;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.DelegatorElement;
@@ -1292,66 +1296,268 @@ public class GenericDelegator implements Delegator {
         try {
             beganTransaction = TransactionUtil.begin();
 
-            for (GenericValue value: values) {
-                String entityName = value.getEntityName();
-                GenericPK primaryKey = value.getPrimaryKey();
-                GenericHelper helper = getEntityHelper(entityName);
-
-                // exists?
-                // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
-                if (!primaryKey.isPrimaryKey()) {
-                    throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
-                }
-                GenericValue existing = null;
-                try {
-                    existing = helper.findByPrimaryKey(primaryKey);
-                } catch (GenericEntityNotFoundException e) {
-                    existing = null;
+            if (storeOptions.getBatchSize() > 1) {
+                numberChanged = storeAllBatched(values, storeOptions);
+            } else {
+                for (GenericValue value: values) {
+                    numberChanged += storeAllValue(value, storeOptions);
                 }
+            }
+            TransactionUtil.commit(beganTransaction);
+            return numberChanged;
+        } catch (Exception e) {
+            String errMsg = "Failure in storeAll operation: " + e.toString() + ". Rolling back transaction.";
+            Debug.logError(e, errMsg, module);
+            TransactionUtil.rollback(beganTransaction, errMsg, e);
+            throw new GenericEntityException(e);
+        }
+    }
 
-                if (existing == null) {
-                    if (storeOptions.isCreateDummyFks()) {
-                        value.checkFks(true);
-                    }
-                    this.create(value);
-                    numberChanged++;
-                } else {
-                    // don't send fields that are the same, and if no fields have changed, update nothing
-                    ModelEntity modelEntity = value.getModelEntity();
-                    GenericValue toStore = GenericValue.create(this, modelEntity, value.getPrimaryKey());
-                    boolean atLeastOneField = false;
-                    Iterator<ModelField> nonPksIter = modelEntity.getNopksIterator();
-                    while (nonPksIter.hasNext()) {
-                        ModelField modelField = nonPksIter.next();
-                        String fieldName = modelField.getName();
-                        if (value.containsKey(fieldName)) {
-                            Object fieldValue = value.get(fieldName);
-                            Object oldValue = existing.get(fieldName);
-                            if (!UtilObject.equalsHelper(oldValue, fieldValue)) {
-                                toStore.put(fieldName, fieldValue);
-                                atLeastOneField = true;
-                            }
-                        }
-                    }
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#createAll(java.util.List)
+     */
+    @Override
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        if (UtilValidate.isEmpty(values)) {
+            return 0;
+        }
 
-                    if (atLeastOneField) {
-                        if (storeOptions.isCreateDummyFks()) {
-                            value.checkFks(true);
-                        }
-                        numberChanged += this.store(toStore);
-                    }
+        int numberCreated = 0;
+
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+
+            List<GenericValue> batch = new ArrayList<GenericValue>();
+            for (GenericValue value: values) {
+                if (!batch.isEmpty() && !batch.get(0).getEntityName().equals(value.getEntityName())) {
+                    numberCreated += createAllBatch(batch);
+                    batch.clear();
                 }
+                batch.add(value);
             }
+            numberCreated += createAllBatch(batch);
             TransactionUtil.commit(beganTransaction);
-            return numberChanged;
+            return numberCreated;
         } catch (Exception e) {
-            String errMsg = "Failure in storeAll operation: " + e.toString() + ". Rolling back transaction.";
+            String errMsg = "Failure in createAll operation: " + e.toString() + ". Rolling back transaction.";
             Debug.logError(e, errMsg, module);
             TransactionUtil.rollback(beganTransaction, errMsg, e);
             throw new GenericEntityException(e);
         }
     }
 
+    private int createAllBatch(List<GenericValue> batch) throws GenericEntityException {
+        ModelEntity modelEntity = batch.get(0).getModelEntity();
+        // view entities and entities with optimistic locking go through the row by row create
+        if (modelEntity instanceof ModelViewEntity || modelEntity.lock()) {
+            for (GenericValue value: batch) {
+                this.create(value);
+            }
+            return batch.size();
+        }
+        for (GenericValue value: batch) {
+            if (!value.getPrimaryKey().isPrimaryKey()) {
+                throw new GenericModelException("[GenericDelegator.createAll] One of the passed primary keys is not a valid primary key: " + value.getPrimaryKey());
+            }
+        }
+        return createBatch(getEntityHelper(modelEntity.getEntityName()), modelEntity, batch);
+    }
+
+    private int storeAllValue(GenericValue value, EntityStoreOptions storeOptions) throws GenericEntityException {
+        String entityName = value.getEntityName();
+        GenericPK primaryKey = value.getPrimaryKey();
+        GenericHelper helper = getEntityHelper(entityName);
+
+        // exists?
+        // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
+        if (!primaryKey.isPrimaryKey()) {
+            throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
+        }
+        GenericValue existing = null;
+        try {
+            existing = helper.findByPrimaryKey(primaryKey);
+        } catch (GenericEntityNotFoundException e) {
+            existing = null;
+        }
+
+        if (existing == null) {
+            if (storeOptions.isCreateDummyFks()) {
+                value.checkFks(true);
+            }
+            this.create(value);
+            return 1;
+        }
+        GenericValue toStore = makeChangedFieldsValue(value, existing);
+        if (toStore == null) {
+            return 0;
+        }
+        if (storeOptions.isCreateDummyFks()) {
+            value.checkFks(true);
+        }
+        return this.store(toStore);
+    }
+
+    /** Returns a pk value holding only the non-pk fields of value that differ from existing, or null if nothing changed */
+    private GenericValue makeChangedFieldsValue(GenericValue value, GenericValue existing) {
+        // don't send fields that are the same, and if no fields have changed, update nothing
+        ModelEntity modelEntity = value.getModelEntity();
+        GenericValue toStore = GenericValue.create(this, modelEntity, value.getPrimaryKey());
+        boolean atLeastOneField = false;
+        Iterator<ModelField> nonPksIter = modelEntity.getNopksIterator();
+        while (nonPksIter.hasNext()) {
+            ModelField modelField = nonPksIter.next();
+            String fieldName = modelField.getName();
+            if (value.containsKey(fieldName)) {
+                Object fieldValue = value.get(fieldName);
+                Object oldValue = existing.get(fieldName);
+                if (!UtilObject.equalsHelper(oldValue, fieldValue)) {
+                    toStore.put(fieldName, fieldValue);
+                    atLeastOneField = true;
+                }
+            }
+        }
+        return atLeastOneField ? toStore : null;
+    }
+
+    /** Splits the values in runs of consecutive values of the same entity with distinct primary keys, so the write order is kept */
+    private int storeAllBatched(List<GenericValue> values, EntityStoreOptions storeOptions) throws GenericEntityException {
+        int numberChanged = 0;
+        List<GenericValue> batch = new ArrayList<GenericValue>(storeOptions.getBatchSize());
+        Set<GenericPK> batchPrimaryKeys = new HashSet<GenericPK>();
+        for (GenericValue value: values) {
+            GenericPK primaryKey = value.getPrimaryKey();
+            if (!primaryKey.isPrimaryKey()) {
+                throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
+            }
+            if (!batch.isEmpty() && (batch.size() >= storeOptions.getBatchSize() || !batch.get(0).getEntityName().equals(value.getEntityName())
+                    || batchPrimaryKeys.contains(primaryKey))) {
+                numberChanged += storeAllBatch(batch, storeOptions);
+                batch.clear();
+                batchPrimaryKeys.clear();
+            }
+            batch.add(value);
+            batchPrimaryKeys.add(primaryKey);
+        }
+        if (!batch.isEmpty()) {
+            numberChanged += storeAllBatch(batch, storeOptions);
+        }
+        return numberChanged;
+    }
+
+    private int storeAllBatch(List<GenericValue> batch, EntityStoreOptions storeOptions) throws GenericEntityException {
+        ModelEntity modelEntity = batch.get(0).getModelEntity();
+        int numberChanged = 0;
+
+        // view entities and entities with optimistic locking need the row by row checks
+        if (modelEntity instanceof ModelViewEntity || modelEntity.lock()) {
+            for (GenericValue value: batch) {
+                numberChanged += storeAllValue(value, storeOptions);
+            }
+            return numberChanged;
+        }
+
+        if (storeOptions.isCreateDummyFks()) {
+            // done before the existence check in case a dummy value is created for a value of this same batch
+            for (GenericValue value: batch) {
+                value.checkFks(true);
+            }
+        }
+
+        GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
+        List<GenericPK> primaryKeys = new ArrayList<GenericPK>(batch.size());
+        for (GenericValue value: batch) {
+            primaryKeys.add(value.getPrimaryKey());
+        }
+        Map<GenericPK, GenericValue> existingValues = new HashMap<GenericPK, GenericValue>();
+        for (GenericValue existing: helper.findAllByPrimaryKeys(primaryKeys)) {
+            existingValues.put(existing.getPrimaryKey(), existing);
+        }
+
+        List<GenericValue> toCreate = new ArrayList<GenericValue>(batch.size());
+        List<GenericValue> toStore = new ArrayList<GenericValue>(batch.size());
+        for (GenericValue value: batch) {
+            GenericValue existing = existingValues.get(value.getPrimaryKey());
+            if (existing == null) {
+                toCreate.add(value);
+            } else {
+                GenericValue changedValue = makeChangedFieldsValue(value, existing);
+                if (changedValue != null) {
+                    toStore.add(changedValue);
+                }
+            }
+        }
+
+        if (!toCreate.isEmpty()) {
+            numberChanged += createBatch(helper, modelEntity, toCreate);
+        }
+        if (!toStore.isEmpty()) {
+            numberChanged += storeBatch(helper, modelEntity, toStore);
+        }
+        return numberChanged;
+    }
+
+    private int createBatch(GenericHelper helper, ModelEntity modelEntity, List<GenericValue> values) throws GenericEntityException {
+        EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(modelEntity.getEntityName());
+        for (GenericValue value: values) {
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_CREATE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_CREATE, value, false);
+            value.setDelegator(this);
+
+            // if audit log on for any fields, save new value with no old value because it's a create
+            if (modelEntity.getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, false, false);
+            }
+        }
+
+        int retVal = helper.createAll(values);
+
+        for (GenericValue value: values) {
+            if (testMode) {
+                storeForTestRollback(new TestOperation(OperationType.INSERT, value));
+            }
+            // doCacheClear
+            ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_CREATE, value, false);
+            this.clearCacheLine(value);
+
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_CREATE, value, false);
+        }
+        return retVal;
+    }
+
+    private int storeBatch(GenericHelper helper, ModelEntity modelEntity, List<GenericValue> values) throws GenericEntityException {
+        EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(modelEntity.getEntityName());
+        List<GenericValue> updatedEntities = testMode ? new ArrayList<GenericValue>(values.size()) : null;
+        for (GenericValue value: values) {
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_STORE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_STORE, value, false);
+
+            // if audit log on for any fields, save old value before the update so we still have both
+            if (modelEntity.getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, true, false);
+            }
+            if (testMode) {
+                updatedEntities.add(this.findOne(value.getEntityName(), value.getPrimaryKey(), false));
+            }
+        }
+
+        int retVal = helper.storeAll(values);
+
+        for (GenericValue value: values) {
+            // doCacheClear
+            ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_STORE, value, false);
+            this.clearCacheLine(value);
+
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_STORE, value, false);
+        }
+        if (testMode) {
+            for (GenericValue updatedEntity: updatedEntities) {
+                storeForTestRollback(new TestOperation(OperationType.UPDATE, updatedEntity));
+            }
+        }
+        return retVal;
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#removeAll(java.lang.String)
      */
@@ -1411,6 +1617,9 @@ public class GenericDelegator implements Delegator {
         if (!primaryKey.isPrimaryKey()) {
             throw new GenericModelException("[GenericDelegator.findOne] Passed primary key is not a valid primary key: " + primaryKey);
         }
+        if (EntityReadRecorder.isRecording()) {
+            recordRead(primaryKey);
+        }
         EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(entityName);
         if (useCache) {
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CHECK, EntityEcaHandler.OP_FIND, primaryKey, false);
@@ -1463,6 +1672,86 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#findAllByPrimaryKeys(java.lang.String, java.util.Collection, boolean)
+     */
+    @Override
+    public List<GenericValue> findAllByPrimaryKeys(String entityName, Collection<GenericPK> primaryKeys, boolean useCache) throws GenericEntityException {
+        if (UtilValidate.isEmpty(primaryKeys)) {
+            return new LinkedList<GenericValue>();
+        }
+        EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(entityName);
+        Map<GenericPK, GenericValue> foundValues = new HashMap<GenericPK, GenericValue>();
+        Set<GenericPK> missingKeys = new LinkedHashSet<GenericPK>();
+        for (GenericPK primaryKey: primaryKeys) {
+            if (!primaryKey.isPrimaryKey() || !entityName.equals(primaryKey.getEntityName())) {
+                throw new GenericModelException("[GenericDelegator.findAllByPrimaryKeys] Passed primary key is not a valid primary key for entity [" + entityName + "]: " + primaryKey);
+            }
+            if (EntityReadRecorder.isRecording()) {
+                recordRead(primaryKey);
+            }
+            if (useCache) {
+                ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CHECK, EntityEcaHandler.OP_FIND, primaryKey, false);
+                GenericValue value = cache.get(primaryKey);
+                if (value != null) {
+                    foundValues.put(primaryKey, value);
+                    continue;
+                }
+            }
+            missingKeys.add(primaryKey);
+        }
+
+        if (!missingKeys.isEmpty()) {
+            boolean beganTransaction = false;
+            try {
+                if (alwaysUseTransaction) {
+                    beganTransaction = TransactionUtil.begin();
+                }
+
+                for (GenericPK primaryKey: missingKeys) {
+                    ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_FIND, primaryKey, false);
+                    ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, primaryKey, false);
+                }
+
+                GenericHelper helper = getEntityHelper(entityName);
+                Map<GenericPK, GenericValue> selectedValues = new HashMap<GenericPK, GenericValue>();
+                for (GenericValue value: helper.findAllByPrimaryKeys(new ArrayList<GenericPK>(missingKeys))) {
+                    value.setDelegator(this);
+                    selectedValues.put(value.getPrimaryKey(), value);
+                }
+
+                for (GenericPK primaryKey: missingKeys) {
+                    GenericValue value = selectedValues.get(primaryKey);
+                    if (useCache) {
+                        if (value != null) {
+                            ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_PUT, EntityEcaHandler.OP_FIND, value, false);
+                            this.putInPrimaryKeyCache(primaryKey, value);
+                        } else {
+                            this.putInPrimaryKeyCache(primaryKey, GenericValue.NULL_VALUE);
+                        }
+                    }
+                    ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_FIND, (value == null ? primaryKey : value), false);
+                    foundValues.put(primaryKey, value == null ? GenericValue.NULL_VALUE : value);
+                }
+                TransactionUtil.commit(beganTransaction);
+            } catch (Exception e) {
+                String errMsg = "Failure in findAllByPrimaryKeys operation for entity [" + entityName + "]: " + e.toString() + ". Rolling back transaction.";
+                Debug.logError(e, errMsg, module);
+                TransactionUtil.rollback(beganTransaction, errMsg, e);
+                throw new GenericEntityException(e);
+            }
+        }
+
+        List<GenericValue> results = new ArrayList<GenericValue>(primaryKeys.size());
+        for (GenericPK primaryKey: primaryKeys) {
+            GenericValue value = foundValues.get(primaryKey);
+            if (value != null && value != GenericValue.NULL_VALUE) {
+                results.add(value);
+            }
+        }
+        return results;
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#findByPrimaryKeyPartial(org.apache.ofbiz.entity.GenericPK, java.util.Set)
      */
@@ -1483,6 +1772,9 @@ public class GenericDelegator implements Delegator {
             if (!primaryKey.isPrimaryKey()) {
                 throw new GenericModelException("[GenericDelegator.findByPrimaryKey] Passed primary key is not a valid primary key: " + primaryKey);
             }
+            if (EntityReadRecorder.isRecording()) {
+                recordRead(primaryKey);
+            }
 
             ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, primaryKey, false);
             try {
@@ -1545,6 +1837,9 @@ public class GenericDelegator implements Delegator {
         if (havingEntityCondition != null) {
             havingEntityCondition.checkCondition(modelEntity);
         }
+        if (EntityReadRecorder.isRecording()) {
+            recordRead(modelEntity, whereEntityCondition);
+        }
 
         ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, dummyValue, false);
         GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
@@ -1571,6 +1866,9 @@ public class GenericDelegator implements Delegator {
 
             List<GenericValue> cacheList = this.cache.get(entityName, entityCondition, orderBy);
             if (cacheList != null) {
+                if (EntityReadRecorder.isRecording()) {
+                    recordRead(modelEntity, entityCondition);
+                }
                 return cacheList;
             }
         }
@@ -1626,6 +1924,9 @@ public class GenericDelegator implements Delegator {
         ModelViewEntity modelViewEntity = dynamicViewEntity.makeModelViewEntity(this);
         if (whereEntityCondition != null) whereEntityCondition.checkCondition(modelViewEntity);
         if (havingEntityCondition != null) havingEntityCondition.checkCondition(modelViewEntity);
+        if (EntityReadRecorder.isRecording()) {
+            recordRead(modelViewEntity, whereEntityCondition);
+        }
 
         GenericHelper helper = getEntityHelper(dynamicViewEntity.getOneRealEntityName());
         EntityListIterator eli = helper.findListIteratorByCondition(this, modelViewEntity, whereEntityCondition,
@@ -1659,6 +1960,9 @@ public class GenericDelegator implements Delegator {
             if (havingEntityCondition != null) {
                 havingEntityCondition.checkCondition(modelEntity);
             }
+            if (EntityReadRecorder.isRecording()) {
+                recordRead(modelEntity, whereEntityCondition);
+            }
 
             ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, dummyValue, false);
             GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
@@ -1693,6 +1997,10 @@ public class GenericDelegator implements Delegator {
             ModelEntity modelEntityOne = getModelEntity(modelRelationOne.getRelEntityName());
             ModelRelation modelRelationTwo = modelEntityOne.getRelation(relationNameTwo);
             ModelEntity modelEntityTwo = getModelEntity(modelRelationTwo.getRelEntityName());
+            if (EntityReadRecorder.isRecording()) {
+                recordRead(modelEntityOne, null);
+                recordRead(modelEntityTwo, null);
+            }
 
             GenericHelper helper = getEntityHelper(modelEntity);
             List<GenericValue> result = helper.findByMultiRelation(value, modelRelationOne, modelEntityOne, modelRelationTwo, modelEntityTwo, orderBy);
@@ -2016,6 +2324,9 @@ public class GenericDelegator implements Delegator {
         if (primaryKey == null) {
             return null;
         }
+        if (EntityReadRecorder.isRecording()) {
+            recordRead(primaryKey);
+        }
         GenericValue value = cache.get(primaryKey);
         if (value == GenericValue.NULL_VALUE) {
             return null;
@@ -2023,6 +2334,21 @@ public class GenericDelegator implements Delegator {
         return value;
     }
 
+    private void recordRead(GenericPK primaryKey) {
+        EntityReadRecorder.recordRead(this.delegatorFullName, primaryKey.getModelEntity(), EntityCondition.makeCondition(primaryKey.getAllFields()));
+    }
+
+    /** Records a read for the results cached outside the entity engine; a view entity is recorded as any row of its members */
+    private void recordRead(ModelEntity modelEntity, EntityCondition condition) {
+        if (modelEntity instanceof ModelViewEntity) {
+            for (ModelViewEntity.ModelMemberEntity memberEntity: ((ModelViewEntity) modelEntity).getAllModelMemberEntities()) {
+                recordRead(getModelEntity(memberEntity.getEntityName()), null);
+            }
+        } else if (modelEntity != null) {
+            EntityReadRecorder.recordRead(this.delegatorFullName, modelEntity, condition);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#putInPrimaryKeyCache(org.apache.ofbiz.entity.GenericPK, org.apache.ofbiz.entity.GenericValue)
      */
@@ -97,7 +97,8 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      *  writes are done through synchronized setters) and being able to store
      *  null values. Null values are important because with them we can distinguish
      *  between desiring to set a value to null and desiring to not modify the
-     *  current value on an update.
+     *  current value on an update. Values read from the data source use a
+     *  CompactFieldMap instead, see useCompactFields.
      */
     private Map<String, Object> fields = new HashMap<String, Object>();
 
@@ -235,7 +236,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         this.entityName = value.getEntityName();
         // NOTE: could call getModelEntity to insure we have a value, just in case the value passed in has been serialized, but might as well leave it null to keep the object light if it isn't there
         this.modelEntity = value.modelEntity;
-        if (value.fields != null) this.fields.putAll(value.fields);
+        if (value.fields instanceof CompactFieldMap && this.fields.isEmpty()) {
+            this.fields = new CompactFieldMap((CompactFieldMap) value.fields);
+        } else if (value.fields != null) {
+            this.fields.putAll(value.fields);
+        }
         this.delegatorName = value.delegatorName;
         this.internalDelegator = value.internalDelegator;
         this.observable = new Observable(value.observable);
@@ -267,7 +272,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         if (!thisPK.equals(newPK)) {
             throw new GenericEntityException("Could not refresh value, new value did not have the same primary key; this PK=" + thisPK + ", new value PK=" + newPK);
         }
-        this.fields = new HashMap<String, Object>(newValue.fields);
+        if (newValue.fields instanceof CompactFieldMap) {
+            this.fields = new CompactFieldMap((CompactFieldMap) newValue.fields);
+        } else {
+            this.fields = new HashMap<String, Object>(newValue.fields);
+        }
         this.setDelegator(newValue.getDelegator());
         this.generateHashCode = newValue.generateHashCode;
         this.cachedHashCode = newValue.cachedHashCode;
@@ -289,10 +298,35 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      */
     public void synchronizedWithDatasource() {
         assertIsMutable();
-        this.originalDbValues = Collections.unmodifiableMap(getAllFields());
+        useCompactFields();
+        if (this.fields instanceof CompactFieldMap) {
+            CompactFieldMap originalFields = new CompactFieldMap((CompactFieldMap) this.fields);
+            originalFields.setReadOnly();
+            this.originalDbValues = originalFields;
+        } else {
+            this.originalDbValues = Collections.unmodifiableMap(getAllFields());
+        }
         this.clearChanged();
     }
 
+    /**
+     * Switches the fields of this value to the compact storage: an array indexed by the position of
+     * the fields in the ModelEntity instead of a HashMap. The entity engine does this for the values
+     * it reads from the data source, which are the ones held in the caches and in long result lists.
+     * Does nothing if the value is immutable or its ModelEntity is not known.
+     */
+    public void useCompactFields() {
+        if (!this.mutable || this.fields instanceof CompactFieldMap || this.modelEntity == null) {
+            return;
+        }
+        this.fields = new CompactFieldMap(this.modelEntity.getFieldLayout(), this.fields);
+    }
+
+    /** Returns true if the fields of this value use the compact storage, see useCompactFields */
+    public boolean hasCompactFields() {
+        return this.fields instanceof CompactFieldMap;
+    }
+
     /**
      * Flags this object as being removed from the data source.
      * The entity engine will call this method immediately after
@@ -312,7 +346,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     public void setImmutable() {
         if (this.mutable) {
             this.mutable = false;
-            this.fields = Collections.unmodifiableMap(this.fields);
+            if (this.fields instanceof CompactFieldMap) {
+                ((CompactFieldMap) this.fields).setReadOnly();
+            } else {
+                this.fields = Collections.unmodifiableMap(this.fields);
+            }
         }
     }
 
@@ -369,6 +407,13 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     }
 
     public Object get(String name) {
+        if (fields instanceof CompactFieldMap) {
+            CompactFieldMap compactFields = (CompactFieldMap) fields;
+            int index = compactFields.indexOf(name);
+            if (index >= 0) {
+                return compactFields.getAt(index);
+            }
+        }
         if (getModelEntity().getField(name) == null) {
             throw new IllegalArgumentException("The field name (or key) [" + name + "] is not valid for entity [" + this.getEntityName() + "].");
         }
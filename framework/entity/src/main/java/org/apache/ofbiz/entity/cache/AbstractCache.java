@@ -18,12 +18,19 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.cache;
 
+import org.apache.ofbiz.base.util.cache.CacheCodec;
+import org.apache.ofbiz.base.util.cache.ObjectSizeWeigher;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.entity.GenericEntity;
 
 public abstract class AbstractCache<K, V> {
 
+    static {
+        ObjectSizeWeigher.registerEstimator(GenericEntity.class, new GenericEntitySizeEstimator());
+    }
+
     protected final String delegatorName, id, cacheNamePrefix;
 
     protected AbstractCache(String delegatorName, String id) {
@@ -77,6 +84,18 @@ public abstract class AbstractCache<K, V> {
 
     protected UtilCache<K, V> getOrCreateCache(String entityName) {
         String name = getCacheName(entityName);
-        return UtilCache.getOrCreateUtilCache(name, 0, 0, 0, true, getCacheNames(entityName));
+        UtilCache<K, V> cache = UtilCache.getOrCreateUtilCache(name, 0, 0, 0, true, getCacheNames(entityName));
+        if (cache.getUseOverflow()) {
+            cache.setOverflowCodec(getOverflowCodec());
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the codec used to keep the values evicted from the caches in the off-heap store, when
+     * the overflow property of a cache is set; null if the values of this cache cannot be encoded.
+     */
+    protected CacheCodec<V> getOverflowCodec() {
+        return null;
     }
 }
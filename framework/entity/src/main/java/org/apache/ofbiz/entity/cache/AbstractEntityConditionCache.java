@@ -18,9 +18,13 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.cache;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -38,14 +42,68 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
 
     public static final String module = AbstractEntityConditionCache.class.getName();
 
+    /** The indexes of the cached conditions by entity name, only published once they hold all the conditions of the cache */
+    private final ConcurrentHashMap<String, EntityConditionIndex<ConcurrentMap<K, V>>> conditionIndexes = new ConcurrentHashMap<String, EntityConditionIndex<ConcurrentMap<K, V>>>();
+    private final ConcurrentHashMap<String, ConditionCacheStatistics> statistics = new ConcurrentHashMap<String, ConditionCacheStatistics>();
+
     protected AbstractEntityConditionCache(String delegatorName, String id) {
         super(delegatorName, id);
     }
 
     protected V get(String entityName, EntityCondition condition, K key) {
         ConcurrentMap<K, V> conditionCache = getConditionCache(entityName, condition);
-        if (conditionCache == null) return null;
-        return conditionCache.get(key);
+        V value = conditionCache != null ? conditionCache.get(key) : null;
+        getStatistics(entityName).countLookup(value != null);
+        return value;
+    }
+
+    /**
+     * Returns the hit, miss and invalidation counters of the cache of an entity.
+     */
+    public ConditionCacheStatistics getStatistics(String entityName) {
+        ConditionCacheStatistics entityStatistics = statistics.get(entityName);
+        if (entityStatistics == null) {
+            entityStatistics = new ConditionCacheStatistics(entityName);
+            ConditionCacheStatistics existing = statistics.putIfAbsent(entityName, entityStatistics);
+            if (existing != null) {
+                entityStatistics = existing;
+            }
+        }
+        return entityStatistics;
+    }
+
+    /**
+     * Returns the counters of all the entities that were looked up or changed, by entity name.
+     */
+    public Map<String, ConditionCacheStatistics> getStatistics() {
+        return Collections.<String, ConditionCacheStatistics>unmodifiableMap(statistics);
+    }
+
+    @Override
+    protected UtilCache<EntityCondition, ConcurrentMap<K, V>> getOrCreateCache(String entityName) {
+        UtilCache<EntityCondition, ConcurrentMap<K, V>> cache = super.getOrCreateCache(entityName);
+        if (!conditionIndexes.containsKey(entityName)) {
+            createConditionIndex(entityName, cache);
+        }
+        return cache;
+    }
+
+    private synchronized void createConditionIndex(String entityName, UtilCache<EntityCondition, ConcurrentMap<K, V>> cache) {
+        if (conditionIndexes.containsKey(entityName)) {
+            return;
+        }
+        ModelEntity model = getDelegator().getModelEntity(entityName);
+        Collection<String> pkFieldNames = model != null ? model.getPkFieldNames() : Collections.<String>emptyList();
+        EntityConditionIndex<ConcurrentMap<K, V>> index = new EntityConditionIndex<ConcurrentMap<K, V>>(pkFieldNames);
+        // the listener first, so no condition put meanwhile is missed
+        cache.addListener(index);
+        for (EntityCondition condition: cache.getCacheLineKeys()) {
+            index.add(condition);
+        }
+        for (EntityCondition condition: cache.getOverflowKeys()) {
+            index.add(condition);
+        }
+        conditionIndexes.put(entityName, index);
     }
 
     protected V put(String entityName, EntityCondition condition, K key, V value) {
@@ -56,22 +114,64 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         }
 
         Map<K, V> conditionCache = getOrCreateConditionCache(entityName, condition);
-        return conditionCache.put(key, value);
+        V oldValue = conditionCache.put(key, value);
+        reweighEntry(entityName, condition, key, oldValue, value);
+        return oldValue;
+    }
+
+    /** Updates the memory accounting of a condition cache after one of its entries was changed */
+    private void reweighEntry(String entityName, EntityCondition condition, K key, V oldValue, V newValue) {
+        UtilCache<EntityCondition, ConcurrentMap<K, V>> cache = getCache(entityName);
+        if (cache != null) {
+            cache.reweighEntry(getConditionKey(condition), key, oldValue, newValue);
+        }
     }
 
     /**
-     * Removes all condition caches that include the specified entity.
+     * Removes all condition caches that can include the specified entity, before or after it was changed.
+     * As the values of the entity before the change are not known, only the primary key fields are used
+     * to skip the conditions that cannot match it. The caches of the view entities including the entity
+     * are cleared.
      */
     public void remove(GenericEntity entity) {
-        UtilCache.clearCache(getCacheName(entity.getEntityName()));
         ModelEntity model = entity.getModelEntity();
+        removeChanged(entity.getEntityName(), entity, model != null ? model.getPkFieldNames() : Collections.<String>emptyList());
         if (model != null) {
             Iterator<String> it = model.getViewConvertorsIterator();
             while (it.hasNext()) {
                 String targetEntityName = it.next();
-                UtilCache.clearCache(getCacheName(targetEntityName));
+                clearCache(targetEntityName);
+            }
+        }
+    }
+
+    private void removeChanged(String entityName, Map<String, ? extends Object> row, Collection<String> stableFieldNames) {
+        UtilCache<EntityCondition, ConcurrentMap<K, V>> cache = getCache(entityName);
+        if (cache == null) {
+            return;
+        }
+        EntityConditionIndex<ConcurrentMap<K, V>> index = conditionIndexes.get(entityName);
+        if (index == null) {
+            clearCache(entityName);
+            return;
+        }
+        int removed = 0;
+        for (EntityCondition condition: index.getChangeCandidates(row, stableFieldNames)) {
+            if (cache.containsKey(condition)) {
+                cache.remove(condition);
+                removed++;
             }
         }
+        getStatistics(entityName).countInvalidations(removed);
+    }
+
+    private void clearCache(String entityName) {
+        UtilCache<EntityCondition, ConcurrentMap<K, V>> cache = getCache(entityName);
+        if (cache == null) {
+            return;
+        }
+        getStatistics(entityName).countInvalidations(cache.size() + cache.getOverflowSize());
+        cache.clear();
     }
 
     public void remove(String entityName, EntityCondition condition) {
@@ -83,7 +183,11 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
     protected V remove(String entityName, EntityCondition condition, K key) {
         ConcurrentMap<K, V> conditionCache = getConditionCache(entityName, condition);
         if (conditionCache == null) return null;
-        return conditionCache.remove(key);
+        V oldValue = conditionCache.remove(key);
+        if (oldValue != null) {
+            reweighEntry(entityName, condition, key, oldValue, null);
+        }
+        return oldValue;
     }
 
     public static final EntityCondition getConditionKey(EntityCondition condition) {
@@ -190,7 +294,32 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         if (entityCache == null) {
             return;
         }
-        for (EntityCondition condition: entityCache.getCacheLineKeys()) {
+        Set<EntityCondition> conditions;
+        EntityConditionIndex<ConcurrentMap<K, V>> index = conditionIndexes.get(entityName);
+        if (index == null) {
+            // the conditions of the caches in the off-heap tier are checked as well
+            conditions = new HashSet<EntityCondition>(entityCache.getCacheLineKeys());
+            conditions.addAll(entityCache.getOverflowKeys());
+        } else {
+            // only the conditions that can match the rows checked below
+            conditions = new HashSet<EntityCondition>();
+            if (oldValues == null) {
+                for (T2 newValue: newValues) {
+                    conditions.addAll(index.getMatchCandidates(newValue));
+                }
+            } else {
+                for (T1 oldValue: oldValues) {
+                    if (isPK) {
+                        // the primary key fields are the same in the new value
+                        conditions.addAll(index.getChangeCandidates(oldValue, null));
+                    } else {
+                        conditions.addAll(index.getMatchCandidates(oldValue));
+                    }
+                }
+            }
+        }
+        int removed = 0;
+        for (EntityCondition condition: conditions) {
             //Debug.logInfo("In storeHook entityName [" + entityName + "] checking against condition: " + condition, module);
             boolean shouldRemove = false;
             if (condition == null) {
@@ -230,8 +359,12 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
             if (shouldRemove) {
                 if (Debug.verboseOn()) Debug.logVerbose("In storeHook, matched condition, removing from cache for entityName [" + entityName + "] in cache with name [" + entityCache.getName() + "] entry with condition: " + condition, module);
                 // doesn't work anymore since this is a copy of the cache keySet, can call remove directly though with a concurrent mod exception: cacheKeyIter.remove();
-                entityCache.remove(condition);
+                if (entityCache.containsKey(condition)) {
+                    entityCache.remove(condition);
+                    removed++;
+                }
             }
         }
+        getStatistics(entityName).countInvalidations(removed);
     }
 }
@@ -48,11 +48,13 @@ public class Cache {
         entityCache.clear();
         entityListCache.clear();
         entityObjectCache.clear();
+        EntityDependencies.cleared(delegatorName);
     }
 
     public void remove(String entityName) {
         entityCache.remove(entityName);
         entityListCache.remove(entityName);
+        EntityDependencies.changed(delegatorName, entityName);
     }
 
     public GenericValue get(GenericPK pk) {
@@ -75,6 +77,20 @@ public class Cache {
         return UtilGenerics.<T>cast(entityObjectCache.put(entityName, condition, name, value));
     }
 
+    /**
+     * Returns the hit, miss and invalidation counters of the entity-list cache of an entity.
+     */
+    public ConditionCacheStatistics getListCacheStatistics(String entityName) {
+        return entityListCache.getStatistics(entityName);
+    }
+
+    /**
+     * Returns the hit, miss and invalidation counters of the object-list cache of an entity.
+     */
+    public ConditionCacheStatistics getObjectCacheStatistics(String entityName) {
+        return entityObjectCache.getStatistics(entityName);
+    }
+
     public GenericValue put(GenericValue entity) {
         GenericValue oldEntity = entityCache.put(entity.getPrimaryKey(), entity);
         if (entity.getModelEntity().getAutoClearCache()) {
@@ -103,6 +119,7 @@ public class Cache {
         entityCache.remove(entityName, condition);
         entityListCache.remove(entityName, condition);
         entityObjectCache.remove(entityName, condition);
+        EntityDependencies.changed(delegatorName, entityName);
     }
 
     public <T> T remove(String entityName, EntityCondition condition, String name) {
@@ -115,6 +132,7 @@ public class Cache {
         // Workaround because AbstractEntityConditionCache.storeHook doesn't work.
         entityListCache.remove(entity);
         entityObjectCache.remove(entity);
+        EntityDependencies.changed(delegatorName, entity);
         // entityListCache.storeHook(entity, null);
         // entityObjectCache.storeHook(entity, null);
         return oldEntity;
@@ -126,6 +144,7 @@ public class Cache {
         // Workaround because AbstractEntityConditionCache.storeHook doesn't work.
         entityListCache.remove(pk);
         entityObjectCache.remove(pk);
+        EntityDependencies.changed(delegatorName, pk);
         // entityListCache.storeHook(pk, null);
         // entityObjectCache.storeHook(pk, null);
         return oldEntity;
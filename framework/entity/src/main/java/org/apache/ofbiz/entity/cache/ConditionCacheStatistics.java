@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of an entity condition cache for one entity: the lookups that found a cached result, the
+ * lookups that did not, and the cached conditions removed because a row of the entity changed.
+ */
+public final class ConditionCacheStatistics {
+
+    private final String entityName;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    ConditionCacheStatistics(String entityName) {
+        this.entityName = entityName;
+    }
+
+    void countLookup(boolean hit) {
+        if (hit) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+    }
+
+    void countInvalidations(int count) {
+        invalidationCount.addAndGet(count);
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public void clear() {
+        hitCount.set(0);
+        missCount.set(0);
+        invalidationCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return entityName + "[hits=" + getHitCount() + ", misses=" + getMissCount() + ", invalidations=" + getInvalidationCount() + "]";
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.ofbiz.entity.cache;
 import java.util.Iterator;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.CacheCodec;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
@@ -30,8 +31,16 @@ import org.apache.ofbiz.entity.model.ModelEntity;
 public class EntityCache extends AbstractCache<GenericPK, GenericValue> {
     public static final String module = EntityCache.class.getName();
 
+    private final EntityCacheCodec overflowCodec;
+
     public EntityCache(String delegatorName) {
         super(delegatorName, "entity");
+        this.overflowCodec = new EntityCacheCodec(delegatorName);
+    }
+
+    @Override
+    protected CacheCodec<GenericValue> getOverflowCodec() {
+        return overflowCodec;
     }
 
     public GenericValue get(GenericPK pk) {
@@ -69,6 +78,11 @@ public class EntityCache extends AbstractCache<GenericPK, GenericValue> {
             if (entity == null) continue;
             if (condition.entityMatches(entity)) entityCache.remove(pk);
         }
+        // the values in the off-heap tier are decoded to be matched, without moving them back into the cache
+        for (GenericPK pk: entityCache.getOverflowKeys()) {
+            GenericValue entity = entityCache.getOverflowValue(pk);
+            if (entity == null || condition.entityMatches(entity)) entityCache.remove(pk);
+        }
     }
 
     public GenericValue remove(GenericValue entity) {
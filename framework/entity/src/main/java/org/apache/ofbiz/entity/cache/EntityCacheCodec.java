@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.ObjectInputStream;
+import org.apache.ofbiz.base.util.cache.CacheCodec;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+
+/**
+ * Encodes the values of the entity cache for the off-heap tier of UtilCache.
+ * <p>
+ * The fields are written in the order of the ModelEntity, each as a type tag followed by a compact
+ * form of the value, so the field names are not stored. Values of other types are written with Java
+ * serialization. A value is decoded as an immutable GenericValue of the same delegator; if the
+ * number of fields of the entity changed since it was encoded, it is not decoded and the next
+ * read goes to the database.
+ */
+public class EntityCacheCodec implements CacheCodec<GenericValue> {
+
+    public static final String module = EntityCacheCodec.class.getName();
+
+    private static final int VERSION = 1;
+
+    private static final int FLAG_NULL_VALUE = 1;
+    private static final int FLAG_ORIGINAL_DB_VALUES = 2;
+
+    private static final int ABSENT = 0;
+    private static final int NULL = 1;
+    private static final int STRING = 2;
+    private static final int TIMESTAMP = 3;
+    private static final int DATE = 4;
+    private static final int TIME = 5;
+    private static final int LONG = 6;
+    private static final int INTEGER = 7;
+    private static final int DOUBLE = 8;
+    private static final int FLOAT = 9;
+    private static final int BIG_DECIMAL = 10;
+    private static final int BOOLEAN = 11;
+    private static final int BYTES = 12;
+    private static final int SERIALIZED = 13;
+
+    protected final String delegatorName;
+
+    public EntityCacheCodec(String delegatorName) {
+        this.delegatorName = delegatorName;
+    }
+
+    public byte[] encode(GenericValue value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            if (!writeValue(out, value)) {
+                return null;
+            }
+            out.flush();
+        } catch (IOException e) {
+            Debug.logWarning(e, "Could not encode a value of entity " + value.getEntityName() + " for the off-heap cache", module);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    public GenericValue decode(byte[] data) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if (in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            return readValue(in);
+        } catch (IOException e) {
+            Debug.logWarning(e, "Could not decode a value from the off-heap cache", module);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a value, including its entity name.
+     * @return False if a field could not be written
+     */
+    protected boolean writeValue(DataOutputStream out, GenericValue value) throws IOException {
+        if (value instanceof GenericEntity.NULL) {
+            out.writeByte(FLAG_NULL_VALUE);
+            return true;
+        }
+        out.writeByte(value.originalDbValuesAvailable() ? FLAG_ORIGINAL_DB_VALUES : 0);
+        writeString(out, value.getEntityName());
+        ModelEntity modelEntity = value.getModelEntity();
+        out.writeShort(modelEntity.getFieldsSize());
+        Map<String, Object> fields = value.getAllFields();
+        Iterator<ModelField> fieldIter = modelEntity.getFieldsIterator();
+        while (fieldIter.hasNext()) {
+            String fieldName = fieldIter.next().getName();
+            if (!fields.containsKey(fieldName)) {
+                out.writeByte(ABSENT);
+            } else if (!writeField(out, fields.get(fieldName))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue}.
+     * @return The value, or null if the entity was changed since the value was written
+     */
+    protected GenericValue readValue(DataInputStream in) throws IOException {
+        int flags = in.readUnsignedByte();
+        if ((flags & FLAG_NULL_VALUE) != 0) {
+            return GenericValue.NULL_VALUE;
+        }
+        String entityName = readString(in);
+        Delegator delegator = DelegatorFactory.getDelegator(delegatorName);
+        ModelEntity modelEntity = delegator != null ? delegator.getModelEntity(entityName) : null;
+        int fieldCount = in.readUnsignedShort();
+        if (modelEntity == null || modelEntity.getFieldsSize() != fieldCount) {
+            return null;
+        }
+        Map<String, Object> fields = new HashMap<String, Object>();
+        Iterator<ModelField> fieldIter = modelEntity.getFieldsIterator();
+        while (fieldIter.hasNext()) {
+            String fieldName = fieldIter.next().getName();
+            int tag = in.readUnsignedByte();
+            if (tag != ABSENT) {
+                fields.put(fieldName, readField(in, tag));
+            }
+        }
+        GenericValue value = GenericValue.create(delegator, modelEntity, fields);
+        if ((flags & FLAG_ORIGINAL_DB_VALUES) != 0) {
+            value.synchronizedWithDatasource();
+        }
+        value.setImmutable();
+        return value;
+    }
+
+    private static boolean writeField(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            out.writeByte(TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(DATE);
+            out.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof Time) {
+            out.writeByte(TIME);
+            out.writeLong(((Time) value).getTime());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            byte[] unscaled = decimal.unscaledValue().toByteArray();
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(decimal.scale());
+            out.writeShort(unscaled.length);
+            out.write(unscaled);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            byte[] data = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(data.length);
+            out.write(data);
+        } else if (value instanceof Serializable) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            try {
+                objectOut.writeObject(value);
+                objectOut.close();
+            } catch (NotSerializableException e) {
+                return false;
+            }
+            out.writeByte(SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static Object readField(DataInputStream in, int tag) throws IOException {
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case DATE:
+                return new java.sql.Date(in.readLong());
+            case TIME:
+                return new Time(in.readLong());
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BIG_DECIMAL:
+                int scale = in.readInt();
+                byte[] unscaled = new byte[in.readUnsignedShort()];
+                in.readFully(unscaled);
+                return new BigDecimal(new BigInteger(unscaled), scale);
+            case BOOLEAN:
+                return in.readBoolean();
+            case BYTES:
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                return data;
+            case SERIALIZED:
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(serialized), Thread.currentThread().getContextClassLoader());
+                try {
+                    return objectIn.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                } finally {
+                    objectIn.close();
+                }
+            default:
+                throw new IOException("Unknown field type tag " + tag);
+        }
+    }
+
+    protected static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityConditionListBase;
+import org.apache.ofbiz.entity.condition.EntityExpr;
+import org.apache.ofbiz.entity.condition.EntityFieldValue;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+
+/**
+ * Indexes the conditions of an entity condition cache by a field they constrain to one or more
+ * constant values, so a change to a row only needs to visit the conditions that could match it.
+ * <p>
+ * A condition is indexed by a field compared with EQUALS or IN at its top level, or in an AND of
+ * conditions; a primary key field is preferred since its value does not change when a row is updated.
+ * A condition can only match a row if the row has one of the indexed values. As a condition may hold
+ * a value of another type than the field, like an Integer for a Long field or a Boolean for an
+ * indicator field, the values are indexed by their canonical form: the string of a String or integral
+ * number, and Y or N for a Boolean. A row value of another type matches all the conditions indexed by
+ * its field. The other conditions are always visited.
+ * <p>
+ * The index follows the cache as a {@link CacheListener}. Evictions are reported as removals, except
+ * for the conditions moved to the off-heap tier of the cache, which stay indexed since they can be read
+ * back. Those can expire or be overwritten off-heap without being reported, so the index can hold
+ * conditions the cache no longer has; these are dropped every {@link #PRUNE_INTERVAL} additions.
+ * Visiting such a condition is harmless.
+ */
+final class EntityConditionIndex<V> implements CacheListener<EntityCondition, V> {
+
+    static final int PRUNE_INTERVAL = 1024;
+
+    private final Set<String> pkFieldNames;
+    /** The indexed conditions by field name and value */
+    private final Map<String, Map<Object, Set<EntityCondition>>> byField = new HashMap<String, Map<Object, Set<EntityCondition>>>();
+    private final Map<EntityCondition, Anchor> anchors = new HashMap<EntityCondition, Anchor>();
+    private final Set<EntityCondition> unindexed = new HashSet<EntityCondition>();
+    private final AtomicInteger additions = new AtomicInteger();
+
+    EntityConditionIndex(Collection<String> pkFieldNames) {
+        this.pkFieldNames = new HashSet<String>(pkFieldNames);
+    }
+
+    /** The field and values a condition is indexed by */
+    private static final class Anchor {
+        private final String fieldName;
+        private final Set<Object> values;
+
+        private Anchor(String fieldName, Set<Object> values) {
+            this.fieldName = fieldName;
+            this.values = values;
+        }
+    }
+
+    /** The key of the values that are not indexed */
+    private static final Object UNINDEXED = new Object();
+
+    /** Returns the canonical form a value is indexed by, or UNINDEXED */
+    private static Object getKey(Object value) {
+        if (value == null || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return value.toString();
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue() ? "Y" : "N";
+        }
+        return UNINDEXED;
+    }
+
+    /**
+     * Returns the key of a value compared with a field in a condition, or UNINDEXED. A string that would
+     * be converted to another number string for a numeric field, like "007" or " 7", is not indexed.
+     */
+    private static Object getConditionKey(Object value) {
+        if (value instanceof String) {
+            String string = (String) value;
+            try {
+                if (!Long.toString(Long.parseLong(string)).equals(string)) {
+                    return UNINDEXED;
+                }
+            } catch (NumberFormatException e) {
+                if (string.trim().length() != string.length()) {
+                    return UNINDEXED;
+                }
+            }
+        }
+        return getKey(value);
+    }
+
+    private Anchor findAnchor(EntityCondition condition) {
+        if (condition instanceof EntityExpr) {
+            EntityExpr expr = (EntityExpr) condition;
+            EntityOperator<?, ?, ?> operator = expr.getOperator();
+            Object lhs = expr.getLhs();
+            Object rhs = expr.getRhs();
+            if (lhs instanceof EntityCondition) {
+                if (operator == EntityOperator.AND) {
+                    return betterAnchor(findAnchor((EntityCondition) lhs), findAnchor((EntityCondition) rhs));
+                }
+            } else if (lhs instanceof EntityFieldValue) {
+                String fieldName = ((EntityFieldValue) lhs).getFieldName();
+                Object key = getConditionKey(rhs);
+                if (operator == EntityOperator.EQUALS && key != UNINDEXED) {
+                    Set<Object> values = new HashSet<Object>(1);
+                    values.add(key);
+                    return new Anchor(fieldName, values);
+                }
+                if (operator == EntityOperator.IN && rhs instanceof Collection<?> && !((Collection<?>) rhs).isEmpty()) {
+                    Set<Object> values = new HashSet<Object>();
+                    for (Object value: (Collection<?>) rhs) {
+                        Object valueKey = getConditionKey(value);
+                        if (valueKey == null || valueKey == UNINDEXED) {
+                            return null;
+                        }
+                        values.add(valueKey);
+                    }
+                    return new Anchor(fieldName, values);
+                }
+            }
+        } else if (condition instanceof EntityConditionListBase<?>) {
+            EntityConditionListBase<?> conditionList = (EntityConditionListBase<?>) condition;
+            if (conditionList.getOperator() == EntityOperator.AND) {
+                Anchor anchor = null;
+                Iterator<? extends EntityCondition> it = conditionList.getConditionIterator();
+                while (it.hasNext()) {
+                    anchor = betterAnchor(anchor, findAnchor(it.next()));
+                }
+                return anchor;
+            }
+        }
+        return null;
+    }
+
+    private Anchor betterAnchor(Anchor first, Anchor second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        boolean firstPk = pkFieldNames.contains(first.fieldName);
+        boolean secondPk = pkFieldNames.contains(second.fieldName);
+        if (firstPk != secondPk) {
+            return firstPk ? first : second;
+        }
+        return second.values.size() < first.values.size() ? second : first;
+    }
+
+    synchronized void add(EntityCondition condition) {
+        if (anchors.containsKey(condition) || unindexed.contains(condition)) {
+            return;
+        }
+        Anchor anchor = condition != null ? findAnchor(condition) : null;
+        if (anchor == null) {
+            unindexed.add(condition);
+            return;
+        }
+        anchors.put(condition, anchor);
+        Map<Object, Set<EntityCondition>> byValue = byField.get(anchor.fieldName);
+        if (byValue == null) {
+            byValue = new HashMap<Object, Set<EntityCondition>>();
+            byField.put(anchor.fieldName, byValue);
+        }
+        for (Object value: anchor.values) {
+            Set<EntityCondition> conditions = byValue.get(value);
+            if (conditions == null) {
+                conditions = new HashSet<EntityCondition>();
+                byValue.put(value, conditions);
+            }
+            conditions.add(condition);
+        }
+    }
+
+    synchronized void remove(EntityCondition condition) {
+        if (unindexed.remove(condition)) {
+            return;
+        }
+        Anchor anchor = anchors.remove(condition);
+        if (anchor == null) {
+            return;
+        }
+        Map<Object, Set<EntityCondition>> byValue = byField.get(anchor.fieldName);
+        for (Object value: anchor.values) {
+            Set<EntityCondition> conditions = byValue.get(value);
+            if (conditions != null && conditions.remove(condition) && conditions.isEmpty()) {
+                byValue.remove(value);
+            }
+        }
+        if (byValue.isEmpty()) {
+            byField.remove(anchor.fieldName);
+        }
+    }
+
+    /**
+     * Drops the conditions the cache no longer has. The check is made under the lock of the index, so a
+     * condition put in the cache meanwhile is added back after it was dropped.
+     */
+    synchronized void prune(UtilCache<EntityCondition, ?> cache) {
+        for (EntityCondition condition: new HashSet<EntityCondition>(unindexed)) {
+            if (!cache.containsKey(condition)) {
+                remove(condition);
+            }
+        }
+        for (EntityCondition condition: new HashSet<EntityCondition>(anchors.keySet())) {
+            if (!cache.containsKey(condition)) {
+                remove(condition);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return unindexed.size() + anchors.size();
+    }
+
+    /** Returns the key of the value of a field in a row, or UNINDEXED */
+    private static Object getFieldKey(Map<String, ? extends Object> row, String fieldName) {
+        if (row == null || row instanceof GenericEntity.NULL || !row.containsKey(fieldName)) {
+            return null;
+        }
+        return getKey(row.get(fieldName));
+    }
+
+    /**
+     * Returns the conditions that could match a row; the fields missing in the row are taken as null,
+     * like the entity engine does when it matches a condition with a row.
+     */
+    synchronized Set<EntityCondition> getMatchCandidates(Map<String, ? extends Object> row) {
+        Set<EntityCondition> candidates = new HashSet<EntityCondition>(unindexed);
+        for (Map.Entry<String, Map<Object, Set<EntityCondition>>> entry: byField.entrySet()) {
+            Object key = getFieldKey(row, entry.getKey());
+            if (key == UNINDEXED) {
+                for (Set<EntityCondition> conditions: entry.getValue().values()) {
+                    candidates.addAll(conditions);
+                }
+            } else {
+                Set<EntityCondition> conditions = entry.getValue().get(key);
+                if (conditions != null) {
+                    candidates.addAll(conditions);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the conditions that could match a row before or after it was changed, when only the
+     * fields that cannot change are known.
+     * @param row The changed row, or a part of it
+     * @param stableFieldNames The fields of the row that were not changed, or null if any field set in
+     * the row was not changed; the conditions indexed by another field are all returned
+     */
+    synchronized Set<EntityCondition> getChangeCandidates(Map<String, ? extends Object> row, Collection<String> stableFieldNames) {
+        Set<EntityCondition> candidates = new HashSet<EntityCondition>(unindexed);
+        for (Map.Entry<String, Map<Object, Set<EntityCondition>>> entry: byField.entrySet()) {
+            String fieldName = entry.getKey();
+            Object key = getFieldKey(row, fieldName);
+            if (key != null && key != UNINDEXED && (stableFieldNames == null || stableFieldNames.contains(fieldName))) {
+                Set<EntityCondition> conditions = entry.getValue().get(key);
+                if (conditions != null) {
+                    candidates.addAll(conditions);
+                }
+            } else {
+                for (Set<EntityCondition> conditions: entry.getValue().values()) {
+                    candidates.addAll(conditions);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    public void noteKeyAddition(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue) {
+        add(key);
+        if (additions.incrementAndGet() % PRUNE_INTERVAL == 0) {
+            prune(cache);
+        }
+    }
+
+    public void noteKeyRemoval(UtilCache<EntityCondition, V> cache, EntityCondition key, V oldValue) {
+        remove(key);
+    }
+
+    public void noteKeyUpdate(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue, V oldValue) {
+    }
+}
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+
+/**
+ * Keeps track of results cached outside the entity engine, like rendered screen fragments, that were
+ * built from the entity reads of an {@link EntityReadRecorder}, and tells their cache to drop them when
+ * the entity cache is cleared for a row they could have read. The changes come from the same hooks
+ * as the entity caches, so a distributed cache clear reaches these results too, and the conditions
+ * are matched with the same {@link EntityConditionIndex}.
+ * <p>
+ * A registration is dropped when it is invalidated, or when its cache unregisters the result it removed
+ * for another reason, like its expiry, see {@link #unregister(Object, Listener)}.
+ */
+public final class EntityDependencies {
+
+    public static final String module = EntityDependencies.class.getName();
+
+    /** Drops a result from the cache that registered it */
+    public interface Listener {
+        void invalidate(Object key);
+    }
+
+    private static final AtomicLong sequence = new AtomicLong();
+    private static volatile long lastClear = 0;
+    private static final ConcurrentMap<String, EntityTable> tables = new ConcurrentHashMap<String, EntityTable>();
+    private static final ConcurrentMap<RegistrationKey, Registration> registrations = new ConcurrentHashMap<RegistrationKey, Registration>();
+
+    private EntityDependencies() {}
+
+    private static final class RegistrationKey {
+        private final Listener listener;
+        private final Object key;
+
+        private RegistrationKey(Listener listener, Object key) {
+            this.listener = listener;
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return listener.hashCode() * 31 + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RegistrationKey)) {
+                return false;
+            }
+            RegistrationKey other = (RegistrationKey) obj;
+            return listener.equals(other.listener) && key.equals(other.key);
+        }
+    }
+
+    private static final class Registration {
+        private final RegistrationKey registrationKey;
+        private final Map<EntityTable, Set<EntityCondition>> links = new HashMap<EntityTable, Set<EntityCondition>>();
+
+        private Registration(RegistrationKey registrationKey) {
+            this.registrationKey = registrationKey;
+        }
+
+        private void unlink() {
+            for (Map.Entry<EntityTable, Set<EntityCondition>> entry: links.entrySet()) {
+                for (EntityCondition condition: entry.getValue()) {
+                    entry.getKey().remove(condition, this);
+                }
+            }
+        }
+    }
+
+    /** The registrations depending on one entity of one delegator, by the condition they read */
+    private static final class EntityTable {
+        private final EntityConditionIndex<Object> index;
+        private final Map<EntityCondition, Set<Registration>> byCondition = new HashMap<EntityCondition, Set<Registration>>();
+        private final AtomicLong lastChange = new AtomicLong();
+
+        private EntityTable(Collection<String> pkFieldNames) {
+            this.index = new EntityConditionIndex<Object>(pkFieldNames != null ? pkFieldNames : Collections.<String>emptyList());
+        }
+
+        private synchronized void add(EntityCondition condition, Registration registration) {
+            Set<Registration> dependents = byCondition.get(condition);
+            if (dependents == null) {
+                dependents = new HashSet<Registration>();
+                byCondition.put(condition, dependents);
+                index.add(condition);
+            }
+            dependents.add(registration);
+        }
+
+        private synchronized void remove(EntityCondition condition, Registration registration) {
+            Set<Registration> dependents = byCondition.get(condition);
+            if (dependents != null && dependents.remove(registration) && dependents.isEmpty()) {
+                byCondition.remove(condition);
+                index.remove(condition);
+            }
+        }
+
+        private synchronized Set<Registration> getDependents(Map<String, ? extends Object> row, Collection<String> stableFieldNames) {
+            Set<Registration> dependents = new HashSet<Registration>();
+            if (byCondition.isEmpty()) {
+                return dependents;
+            }
+            for (EntityCondition condition: index.getChangeCandidates(row, stableFieldNames)) {
+                Set<Registration> conditionDependents = byCondition.get(condition);
+                if (conditionDependents != null) {
+                    dependents.addAll(conditionDependents);
+                }
+            }
+            return dependents;
+        }
+
+        private synchronized Set<Registration> getAllDependents() {
+            Set<Registration> dependents = new HashSet<Registration>();
+            for (Set<Registration> conditionDependents: byCondition.values()) {
+                dependents.addAll(conditionDependents);
+            }
+            return dependents;
+        }
+
+        private void changed() {
+            long changeSequence = sequence.incrementAndGet();
+            long last = lastChange.get();
+            while (last < changeSequence && !lastChange.compareAndSet(last, changeSequence)) {
+                last = lastChange.get();
+            }
+        }
+    }
+
+    private static String getTableName(String delegatorName, String entityName) {
+        return delegatorName + "::" + entityName;
+    }
+
+    private static EntityTable getTable(String delegatorName, String entityName, Collection<String> pkFieldNames) {
+        String tableName = getTableName(delegatorName, entityName);
+        EntityTable table = tables.get(tableName);
+        if (table == null) {
+            table = new EntityTable(pkFieldNames);
+            EntityTable existing = tables.putIfAbsent(tableName, table);
+            if (existing != null) {
+                table = existing;
+            }
+        }
+        return table;
+    }
+
+    static long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Registers a result built from the reads of a stopped recording, so the listener is called with
+     * the key once one of the rows read changes. The result must be cached before it is registered.
+     * @return false if the result could not be registered, because the recording is not trackable or
+     * an entity it read changed while it was recording; the result must then be dropped
+     */
+    public static boolean register(EntityReadRecorder recorder, Object key, Listener listener) {
+        if (!recorder.isTrackable()) {
+            return false;
+        }
+        Registration registration = new Registration(new RegistrationKey(listener, key));
+        Registration previous = registrations.put(registration.registrationKey, registration);
+        if (previous != null) {
+            synchronized (previous) {
+                previous.unlink();
+            }
+        }
+        synchronized (registration) {
+            for (Map.Entry<String, Map<String, Set<EntityCondition>>> delegatorEntry: recorder.getReads().entrySet()) {
+                for (Map.Entry<String, Set<EntityCondition>> entityEntry: delegatorEntry.getValue().entrySet()) {
+                    String entityName = entityEntry.getKey();
+                    EntityTable table = getTable(delegatorEntry.getKey(), entityName, recorder.getPkFieldNames(entityName));
+                    registration.links.put(table, entityEntry.getValue());
+                    for (EntityCondition condition: entityEntry.getValue()) {
+                        table.add(condition, registration);
+                    }
+                }
+            }
+        }
+        // a change made after the registration was linked invalidates it, check the ones made before
+        boolean changed = lastClear > recorder.getStartSequence();
+        for (EntityTable table: registration.links.keySet()) {
+            if (table.lastChange.get() > recorder.getStartSequence()) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            if (Debug.verboseOn()) Debug.logVerbose("Not registering [" + key + "], an entity it read changed while it was built", module);
+            unregister(registration);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the registration of a result that was removed from its cache for another reason than a
+     * change of what it read, like its expiry or eviction, without calling the listener.
+     */
+    public static void unregister(Object key, Listener listener) {
+        Registration registration = registrations.get(new RegistrationKey(listener, key));
+        if (registration != null) {
+            unregister(registration);
+        }
+    }
+
+    private static boolean unregister(Registration registration) {
+        if (!registrations.remove(registration.registrationKey, registration)) {
+            return false;
+        }
+        synchronized (registration) {
+            registration.unlink();
+        }
+        return true;
+    }
+
+    private static void invalidate(Set<Registration> dependents) {
+        for (Registration registration: dependents) {
+            if (unregister(registration)) {
+                RegistrationKey registrationKey = registration.registrationKey;
+                if (Debug.verboseOn()) Debug.logVerbose("Invalidating dependent cache entry [" + registrationKey.key + "]", module);
+                registrationKey.listener.invalidate(registrationKey.key);
+            }
+        }
+    }
+
+    /** Called by the entity cache when the cache lines of a row are cleared */
+    static void changed(String delegatorName, GenericEntity entity) {
+        EntityTable table = getTable(delegatorName, entity.getEntityName(), entity.getModelEntity().getPkFieldNames());
+        table.changed();
+        invalidate(table.getDependents(entity, entity.getModelEntity().getPkFieldNames()));
+    }
+
+    /** Called by the entity cache when the cache lines of an entity, or of a condition on it, are cleared */
+    static void changed(String delegatorName, String entityName) {
+        EntityTable table = getTable(delegatorName, entityName, null);
+        table.changed();
+        invalidate(table.getAllDependents());
+    }
+
+    /** Called by the entity cache when all the cache lines of a delegator are cleared */
+    static void cleared(String delegatorName) {
+        lastClear = sequence.incrementAndGet();
+        String prefix = getTableName(delegatorName, "");
+        Set<Registration> dependents = new HashSet<Registration>();
+        for (Map.Entry<String, EntityTable> entry: tables.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                dependents.addAll(entry.getValue().getAllDependents());
+            }
+        }
+        invalidate(dependents);
+    }
+
+    /** Returns the number of results registered */
+    public static int getRegistrationCount() {
+        return registrations.size();
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.CacheCodec;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.model.ModelEntity;
@@ -34,8 +35,16 @@ public class EntityListCache extends AbstractEntityConditionCache<Object, List<G
 
     public static final String module = EntityListCache.class.getName();
 
+    private final EntityListCacheCodec overflowCodec;
+
     public EntityListCache(String delegatorName) {
         super(delegatorName, "entity-list");
+        this.overflowCodec = new EntityListCacheCodec(delegatorName);
+    }
+
+    @Override
+    protected CacheCodec<ConcurrentMap<Object, List<GenericValue>>> getOverflowCodec() {
+        return overflowCodec;
     }
 
     public List<GenericValue> get(String entityName, EntityCondition condition) {
@@ -44,7 +53,10 @@ public class EntityListCache extends AbstractEntityConditionCache<Object, List<G
 
     public List<GenericValue> get(String entityName, EntityCondition condition, List<String> orderBy) {
         ConcurrentMap<Object, List<GenericValue>> conditionCache = getConditionCache(entityName, condition);
-        if (conditionCache == null) return null;
+        if (conditionCache == null) {
+            getStatistics(entityName).countLookup(false);
+            return null;
+        }
         Object orderByKey = getOrderByKey(orderBy);
         List<GenericValue> valueList = conditionCache.get(orderByKey);
         if (valueList == null) {
@@ -60,6 +72,7 @@ public class EntityListCache extends AbstractEntityConditionCache<Object, List<G
                 conditionCache.put(orderByKey, valueList);
             }
         }
+        getStatistics(entityName).countLookup(valueList != null);
         return valueList;
     }
 
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.CacheCodec;
+import org.apache.ofbiz.entity.GenericValue;
+
+/**
+ * Encodes the condition caches of the entity list cache for the off-heap tier of UtilCache: the
+ * value lists by order by key, with each value written as in {@link EntityCacheCodec}.
+ */
+public class EntityListCacheCodec implements CacheCodec<ConcurrentMap<Object, List<GenericValue>>> {
+
+    public static final String module = EntityListCacheCodec.class.getName();
+
+    private static final int VERSION = 1;
+
+    private final EntityCacheCodec valueCodec;
+
+    public EntityListCacheCodec(String delegatorName) {
+        this.valueCodec = new EntityCacheCodec(delegatorName);
+    }
+
+    public byte[] encode(ConcurrentMap<Object, List<GenericValue>> conditionCache) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            // a copy, the condition cache may change while it is written
+            List<Map.Entry<Object, List<GenericValue>>> entries = new ArrayList<Map.Entry<Object, List<GenericValue>>>(conditionCache.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<Object, List<GenericValue>> entry: entries) {
+                Object orderByKey = entry.getKey();
+                if (orderByKey instanceof List<?>) {
+                    List<?> orderBy = (List<?>) orderByKey;
+                    out.writeInt(orderBy.size());
+                    for (Object orderByField: orderBy) {
+                        EntityCacheCodec.writeString(out, orderByField.toString());
+                    }
+                } else if (orderByKey.equals(EntityListCache.getOrderByKey(null))) {
+                    out.writeInt(-1);
+                } else {
+                    return null;
+                }
+                List<GenericValue> values = entry.getValue();
+                out.writeInt(values.size());
+                for (GenericValue value: values) {
+                    if (!valueCodec.writeValue(out, value)) {
+                        return null;
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            Debug.logWarning(e, "Could not encode a condition cache for the off-heap cache", module);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    public ConcurrentMap<Object, List<GenericValue>> decode(byte[] data) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if (in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            int entryCount = in.readInt();
+            ConcurrentMap<Object, List<GenericValue>> conditionCache = new ConcurrentHashMap<Object, List<GenericValue>>();
+            for (int i = 0; i < entryCount; i++) {
+                int orderBySize = in.readInt();
+                Object orderByKey;
+                if (orderBySize < 0) {
+                    orderByKey = EntityListCache.getOrderByKey(null);
+                } else {
+                    List<String> orderBy = new ArrayList<String>(orderBySize);
+                    for (int j = 0; j < orderBySize; j++) {
+                        orderBy.add(EntityCacheCodec.readString(in));
+                    }
+                    orderByKey = orderBy;
+                }
+                int valueCount = in.readInt();
+                List<GenericValue> values = new ArrayList<GenericValue>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    GenericValue value = valueCodec.readValue(in);
+                    if (value == null) {
+                        return null;
+                    }
+                    values.add(value);
+                }
+                conditionCache.put(orderByKey, values);
+            }
+            return conditionCache;
+        } catch (IOException e) {
+            Debug.logWarning(e, "Could not decode a condition cache from the off-heap cache", module);
+            return null;
+        }
+    }
+}
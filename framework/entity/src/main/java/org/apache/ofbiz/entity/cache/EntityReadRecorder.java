@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.model.ModelEntity;
+
+/**
+ * Records the entities, and the conditions on them, read on the current thread while a result that is
+ * cached outside the entity engine is built, so the result can be registered with
+ * {@link EntityDependencies} and dropped when one of the rows it read changes.
+ * <p>
+ * Recordings nest: a read is recorded by all the recordings started on the thread and not stopped yet.
+ * A recording that read an entity which is never cached is not trackable, as the changes of such an
+ * entity do not go through the entity cache.
+ */
+public final class EntityReadRecorder {
+
+    /** Above this many conditions on an entity, a recording depends on any row of the entity */
+    static final int MAX_CONDITIONS = 32;
+
+    private static final ThreadLocal<List<EntityReadRecorder>> activeRecorders = new ThreadLocal<List<EntityReadRecorder>>();
+
+    private final long startSequence;
+    /** The conditions read by delegator name and entity name; a null condition stands for any row */
+    private final Map<String, Map<String, Set<EntityCondition>>> reads = new HashMap<String, Map<String, Set<EntityCondition>>>();
+    private final Map<String, Collection<String>> pkFieldNames = new HashMap<String, Collection<String>>();
+    private boolean trackable = true;
+
+    private EntityReadRecorder(long startSequence) {
+        this.startSequence = startSequence;
+    }
+
+    /**
+     * Starts a recording on the current thread; it must be stopped by the same thread, usually in a
+     * finally block.
+     */
+    public static EntityReadRecorder start() {
+        List<EntityReadRecorder> recorders = activeRecorders.get();
+        if (recorders == null) {
+            recorders = new ArrayList<EntityReadRecorder>(2);
+            activeRecorders.set(recorders);
+        }
+        EntityReadRecorder recorder = new EntityReadRecorder(EntityDependencies.getSequence());
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    public void stop() {
+        List<EntityReadRecorder> recorders = activeRecorders.get();
+        if (recorders != null) {
+            recorders.remove(this);
+            if (recorders.isEmpty()) {
+                activeRecorders.remove();
+            }
+        }
+    }
+
+    /** Returns true if a recording is active on the current thread, so a read must be recorded */
+    public static boolean isRecording() {
+        return activeRecorders.get() != null;
+    }
+
+    /**
+     * Records a read of an entity with a condition, or of any row of the entity if the condition is
+     * null, in the recordings active on the current thread.
+     */
+    public static void recordRead(String delegatorName, ModelEntity modelEntity, EntityCondition condition) {
+        List<EntityReadRecorder> recorders = activeRecorders.get();
+        if (recorders == null) {
+            return;
+        }
+        for (EntityReadRecorder recorder: recorders) {
+            recorder.addRead(delegatorName, modelEntity.getEntityName(), modelEntity.getPkFieldNames(), condition);
+            if (modelEntity.getNeverCache()) {
+                recorder.trackable = false;
+            }
+        }
+    }
+
+    /**
+     * Records the reads of a stopped recording in the recordings active on the current thread, when a
+     * result built from a cached part is recorded.
+     */
+    public static void recordReads(EntityReadRecorder other) {
+        List<EntityReadRecorder> recorders = activeRecorders.get();
+        if (recorders == null) {
+            return;
+        }
+        for (EntityReadRecorder recorder: recorders) {
+            if (recorder == other) {
+                continue;
+            }
+            for (Map.Entry<String, Map<String, Set<EntityCondition>>> delegatorEntry: other.reads.entrySet()) {
+                for (Map.Entry<String, Set<EntityCondition>> entityEntry: delegatorEntry.getValue().entrySet()) {
+                    String entityName = entityEntry.getKey();
+                    for (EntityCondition condition: entityEntry.getValue()) {
+                        recorder.addRead(delegatorEntry.getKey(), entityName, other.pkFieldNames.get(entityName), condition);
+                    }
+                }
+            }
+            if (!other.trackable) {
+                recorder.trackable = false;
+            }
+        }
+    }
+
+    private void addRead(String delegatorName, String entityName, Collection<String> entityPkFieldNames, EntityCondition condition) {
+        Map<String, Set<EntityCondition>> entityReads = reads.get(delegatorName);
+        if (entityReads == null) {
+            entityReads = new HashMap<String, Set<EntityCondition>>();
+            reads.put(delegatorName, entityReads);
+        }
+        Set<EntityCondition> conditions = entityReads.get(entityName);
+        if (conditions == null) {
+            conditions = new HashSet<EntityCondition>();
+            entityReads.put(entityName, conditions);
+            pkFieldNames.put(entityName, entityPkFieldNames);
+        } else if (conditions.contains(null)) {
+            return;
+        }
+        if (condition == null || conditions.size() >= MAX_CONDITIONS) {
+            conditions.clear();
+            conditions.add(null);
+        } else {
+            conditions.add(condition);
+        }
+    }
+
+    /** Returns false if the recording read an entity whose changes cannot be tracked */
+    public boolean isTrackable() {
+        return trackable;
+    }
+
+    long getStartSequence() {
+        return startSequence;
+    }
+
+    Map<String, Map<String, Set<EntityCondition>>> getReads() {
+        return reads;
+    }
+
+    Collection<String> getPkFieldNames(String entityName) {
+        return pkFieldNames.get(entityName);
+    }
+}
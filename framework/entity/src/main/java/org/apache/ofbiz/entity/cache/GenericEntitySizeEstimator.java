@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.cache.ObjectSizeWeigher;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+
+/**
+ * Estimates the heap size of a GenericEntity from the field types of its ModelEntity; registered with
+ * {@link ObjectSizeWeigher} so the UtilCache byte totals include entity values at a low cost.
+ * Fields with a fixed size type (dates, numbers, indicators) use a precomputed size, the others are
+ * estimated from their value. The ModelEntity, delegator and field names are shared and not counted.
+ */
+public final class GenericEntitySizeEstimator implements ObjectSizeWeigher.Estimator<GenericEntity> {
+
+    /** The GenericEntity object and its fields HashMap */
+    private static final long entityOverhead = ObjectSizeWeigher.OBJECT_HEADER + 11 * ObjectSizeWeigher.REFERENCE + ObjectSizeWeigher.OBJECT_HEADER + 32;
+    /** A HashMap node */
+    private static final long fieldOverhead = 32;
+    private static final Map<String, Long> fixedTypeSizes = new HashMap<String, Long>();
+    static {
+        long timestampSize = ObjectSizeWeigher.estimate(new Timestamp(0));
+        long dateSize = ObjectSizeWeigher.estimate(new java.sql.Date(0));
+        long decimalSize = ObjectSizeWeigher.estimate(BigDecimal.ONE);
+        fixedTypeSizes.put("date-time", timestampSize);
+        fixedTypeSizes.put("date", dateSize);
+        fixedTypeSizes.put("time", ObjectSizeWeigher.estimate(new Time(0)));
+        fixedTypeSizes.put("numeric", ObjectSizeWeigher.estimate(Long.valueOf(0)));
+        fixedTypeSizes.put("floating-point", ObjectSizeWeigher.estimate(Double.valueOf(0)));
+        fixedTypeSizes.put("currency-amount", decimalSize);
+        fixedTypeSizes.put("currency-precise", decimalSize);
+        fixedTypeSizes.put("fixed-point", decimalSize);
+        fixedTypeSizes.put("indicator", ObjectSizeWeigher.estimateString("Y"));
+    }
+
+    public long estimate(GenericEntity entity) {
+        if (entity instanceof GenericEntity.NULL) {
+            return ObjectSizeWeigher.OBJECT_HEADER;
+        }
+        ModelEntity modelEntity = entity.getModelEntity();
+        long size = entityOverhead;
+        int fieldCount = 0;
+        Iterator<ModelField> fieldIter = modelEntity.getFieldsIterator();
+        while (fieldIter.hasNext()) {
+            ModelField field = fieldIter.next();
+            Object value = entity.get(field.getName());
+            if (value == null) {
+                continue;
+            }
+            fieldCount++;
+            Long fixedSize = fixedTypeSizes.get(field.getType());
+            size += fieldOverhead + (fixedSize != null ? fixedSize.longValue() : ObjectSizeWeigher.estimateNested(value));
+        }
+        if (entity.hasCompactFields()) {
+            // an array slot per field of the entity instead of the HashMap nodes and table
+            size -= fieldOverhead * fieldCount;
+            long arraySize = ObjectSizeWeigher.OBJECT_HEADER + 8 + (long) ObjectSizeWeigher.REFERENCE * modelEntity.getFieldsSize();
+            size += arraySize;
+            if (entity.originalDbValuesAvailable()) {
+                size += ObjectSizeWeigher.OBJECT_HEADER + 4 * ObjectSizeWeigher.REFERENCE + arraySize;
+            }
+            return size;
+        }
+        long tableSize = ObjectSizeWeigher.OBJECT_HEADER + (long) ObjectSizeWeigher.REFERENCE * Math.max(16, Integer.highestOneBit(fieldCount * 4 / 3 + 1) << 1);
+        size += tableSize;
+        if (entity.originalDbValuesAvailable()) {
+            // a copy of the fields map sharing the same values
+            size += ObjectSizeWeigher.OBJECT_HEADER * 2 + 32 + tableSize + fieldOverhead * fieldCount;
+        }
+        return size;
+    }
+}
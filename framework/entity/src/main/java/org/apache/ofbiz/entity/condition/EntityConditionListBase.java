@@ -56,7 +56,7 @@ public abstract class EntityConditionListBase<T extends EntityCondition> extends
         return this.conditionList.size();
     }
 
-    protected Iterator<T> getConditionIterator() {
+    public Iterator<T> getConditionIterator() {
         return this.conditionList.iterator();
     }
 
@@ -55,8 +55,10 @@ public final class Datasource {
     private final boolean useProxyCursor;
     private final String proxyCursorName; // type = xs:string
     private final int resultFetchSize; // type = xs:integer
+    private final int streamFetchSize; // type = xs:integer
     private final boolean useForeignKeys;
     private final boolean useForeignKeyIndices;
+    private final boolean supportsSkipLocked;
     private final boolean checkFksOnStart;
     private final boolean checkFkIndicesOnStart;
     private final String fkStyle;
@@ -130,8 +132,19 @@ public final class Datasource {
                 throw new GenericEntityConfException("<datasource> element result-fetch-size attribute is invalid" + lineNumberText);
             }
         }
+        String streamFetchSize = element.getAttribute("stream-fetch-size");
+        if (streamFetchSize.isEmpty()) {
+            this.streamFetchSize = -1;
+        } else {
+            try {
+                this.streamFetchSize = Integer.parseInt(streamFetchSize);
+            } catch (Exception e) {
+                throw new GenericEntityConfException("<datasource> element stream-fetch-size attribute is invalid" + lineNumberText);
+            }
+        }
         this.useForeignKeys = !"false".equals(element.getAttribute("use-foreign-keys"));
         this.useForeignKeyIndices = !"false".equals(element.getAttribute("use-foreign-key-indices"));
+        this.supportsSkipLocked = "true".equals(element.getAttribute("supports-skip-locked"));
         this.checkFksOnStart = "true".equals(element.getAttribute("check-fks-on-start"));
         this.checkFkIndicesOnStart = "true".equals(element.getAttribute("check-fk-indices-on-start"));
         String fkStyle = element.getAttribute("fk-style").intern();
@@ -289,6 +302,11 @@ public final class Datasource {
         return this.resultFetchSize;
     }
 
+    /** Returns the value of the <code>stream-fetch-size</code> attribute. */
+    public int getStreamFetchSize() {
+        return this.streamFetchSize;
+    }
+
     /** Returns the value of the <code>use-foreign-keys</code> attribute. */
     public boolean getUseForeignKeys() {
         return this.useForeignKeys;
@@ -299,6 +317,11 @@ public final class Datasource {
         return this.useForeignKeyIndices;
     }
 
+    /** Returns the value of the <code>supports-skip-locked</code> attribute. */
+    public boolean getSupportsSkipLocked() {
+        return this.supportsSkipLocked;
+    }
+
     /** Returns the value of the <code>check-fks-on-start</code> attribute. */
     public boolean getCheckFksOnStart() {
         return this.checkFksOnStart;
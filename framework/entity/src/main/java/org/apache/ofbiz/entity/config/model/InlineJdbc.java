@@ -41,6 +41,7 @@ public final class InlineJdbc extends JdbcElement {
     private final int timeBetweenEvictionRunsMillis; // type = xs:nonNegativeInteger
     private final int softMinEvictableIdleTimeMillis; // type = xs:nonNegativeInteger
     private final int poolSleeptime; // type = xs:nonNegativeInteger
+    private final int poolMaxStatements; // type = xs:nonNegativeInteger
     private final int poolLifetime; // type = xs:nonNegativeInteger
     private final int poolDeadlockMaxwait; // type = xs:nonNegativeInteger
     private final int poolDeadlockRetrywait; // type = xs:nonNegativeInteger
@@ -121,6 +122,16 @@ public final class InlineJdbc extends JdbcElement {
                 throw new GenericEntityConfException("<inline-jdbc> element soft-min-evictable-idle-time-millis attribute is invalid" + lineNumberText);
             }
         }
+        String poolMaxStatements = element.getAttribute("pool-max-statements");
+        if (poolMaxStatements.isEmpty()) {
+            this.poolMaxStatements = 100;
+        } else {
+            try {
+                this.poolMaxStatements = Integer.parseInt(poolMaxStatements);
+            } catch (Exception e) {
+                throw new GenericEntityConfException("<inline-jdbc> element pool-max-statements attribute is invalid" + lineNumberText);
+            }
+        }
         String poolSleeptime = element.getAttribute("pool-sleeptime");
         if (poolSleeptime.isEmpty()) {
             this.poolSleeptime = 300000;
@@ -219,6 +230,11 @@ public final class InlineJdbc extends JdbcElement {
         return this.softMinEvictableIdleTimeMillis;
     }
 
+    /** Returns the value of the <code>pool-max-statements</code> attribute. */
+    public int getPoolMaxStatements() {
+        return this.poolMaxStatements;
+    }
+
     /** Returns the value of the <code>pool-sleeptime</code> attribute. */
     public int getPoolSleeptime() {
         return this.poolSleeptime;
@@ -111,6 +111,11 @@ public class DBCPConnectionFactory implements ConnectionFactory {
         factory.setDefaultReadOnly(false);
         factory.setRollbackOnReturn(false);
         factory.setEnableAutoCommitOnReturn(false);
+        if (jdbcElement.getPoolMaxStatements() > 0) {
+            // keep the prepared statements open per connection, closing them returns them to this pool
+            factory.setPoolStatements(true);
+            factory.setMaxOpenPrepatedStatements(jdbcElement.getPoolMaxStatements());
+        }
         String transIso = jdbcElement.getIsolationLevel();
         if (!transIso.isEmpty()) {
             if ("Serializable".equals(transIso)) {
@@ -20,12 +20,15 @@ package org.apache.ofbiz.entity.datasource;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +38,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.EntityLockedException;
 import org.apache.ofbiz.entity.GenericDataSourceException;
@@ -54,6 +58,7 @@ import org.apache.ofbiz.entity.jdbc.SQLProcessor;
 import org.apache.ofbiz.entity.jdbc.SqlJdbcUtil;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.model.ModelFieldLayout;
 import org.apache.ofbiz.entity.model.ModelFieldTypeReader;
 import org.apache.ofbiz.entity.model.ModelKeyMap;
 import org.apache.ofbiz.entity.model.ModelRelation;
@@ -71,10 +76,15 @@ public class GenericDAO {
 
     public static final String module = GenericDAO.class.getName();
 
+    /** Upper bound of bind parameters in one multi-row primary key select, kept within the IN list limit of common databases */
+    public static final int MAX_PK_SELECT_PARAMS = 1000;
+
     private static final ConcurrentHashMap<String, GenericDAO> genericDAOs = new ConcurrentHashMap<String, GenericDAO>();
     private final GenericHelperInfo helperInfo;
     private final ModelFieldTypeReader modelFieldTypeReader;
     private final Datasource datasource;
+    /** The SQL of the primary key selects and deletes, of the inserts and of the updates, by entity and fields */
+    private final UtilCache<SqlKey, String> sqlMemo;
 
     public static GenericDAO getGenericDAO(GenericHelperInfo helperInfo) {
         String cacheKey = helperInfo.getHelperFullName();
@@ -90,6 +100,53 @@ public class GenericDAO {
         this.helperInfo = helperInfo;
         this.modelFieldTypeReader = ModelFieldTypeReader.getModelFieldTypeReader(helperInfo.getHelperBaseName());
         this.datasource = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+        this.sqlMemo = UtilCache.getOrCreateUtilCache("entity.GenericDAO.sql." + helperInfo.getHelperFullName(), 2000, 0, 0, false);
+    }
+
+    /**
+     * Identifies a generated SQL statement: the kind of statement, the entity through its field layout,
+     * which is replaced when the fields of the entity change, and the fields to save for the inserts and
+     * updates. Only used when the SQL does not depend on the values, see {@link #hasAllPkValues}.
+     */
+    private static final class SqlKey {
+        private final String kind;
+        private final ModelFieldLayout layout;
+        private final List<ModelField> fields;
+        private final int hashCode;
+
+        private SqlKey(String kind, ModelEntity modelEntity, List<ModelField> fields) {
+            this.kind = kind;
+            this.layout = modelEntity.getFieldLayout();
+            this.fields = fields;
+            this.hashCode = kind.hashCode() * 31 + System.identityHashCode(layout) + (fields != null ? 31 * 31 * fields.hashCode() : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SqlKey)) {
+                return false;
+            }
+            SqlKey that = (SqlKey) obj;
+            return this.hashCode == that.hashCode && this.kind.equals(that.kind) && this.layout == that.layout
+                    && (this.fields == null ? that.fields == null : this.fields.equals(that.fields));
+        }
+    }
+
+    /** The primary key conditions become "IS NULL" for null values, so only memoize the SQL when none is null */
+    private static boolean hasAllPkValues(ModelEntity modelEntity, GenericEntity entity) {
+        Iterator<ModelField> pkIter = modelEntity.getPksIterator();
+        while (pkIter.hasNext()) {
+            Object value = entity.dangerousGetNoCheckButFast(pkIter.next());
+            if (value == null || value == GenericEntity.NULL_FIELD) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void addFieldIfMissing(List<ModelField> fieldsToSave, String fieldName, ModelEntity modelEntity) {
@@ -127,6 +184,43 @@ public class GenericDAO {
             return singleUpdateView(entity, (ModelViewEntity) modelEntity, fieldsToSave, sqlP);
         }
 
+        setCreateStamps(entity, modelEntity, fieldsToSave);
+
+        String sql = makeInsertSql(modelEntity, fieldsToSave);
+        try {
+            sqlP.prepareStatement(sql);
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            int retVal = sqlP.executeUpdate();
+
+            entity.synchronizedWithDatasource();
+            return retVal;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
+        } finally {
+            sqlP.close();
+        }
+    }
+
+    private String makeInsertSql(ModelEntity modelEntity, List<ModelField> fieldsToSave) {
+        SqlKey key = new SqlKey("insert", modelEntity, fieldsToSave);
+        String sql = sqlMemo.get(key);
+        if (sql == null) {
+            sql = buildInsertSql(modelEntity, fieldsToSave);
+            sqlMemo.put(new SqlKey("insert", modelEntity, new ArrayList<ModelField>(fieldsToSave)), sql);
+        }
+        return sql;
+    }
+
+    private String buildInsertSql(ModelEntity modelEntity, List<ModelField> fieldsToSave) {
+        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
+
+        modelEntity.colNameString(fieldsToSave, sqlB, "");
+        sqlB.append(") VALUES (");
+        modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
+        return sqlB.append(")").toString();
+    }
+
+    private void setCreateStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD or CREATE_STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -159,23 +253,54 @@ public class GenericDAO {
                 addFieldIfMissing(fieldsToSave, ModelEntity.CREATE_STAMP_FIELD, modelEntity);
             }
         }
+    }
 
-        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
+    /** Inserts a number of values of the same entity using a single batched statement
+     *@param entities The values to insert, all of the same non-view entity
+     *@return int representing number of rows effected by this operation
+     */
+    public int insertBatch(List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
+        }
+        GenericEntity firstEntity = entities.get(0);
+        ModelEntity modelEntity = firstEntity.getModelEntity();
 
-        modelEntity.colNameString(fieldsToSave, sqlB, "");
-        sqlB.append(") VALUES (");
-        modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
-        String sql = sqlB.append(")").toString();
+        if (modelEntity == null) {
+            throw new GenericModelException("Could not find ModelEntity record for entityName: " + firstEntity.getEntityName());
+        }
+        if (modelEntity instanceof ModelViewEntity) {
+            throw new org.apache.ofbiz.entity.GenericNotImplementedException("Operation insertBatch not supported yet for view entities");
+        }
+
+        SQLProcessor sqlP = new SQLProcessor(firstEntity.getDelegator(), helperInfo);
 
         try {
-            sqlP.prepareStatement(sql);
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            int retVal = sqlP.executeUpdate();
+            return batchInsert(entities, modelEntity, modelEntity.getFieldsUnmodifiable(), sqlP);
+        } catch (GenericEntityException e) {
+            sqlP.rollback();
+            throw e;
+        } finally {
+            sqlP.close();
+        }
+    }
 
-            entity.synchronizedWithDatasource();
+    private int batchInsert(List<? extends GenericEntity> entities, ModelEntity modelEntity, List<ModelField> fieldsToSave, SQLProcessor sqlP) throws GenericEntityException {
+        try {
+            sqlP.prepareStatement(makeInsertSql(modelEntity, fieldsToSave));
+            for (GenericEntity entity: entities) {
+                setCreateStamps(entity, modelEntity, fieldsToSave);
+                SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                sqlP.addBatch();
+            }
+            int retVal = countBatchResults(sqlP.executeBatch(), modelEntity, false);
+
+            for (GenericEntity entity: entities) {
+                entity.synchronizedWithDatasource();
+            }
             return retVal;
         } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
+            throw new GenericEntityException("Error while batch inserting " + entities.size() + " values of entity: " + modelEntity.getEntityName(), e);
         } finally {
             sqlP.close();
         }
@@ -251,6 +376,50 @@ public class GenericDAO {
             }
         }
 
+        setUpdateStamps(entity, modelEntity, fieldsToSave);
+
+        int retVal = 0;
+
+        try {
+            sqlP.prepareStatement(makeUpdateSql(modelEntity, fieldsToSave, entity));
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
+            retVal = sqlP.executeUpdate();
+            entity.synchronizedWithDatasource();
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while updating: " + entity.toString(), e);
+        } finally {
+            sqlP.close();
+        }
+
+        if (retVal == 0) {
+            throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+        }
+        return retVal;
+    }
+
+    private String makeUpdateSql(ModelEntity modelEntity, List<ModelField> fieldsToSave, GenericEntity entity) {
+        if (!hasAllPkValues(modelEntity, entity)) {
+            return buildUpdateSql(modelEntity, fieldsToSave, entity);
+        }
+        SqlKey key = new SqlKey("update", modelEntity, fieldsToSave);
+        String sql = sqlMemo.get(key);
+        if (sql == null) {
+            sql = buildUpdateSql(modelEntity, fieldsToSave, entity);
+            sqlMemo.put(new SqlKey("update", modelEntity, new ArrayList<ModelField>(fieldsToSave)), sql);
+        }
+        return sql;
+    }
+
+    private String buildUpdateSql(ModelEntity modelEntity, List<ModelField> fieldsToSave, GenericEntity entity) {
+        StringBuilder sql = new StringBuilder().append("UPDATE ").append(modelEntity.getTableName(datasource)).append(" SET ");
+        modelEntity.colNameString(fieldsToSave, sql, "", "=?, ", "=?", false);
+        sql.append(" WHERE ");
+        SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+        return sql.toString();
+    }
+
+    private void setUpdateStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -265,28 +434,106 @@ public class GenericDAO {
             entity.set(ModelEntity.STAMP_FIELD, TransactionUtil.getTransactionUniqueNowStamp());
             addFieldIfMissing(fieldsToSave, ModelEntity.STAMP_FIELD, modelEntity);
         }
+    }
 
-        StringBuilder sql = new StringBuilder().append("UPDATE ").append(modelEntity.getTableName(datasource)).append(" SET ");
-        modelEntity.colNameString(fieldsToSave, sql, "", "=?, ", "=?", false);
-        sql.append(" WHERE ");
-        SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+    /** Updates a number of values of the same entity using batched statements; like update(GenericEntity) only
+     * the non-pk fields present in each value are written, values sharing the same set of fields go into the same batch
+     *@param entities The values to update, all of the same non-view entity without optimistic locking
+     *@return int representing number of rows effected by this operation
+     */
+    public int updateBatch(List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
+        }
+        GenericEntity firstEntity = entities.get(0);
+        ModelEntity modelEntity = firstEntity.getModelEntity();
 
+        if (modelEntity == null) {
+            throw new GenericModelException("Could not find ModelEntity record for entityName: " + firstEntity.getEntityName());
+        }
+        if (modelEntity instanceof ModelViewEntity) {
+            throw new org.apache.ofbiz.entity.GenericNotImplementedException("Operation updateBatch not supported yet for view entities");
+        }
+        if (modelEntity.lock()) {
+            throw new org.apache.ofbiz.entity.GenericNotImplementedException("Operation updateBatch not supported for entities with optimistic locking: " + modelEntity.getEntityName());
+        }
+
+        // group the values by the fields to save so each group can share one prepared statement
         int retVal = 0;
+        Map<List<ModelField>, List<GenericEntity>> entitiesByFields = new LinkedHashMap<List<ModelField>, List<GenericEntity>>();
+        for (GenericEntity entity: entities) {
+            List<ModelField> partialFields = new LinkedList<ModelField>();
+            Collection<String> keys = entity.getAllKeys();
+            Iterator<ModelField> nopkIter = modelEntity.getNopksIterator();
+            while (nopkIter.hasNext()) {
+                ModelField curField = nopkIter.next();
+                if (keys.contains(curField.getName())) {
+                    partialFields.add(curField);
+                }
+            }
+            if (partialFields.isEmpty()) {
+                // same as singleUpdate: nothing to update counts as effectively updated
+                retVal++;
+                continue;
+            }
+            setUpdateStamps(entity, modelEntity, partialFields);
+            List<GenericEntity> group = entitiesByFields.get(partialFields);
+            if (group == null) {
+                group = new LinkedList<GenericEntity>();
+                entitiesByFields.put(partialFields, group);
+            }
+            group.add(entity);
+        }
+
+        SQLProcessor sqlP = new SQLProcessor(firstEntity.getDelegator(), helperInfo);
 
         try {
-            sqlP.prepareStatement(sql.toString());
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
-            retVal = sqlP.executeUpdate();
-            entity.synchronizedWithDatasource();
+            for (Map.Entry<List<ModelField>, List<GenericEntity>> entry: entitiesByFields.entrySet()) {
+                retVal += batchUpdate(entry.getValue(), modelEntity, entry.getKey(), sqlP);
+            }
+            return retVal;
         } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while updating: " + entity.toString(), e);
+            sqlP.rollback();
+            throw e;
         } finally {
             sqlP.close();
         }
+    }
 
-        if (retVal == 0) {
-            throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+    private int batchUpdate(List<? extends GenericEntity> entities, ModelEntity modelEntity, List<ModelField> fieldsToSave, SQLProcessor sqlP) throws GenericEntityException {
+        try {
+            sqlP.prepareStatement(makeUpdateSql(modelEntity, fieldsToSave, entities.get(0)));
+            for (GenericEntity entity: entities) {
+                SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
+                sqlP.addBatch();
+            }
+            int retVal = countBatchResults(sqlP.executeBatch(), modelEntity, true);
+
+            for (GenericEntity entity: entities) {
+                entity.synchronizedWithDatasource();
+            }
+            return retVal;
+        } catch (GenericEntityNotFoundException e) {
+            throw e;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while batch updating " + entities.size() + " values of entity: " + modelEntity.getEntityName(), e);
+        } finally {
+            sqlP.close();
+        }
+    }
+
+    private static int countBatchResults(int[] updateCounts, ModelEntity modelEntity, boolean mustExist) throws GenericEntityException {
+        int retVal = 0;
+        for (int updateCount: updateCounts) {
+            if (updateCount == Statement.SUCCESS_NO_INFO) {
+                // the driver executed the row but doesn't report how many rows it touched
+                retVal++;
+            } else if (updateCount == 0 && mustExist) {
+                throw new GenericEntityNotFoundException("Tried to batch update an entity that does not exist, entity: " + modelEntity.getEntityName());
+            } else {
+                retVal += updateCount;
+            }
         }
         return retVal;
     }
@@ -506,19 +753,10 @@ public class GenericDAO {
             throw new GenericEntityException("Entity has no primary keys, cannot select by primary key");
         }
 
-        StringBuilder sqlBuffer = new StringBuilder("SELECT ");
-
-        if (modelEntity.getNopksSize() > 0) {
-            modelEntity.colNameString(modelEntity.getNopksCopy(), sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
-        } else {
-            sqlBuffer.append("*");
-        }
-
-        sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
-        sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
+        String sql = makeSelectSql(modelEntity, entity);
 
         try {
-            sqlP.prepareStatement(sqlBuffer.toString(), true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            sqlP.prepareStatement(sql, true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
             SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
             sqlP.executeQuery();
 
@@ -541,6 +779,85 @@ public class GenericDAO {
         }
     }
 
+    private String makeSelectSql(ModelEntity modelEntity, GenericEntity entity) throws GenericEntityException {
+        boolean memoize = hasAllPkValues(modelEntity, entity);
+        SqlKey key = memoize ? new SqlKey("select", modelEntity, null) : null;
+        String sql = memoize ? sqlMemo.get(key) : null;
+        if (sql == null) {
+            StringBuilder sqlBuffer = new StringBuilder("SELECT ");
+
+            if (modelEntity.getNopksSize() > 0) {
+                modelEntity.colNameString(modelEntity.getNopksCopy(), sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
+            } else {
+                sqlBuffer.append("*");
+            }
+
+            sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
+            sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
+            sql = sqlBuffer.toString();
+            if (memoize) {
+                sqlMemo.put(key, sql);
+            }
+        }
+        return sql;
+    }
+
+    /** Selects the rows matching a number of primary keys of the same entity, running one query per chunk of keys
+     * instead of one query per key; single field keys use an IN condition, composite keys an OR of the key fields
+     *@param modelEntity The ModelEntity the primary keys belong to
+     *@param primaryKeys The primary keys to select
+     *@return List of the GenericValue objects found, in no particular order; keys not found are simply not included
+     */
+    public List<GenericValue> selectByPrimaryKeys(Delegator delegator, ModelEntity modelEntity, List<? extends GenericEntity> primaryKeys) throws GenericEntityException {
+        if (modelEntity == null) {
+            throw new GenericModelException("Could not find ModelEntity record for selectByPrimaryKeys");
+        }
+        if (modelEntity.getPksSize() <= 0) {
+            throw new GenericEntityException("Entity has no primary keys, cannot select by primary key");
+        }
+
+        List<GenericValue> results = new LinkedList<GenericValue>();
+        if (UtilValidate.isEmpty(primaryKeys)) {
+            return results;
+        }
+
+        int chunkSize = Math.max(1, MAX_PK_SELECT_PARAMS / modelEntity.getPksSize());
+        for (int start = 0; start < primaryKeys.size(); start += chunkSize) {
+            List<? extends GenericEntity> chunk = primaryKeys.subList(start, Math.min(start + chunkSize, primaryKeys.size()));
+            EntityListIterator eli = selectListIteratorByCondition(delegator, modelEntity, makePrimaryKeysCondition(modelEntity, chunk), null, null, null, null);
+            try {
+                GenericValue value;
+                while ((value = eli.next()) != null) {
+                    results.add(value);
+                }
+            } finally {
+                eli.close();
+            }
+        }
+        return results;
+    }
+
+    private static EntityCondition makePrimaryKeysCondition(ModelEntity modelEntity, List<? extends GenericEntity> primaryKeys) {
+        if (modelEntity.getPksSize() == 1) {
+            String pkName = modelEntity.getOnlyPk().getName();
+            List<Object> pkValues = new LinkedList<Object>();
+            for (GenericEntity primaryKey: primaryKeys) {
+                pkValues.add(primaryKey.get(pkName));
+            }
+            return EntityCondition.makeCondition(pkName, EntityOperator.IN, pkValues);
+        }
+        List<String> pkNames = modelEntity.getPkFieldNames();
+        List<EntityCondition> pkConditions = new LinkedList<EntityCondition>();
+        for (GenericEntity primaryKey: primaryKeys) {
+            Map<String, Object> pkFields = new HashMap<String, Object>();
+            for (String pkName: pkNames) {
+                pkFields.put(pkName, primaryKey.get(pkName));
+            }
+            pkConditions.add(EntityCondition.makeCondition(pkFields));
+        }
+        return EntityCondition.makeCondition(pkConditions, EntityOperator.OR);
+    }
+
     public void partialSelect(GenericEntity entity, Set<String> keys) throws GenericEntityException {
         ModelEntity modelEntity = entity.getModelEntity();
 
@@ -755,6 +1072,17 @@ public class GenericDAO {
         // OFFSET clause
         makeOffsetString(sqlBuffer, findOptions);
 
+        // FOR UPDATE clause
+        if (findOptions.getForUpdate()) {
+            sqlBuffer.append(" FOR UPDATE");
+            if (findOptions.getSkipLocked()) {
+                if (!datasource.getSupportsSkipLocked()) {
+                    throw new GenericNotImplementedException("SKIP LOCKED is not supported by the datasource " + datasource.getName());
+                }
+                sqlBuffer.append(" SKIP LOCKED");
+            }
+        }
+
         // make the final SQL String
         String sql = sqlBuffer.toString();
 
@@ -1164,13 +1492,22 @@ public class GenericDAO {
             throw new org.apache.ofbiz.entity.GenericNotImplementedException("Operation delete not supported yet for view entities");
         }
 
-        StringBuilder sql = new StringBuilder().append("DELETE FROM ").append(modelEntity.getTableName(datasource)).append(" WHERE ");
-        SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+        boolean memoize = hasAllPkValues(modelEntity, entity);
+        SqlKey key = memoize ? new SqlKey("delete", modelEntity, null) : null;
+        String sql = memoize ? sqlMemo.get(key) : null;
+        if (sql == null) {
+            StringBuilder sqlBuffer = new StringBuilder().append("DELETE FROM ").append(modelEntity.getTableName(datasource)).append(" WHERE ");
+            SqlJdbcUtil.makeWhereStringFromFields(sqlBuffer, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+            sql = sqlBuffer.toString();
+            if (memoize) {
+                sqlMemo.put(key, sql);
+            }
+        }
 
         int retVal;
 
         try {
-            sqlP.prepareStatement(sql.toString());
+            sqlP.prepareStatement(sql);
             SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
             retVal = sqlP.executeUpdate();
             entity.removedFromDatasource();
@@ -18,12 +18,15 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.datasource;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.ofbiz.base.metrics.CallTracer;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -62,9 +65,36 @@ public class GenericHelperDAO implements GenericHelper {
         if (value == null) {
             return null;
         }
-        int retVal = genericDAO.insert(value);
-        if (Debug.verboseOn()) Debug.logVerbose("Insert Return Value : " + retVal, module);
-        return value;
+        boolean traced = CallTracer.enter("entity-create", value.getEntityName());
+        try {
+            int retVal = genericDAO.insert(value);
+            if (Debug.verboseOn()) Debug.logVerbose("Insert Return Value : " + retVal, module);
+            return value;
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
+    }
+
+    /** Creates a number of values of the same entity in the database using a single batched statement
+     *@param values The values to create, all of the same entity
+     *@return int representing number of rows effected by this operation
+     */
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        boolean traced = CallTracer.enter("entity-create", values.isEmpty() ? null : values.get(0).getEntityName());
+        try {
+            int retVal = genericDAO.insertBatch(values);
+            if (Debug.verboseOn()) Debug.logVerbose("Batch Insert Return Value : " + retVal, module);
+            return retVal;
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     /** Find a Generic Entity by its Primary Key
@@ -75,10 +105,17 @@ public class GenericHelperDAO implements GenericHelper {
         if (primaryKey == null) {
             return null;
         }
-        GenericValue genericValue = GenericValue.create(primaryKey);
+        boolean traced = CallTracer.enter("entity-find", primaryKey.getEntityName());
+        try {
+            GenericValue genericValue = GenericValue.create(primaryKey);
 
-        genericDAO.select(genericValue);
-        return genericValue;
+            genericDAO.select(genericValue);
+            return genericValue;
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     /** Find a Generic Entity by its Primary Key and only returns the values requested by the passed keys (names)
@@ -90,26 +127,48 @@ public class GenericHelperDAO implements GenericHelper {
         if (primaryKey == null) {
             return null;
         }
-        GenericValue genericValue = GenericValue.create(primaryKey);
+        boolean traced = CallTracer.enter("entity-find", primaryKey.getEntityName());
+        try {
+            GenericValue genericValue = GenericValue.create(primaryKey);
 
-        genericDAO.partialSelect(genericValue, keys);
-        return genericValue;
+            genericDAO.partialSelect(genericValue, keys);
+            return genericValue;
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     /** Find a number of Generic Value objects by their Primary Keys, all at once
-     * This is done here for the DAO GenericHelper; for a client-server helper it
-     * would be done on the server side to reduce network round trips.
+     * This is done here for the DAO GenericHelper with one query per entity and chunk of keys;
+     * for a client-server helper it would be done on the server side to reduce network round trips.
      *@param primaryKeys A List of primary keys to find by.
-     *@return List of GenericValue objects corresponding to the passed primaryKey objects
+     *@return List of GenericValue objects corresponding to the passed primaryKey objects, keys not found are not included
      */
     public List<GenericValue> findAllByPrimaryKeys(List<GenericPK> primaryKeys) throws GenericEntityException {
         if (primaryKeys == null) return null;
         List<GenericValue> results = new LinkedList<GenericValue>();
 
+        Map<String, List<GenericPK>> primaryKeysByEntity = new LinkedHashMap<String, List<GenericPK>>();
         for (GenericPK primaryKey: primaryKeys) {
-            GenericValue result = this.findByPrimaryKey(primaryKey);
-
-            if (result != null) results.add(result);
+            List<GenericPK> entityPrimaryKeys = primaryKeysByEntity.get(primaryKey.getEntityName());
+            if (entityPrimaryKeys == null) {
+                entityPrimaryKeys = new ArrayList<GenericPK>();
+                primaryKeysByEntity.put(primaryKey.getEntityName(), entityPrimaryKeys);
+            }
+            entityPrimaryKeys.add(primaryKey);
+        }
+        for (List<GenericPK> entityPrimaryKeys: primaryKeysByEntity.values()) {
+            GenericPK firstPrimaryKey = entityPrimaryKeys.get(0);
+            boolean traced = CallTracer.enter("entity-find", firstPrimaryKey.getEntityName());
+            try {
+                results.addAll(genericDAO.selectByPrimaryKeys(firstPrimaryKey.getDelegator(), firstPrimaryKey.getModelEntity(), entityPrimaryKeys));
+            } finally {
+                if (traced) {
+                    CallTracer.exit();
+                }
+            }
         }
         return results;
     }
@@ -121,7 +180,14 @@ public class GenericHelperDAO implements GenericHelper {
     public int removeByPrimaryKey(GenericPK primaryKey) throws GenericEntityException {
         if (primaryKey == null) return 0;
         if (Debug.verboseOn()) Debug.logVerbose("Removing GenericPK: " + primaryKey.toString(), module);
-        return genericDAO.delete(primaryKey);
+        boolean traced = CallTracer.enter("entity-remove", primaryKey.getEntityName());
+        try {
+            return genericDAO.delete(primaryKey);
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     /** Finds GenericValues by the conditions specified in the EntityCondition object, the the EntityCondition javadoc for more details.
@@ -137,16 +203,37 @@ public class GenericHelperDAO implements GenericHelper {
     public EntityListIterator findListIteratorByCondition(Delegator delegator, ModelEntity modelEntity, EntityCondition whereEntityCondition,
         EntityCondition havingEntityCondition, Collection<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions)
         throws GenericEntityException {
-        return genericDAO.selectListIteratorByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, fieldsToSelect, orderBy, findOptions);
+        boolean traced = CallTracer.enter("entity-find", modelEntity.getEntityName());
+        try {
+            return genericDAO.selectListIteratorByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, fieldsToSelect, orderBy, findOptions);
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     public List<GenericValue> findByMultiRelation(GenericValue value, ModelRelation modelRelationOne, ModelEntity modelEntityOne,
         ModelRelation modelRelationTwo, ModelEntity modelEntityTwo, List<String> orderBy) throws GenericEntityException {
-        return genericDAO.selectByMultiRelation(value, modelRelationOne, modelEntityOne, modelRelationTwo, modelEntityTwo, orderBy);
+        boolean traced = CallTracer.enter("entity-find", modelEntityTwo.getEntityName());
+        try {
+            return genericDAO.selectByMultiRelation(value, modelRelationOne, modelEntityOne, modelRelationTwo, modelEntityTwo, orderBy);
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     public long findCountByCondition(Delegator delegator, ModelEntity modelEntity, EntityCondition whereEntityCondition, EntityCondition havingEntityCondition, EntityFindOptions findOptions) throws GenericEntityException {
-        return genericDAO.selectCountByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, findOptions);
+        boolean traced = CallTracer.enter("entity-count", modelEntity.getEntityName());
+        try {
+            return genericDAO.selectCountByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, findOptions);
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     /** Removes/deletes Generic Entity records found by all the specified condition
@@ -158,7 +245,14 @@ public class GenericHelperDAO implements GenericHelper {
         if (modelEntity == null || condition == null) {
             return 0;
         }
-        return genericDAO.deleteByCondition(delegator, modelEntity, condition);
+        boolean traced = CallTracer.enter("entity-remove", modelEntity.getEntityName());
+        try {
+            return genericDAO.deleteByCondition(delegator, modelEntity, condition);
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     /** Store the Entity from the GenericValue to the persistent store
@@ -169,7 +263,32 @@ public class GenericHelperDAO implements GenericHelper {
         if (value == null) {
             return 0;
         }
-        return genericDAO.update(value);
+        boolean traced = CallTracer.enter("entity-store", value.getEntityName());
+        try {
+            return genericDAO.update(value);
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
+    }
+
+    /** Store a number of values of the same entity to the persistent store using batched statements
+     *@param values The values to store, all of the same entity
+     *@return int representing number of rows effected by this operation
+     */
+    public int storeAll(List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        boolean traced = CallTracer.enter("entity-store", values.isEmpty() ? null : values.get(0).getEntityName());
+        try {
+            return genericDAO.updateBatch(values);
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     /** Updates a group of values in a single pass.
@@ -183,7 +302,14 @@ public class GenericHelperDAO implements GenericHelper {
         if (modelEntity == null || condition == null) {
             return 0;
         }
-        return genericDAO.updateByCondition(delegator, modelEntity, fieldsToSet, condition);
+        boolean traced = CallTracer.enter("entity-store", modelEntity.getEntityName());
+        try {
+            return genericDAO.updateByCondition(delegator, modelEntity, fieldsToSet, condition);
+        } finally {
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
     }
 
     /** Check the datasource to make sure the entity definitions are correct, optionally adding missing entities or fields on the server
@@ -379,6 +379,9 @@ public class SQLProcessor {
             if (maxRows > 0) {
                 _ps.setMaxRows(maxRows);
                 if (Debug.verboseOn()) Debug.logVerbose("[SQLProcessor.prepareStatement] max rows set : " + maxRows, module);
+            } else {
+                // the statement may come from the statement pool of the connection with the limit of an earlier query
+                _ps.setMaxRows(0);
             }
             this.setFetchSize(_ps, fetchSize);
         } catch (SQLException sqle) {
@@ -435,6 +438,36 @@ public class SQLProcessor {
         }
     }
 
+    /**
+     * Add the current set of parameters to the batch of the prepared statement and
+     * reset the parameter index so the next row can be set
+     *
+     * @throws GenericDataSourceException
+     */
+    public void addBatch() throws GenericDataSourceException {
+        try {
+            _ps.addBatch();
+            _ind = 1;
+        } catch (SQLException sqle) {
+            throw new GenericDataSourceException("SQL Exception while adding batch for the following:" + _sql, sqle);
+        }
+    }
+
+    /**
+     * Execute all the rows added to the batch of the prepared statement
+     *
+     * @return  The update counts, one per batched row
+     * @throws GenericDataSourceException
+     */
+    public int[] executeBatch() throws GenericDataSourceException {
+        try {
+            return _ps.executeBatch();
+        } catch (SQLException sqle) {
+            this.checkLockWaitInfo(sqle);
+            throw new GenericDataSourceException("SQL Exception while executing batch for the following:" + _sql, sqle);
+        }
+    }
+
     /**
      * Execute update based on the SQL statement given
      *
@@ -877,6 +910,9 @@ public class SQLProcessor {
         // otherwise only set if the size is > -1 (0 is sometimes used to note ALL rows)
         if (fetchSize > -1) {
             stmt.setFetchSize(fetchSize);
+        } else if (stmt.getFetchSize() != 0) {
+            // reset a pooled statement to the driver default
+            stmt.setFetchSize(0);
         }
     }
 
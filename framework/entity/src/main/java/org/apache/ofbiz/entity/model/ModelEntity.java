@@ -88,6 +88,9 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
     /** The sequence-bank-size of the Entity */
     protected Integer sequenceBankSize = null;
 
+    /** The sequence-bank-max-size of the Entity */
+    protected Integer sequenceBankMaxSize = null;
+
     /** Synchronization object used to control access to the ModelField collection objects.
      * A single lock is used for all ModelField collections so collection updates are atomic. */
     private final Object fieldsLock = new Object();
@@ -98,6 +101,10 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
     private final Map<String, ModelField> fieldsMap = new HashMap<String, ModelField>();
 
+    /** The positions of the fields in the compact field storage of GenericEntity, created on first use
+     *  and dropped when the fields change */
+    private volatile ModelFieldLayout fieldLayout = null;
+
     private final ArrayList<String> pkFieldNames = new ArrayList<String>();
 
     /** A List of the Field objects for the Entity, one for each Primary Key */
@@ -263,6 +270,15 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
                 Debug.logError("Error parsing sequence-bank-size value [" + sequenceBankSizeStr + "] for entity [" + this.entityName + "]", module);
             }
         }
+
+        String sequenceBankMaxSizeStr = UtilXml.checkEmpty(entityElement.getAttribute("sequence-bank-max-size"));
+        if (UtilValidate.isNotEmpty(sequenceBankMaxSizeStr)) {
+            try {
+                this.sequenceBankMaxSize = Integer.valueOf(sequenceBankMaxSizeStr);
+            } catch (NumberFormatException e) {
+                Debug.logError("Error parsing sequence-bank-max-size value [" + sequenceBankMaxSizeStr + "] for entity [" + this.entityName + "]", module);
+            }
+        }
     }
 
     private void internalAddField(ModelField newField, List<String> pkFieldNames) {
@@ -271,6 +287,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
         this.fieldsList.add(newField);
         this.fieldsMap.put(newField.getName(), newField);
+        this.fieldLayout = null;
     }
 
     protected void populateRelated(ModelReader reader, Element entityElement) {
@@ -333,6 +350,17 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
                 }
             }
         }
+
+        if (extendEntityElement.hasAttribute("sequence-bank-max-size")) {
+            String sequenceBankMaxSizeStr = UtilXml.checkEmpty(extendEntityElement.getAttribute("sequence-bank-max-size"));
+            if (UtilValidate.isNotEmpty(sequenceBankMaxSizeStr)) {
+                try {
+                    this.sequenceBankMaxSize = Integer.valueOf(sequenceBankMaxSizeStr);
+                } catch (NumberFormatException e) {
+                    Debug.logError("Error parsing sequence-bank-max-size value [" + sequenceBankMaxSizeStr + "] for entity [" + this.entityName + "]", module);
+                }
+            }
+        }
         
         for (Element fieldElement : UtilXml.childElementList(extendEntityElement, "field")) {
             ModelField newField = ModelField.create(this, fieldElement, false);
@@ -367,6 +395,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
                 }
                 this.fieldsList.add(newField);
                 this.fieldsMap.put(newField.getName(), newField);
+                this.fieldLayout = null;
                 if (!newField.getIsPk()) {
                     if (existingField != null) {
                         this.nopks.remove(existingField);
@@ -520,6 +549,10 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         return this.sequenceBankSize;
     }
 
+    public Integer getSequenceBankMaxSize() {
+        return this.sequenceBankMaxSize;
+    }
+
     public boolean isField(String fieldName) {
         if (fieldName == null) return false;
         synchronized (fieldsLock) {
@@ -610,6 +643,25 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
     }
 
+    /** Returns the positions of the fields, in the order they were defined, used by the compact field storage of GenericEntity */
+    public ModelFieldLayout getFieldLayout() {
+        ModelFieldLayout layout = this.fieldLayout;
+        if (layout == null) {
+            synchronized (fieldsLock) {
+                layout = this.fieldLayout;
+                if (layout == null) {
+                    String[] fieldNames = new String[this.fieldsList.size()];
+                    for (int i = 0; i < fieldNames.length; i++) {
+                        fieldNames[i] = this.fieldsList.get(i).getName();
+                    }
+                    layout = new ModelFieldLayout(fieldNames);
+                    this.fieldLayout = layout;
+                }
+            }
+        }
+        return layout;
+    }
+
     /** The col-name of the Field, the alias of the field if this is on a view-entity */
     public String getColNameOrAlias(String fieldName) {
         ModelField modelField = this.getField(fieldName);
@@ -630,6 +682,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         synchronized (fieldsLock) {
             this.fieldsList.add(field);
             fieldsMap.put(field.getName(), field);
+            this.fieldLayout = null;
             if (field.getIsPk()) {
                 pks.add(field);
                 if (!pkFieldNames.contains(field.getName())) {
@@ -648,6 +701,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
             ModelField field = fieldsMap.remove(fieldName);
             if (field != null) {
                 this.fieldsList.remove(field);
+                this.fieldLayout = null;
                 if (field.getIsPk()) {
                     pks.remove(field);
                     pkFieldNames.remove(field.getName());
@@ -1476,6 +1530,10 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
             root.setAttribute("sequence-bank-size", this.getSequenceBankSize().toString());
         }
 
+        if (this.getSequenceBankMaxSize() != null) {
+            root.setAttribute("sequence-bank-max-size", this.getSequenceBankMaxSize().toString());
+        }
+
         if (UtilValidate.isNotEmpty(this.getTitle())) {
             root.setAttribute("title", this.getTitle());
         }
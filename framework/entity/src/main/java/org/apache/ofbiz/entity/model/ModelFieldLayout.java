@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.model;
+
+/**
+ * The positions of the fields of an entity, in the order they were defined. Used by GenericEntity to
+ * keep the field values in an array instead of a HashMap. A layout does not change: when the fields
+ * of the entity change a new layout is created, and the values created before keep the old one.
+ */
+public final class ModelFieldLayout {
+
+    private final String[] fieldNames;
+    /** Open addressing table of the field names, with their positions */
+    private final String[] table;
+    private final int[] positions;
+    private final int mask;
+
+    ModelFieldLayout(String[] fieldNames) {
+        this.fieldNames = fieldNames;
+        int tableSize = Integer.highestOneBit(Math.max(2, fieldNames.length) * 2 - 1) << 1;
+        this.table = new String[tableSize];
+        this.positions = new int[tableSize];
+        this.mask = tableSize - 1;
+        for (int i = 0; i < fieldNames.length; i++) {
+            int slot = spread(fieldNames[i].hashCode()) & mask;
+            while (table[slot] != null) {
+                if (table[slot].equals(fieldNames[i])) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fieldNames[i];
+            positions[slot] = i;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Returns the position of a field, or -1 if it is not a field of the entity */
+    public int indexOf(Object fieldName) {
+        if (!(fieldName instanceof String)) {
+            return -1;
+        }
+        int slot = spread(fieldName.hashCode()) & mask;
+        String candidate;
+        while ((candidate = table[slot]) != null) {
+            if (candidate == fieldName || candidate.equals(fieldName)) {
+                return positions[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String getFieldName(int index) {
+        return fieldNames[index];
+    }
+
+    public int size() {
+        return fieldNames.length;
+    }
+}
@@ -0,0 +1,475 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.serialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilObject;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+
+/**
+ * A compact binary alternative to XmlSerializer for the same kinds of objects: Strings, numbers,
+ * dates, Locales, TimeZones, GenericValues and GenericPKs, and the Collections and Maps of them. Other
+ * Serializable objects are written with Java serialization.
+ * <p>The serialized form is text, so it can be stored where the XML form is: a prefix, followed by the
+ * Base64 encoded data, which starts with a version and a flag for the optional compression. Strings
+ * that occur more than once, like the field names of GenericValues, are only written once.</p>
+ */
+public class BinarySerializer {
+    public static final String module = BinarySerializer.class.getName();
+
+    /** The prefix of serialized objects; never the start of an XML document */
+    public static final String PREFIX = "ofbiz-bin:";
+
+    /** The current version of the format */
+    public static final int VERSION = 1;
+
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int STRING_REF = 2;
+    private static final int BOOLEAN_TRUE = 3;
+    private static final int BOOLEAN_FALSE = 4;
+    private static final int INTEGER = 5;
+    private static final int LONG = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+    private static final int BIG_DECIMAL = 9;
+    private static final int BIG_INTEGER = 10;
+    private static final int TIMESTAMP = 11;
+    private static final int SQL_DATE = 12;
+    private static final int SQL_TIME = 13;
+    private static final int DATE = 14;
+    private static final int LOCALE = 15;
+    private static final int TIME_ZONE = 16;
+    private static final int BYTE_ARRAY = 17;
+    private static final int GENERIC_VALUE = 18;
+    private static final int GENERIC_PK = 19;
+    private static final int ARRAY_LIST = 20;
+    private static final int LINKED_LIST = 21;
+    private static final int HASH_SET = 22;
+    private static final int LINKED_HASH_SET = 23;
+    private static final int TREE_SET = 24;
+    private static final int COLLECTION = 25;
+    private static final int HASH_MAP = 26;
+    private static final int LINKED_HASH_MAP = 27;
+    private static final int TREE_MAP = 28;
+    private static final int MAP = 29;
+    private static final int SERIALIZABLE = 30;
+
+    /** Returns true if the content was serialized by this class rather than by XmlSerializer */
+    public static boolean isBinary(String content) {
+        return content != null && content.startsWith(PREFIX);
+    }
+
+    public static String serialize(Object object, boolean compress) throws SerializeException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(VERSION);
+        bytes.write(compress ? FLAG_COMPRESSED : 0);
+        OutputStream out = compress ? new DeflaterOutputStream(bytes) : bytes;
+        Writer writer = new Writer(out);
+        writer.writeObject(object);
+        writer.out.close();
+        return PREFIX.concat(Base64.getEncoder().encodeToString(bytes.toByteArray()));
+    }
+
+    /** Deserialize an object serialized by this class; like XmlSerializer, GenericValues are made with the delegator. */
+    public static Object deserialize(String content, Delegator delegator) throws SerializeException, IOException {
+        if (!isBinary(content)) {
+            throw new SerializeException("Content was not serialized by the BinarySerializer");
+        }
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(content.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new SerializeException("Serialized content is not valid Base64", e);
+        }
+        if (data.length < 2) {
+            throw new SerializeException("Serialized content is truncated");
+        }
+        int version = data[0];
+        if (version != VERSION) {
+            throw new SerializeException("Unsupported serialization format version " + version);
+        }
+        InputStream in = new ByteArrayInputStream(data, 2, data.length - 2);
+        if ((data[1] & FLAG_COMPRESSED) != 0) {
+            in = new InflaterInputStream(in);
+        }
+        try {
+            return new Reader(in, delegator).readObject();
+        } finally {
+            // releases the native memory of the inflater
+            in.close();
+        }
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        private Writer(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        private void writeObject(Object object) throws SerializeException, IOException {
+            if (object == null) {
+                out.write(NULL);
+            } else if (object instanceof String) {
+                writeString((String) object);
+            } else if (object instanceof Boolean) {
+                out.write(((Boolean) object).booleanValue() ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+            } else if (object instanceof Integer) {
+                out.write(INTEGER);
+                out.writeInt(((Integer) object).intValue());
+            } else if (object instanceof Long) {
+                out.write(LONG);
+                out.writeLong(((Long) object).longValue());
+            } else if (object instanceof Float) {
+                out.write(FLOAT);
+                out.writeFloat(((Float) object).floatValue());
+            } else if (object instanceof Double) {
+                out.write(DOUBLE);
+                out.writeDouble(((Double) object).doubleValue());
+            } else if (object instanceof BigDecimal) {
+                BigDecimal value = (BigDecimal) object;
+                out.write(BIG_DECIMAL);
+                writeVarInt(value.scale());
+                writeBytes(value.unscaledValue().toByteArray());
+            } else if (object instanceof BigInteger) {
+                out.write(BIG_INTEGER);
+                writeBytes(((BigInteger) object).toByteArray());
+            } else if (object instanceof java.sql.Timestamp) {
+                java.sql.Timestamp value = (java.sql.Timestamp) object;
+                out.write(TIMESTAMP);
+                out.writeLong(value.getTime());
+                writeVarInt(value.getNanos());
+            } else if (object instanceof java.sql.Date) {
+                out.write(SQL_DATE);
+                out.writeLong(((java.sql.Date) object).getTime());
+            } else if (object instanceof java.sql.Time) {
+                out.write(SQL_TIME);
+                out.writeLong(((java.sql.Time) object).getTime());
+            } else if (object instanceof java.util.Date && object.getClass() == java.util.Date.class) {
+                out.write(DATE);
+                out.writeLong(((java.util.Date) object).getTime());
+            } else if (object instanceof Locale) {
+                out.write(LOCALE);
+                writeString(object.toString());
+            } else if (object instanceof TimeZone) {
+                out.write(TIME_ZONE);
+                writeString(((TimeZone) object).getID());
+            } else if (object instanceof byte[]) {
+                out.write(BYTE_ARRAY);
+                writeBytes((byte[]) object);
+            } else if (object instanceof GenericEntity) {
+                // GenericPK before GenericValue, only the entity name and the field values are kept
+                GenericEntity value = (GenericEntity) object;
+                out.write(value instanceof GenericPK ? GENERIC_PK : GENERIC_VALUE);
+                writeString(value.getEntityName());
+                Map<String, Object> fields = value.getAllFields();
+                writeVarInt(fields.size());
+                for (Map.Entry<String, Object> entry: fields.entrySet()) {
+                    writeString(entry.getKey());
+                    writeObject(entry.getValue());
+                }
+            } else if (object instanceof Collection<?> && collectionType(object) != 0) {
+                Collection<?> value = (Collection<?>) object;
+                out.write(collectionType(object));
+                writeVarInt(value.size());
+                for (Object element: value) {
+                    writeObject(element);
+                }
+            } else if (object instanceof Map<?, ?> && mapType(object) != 0) {
+                Map<?, ?> value = (Map<?, ?>) object;
+                out.write(mapType(object));
+                writeVarInt(value.size());
+                for (Map.Entry<?, ?> entry: value.entrySet()) {
+                    writeObject(entry.getKey());
+                    writeObject(entry.getValue());
+                }
+            } else if (object instanceof Serializable) {
+                byte[] objBytes = UtilObject.getBytes(object);
+                if (objBytes == null) {
+                    throw new SerializeException("Unable to serialize object; null byte array returned");
+                }
+                out.write(SERIALIZABLE);
+                writeBytes(objBytes);
+            } else {
+                throw new SerializeException("Cannot serialize object of class " + object.getClass().getName());
+            }
+        }
+
+        /**
+         * Returns the type of a collection, or 0 for the ones that are Java serialized to keep their class;
+         * like in XmlSerializer, other collections are read back as a LinkedList.
+         */
+        private static int collectionType(Object object) {
+            if (object instanceof ArrayList<?>) {
+                return ARRAY_LIST;
+            } else if (object instanceof LinkedList<?>) {
+                return LINKED_LIST;
+            } else if (object instanceof Vector<?>) {
+                return 0;
+            } else if (object instanceof TreeSet<?>) {
+                return TREE_SET;
+            } else if (object instanceof LinkedHashSet<?>) {
+                return LINKED_HASH_SET;
+            } else if (object instanceof HashSet<?>) {
+                return HASH_SET;
+            }
+            return COLLECTION;
+        }
+
+        /**
+         * Returns the type of a map, or 0 for the ones that are Java serialized to keep their class; like in
+         * XmlSerializer, other maps are read back as a HashMap.
+         */
+        private static int mapType(Object object) {
+            if (object instanceof LinkedHashMap<?, ?>) {
+                return LINKED_HASH_MAP;
+            } else if (object instanceof HashMap<?, ?>) {
+                return HASH_MAP;
+            } else if (object instanceof Hashtable<?, ?>) {
+                return 0;
+            } else if (object instanceof TreeMap<?, ?>) {
+                return TREE_MAP;
+            }
+            return MAP;
+        }
+
+        private void writeString(String value) throws IOException {
+            Integer index = strings.get(value);
+            if (index != null) {
+                out.write(STRING_REF);
+                writeVarInt(index.intValue());
+                return;
+            }
+            strings.put(value, Integer.valueOf(strings.size()));
+            out.write(STRING);
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeBytes(byte[] value) throws IOException {
+            writeVarInt(value.length);
+            out.write(value);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final Delegator delegator;
+        private final List<String> strings = new ArrayList<String>();
+
+        private Reader(InputStream in, Delegator delegator) {
+            this.in = new DataInputStream(in);
+            this.delegator = delegator;
+        }
+
+        private Object readObject() throws SerializeException, IOException {
+            int type = in.read();
+            switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+            case STRING_REF:
+                return readString(type);
+            case BOOLEAN_TRUE:
+                return Boolean.TRUE;
+            case BOOLEAN_FALSE:
+                return Boolean.FALSE;
+            case INTEGER:
+                return Integer.valueOf(in.readInt());
+            case LONG:
+                return Long.valueOf(in.readLong());
+            case FLOAT:
+                return Float.valueOf(in.readFloat());
+            case DOUBLE:
+                return Double.valueOf(in.readDouble());
+            case BIG_DECIMAL:
+                int scale = readVarInt();
+                return new BigDecimal(new BigInteger(readBytes()), scale);
+            case BIG_INTEGER:
+                return new BigInteger(readBytes());
+            case TIMESTAMP:
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+                timestamp.setNanos(readVarInt());
+                return timestamp;
+            case SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case SQL_TIME:
+                return new java.sql.Time(in.readLong());
+            case DATE:
+                return new java.util.Date(in.readLong());
+            case LOCALE:
+                return UtilMisc.parseLocale(readString(in.read()));
+            case TIME_ZONE:
+                return TimeZone.getTimeZone(readString(in.read()));
+            case BYTE_ARRAY:
+                return readBytes();
+            case GENERIC_VALUE:
+            case GENERIC_PK:
+                return readGenericEntity(type);
+            case ARRAY_LIST:
+                return readElements(new ArrayList<Object>());
+            case LINKED_LIST:
+            case COLLECTION:
+                return readElements(new LinkedList<Object>());
+            case HASH_SET:
+                return readElements(new HashSet<Object>());
+            case LINKED_HASH_SET:
+                return readElements(new LinkedHashSet<Object>());
+            case TREE_SET:
+                return readElements(new TreeSet<Object>());
+            case HASH_MAP:
+            case MAP:
+                return readEntries(new HashMap<Object, Object>());
+            case LINKED_HASH_MAP:
+                return readEntries(new LinkedHashMap<Object, Object>());
+            case TREE_MAP:
+                return readEntries(new TreeMap<Object, Object>());
+            case SERIALIZABLE:
+                Object obj = UtilObject.getObject(readBytes());
+                if (obj == null) {
+                    throw new SerializeException("Problem deserializing object from byte array");
+                }
+                return obj;
+            case -1:
+                throw new SerializeException("Serialized content is truncated");
+            default:
+                throw new SerializeException("Unknown type [" + type + "] in serialized content");
+            }
+        }
+
+        private GenericEntity readGenericEntity(int type) throws SerializeException, IOException {
+            if (delegator == null) {
+                throw new SerializeException("Cannot deserialize entity values without a delegator");
+            }
+            String entityName = readString(in.read());
+            int size = readVarInt();
+            Map<String, Object> fields = new HashMap<String, Object>();
+            for (int i = 0; i < size; i++) {
+                String name = readString(in.read());
+                fields.put(name, readObject());
+            }
+            try {
+                if (type == GENERIC_PK) {
+                    return delegator.makePK(entityName, fields);
+                }
+                return delegator.makeValue(entityName, fields);
+            } catch (IllegalArgumentException e) {
+                throw new SerializeException("Cannot deserialize value of entity [" + entityName + "]", e);
+            }
+        }
+
+        private Collection<Object> readElements(Collection<Object> value) throws SerializeException, IOException {
+            int size = readVarInt();
+            for (int i = 0; i < size; i++) {
+                value.add(readObject());
+            }
+            return value;
+        }
+
+        private Map<Object, Object> readEntries(Map<Object, Object> value) throws SerializeException, IOException {
+            int size = readVarInt();
+            for (int i = 0; i < size; i++) {
+                Object key = readObject();
+                value.put(key, readObject());
+            }
+            return value;
+        }
+
+        private String readString(int type) throws SerializeException, IOException {
+            if (type == STRING_REF) {
+                int index = readVarInt();
+                if (index >= strings.size()) {
+                    throw new SerializeException("Unknown string reference [" + index + "] in serialized content");
+                }
+                return strings.get(index);
+            } else if (type != STRING) {
+                throw new SerializeException("Expected a String in serialized content, found type [" + type + "]");
+            }
+            String value = new String(readBytes(), StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        private byte[] readBytes() throws IOException {
+            int length = readVarInt();
+            if (length < 0) {
+                throw new IOException("Malformed length in serialized content");
+            }
+            byte[] value = new byte[length];
+            in.readFully(value);
+            return value;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length integer in serialized content");
+        }
+    }
+}
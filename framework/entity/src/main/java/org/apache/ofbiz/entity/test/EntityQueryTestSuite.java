@@ -20,6 +20,8 @@ package org.apache.ofbiz.entity.test;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilMisc;
@@ -315,6 +317,43 @@ public class EntityQueryTestSuite extends EntityTestCase {
         }
     }
     
+    /*
+     * queryStream(): This method is used to get the results as a Stream read through a forward-only cursor.
+     * assert 1: Compared the records streamed with the records of queryList().
+     * assert 2: Compared the ids read from a reused value with the ids of queryList().
+     */
+    public void testQueryStream() throws GenericEntityException {
+        List<GenericValue> testingTypes = new LinkedList<GenericValue>();
+        testingTypes.add(delegator.makeValue("TestingType", "testingTypeId", "queryStream-1", "description", "Stream One"));
+        testingTypes.add(delegator.makeValue("TestingType", "testingTypeId", "queryStream-2", "description", "Stream Two"));
+        testingTypes.add(delegator.makeValue("TestingType", "testingTypeId", "queryStream-3", "description", "Stream Three"));
+        delegator.storeAll(testingTypes);
+
+        EntityCondition condition = EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "queryStream-%");
+        List<GenericValue> listByEntityQuery = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("testingTypeId").queryList();
+        boolean transactionStarted = false;
+        try {
+            transactionStarted = TransactionUtil.begin();
+
+            List<GenericValue> streamedValues;
+            try (Stream<GenericValue> stream = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("testingTypeId").queryStream()) {
+                streamedValues = stream.collect(Collectors.<GenericValue>toList());
+            }
+            assertEquals("queryStream(): Records streamed matched", listByEntityQuery, streamedValues);
+
+            List<String> streamedIds;
+            try (Stream<GenericValue> stream = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("testingTypeId").fetchSize(1).queryStream(true)) {
+                streamedIds = stream.map(value -> value.getString("testingTypeId")).collect(Collectors.<String>toList());
+            }
+            assertEquals("queryStream(true): Ids read from the reused value matched", EntityUtil.getFieldListFromEntityList(listByEntityQuery, "testingTypeId", false), streamedIds);
+
+            TransactionUtil.commit(transactionStarted);
+        } catch (GenericEntityException e) {
+            TransactionUtil.rollback(transactionStarted, "Transaction is Rolled Back", e);
+            throw e;
+        }
+    }
+
     /*
      * cursorForwardOnly(): Indicate that the ResultSet object's cursor may move only forward
      * assert: Compared first record found by both the iterator.
@@ -24,8 +24,10 @@ import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
@@ -41,26 +43,36 @@ import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.Observable;
 import org.apache.ofbiz.base.util.Observer;
 import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.DelegatorFactory;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.ConditionCacheStatistics;
+import org.apache.ofbiz.entity.cache.EntityDependencies;
+import org.apache.ofbiz.entity.cache.EntityReadRecorder;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.serialize.BinarySerializer;
+import org.apache.ofbiz.entity.serialize.XmlSerializer;
 import org.apache.ofbiz.entity.testtools.EntityTestCase;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityKeyset;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntitySaxReader;
+import org.apache.ofbiz.entity.util.EntityStoreOptions;
+import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.entity.util.SequenceUtil;
 
 public class EntityTestSuite extends EntityTestCase {
@@ -307,6 +319,174 @@ public class EntityTestSuite extends EntityTestCase {
         assertEquals("View retrieved from cache has the correct member description", "New Testing Subtype #Cache-3", testValue.getString("subtypeDescription"));
     }
 
+    /*
+     * Tests that a change to a row only clears the cached lists that can include the row
+     */
+    public void testEntityListCacheInvalidation() throws Exception {
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-CACHE-%"));
+        delegator.create("TestingType", "testingTypeId", "TEST-CACHE-4", "description", "Testing Type #Cache-4");
+        GenericValue testValue = delegator.create("TestingType", "testingTypeId", "TEST-CACHE-5", "description", "Testing Type #Cache-5");
+        EntityCondition condition4 = EntityCondition.makeCondition("testingTypeId", EntityOperator.EQUALS, "TEST-CACHE-4");
+        EntityCondition condition5 = EntityCondition.makeCondition("testingTypeId", EntityOperator.IN, UtilMisc.toList("TEST-CACHE-5", "TEST-CACHE-6"));
+        assertEquals("TEST-CACHE-4 list", 1, EntityQuery.use(delegator).from("TestingType").where(condition4).cache(true).queryList().size());
+        assertEquals("TEST-CACHE-5 list", 1, EntityQuery.use(delegator).from("TestingType").where(condition5).cache(true).queryList().size());
+        ConditionCacheStatistics statistics = delegator.getCache().getListCacheStatistics("TestingType");
+        long hits = statistics.getHitCount();
+        long invalidations = statistics.getInvalidationCount();
+        testValue = (GenericValue) testValue.clone();
+        testValue.put("description", "New Testing Type #Cache-5");
+        testValue.store();
+        assertTrue("Changed row invalidated its list", statistics.getInvalidationCount() > invalidations);
+        EntityQuery.use(delegator).from("TestingType").where(condition4).cache(true).queryList();
+        assertEquals("List of another primary key kept in the cache", hits + 1, statistics.getHitCount());
+        List<GenericValue> testList = EntityQuery.use(delegator).from("TestingType").where(condition5).cache(true).queryList();
+        assertEquals("List of the changed row read again", "New Testing Type #Cache-5", testList.get(0).getString("description"));
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-CACHE-%"));
+    }
+
+    /*
+     * Tests finding several values by primary key at once, partly from the primary key cache
+     */
+    public void testFindAllByPrimaryKeys() throws Exception {
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-MULTI-PK-%"));
+        delegator.create("TestingType", "testingTypeId", "TEST-MULTI-PK-1", "description", "Testing Type #Multi-1");
+        delegator.create("TestingType", "testingTypeId", "TEST-MULTI-PK-2", "description", "Testing Type #Multi-2");
+        // put the first one in the cache
+        EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-MULTI-PK-1").cache(true).queryOne();
+        List<GenericPK> primaryKeys = UtilMisc.toList(delegator.makePK("TestingType", "testingTypeId", "TEST-MULTI-PK-2"),
+                delegator.makePK("TestingType", "testingTypeId", "TEST-MULTI-PK-3"), delegator.makePK("TestingType", "testingTypeId", "TEST-MULTI-PK-1"));
+        List<GenericValue> values = delegator.findAllByPrimaryKeys("TestingType", primaryKeys, true);
+        assertEquals("Found the existing values", 2, values.size());
+        assertEquals("Values are in the order of the keys", "TEST-MULTI-PK-2", values.get(0).getString("testingTypeId"));
+        assertEquals("Values are in the order of the keys", "TEST-MULTI-PK-1", values.get(1).getString("testingTypeId"));
+        assertEquals("Fetched value was put in the cache", "Testing Type #Multi-2", delegator.getFromPrimaryKeyCache(primaryKeys.get(0)).getString("description"));
+        delegator.create("TestingType", "testingTypeId", "TEST-MULTI-PK-3", "description", "Testing Type #Multi-3");
+        values = delegator.findAllByPrimaryKeys("TestingType", primaryKeys, true);
+        assertEquals("Creating a value clears its negative cache entry", 3, values.size());
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-MULTI-PK-%"));
+    }
+
+    /*
+     * Tests that a result registered with the reads it recorded is only invalidated by changes to the rows it read
+     */
+    public void testEntityDependencies() throws Exception {
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-DEPEND-%"));
+        delegator.create("TestingType", "testingTypeId", "TEST-DEPEND-1", "description", "Testing Type #Depend-1");
+        GenericValue otherValue = delegator.create("TestingType", "testingTypeId", "TEST-DEPEND-2", "description", "Testing Type #Depend-2");
+        final List<Object> invalidated = new ArrayList<Object>();
+        EntityDependencies.Listener listener = new EntityDependencies.Listener() {
+            public void invalidate(Object key) {
+                invalidated.add(key);
+            }
+        };
+        EntityReadRecorder reads = EntityReadRecorder.start();
+        GenericValue testValue;
+        try {
+            testValue = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-DEPEND-1").queryOne();
+        } finally {
+            reads.stop();
+        }
+        assertTrue("Read recorded", reads.isTrackable());
+        assertFalse("Recording stopped", EntityReadRecorder.isRecording());
+        assertTrue("Result registered", EntityDependencies.register(reads, "TEST-DEPEND", listener));
+        otherValue.set("description", "New Testing Type #Depend-2");
+        otherValue.store();
+        assertTrue("Change to another row ignored", invalidated.isEmpty());
+        testValue.set("description", "New Testing Type #Depend-1");
+        testValue.store();
+        assertEquals("Change to the row read invalidates the result", UtilMisc.toList("TEST-DEPEND"), invalidated);
+        testValue.store();
+        assertEquals("Result invalidated once", 1, invalidated.size());
+
+        // a change made while recording prevents the registration
+        reads = EntityReadRecorder.start();
+        try {
+            EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-DEPEND-1").queryOne();
+            testValue.store();
+        } finally {
+            reads.stop();
+        }
+        assertFalse("Result changed while recording not registered", EntityDependencies.register(reads, "TEST-DEPEND", listener));
+
+        // a result dropped by its cache, here the cleared entity.QueryCount cache, is unregistered
+        UtilCache.clearCache("entity.QueryCount");
+        int registrationCount = EntityDependencies.getRegistrationCount();
+        EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-DEPEND-1").queryCachedCount();
+        assertEquals("Count registered", registrationCount + 1, EntityDependencies.getRegistrationCount());
+        UtilCache.clearCache("entity.QueryCount");
+        assertEquals("Cleared count unregistered", registrationCount, EntityDependencies.getRegistrationCount());
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-DEPEND-%"));
+    }
+
+    /*
+     * Tests reading pages by keyset, forward, backward and from the end, and the cached count
+     */
+    public void testKeysetPagination() throws Exception {
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-KEYSET-%"));
+        for (int i = 0; i < 7; i++) {
+            // two rows per description, the primary key orders them
+            delegator.create("TestingType", "testingTypeId", "TEST-KEYSET-" + i, "description", "Keyset " + (i / 2));
+        }
+        EntityCondition condition = EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-KEYSET-%");
+        EntityKeyset.Page page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("-description").queryKeysetPage(3);
+        assertEquals("First page", UtilMisc.toList("TEST-KEYSET-6", "TEST-KEYSET-4", "TEST-KEYSET-5"), EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+        assertFalse("No page before the first one", page.hasPrevious());
+        assertTrue("Page after the first one", page.hasNext());
+        page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("-description").seekAfter(page.getLastCursor()).queryKeysetPage(3);
+        assertEquals("Second page", UtilMisc.toList("TEST-KEYSET-2", "TEST-KEYSET-3", "TEST-KEYSET-0"), EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+        assertTrue("Page before the second one", page.hasPrevious());
+        assertTrue("Page after the second one", page.hasNext());
+        EntityKeyset.Page lastPage = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("-description").seekAfter(page.getLastCursor()).queryKeysetPage(3);
+        assertEquals("Last page", UtilMisc.toList("TEST-KEYSET-1"), EntityUtil.getFieldListFromEntityList(lastPage.getData(), "testingTypeId", false));
+        assertFalse("No page after the last one", lastPage.hasNext());
+        page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("-description").seekBefore(lastPage.getFirstCursor()).queryKeysetPage(3);
+        assertEquals("Page before the last one", UtilMisc.toList("TEST-KEYSET-2", "TEST-KEYSET-3", "TEST-KEYSET-0"), EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+        page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("-description").seekLast().queryKeysetPage(3);
+        assertEquals("Last rows", UtilMisc.toList("TEST-KEYSET-3", "TEST-KEYSET-0", "TEST-KEYSET-1"), EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+        assertFalse("No page after the last rows", page.hasNext());
+        page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("-description").queryKeysetPage(1, 3);
+        assertEquals("Second page by index", UtilMisc.toList("TEST-KEYSET-2", "TEST-KEYSET-3", "TEST-KEYSET-0"), EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+
+        assertEquals("Count", 7, EntityQuery.use(delegator).from("TestingType").where(condition).queryCachedCount());
+        delegator.create("TestingType", "testingTypeId", "TEST-KEYSET-7", "description", "Keyset 3");
+        assertEquals("Count after a row is created", 8, EntityQuery.use(delegator).from("TestingType").where(condition).queryCachedCount());
+        delegator.removeByCondition("TestingType", condition);
+    }
+
+    /*
+     * Tests that keyset pages reach the rows with a null value in a nullable order-by field, which are ordered last
+     */
+    public void testKeysetPaginationNullValues() throws Exception {
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-KSNULL-%"));
+        String[] descriptions = {"Keyset B", null, "Keyset A", null, null};
+        for (int i = 0; i < descriptions.length; i++) {
+            delegator.create("TestingType", "testingTypeId", "TEST-KSNULL-" + i, "description", descriptions[i]);
+        }
+        EntityCondition condition = EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-KSNULL-%");
+        List<String> expected = UtilMisc.toList("TEST-KSNULL-2", "TEST-KSNULL-0", "TEST-KSNULL-1", "TEST-KSNULL-3", "TEST-KSNULL-4");
+        List<String> expectedDescending = UtilMisc.toList("TEST-KSNULL-0", "TEST-KSNULL-2", "TEST-KSNULL-1", "TEST-KSNULL-3", "TEST-KSNULL-4");
+        for (String orderBy: UtilMisc.toList("description", "-description")) {
+            List<String> forward = new LinkedList<String>();
+            EntityKeyset.Page page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy(orderBy).queryKeysetPage(2);
+            forward.addAll(EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+            while (page.hasNext()) {
+                page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy(orderBy).seekAfter(page.getLastCursor()).queryKeysetPage(2);
+                forward.addAll(EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+            }
+            assertEquals("Forward pages ordered by " + orderBy, orderBy.startsWith("-") ? expectedDescending : expected, forward);
+
+            List<String> backward = new LinkedList<String>();
+            page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy(orderBy).seekLast().queryKeysetPage(2);
+            backward.addAll(0, EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+            while (page.hasPrevious()) {
+                page = EntityQuery.use(delegator).from("TestingType").where(condition).orderBy(orderBy).seekBefore(page.getFirstCursor()).queryKeysetPage(2);
+                backward.addAll(0, EntityUtil.getFieldListFromEntityList(page.getData(), "testingTypeId", false));
+            }
+            assertEquals("Backward pages ordered by " + orderBy, forward, backward);
+        }
+        delegator.removeByCondition("TestingType", condition);
+    }
+
     /*
      * Tests XML serialization by serializing/deserializing a GenericValue
      */
@@ -328,6 +508,34 @@ public class EntityTestSuite extends EntityTestCase {
         TransactionUtil.rollback(transBegin, null, null);
     }
 
+    /*
+     * Tests binary serialization by serializing/deserializing a context with a GenericValue, plain and compressed
+     */
+    public void testBinarySerialization() throws Exception {
+        GenericValue testValue = delegator.makeValue("TestingType", "testingTypeId", "TEST-BIN", "description", "Binary Testing Type");
+        Timestamp now = UtilDateTime.nowTimestamp();
+        now.setNanos(123456789);
+        Map<String, Object> context = new HashMap<String, Object>();
+        context.put("value", testValue);
+        context.put("pk", testValue.getPrimaryKey());
+        context.put("amount", new BigDecimal("1234.5600"));
+        context.put("now", now);
+        context.put("values", UtilMisc.toList(testValue, testValue, null));
+        context.put("locale", Locale.FRANCE);
+        for (boolean compress: new boolean[] { false, true }) {
+            String serialized = BinarySerializer.serialize(context, compress);
+            assertTrue("Serialized content is recognized", BinarySerializer.isBinary(serialized));
+            Map<String, Object> newContext = UtilGenerics.cast(BinarySerializer.deserialize(serialized, delegator));
+            assertEquals("Deserialized context has the same entries", context, newContext);
+            GenericValue newValue = (GenericValue) newContext.get("value");
+            assertEquals("Deserialized value has the correct description", "Binary Testing Type", newValue.getString("description"));
+            assertEquals("Deserialized BigDecimal keeps its scale", 4, ((BigDecimal) newContext.get("amount")).scale());
+            assertEquals("Deserialized Timestamp keeps its nanos", 123456789, ((Timestamp) newContext.get("now")).getNanos());
+            assertTrue("Deserialized primary key is a GenericPK", newContext.get("pk") instanceof GenericPK);
+        }
+        assertFalse("XML content is not taken for binary", BinarySerializer.isBinary(XmlSerializer.serialize(context)));
+    }
+
     protected long flushAndRecreateTree(String descriptionPrefix) throws Exception {
         //
         // The tree has a root, the root has level1max children.
@@ -734,6 +942,71 @@ public class EntityTestSuite extends EntityTestCase {
         }
     }
 
+    /*
+     * This test will create a large number of unique items with JDBC batches, then update half of them the same way
+     */
+    public void testCreateManyAndStoreAllBatched() throws Exception {
+        try {
+            List<GenericValue> newValues = new LinkedList<GenericValue>();
+            for (int i = 0; i < TEST_COUNT; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T4-", i), "description", "created"));
+            }
+            int created = delegator.storeAll(newValues, new EntityStoreOptions(false, 100));
+            assertEquals("Test to create " + TEST_COUNT + " in batches", TEST_COUNT, created);
+
+            List<GenericValue> changedValues = new LinkedList<GenericValue>();
+            for (int i = 0; i < TEST_COUNT; i++) {
+                changedValues.add(delegator.makeValue("Testing", "testingId", getTestId("T4-", i), "description", i % 2 == 0 ? "updated" : "created"));
+            }
+            int updated = delegator.storeAll(changedValues, new EntityStoreOptions(false, 100));
+            assertEquals("Test to update only the changed values in batches", TEST_COUNT / 2, updated);
+            long updatedCount = EntityQuery.use(delegator)
+                                           .from("Testing")
+                                           .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T4-%"), EntityCondition.makeCondition("description", "updated"))
+                                           .queryCount();
+            assertEquals("Test the batched updates were written", TEST_COUNT / 2, updatedCount);
+        } finally {
+            List<GenericValue> newlyCreatedValues = EntityQuery.use(delegator)
+                                                               .from("Testing")
+                                                               .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T4-%"))
+                                                               .queryList();
+            delegator.removeAll(newlyCreatedValues);
+        }
+    }
+
+    /*
+     * This test will create a number of unique items with JDBC batches, then check a batch with an existing key fails as a whole
+     */
+    public void testCreateAllBatched() throws Exception {
+        try {
+            List<GenericValue> newValues = new LinkedList<GenericValue>();
+            for (int i = 0; i < TEST_COUNT; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T5-", i), "description", "created"));
+            }
+            int created = delegator.createAll(newValues);
+            assertEquals("Test to create " + TEST_COUNT + " in batches", TEST_COUNT, created);
+
+            List<GenericValue> duplicateValues = new LinkedList<GenericValue>();
+            duplicateValues.add(delegator.makeValue("Testing", "testingId", getTestId("T5-", (int) TEST_COUNT), "description", "created"));
+            duplicateValues.add(delegator.makeValue("Testing", "testingId", getTestId("T5-", 0), "description", "updated"));
+            try {
+                delegator.createAll(duplicateValues);
+                fail("createAll with an existing primary key must fail");
+            } catch (GenericEntityException e) {
+                // expected
+            }
+            assertEquals("Test the existing value was not updated", "created",
+                    EntityQuery.use(delegator).from("Testing").where("testingId", getTestId("T5-", 0)).queryOne().getString("description"));
+            assertNull("Test the batch was rolled back", EntityQuery.use(delegator).from("Testing").where("testingId", getTestId("T5-", (int) TEST_COUNT)).queryOne());
+        } finally {
+            List<GenericValue> newlyCreatedValues = EntityQuery.use(delegator)
+                                                               .from("Testing")
+                                                               .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"))
+                                                               .queryList();
+            delegator.removeAll(newlyCreatedValues);
+        }
+    }
+
     /*
      * This test will use the large number of unique items from above and test the EntityListIterator looping through the list
      */
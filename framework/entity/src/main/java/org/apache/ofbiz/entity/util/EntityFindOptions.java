@@ -54,6 +54,12 @@ public class EntityFindOptions implements java.io.Serializable {
     /** OFFSET option */
     protected int offset = -1;
 
+    /** FOR UPDATE option */
+    protected boolean forUpdate = false;
+
+    /** SKIP LOCKED option of FOR UPDATE */
+    protected boolean skipLocked = false;
+
     /** Default constructor. Defaults are as follows:
      *      specifyTypeAndConcur = true
      *      resultSetType = TYPE_FORWARD_ONLY
@@ -172,4 +178,26 @@ public class EntityFindOptions implements java.io.Serializable {
     public void setOffset(int offset) {
         this.offset = offset;
     }
+
+    /** Get the FOR UPDATE option. */
+    public boolean getForUpdate() {
+        return forUpdate;
+    }
+
+    /** Specifies whether the rows selected are locked with FOR UPDATE until the end of the transaction. */
+    public void setForUpdate(boolean forUpdate) {
+        this.forUpdate = forUpdate;
+    }
+
+    /** Get the SKIP LOCKED option. */
+    public boolean getSkipLocked() {
+        return skipLocked;
+    }
+
+    /** Specifies whether a FOR UPDATE select skips the rows locked by other transactions instead of waiting for them;
+     *      only for the datasources with the supports-skip-locked attribute set
+     */
+    public void setSkipLocked(boolean skipLocked) {
+        this.skipLocked = skipLocked;
+    }
 }
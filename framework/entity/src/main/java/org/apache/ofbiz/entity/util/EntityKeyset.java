@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.util;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityFieldValue;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.condition.OrderByItem;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+
+/**
+ * Keyset (or seek) pagination: instead of skipping the rows of the previous pages, a page is read
+ * with a condition on the order-by fields that starts right after (or before) the last row seen,
+ * so reading any page costs the same and no scrollable cursor is kept open between pages.
+ * <p>
+ * The primary key fields are added to the order-by fields so that the order is total. Null values
+ * of nullable fields are ordered last, whatever the direction of the field, with an explicit
+ * NULLS LAST so the order does not depend on the database, and the seek condition has IS NULL
+ * branches to reach them.
+ *
+ * @see EntityQuery#queryKeysetPage(int)
+ */
+public final class EntityKeyset {
+
+    public static final String module = EntityKeyset.class.getName();
+
+    /** The cursor before which the last page ends, no row has this cursor */
+    public static final String LAST_PAGE_CURSOR = "~";
+
+    // the values are encoded with the URL safe Base64 alphabet, so that request parameter canonicalization leaves them alone
+    private static final String CURSOR_SEPARATOR = ".";
+    // not in the Base64 alphabet either
+    private static final String NULL_CURSOR_VALUE = "~";
+
+    private final List<String> fieldNames;
+    private final List<Boolean> descending;
+    private final List<Boolean> nullable;
+
+    private EntityKeyset(List<String> fieldNames, List<Boolean> descending, List<Boolean> nullable) {
+        this.fieldNames = Collections.unmodifiableList(fieldNames);
+        this.descending = Collections.unmodifiableList(descending);
+        this.nullable = Collections.unmodifiableList(nullable);
+    }
+
+    /**
+     * Makes the keyset of a query on an entity ordered by the order-by fields. Only plain fields, with
+     * an optional direction, can be used; case insensitive orderings can not be sought.
+     * @throws IllegalArgumentException if an order-by item is not a field of the entity
+     */
+    public static EntityKeyset make(ModelEntity modelEntity, List<String> orderBy) {
+        List<String> fieldNames = new ArrayList<String>();
+        List<Boolean> descending = new ArrayList<Boolean>();
+        List<Boolean> nullable = new ArrayList<Boolean>();
+        if (orderBy != null) {
+            for (String orderByString: orderBy) {
+                if (UtilValidate.isEmpty(orderByString)) {
+                    continue;
+                }
+                OrderByItem orderByItem = OrderByItem.parse(orderByString);
+                if (!(orderByItem.getValue() instanceof EntityFieldValue)) {
+                    throw new IllegalArgumentException("Cannot use order-by [" + orderByString + "] of entity [" + modelEntity.getEntityName() + "] for keyset pagination, only fields can be sought");
+                }
+                String fieldName = ((EntityFieldValue) orderByItem.getValue()).getFieldName();
+                ModelField modelField = modelEntity.getField(fieldName);
+                if (modelField == null) {
+                    throw new IllegalArgumentException("Cannot use order-by [" + orderByString + "] for keyset pagination, [" + fieldName + "] is not a field of entity [" + modelEntity.getEntityName() + "]");
+                }
+                if (!fieldNames.contains(fieldName)) {
+                    fieldNames.add(fieldName);
+                    descending.add(orderByItem.getDescending());
+                    nullable.add(!modelField.getIsPk() && !modelField.getIsNotNull());
+                }
+            }
+        }
+        // the primary key makes the order total, so that no row is skipped or repeated between pages
+        for (String pkFieldName: modelEntity.getPkFieldNames()) {
+            if (!fieldNames.contains(pkFieldName)) {
+                fieldNames.add(pkFieldName);
+                descending.add(Boolean.FALSE);
+                nullable.add(Boolean.FALSE);
+            }
+        }
+        if (fieldNames.isEmpty()) {
+            throw new IllegalArgumentException("Cannot use keyset pagination on entity [" + modelEntity.getEntityName() + "], it has no order-by nor primary key fields");
+        }
+        return new EntityKeyset(fieldNames, descending, nullable);
+    }
+
+    /** Returns the names of the fields the rows are ordered and sought by */
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /** Returns the order-by list to read a page, reverse to read the page before a row */
+    public List<String> getOrderBy(boolean reverse) {
+        List<String> orderBy = new ArrayList<String>(fieldNames.size());
+        for (int i = 0; i < fieldNames.size(); i++) {
+            String orderByString = descending.get(i).booleanValue() != reverse ? "-" + fieldNames.get(i) : fieldNames.get(i);
+            if (nullable.get(i).booleanValue()) {
+                orderByString += reverse ? " " + OrderByItem.NULLS_FIRST : " " + OrderByItem.NULLS_LAST;
+            }
+            orderBy.add(orderByString);
+        }
+        return orderBy;
+    }
+
+    /**
+     * Makes the condition selecting the rows after the row, or before it when backward is true:
+     * <code>(a &gt; :a) OR (a = :a AND b &gt; :b) OR ...</code>, with &lt; for descending fields.
+     * As nulls are ordered last, a nullable field adds <code>a IS NULL</code> to the rows after a
+     * value, and the rows before a null value are <code>a IS NOT NULL</code>.
+     */
+    public EntityCondition makeSeekCondition(Map<String, ? extends Object> row, boolean backward) {
+        List<EntityCondition> alternatives = new ArrayList<EntityCondition>(fieldNames.size());
+        List<EntityCondition> equalities = new ArrayList<EntityCondition>(fieldNames.size());
+        for (int i = 0; i < fieldNames.size(); i++) {
+            String fieldName = fieldNames.get(i);
+            Object value = row.get(fieldName);
+            if (value == null && !nullable.get(i).booleanValue()) {
+                throw new IllegalArgumentException("Cannot seek a row with no value for keyset field [" + fieldName + "]");
+            }
+            EntityCondition beyond;
+            if (value == null) {
+                // no row comes after a null, all the values come before it
+                beyond = backward ? EntityCondition.makeCondition(fieldName, EntityOperator.NOT_EQUAL, null) : null;
+            } else {
+                if (descending.get(i).booleanValue() != backward) {
+                    beyond = EntityCondition.makeCondition(fieldName, EntityOperator.LESS_THAN, value);
+                } else {
+                    beyond = EntityCondition.makeCondition(fieldName, EntityOperator.GREATER_THAN, value);
+                }
+                if (!backward && nullable.get(i).booleanValue()) {
+                    beyond = EntityCondition.makeCondition(beyond, EntityOperator.OR, EntityCondition.makeCondition(fieldName, EntityOperator.EQUALS, null));
+                }
+            }
+            if (beyond != null) {
+                List<EntityCondition> conditions = new ArrayList<EntityCondition>(equalities);
+                conditions.add(beyond);
+                alternatives.add(conditions.size() == 1 ? conditions.get(0) : EntityCondition.makeCondition(conditions));
+            }
+            // a null value makes an IS NULL comparison
+            equalities.add(EntityCondition.makeCondition(fieldName, EntityOperator.EQUALS, value));
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : EntityCondition.makeCondition(alternatives, EntityOperator.OR);
+    }
+
+    /**
+     * Encodes the keyset values of the row as a string that can be passed as a request parameter,
+     * see {@link #parseCursor(String, ModelEntity, Delegator)}.
+     * @return the cursor, or null if the row has no value for one of the not-null fields
+     */
+    public String makeCursor(Map<String, ? extends Object> row) {
+        StringBuilder cursor = new StringBuilder();
+        for (int i = 0; i < fieldNames.size(); i++) {
+            String fieldName = fieldNames.get(i);
+            Object value = row.get(fieldName);
+            if (value == null && !nullable.get(i).booleanValue()) {
+                return null;
+            }
+            if (i > 0) {
+                cursor.append(CURSOR_SEPARATOR);
+            }
+            if (value == null) {
+                cursor.append(NULL_CURSOR_VALUE);
+                continue;
+            }
+            try {
+                String stringValue;
+                if (value instanceof Timestamp) {
+                    // keep the fraction of second, the converter drops what is beyond the millisecond
+                    stringValue = value.toString();
+                } else if (value instanceof BigDecimal) {
+                    stringValue = ((BigDecimal) value).toPlainString();
+                } else {
+                    stringValue = (String) ObjectType.simpleTypeConvert(value, "String", null, null);
+                }
+                cursor.append(Base64.getUrlEncoder().withoutPadding().encodeToString(stringValue.getBytes(StandardCharsets.UTF_8)));
+            } catch (GeneralException e) {
+                throw new IllegalArgumentException("Cannot make a cursor from the value of keyset field [" + fieldName + "]: " + e.getMessage(), e);
+            }
+        }
+        return cursor.toString();
+    }
+
+    /**
+     * Decodes a cursor made by {@link #makeCursor(Map)} into the keyset values of the row it was made
+     * from, converted to the types of the fields.
+     * @throws IllegalArgumentException if the cursor was not made for this keyset
+     */
+    public Map<String, Object> parseCursor(String cursor, ModelEntity modelEntity, Delegator delegator) {
+        String[] values = cursor.split("\\" + CURSOR_SEPARATOR, -1);
+        if (values.length != fieldNames.size()) {
+            throw new IllegalArgumentException("Cursor [" + cursor + "] does not match the keyset fields " + fieldNames + " of entity [" + modelEntity.getEntityName() + "]");
+        }
+        Map<String, Object> row = new HashMap<String, Object>();
+        for (int i = 0; i < values.length; i++) {
+            if (NULL_CURSOR_VALUE.equals(values[i])) {
+                row.put(fieldNames.get(i), null);
+                continue;
+            }
+            // an invalid Base64 value throws an IllegalArgumentException too
+            String value = new String(Base64.getUrlDecoder().decode(values[i]), StandardCharsets.UTF_8);
+            Object fieldValue = modelEntity.convertFieldValue(fieldNames.get(i), value, delegator);
+            if (fieldValue instanceof Timestamp) {
+                // the converter reads the fraction of second as milliseconds
+                fieldValue = Timestamp.valueOf(value);
+            }
+            row.put(fieldNames.get(i), fieldValue);
+        }
+        return row;
+    }
+
+    /**
+     * A page of rows read with keyset pagination, with the cursors of its first and last rows to
+     * read the pages before and after it.
+     */
+    public static final class Page implements Iterable<GenericValue> {
+        private final List<GenericValue> data;
+        private final boolean hasPrevious;
+        private final boolean hasNext;
+        private final String firstCursor;
+        private final String lastCursor;
+
+        Page(EntityKeyset keyset, List<GenericValue> data, boolean hasPrevious, boolean hasNext) {
+            this.data = data;
+            this.hasPrevious = hasPrevious;
+            this.hasNext = hasNext;
+            this.firstCursor = data.isEmpty() ? null : keyset.makeCursor(data.get(0));
+            this.lastCursor = data.isEmpty() ? null : keyset.makeCursor(data.get(data.size() - 1));
+        }
+
+        /** Returns the rows of the page, in the order of the query */
+        public List<GenericValue> getData() {
+            return data;
+        }
+
+        /** Returns true if there may be rows before the page */
+        public boolean hasPrevious() {
+            return hasPrevious;
+        }
+
+        /** Returns true if there are rows after the page */
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        /** Returns the cursor to read the page before this one, or null */
+        public String getFirstCursor() {
+            return firstCursor;
+        }
+
+        /** Returns the cursor to read the page after this one, or null */
+        public String getLastCursor() {
+            return lastCursor;
+        }
+
+        @Override
+        public Iterator<GenericValue> iterator() {
+            return data.iterator();
+        }
+    }
+}
@@ -25,6 +25,11 @@ import java.sql.SQLException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralRuntimeException;
@@ -172,7 +177,11 @@ public class EntityListIterator implements AutoCloseable, ListIterator<GenericVa
 
         GenericValue value = GenericValue.create(modelEntity);
         value.setDelegator(this.delegator);
+        value.useCompactFields();
+        return fillGenericValue(value);
+    }
 
+    private GenericValue fillGenericValue(GenericValue value) throws GenericEntityException {
         for (int j = 0; j < selectFields.size(); j++) {
             ModelField curField = selectFields.get(j);
 
@@ -346,6 +355,76 @@ public class EntityListIterator implements AutoCloseable, ListIterator<GenericVa
         }
     }
 
+    /**
+     * Returns the remaining results as a sequential Stream that reads them one at a time from the
+     * cursor. This iterator is closed when the results are exhausted, when reading a result fails and
+     * when the Stream is closed, so use the Stream in a try-with-resources block when it may not be
+     * consumed to the end.
+     *
+     * @param reuseValue if true the same GenericValue is refilled for each result instead of creating
+     *        a new one; a result must then not be kept or modified once the next one is read
+     */
+    public Stream<GenericValue> stream(boolean reuseValue) {
+        return StreamSupport.stream(new ResultSpliterator(reuseValue), false).onClose(new Runnable() {
+            public void run() {
+                if (!closed) {
+                    try {
+                        close();
+                    } catch (GenericEntityException e) {
+                        throw new GeneralRuntimeException("Error closing the EntityListIterator", e);
+                    }
+                }
+            }
+        });
+    }
+
+    private final class ResultSpliterator extends Spliterators.AbstractSpliterator<GenericValue> {
+        private final boolean reuseValue;
+        private GenericValue value = null;
+
+        private ResultSpliterator(boolean reuseValue) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.reuseValue = reuseValue;
+        }
+
+        public boolean tryAdvance(Consumer<? super GenericValue> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (!resultSet.next()) {
+                    close();
+                    return false;
+                }
+                if (reuseValue && value != null) {
+                    value.clear();
+                    fillGenericValue(value);
+                } else {
+                    value = currentGenericValue();
+                }
+            } catch (SQLException e) {
+                closeOnError(e);
+                throw new GeneralRuntimeException("Error getting the next result", e);
+            } catch (GenericEntityException e) {
+                closeOnError(e);
+                throw new GeneralRuntimeException("Error creating GenericValue", e);
+            }
+            action.accept(value);
+            return true;
+        }
+
+        private void closeOnError(Exception e) {
+            if (!closed) {
+                try {
+                    close();
+                } catch (GenericEntityException e1) {
+                    Debug.logError(e1, "Error auto-closing EntityListIterator on error, so info below for more info on original error; close error: " + e1.toString(), module);
+                }
+                Debug.logWarning("Warning: auto-closed EntityListIterator because of exception: " + e.toString(), module);
+            }
+        }
+    }
+
     /** Returns the index of the next result, but does not guarantee that there will be a next result */
     public int nextIndex() {
         try {
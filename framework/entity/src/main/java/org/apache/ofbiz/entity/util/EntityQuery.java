@@ -21,23 +21,32 @@ package org.apache.ofbiz.entity.util;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.base.util.collections.PagedList;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.EntityDependencies;
+import org.apache.ofbiz.entity.cache.EntityReadRecorder;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.config.model.Datasource;
+import org.apache.ofbiz.entity.config.model.EntityConfig;
 import org.apache.ofbiz.entity.model.DynamicViewEntity;
+import org.apache.ofbiz.entity.model.ModelEntity;
 
 /**
  * Used to setup various options for and subsequently execute entity queries.
@@ -52,6 +61,39 @@ public class EntityQuery {
 
     public static final String module = EntityQuery.class.getName();
 
+    private static final UtilCache<List<Object>, CachedCount> countCache = UtilCache.createUtilCache("entity.QueryCount", 1000, 60000);
+
+    private static final EntityDependencies.Listener countInvalidator = new EntityDependencies.Listener() {
+        public void invalidate(Object key) {
+            countCache.remove(UtilGenerics.<List<Object>>cast(key));
+        }
+    };
+
+    static {
+        // unregisters the counts removed from the cache for another reason, like their expiry
+        countCache.addListener(new CacheListener<List<Object>, CachedCount>() {
+            public void noteKeyRemoval(UtilCache<List<Object>, CachedCount> cache, List<Object> key, CachedCount oldValue) {
+                EntityDependencies.unregister(key, countInvalidator);
+            }
+
+            public void noteKeyAddition(UtilCache<List<Object>, CachedCount> cache, List<Object> key, CachedCount newValue) {
+            }
+
+            public void noteKeyUpdate(UtilCache<List<Object>, CachedCount> cache, List<Object> key, CachedCount newValue, CachedCount oldValue) {
+            }
+        });
+    }
+
+    private static final class CachedCount {
+        private final long count;
+        private final EntityReadRecorder reads;
+
+        private CachedCount(long count, EntityReadRecorder reads) {
+            this.count = count;
+            this.reads = reads;
+        }
+    }
+
     private Delegator delegator;
     private String entityName = null;
     private DynamicViewEntity dynamicViewEntity = null;
@@ -63,11 +105,15 @@ public class EntityQuery {
     private Integer fetchSize = null;
     private Integer maxRows = null;
     private Boolean distinct = null;
+    private boolean forUpdate = false;
+    private boolean skipLocked = false;
     private EntityCondition havingEntityCondition = null;
     private boolean filterByDate = false;
     private Timestamp filterByDateMoment;
     private List<String> filterByFieldNames = null;
-
+    private Map<String, ? extends Object> seekRow = null;
+    private String seekCursor = null;
+    private boolean seekBackward = false;
 
 
     /** Construct an EntityQuery object for use against the specified Delegator
@@ -288,6 +334,27 @@ public class EntityQuery {
         return this;
     }
 
+    /** Specifies that the rows selected are locked until the end of the transaction (SELECT ... FOR UPDATE).
+     * 
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery forUpdate() {
+        this.forUpdate = true;
+        return this;
+    }
+
+    /** Specifies that the rows selected are locked until the end of the transaction, skipping the rows locked by other
+     * transactions instead of waiting for them (SELECT ... FOR UPDATE SKIP LOCKED). Only for the datasources with the
+     * supports-skip-locked attribute set.
+     * 
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery forUpdateSkipLocked() {
+        this.forUpdate = true;
+        this.skipLocked = true;
+        return this;
+    }
+
     /** Specifies whether results should be read from the cache (or written to the cache if the results have not yet been cached)
      * 
      * @return this EntityQuery object, to enable chaining
@@ -372,6 +439,65 @@ public class EntityQuery {
         return this;
     }
 
+    /** Specifies the row after which the page read by {@link #queryKeysetPage(int)} starts, in the order of the query.
+     * 
+     * @param row - The last row of the previous page, or any map with the values of its keyset fields
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery seekAfter(Map<String, ? extends Object> row) {
+        return seek(row, null, false);
+    }
+
+    /** Specifies the row after which the page read by {@link #queryKeysetPage(int)} starts, in the order of the query.
+     * 
+     * @param cursor - The last cursor of the previous page, see {@link EntityKeyset.Page#getLastCursor()}
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery seekAfter(String cursor) {
+        return seek(null, cursor, false);
+    }
+
+    /** Specifies the row before which the page read by {@link #queryKeysetPage(int)} ends, in the order of the query.
+     * 
+     * @param row - The first row of the next page, or any map with the values of its keyset fields
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery seekBefore(Map<String, ? extends Object> row) {
+        return seek(row, null, true);
+    }
+
+    /** Specifies the row before which the page read by {@link #queryKeysetPage(int)} ends, in the order of the query.
+     * 
+     * @param cursor - The first cursor of the next page, see {@link EntityKeyset.Page#getFirstCursor()}
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery seekBefore(String cursor) {
+        return seek(null, cursor, true);
+    }
+
+    /** Specifies that the page read by {@link #queryKeysetPage(int)} is the last one, ending with the last row of the query.
+     * 
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery seekLast() {
+        return seek(null, null, true);
+    }
+
+    private EntityQuery seek(Map<String, ? extends Object> row, String cursor, boolean backward) {
+        if (EntityKeyset.LAST_PAGE_CURSOR.equals(cursor)) {
+            cursor = null;
+            backward = true;
+        } else if (row == null && UtilValidate.isEmpty(cursor)) {
+            // nothing to seek, read from the start
+            cursor = null;
+            backward = false;
+        }
+        this.seekRow = row;
+        this.seekCursor = cursor;
+        this.seekBackward = backward;
+        return this;
+    }
+
     /** Executes the EntityQuery and returns a list of results
      * 
      * @return Returns a List of GenericValues representing the results of the query
@@ -399,6 +525,57 @@ public class EntityQuery {
         }
     }
 
+    /** Executes the EntityQuery and returns the results as a Stream, see {@link #queryStream(boolean)}
+     * 
+     * @return Returns a Stream of new GenericValues, one for each result
+     */
+    public Stream<GenericValue> queryStream() throws GenericEntityException {
+        return queryStream(false);
+    }
+
+    /** Executes the EntityQuery and returns the results as a Stream read through a forward-only cursor,
+     * so that large results are not held in memory by the JDBC driver or copied into a List. Unless a
+     * fetch size was set on this query the stream-fetch-size of the datasource is used. Some drivers,
+     * like the PostgreSQL one, only use a cursor inside a transaction.
+     * 
+     * NOTE:  THE STREAM HOLDS A DATABASE CONNECTION UNTIL ALL RESULTS HAVE BEEN READ OR IT IS CLOSED,
+     *        SO USE IT IN A TRY-WITH-RESOURCES BLOCK WHEN IT MAY NOT BE CONSUMED TO THE END.
+     * 
+     * @param reuseValue - If true the same GenericValue is refilled for each result; a result must then not be kept or modified once the next one is read
+     * @return Returns a Stream of the GenericValues representing the results of the query
+     */
+    public Stream<GenericValue> queryStream(boolean reuseValue) throws GenericEntityException {
+        if (useCache) {
+            Debug.logWarning("Call to queryStream() with cache, ignoring cache", module);
+        }
+        EntityFindOptions findOptions = makeEntityFindOptions();
+        findOptions.setResultSetType(EntityFindOptions.TYPE_FORWARD_ONLY);
+        if (fetchSize == null) {
+            findOptions.setFetchSize(getStreamFetchSize());
+        }
+        EntityListIterator iterator;
+        if (dynamicViewEntity == null) {
+            iterator = delegator.find(entityName, makeWhereCondition(false), havingEntityCondition, fieldsToSelect, orderBy, findOptions);
+        } else {
+            iterator = delegator.findListIteratorByCondition(dynamicViewEntity, makeWhereCondition(false), havingEntityCondition, fieldsToSelect, orderBy, findOptions);
+        }
+        return iterator.stream(reuseValue);
+    }
+
+    private int getStreamFetchSize() {
+        String realEntityName = dynamicViewEntity == null ? entityName : dynamicViewEntity.getOneRealEntityName();
+        Datasource datasource = realEntityName == null ? null : EntityConfig.getDatasource(delegator.getEntityHelperName(realEntityName));
+        if (datasource != null) {
+            if (datasource.getStreamFetchSize() > 0) {
+                return datasource.getStreamFetchSize();
+            }
+            if (datasource.getResultFetchSize() > 0) {
+                return datasource.getResultFetchSize();
+            }
+        }
+        return 1000;
+    }
+
     /** Executes the EntityQuery and returns the first result
      * 
      * @return GenericValue representing the first result record from the query
@@ -443,6 +620,132 @@ public class EntityQuery {
         return delegator.findCountByCondition(entityName, makeWhereCondition(false), havingEntityCondition, makeEntityFindOptions());
     }
 
+    /** Executes the EntityQuery and returns the result count, caching it for the next queries with the same conditions.
+     * 
+     * The count is dropped from the cache when a row of the entity that may match the conditions is changed through the
+     * entity engine, and otherwise when it expires (see the entity.QueryCount settings in cache.properties), so for an entity
+     * that is never cached, or a query filtered by date, it is an estimate that may be up to the expire time old.
+     * 
+     * @return The count of the values matching the query, as of when it was cached
+     */
+    public long queryCachedCount() throws GenericEntityException {
+        if (dynamicViewEntity != null) {
+            return queryCount();
+        }
+        List<Object> key = Arrays.<Object>asList(delegator.getDelegatorName(), entityName, whereEntityCondition, havingEntityCondition, fieldsToSelect, distinct,
+                filterByDate ? filterByFieldNames : null, filterByDateMoment);
+        CachedCount cachedCount = countCache.get(key);
+        if (cachedCount == null) {
+            EntityReadRecorder reads = EntityReadRecorder.start();
+            try {
+                cachedCount = new CachedCount(queryCount(), reads);
+            } finally {
+                reads.stop();
+            }
+            countCache.put(key, cachedCount);
+            if (reads.isTrackable() && !EntityDependencies.register(reads, key, countInvalidator)) {
+                countCache.remove(key);
+            }
+        } else if (EntityReadRecorder.isRecording()) {
+            EntityReadRecorder.recordReads(cachedCount.reads);
+        }
+        return cachedCount.count;
+    }
+
+    /** Executes the EntityQuery with keyset pagination and returns the first page of results, or the one sought, see {@link #queryKeysetPage(int, int)}.
+     * 
+     * @param pageSize - The maximum number of results in the page
+     * @return The page of results, with the cursors to read the pages before and after it
+     */
+    public EntityKeyset.Page queryKeysetPage(int pageSize) throws GenericEntityException {
+        return queryKeysetPage(0, pageSize);
+    }
+
+    /** Executes the EntityQuery with keyset pagination and returns a page of results, see {@link EntityKeyset}.
+     * 
+     * The page starts after the row given to {@link #seekAfter(Map)}, or ends before the row given to {@link #seekBefore(Map)},
+     * or is the last page after {@link #seekLast()}. Only the rows of the page are read, with a LIMIT where the datasource has
+     * an offset-style, so reading a page does not get slower with the number of pages before it. When no row was sought the
+     * rows of the pages before viewIndex are skipped, like with {@link #queryPagedList(int, int)}; this is meant for jumping to
+     * a page, the pages around it should then be read by seeking their first or last row.
+     * 
+     * @param viewIndex - The index of the page to read when no row was sought
+     * @param viewSize - The maximum number of results in the page
+     * @return The page of results, with the cursors to read the pages before and after it
+     */
+    public EntityKeyset.Page queryKeysetPage(int viewIndex, int viewSize) throws GenericEntityException {
+        if (useCache) {
+            Debug.logWarning("Call to queryKeysetPage() with cache, ignoring cache", module);
+        }
+        ModelEntity modelEntity = dynamicViewEntity == null ? delegator.getModelEntity(entityName) : dynamicViewEntity.makeModelViewEntity(delegator);
+        if (modelEntity == null) {
+            throw new GenericEntityException("Could not find entity definition for entity name [" + entityName + "]");
+        }
+        EntityKeyset keyset = EntityKeyset.make(modelEntity, orderBy);
+        Map<String, ? extends Object> row = seekRow;
+        if (row == null && seekCursor != null) {
+            row = keyset.parseCursor(seekCursor, modelEntity, delegator);
+        }
+        int skip = row == null && !seekBackward ? viewIndex * viewSize : 0;
+        EntityCondition condition = makeWhereCondition(false);
+        if (row != null) {
+            EntityCondition seekCondition = keyset.makeSeekCondition(row, seekBackward);
+            condition = condition == null ? seekCondition : EntityCondition.makeCondition(condition, seekCondition);
+        }
+        Set<String> keysetFieldsToSelect = null;
+        if (fieldsToSelect != null) {
+            // the keyset fields are needed to make the cursors of the page
+            keysetFieldsToSelect = new HashSet<String>(fieldsToSelect);
+            keysetFieldsToSelect.addAll(keyset.getFieldNames());
+        }
+        // one row more than the page tells if there is a page after it
+        EntityFindOptions findOptions = makeEntityFindOptions();
+        findOptions.setResultSetType(EntityFindOptions.TYPE_FORWARD_ONLY);
+        findOptions.setOffset(skip);
+        findOptions.setLimit(viewSize + 1);
+        if (skip > 0 && !hasOffsetStyle()) {
+            // the datasource does not skip the rows
+            findOptions.setMaxRows(skip + viewSize + 1);
+        } else {
+            findOptions.setMaxRows(viewSize + 1);
+            skip = 0;
+        }
+        EntityListIterator iterator;
+        if (dynamicViewEntity == null) {
+            iterator = delegator.find(entityName, condition, havingEntityCondition, keysetFieldsToSelect, keyset.getOrderBy(seekBackward), findOptions);
+        } else {
+            iterator = delegator.findListIteratorByCondition(dynamicViewEntity, condition, havingEntityCondition, keysetFieldsToSelect, keyset.getOrderBy(seekBackward), findOptions);
+        }
+        List<GenericValue> results = new ArrayList<GenericValue>(viewSize + 1);
+        try {
+            GenericValue value;
+            while ((value = iterator.next()) != null) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    results.add(value);
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+        boolean more = results.size() > viewSize;
+        if (more) {
+            results.remove(viewSize);
+        }
+        if (seekBackward) {
+            Collections.reverse(results);
+            return new EntityKeyset.Page(keyset, results, more, row != null);
+        }
+        return new EntityKeyset.Page(keyset, results, row != null || viewIndex > 0, more);
+    }
+
+    private boolean hasOffsetStyle() {
+        String realEntityName = dynamicViewEntity == null ? entityName : dynamicViewEntity.getOneRealEntityName();
+        Datasource datasource = realEntityName == null ? null : EntityConfig.getDatasource(delegator.getEntityHelperName(realEntityName));
+        return datasource != null && UtilValidate.isNotEmpty(datasource.getOffsetStyle());
+    }
+
     private List<GenericValue> query(EntityFindOptions efo) throws GenericEntityException {
         EntityFindOptions findOptions = null;
         if (efo == null) {
@@ -478,6 +781,8 @@ public class EntityQuery {
         if (distinct != null) {
             findOptions.setDistinct(distinct);
         }
+        findOptions.setForUpdate(forUpdate);
+        findOptions.setSkipLocked(skipLocked);
         return findOptions;
     }
 
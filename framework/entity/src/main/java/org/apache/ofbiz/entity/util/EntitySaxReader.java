@@ -32,6 +32,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+
+import javax.transaction.Transaction;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -88,6 +90,7 @@ public class EntitySaxReader extends DefaultHandler {
     private long numberSkipped = 0;
 
     private int valuesPerWrite = 100;
+    private int batchSize = 1;
     private int valuesPerMessage = 1000;
     private int transactionTimeout = 7200;
     private boolean useTryInsertMethod = false;
@@ -144,6 +147,18 @@ public class EntitySaxReader extends DefaultHandler {
         this.createDummyFks = createDummyFks;
     }
 
+    /**
+     * Sets the JDBC batch size of the writes, see {@link EntityStoreOptions#setBatchSize}. The default of 1
+     * stores the values one by one, in document order with their entity ECA rules. With batches the
+     * rules of a batch run before its rows are written, and the foreign keys of every value are checked;
+     * a failing batch is written again value by value, in a separate transaction that is rolled back,
+     * to report the value that fails. The batch size can also be set with the batch-size attribute of
+     * the entity-engine-xml element.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
     public void setCheckDataOnly(boolean checkDataOnly) {
         this.checkDataOnly = checkDataOnly;
     }
@@ -254,11 +269,55 @@ public class EntitySaxReader extends DefaultHandler {
     private void writeValues(List<GenericValue> valuesToWrite) throws GenericEntityException {
         if (this.checkDataOnly) {
             EntityDataAssert.checkValueList(valuesToWrite, delegator, this.getMessageList());
+        } else if (batchSize > 1) {
+            try {
+                delegator.storeAll(valuesToWrite, new EntityStoreOptions(createDummyFks, batchSize));
+            } catch (GenericEntityException e) {
+                GenericEntityException valueError = findFailingValue(valuesToWrite, e);
+                throw valueError != null ? valueError : e;
+            }
         } else {
             delegator.storeAll(valuesToWrite, new EntityStoreOptions(createDummyFks));
         }
     }
 
+    /**
+     * Writes the values of a failed batch again one by one to find the value that fails, as the batch
+     * does not tell it. The transaction of the reader is marked rollback-only by the failure, on some
+     * databases it cannot run another statement, so the values are written in a new transaction
+     * that is always rolled back.
+     * @return the error of the first failing value, or null if it could not be found
+     */
+    private GenericEntityException findFailingValue(List<GenericValue> values, GenericEntityException batchError) {
+        Transaction parentTransaction = null;
+        try {
+            parentTransaction = TransactionUtil.suspend();
+            boolean beganTransaction = TransactionUtil.begin(transactionTimeout);
+            try {
+                for (GenericValue value : values) {
+                    try {
+                        delegator.storeAll(UtilMisc.toList(value), new EntityStoreOptions(createDummyFks));
+                    } catch (GenericEntityException e) {
+                        return new GenericEntityException("Error storing value " + value.getPrimaryKey() + " of a batch of " + values.size() + " values", e);
+                    }
+                }
+            } finally {
+                TransactionUtil.rollback(beganTransaction, "Rolling back the values written to find the failing value of a batch", batchError);
+            }
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Unable to write the values of a failed batch one by one", module);
+        } finally {
+            if (parentTransaction != null) {
+                try {
+                    TransactionUtil.resume(parentTransaction);
+                } catch (GenericTransactionException e) {
+                    Debug.logError(e, "Unable to resume the transaction of the entity data reader", module);
+                }
+            }
+        }
+        return null;
+    }
+
     private void countValue(boolean skip, boolean exist) {
         if (skip) numberSkipped++;
         else if (Action.DELETE == currentAction) numberDeleted++;
@@ -483,6 +542,16 @@ public class EntitySaxReader extends DefaultHandler {
                 this.setCreateDummyFks("true".equalsIgnoreCase(dummyFk.toString()));
             }
 
+            // check the batch-size of the writes
+            CharSequence batchSize = attributes.getValue("batch-size");
+            if (batchSize != null) {
+                try {
+                    this.setBatchSize(Integer.parseInt(batchSize.toString()));
+                } catch (NumberFormatException e) {
+                    Debug.logWarning("Invalid batch-size [" + batchSize + "], writing the values with a batch size of " + this.batchSize, module);
+                }
+            }
+
             return;
         }
 
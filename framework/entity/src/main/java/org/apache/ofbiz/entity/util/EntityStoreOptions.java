@@ -27,8 +27,11 @@ public class EntityStoreOptions implements java.io.Serializable {
     /** Option for creating missing referenced values as dummy (pk-only) entries */
     protected boolean createDummyFks = false;
 
+    /** Option for the number of values of the same entity written with one JDBC batch */
+    protected int batchSize = 1;
+
     /**
-     * Default constructor. Defaults are as follows: createDummyFks = false
+     * Default constructor. Defaults are as follows: createDummyFks = false, batchSize = 1
      */
     public EntityStoreOptions() {
     }
@@ -42,6 +45,17 @@ public class EntityStoreOptions implements java.io.Serializable {
         this.createDummyFks = createDummyFks;
     }
 
+    /**
+     * Optional constructor with options to specify.
+     * 
+     * @param createDummyFks
+     * @param batchSize
+     */
+    public EntityStoreOptions(boolean createDummyFks, int batchSize) {
+        this.createDummyFks = createDummyFks;
+        this.batchSize = batchSize;
+    }
+
     /**
      * If true, missing entries in FK referenced entities will be created while storing the given GenericValues.
      * 
@@ -59,4 +73,24 @@ public class EntityStoreOptions implements java.io.Serializable {
     public void setCreateDummyFks(boolean createDummyFks) {
         this.createDummyFks = createDummyFks;
     }
+
+    /**
+     * Number of consecutive values of the same entity checked for existence with one query and inserted or
+     * updated with one JDBC batch; 1 or less stores the GenericValues one by one.
+     * 
+     * @return int
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of consecutive values of the same entity checked for existence with one query and inserted or
+     * updated with one JDBC batch; 1 or less stores the GenericValues one by one.
+     * 
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
 }
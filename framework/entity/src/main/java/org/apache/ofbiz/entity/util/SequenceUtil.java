@@ -22,11 +22,19 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.transaction.Transaction;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
@@ -38,6 +46,10 @@ import org.apache.ofbiz.entity.transaction.TransactionUtil;
 
 /**
  * Sequence Utility to get unique sequences from named sequence banks
+ * <p>
+ * Ids are handed out from the current bank with an atomic counter, so the common path takes no lock. When the
+ * bank gets low the next one is reserved in the background, and the bank size grows (up to the
+ * sequence-bank-max-size of the entity) when banks are drained faster than once per second.
  */
 public class SequenceUtil {
 
@@ -91,11 +103,20 @@ public class SequenceUtil {
 
         if (bank == null) {
             long bankSize = SequenceBank.defaultBankSize;
-            if (seqModelEntity != null && seqModelEntity.getSequenceBankSize() != null) {
-                bankSize = seqModelEntity.getSequenceBankSize().longValue();
-                if (bankSize > SequenceBank.maxBankSize) bankSize = SequenceBank.maxBankSize;
+            long maxSize = SequenceBank.maxBankSize;
+            boolean adaptive = false;
+            if (seqModelEntity != null) {
+                if (seqModelEntity.getSequenceBankMaxSize() != null) {
+                    maxSize = seqModelEntity.getSequenceBankMaxSize().longValue();
+                    adaptive = true;
+                }
+                if (seqModelEntity.getSequenceBankSize() != null) {
+                    bankSize = seqModelEntity.getSequenceBankSize().longValue();
+                }
             }
-            bank = new SequenceBank(seqName, bankSize);
+            if (bankSize > maxSize) bankSize = maxSize;
+            if (bankSize < 1) bankSize = 1;
+            bank = new SequenceBank(seqName, bankSize, adaptive ? maxSize : bankSize, maxSize);
             SequenceBank bankFromCache = sequences.putIfAbsent(seqName, bank);
             bank = bankFromCache != null ? bankFromCache : bank;
         }
@@ -103,24 +124,50 @@ public class SequenceUtil {
         return bank;
     }
 
+    /** An immutable range of reserved ids; ids are taken by moving the shared counter forward. */
+    private static final class SeqRange {
+        private final AtomicLong next;
+        private final long max;
+        private final long lowWaterMark;
+
+        private SeqRange(long start, long max) {
+            this.next = new AtomicLong(start);
+            this.max = max;
+            this.lowWaterMark = start + ((max - start) * 3) / 4;
+        }
+    }
+
     private class SequenceBank {
         public static final long defaultBankSize = 10;
         public static final long maxBankSize = 5000;
         public static final long startSeqId = 10000;
+        /** Banks drained faster than this make the next bank twice as large */
+        public static final long growIntervalMillis = 1000;
+        /** Banks lasting longer than this make the next bank half as large */
+        public static final long shrinkIntervalMillis = 60000;
 
         private final String seqName;
-        private final long bankSize;
+        private final long minBankSize;
+        private final long growLimit;
+        private final long maxSize;
         private final String updateForLockStatement;
         private final String selectSequenceStatement;
 
-        private long curSeqId;
-        private long maxSeqId;
+        private final AtomicReference<SeqRange> current = new AtomicReference<SeqRange>(new SeqRange(0, 0));
+        private final AtomicReference<Future<SeqRange>> prefetch = new AtomicReference<Future<SeqRange>>();
+        /** Held while the current range is being replaced */
+        private final Object rangeLock = new Object();
+        /** Held while a new range is reserved in the database, guards bankSize and lastFillTime */
+        private final Object fillLock = new Object();
+        private long bankSize;
+        private long lastFillTime = 0;
 
-        private SequenceBank(String seqName, long bankSize) {
+        private SequenceBank(String seqName, long bankSize, long growLimit, long maxSize) {
             this.seqName = seqName;
-            curSeqId = 0;
-            maxSeqId = 0;
+            this.minBankSize = bankSize;
             this.bankSize = bankSize;
+            this.growLimit = growLimit;
+            this.maxSize = maxSize;
             updateForLockStatement = "UPDATE " + SequenceUtil.this.tableName + " SET " + SequenceUtil.this.idColName + "=" + SequenceUtil.this.idColName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
             selectSequenceStatement = "SELECT " + SequenceUtil.this.idColName + " FROM " + SequenceUtil.this.tableName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
         }
@@ -131,28 +178,109 @@ public class SequenceUtil {
                 stagger = (long)Math.ceil(Math.random() * staggerMax);
                 if (stagger == 0) stagger = 1;
             }
-            synchronized (this) {
-                if ((curSeqId + stagger) <= maxSeqId) {
-                    long retSeqId = curSeqId;
-                    curSeqId += stagger;
+            while (true) {
+                SeqRange range = current.get();
+                long retSeqId = range.next.getAndAdd(stagger);
+                if ((retSeqId + stagger) <= range.max) {
+                    if (retSeqId >= range.lowWaterMark && stagger == 1) {
+                        startPrefetch();
+                    }
                     return retSeqId;
-                } else {
-                    fillBank(stagger);
-                    if ((curSeqId + stagger) <= maxSeqId) {
-                        long retSeqId = curSeqId;
-                        curSeqId += stagger;
-                        return retSeqId;
-                    } else {
+                }
+                synchronized (rangeLock) {
+                    if (current.get() != range) {
+                        // another thread already switched to a new range
+                        continue;
+                    }
+                    SeqRange newRange = takePrefetch();
+                    if (newRange == null || (newRange.next.get() + stagger) > newRange.max) {
+                        newRange = fillBank(stagger);
+                    }
+                    if (newRange == null) {
                         Debug.logError("Fill bank failed, returning null", module);
                         return null;
                     }
+                    current.set(newRange);
+                }
+            }
+        }
+
+        private void refresh(long staggerMax) {
+            synchronized (rangeLock) {
+                Future<SeqRange> pending = prefetch.getAndSet(null);
+                if (pending != null) {
+                    pending.cancel(false);
                 }
+                SeqRange newRange = fillBank(staggerMax);
+                current.set(newRange != null ? newRange : new SeqRange(0, 0));
             }
         }
 
-        private synchronized void refresh(long staggerMax) {
-            this.curSeqId = this.maxSeqId;
-            this.fillBank(staggerMax);
+        private void startPrefetch() {
+            if (prefetch.get() != null) {
+                return;
+            }
+            FutureTask<SeqRange> task = new FutureTask<SeqRange>(new Callable<SeqRange>() {
+                public SeqRange call() {
+                    return fillBank(1);
+                }
+            });
+            if (prefetch.compareAndSet(null, task)) {
+                try {
+                    ExecutionPool.GLOBAL_BATCH.execute(task);
+                } catch (RejectedExecutionException e) {
+                    Debug.logWarning("Could not prefetch sequence bank for [" + this.seqName + "]: " + e.toString(), module);
+                    prefetch.compareAndSet(task, null);
+                }
+            }
+        }
+
+        private SeqRange takePrefetch() {
+            Future<SeqRange> pending = prefetch.getAndSet(null);
+            if (pending == null) {
+                return null;
+            }
+            try {
+                return pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Debug.logError(e, "Error prefetching sequence bank for [" + this.seqName + "]", module);
+            }
+            return null;
+        }
+
+        private SeqRange fillBank(long stagger) {
+            synchronized (fillLock) {
+                long bankSize;
+                if (stagger > 1) {
+                    // NOTE: could use staggerMax for this, but if that is done it would be easier to guess a valid next id without a brute force attack
+                    bankSize = stagger * defaultBankSize;
+                } else {
+                    long now = System.currentTimeMillis();
+                    if (lastFillTime > 0) {
+                        if (now - lastFillTime < growIntervalMillis) {
+                            this.bankSize = Math.min(this.bankSize * 2, growLimit);
+                        } else if (now - lastFillTime > shrinkIntervalMillis) {
+                            this.bankSize = Math.max(this.bankSize / 2, minBankSize);
+                        }
+                    }
+                    lastFillTime = now;
+                    bankSize = this.bankSize;
+                }
+
+                if (bankSize > maxSize) {
+                    bankSize = maxSize;
+                }
+
+                Long curSeqId = reserveIds(bankSize);
+                if (curSeqId == null) {
+                    return null;
+                }
+                long maxSeqId = curSeqId + bankSize;
+                if (Debug.infoOn()) Debug.logInfo("Got bank of sequenced IDs for [" + this.seqName + "]; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize, module);
+                return new SeqRange(curSeqId, maxSeqId);
+            }
         }
 
         /*
@@ -163,22 +291,8 @@ public class SequenceUtil {
            3 - increment the sequence
            The three steps are executed in one dedicated database transaction.
          */
-        private void fillBank(long stagger) {
-            // no need to get a new bank, SeqIds available
-            if ((curSeqId + stagger) <= maxSeqId) {
-                return;
-            }
-
-            long bankSize = this.bankSize;
-            if (stagger > 1) {
-                // NOTE: could use staggerMax for this, but if that is done it would be easier to guess a valid next id without a brute force attack
-                bankSize = stagger * defaultBankSize;
-            }
-
-            if (bankSize > maxBankSize) {
-                bankSize = maxBankSize;
-            }
-
+        private Long reserveIds(long bankSize) {
+            long curSeqId = 0;
             Transaction suspendedTransaction = null;
             try {
                 suspendedTransaction = TransactionUtil.suspend();
@@ -256,9 +370,7 @@ public class SequenceUtil {
                         }
                     }
                 } catch (Exception e) {
-                    // reset the sequence fields and return (note: it would be better to throw an exception)
-                    curSeqId = 0;
-                    maxSeqId = 0;
+                    // return null to signal the failure (note: it would be better to throw an exception)
                     String errMsg = "General error in getting a sequenced ID";
                     Debug.logError(e, errMsg, module);
                     try {
@@ -266,31 +378,25 @@ public class SequenceUtil {
                     } catch (GenericTransactionException gte2) {
                         Debug.logError(gte2, "Unable to rollback transaction", module);
                     }
-                    return;
+                    return null;
                 }
             } catch (GenericTransactionException e) {
                 Debug.logError(e, "System Error suspending transaction in sequence util", module);
-                // reset the sequence fields and return (note: it would be better to throw an exception)
-                curSeqId = 0;
-                maxSeqId = 0;
-                return;
+                // return null to signal the failure (note: it would be better to throw an exception)
+                return null;
             } finally {
                 if (suspendedTransaction != null) {
                     try {
                         TransactionUtil.resume(suspendedTransaction);
                     } catch (GenericTransactionException e) {
                         Debug.logError(e, "Error resuming suspended transaction in sequence util", module);
-                        // reset the sequence fields and return (note: it would be better to throw an exception)
-                        curSeqId = 0;
-                        maxSeqId = 0;
-                        return;
+                        // return null to signal the failure (note: it would be better to throw an exception)
+                        return null;
                     }
                 }
             }
 
-            maxSeqId = curSeqId + bankSize;
-            if (Debug.infoOn()) Debug.logInfo("Got bank of sequenced IDs for [" + this.seqName + "]; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize, module);
+            return curSeqId;
         }
     }
 }
-
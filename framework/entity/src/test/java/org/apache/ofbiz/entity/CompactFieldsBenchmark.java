@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+
+/**
+ * Compares the HashMap and the compact field storage of GenericEntity: the heap used by a list of
+ * values read from the data source, and the time to read their fields by name.
+ * <p>
+ * Usage: <code>CompactFieldsBenchmark [values] [fields]</code>. The values have the given number of
+ * fields, three quarters of them set, which is typical for the rows of the larger entities such as
+ * Product or OrderHeader.
+ * <p>
+ * This is not run by the unit tests.
+ */
+public final class CompactFieldsBenchmark {
+
+    private CompactFieldsBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int valueCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int fieldCount = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        ModelEntity modelEntity = createModelEntity(fieldCount);
+        System.out.println("values " + valueCount + ", fields " + fieldCount);
+        for (int i = 0; i < 2; i++) {
+            for (boolean compact: new boolean[] { false, true }) {
+                long heapBefore = usedHeap();
+                List<GenericValue> values = createValues(modelEntity, valueCount, compact);
+                long heapAfter = usedHeap();
+                double nanosPerGet = readFields(modelEntity, values);
+                System.out.println(String.format("%-8s %,8d bytes/value  %6.2f ns/get", compact ? "compact" : "hashmap",
+                        (heapAfter - heapBefore) / valueCount, nanosPerGet));
+            }
+        }
+    }
+
+    private static ModelEntity createModelEntity(int fieldCount) {
+        ModelEntity modelEntity = new ModelEntity();
+        modelEntity.setEntityName("BenchmarkEntity");
+        for (int i = 0; i < fieldCount; i++) {
+            String type = i % 4 == 3 ? "date-time" : (i == 0 ? "id" : "name");
+            modelEntity.addField(ModelField.create(modelEntity, "field" + i, type, i == 0));
+        }
+        return modelEntity;
+    }
+
+    private static List<GenericValue> createValues(ModelEntity modelEntity, int valueCount, boolean compact) {
+        List<GenericValue> values = new ArrayList<GenericValue>(valueCount);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<ModelField> fields = modelEntity.getFieldsUnmodifiable();
+        for (int i = 0; i < valueCount; i++) {
+            GenericValue value = GenericValue.create(modelEntity);
+            if (compact) {
+                value.useCompactFields();
+            }
+            for (int j = 0; j < fields.size(); j++) {
+                if (j % 4 == 2) {
+                    continue;
+                }
+                ModelField field = fields.get(j);
+                value.dangerousSetNoCheckButFast(field, "date-time".equals(field.getType()) ? now : "V" + i + "-" + j);
+            }
+            value.setImmutable();
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static double readFields(ModelEntity modelEntity, List<GenericValue> values) {
+        List<String> fieldNames = modelEntity.getAllFieldNames();
+        long count = 0;
+        long found = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < 5; round++) {
+            for (GenericValue value: values) {
+                for (String fieldName: fieldNames) {
+                    if (value.get(fieldName) != null) {
+                        found++;
+                    }
+                    count++;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found < 0) {
+            System.out.println(found);
+        }
+        return (double) elapsed / count;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
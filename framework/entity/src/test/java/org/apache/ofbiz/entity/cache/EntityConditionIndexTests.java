@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.junit.Test;
+
+public class EntityConditionIndexTests {
+
+    private static Map<String, Object> row(String fieldName, Object value) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put(fieldName, value);
+        return row;
+    }
+
+    @Test
+    public void integralValuesMatchAcrossTypes() {
+        EntityConditionIndex<Object> index = new EntityConditionIndex<Object>(Collections.singleton("id"));
+        EntityCondition byInteger = EntityCondition.makeCondition("sequenceNum", Integer.valueOf(7));
+        EntityCondition byString = EntityCondition.makeCondition("sequenceNum", "8");
+        EntityCondition byList = EntityCondition.makeCondition("sequenceNum", EntityOperator.IN, Arrays.asList(Integer.valueOf(9), Long.valueOf(10)));
+        index.add(byInteger);
+        index.add(byString);
+        index.add(byList);
+
+        assertEquals(Collections.singleton(byInteger), index.getMatchCandidates(row("sequenceNum", Long.valueOf(7))));
+        assertEquals(Collections.singleton(byString), index.getMatchCandidates(row("sequenceNum", Long.valueOf(8))));
+        assertEquals(Collections.singleton(byList), index.getMatchCandidates(row("sequenceNum", Long.valueOf(9))));
+        assertEquals(Collections.singleton(byInteger), index.getChangeCandidates(row("sequenceNum", Long.valueOf(7)), null));
+        assertTrue(index.getMatchCandidates(row("sequenceNum", Long.valueOf(11))).isEmpty());
+    }
+
+    @Test
+    public void booleanValuesMatchIndicators() {
+        EntityConditionIndex<Object> index = new EntityConditionIndex<Object>(Collections.singleton("id"));
+        EntityCondition condition = EntityCondition.makeCondition("enabled", Boolean.TRUE);
+        index.add(condition);
+
+        assertEquals(Collections.singleton(condition), index.getMatchCandidates(row("enabled", "Y")));
+        assertTrue(index.getMatchCandidates(row("enabled", "N")).isEmpty());
+    }
+
+    @Test
+    public void otherValuesMatchAllConditions() {
+        EntityConditionIndex<Object> index = new EntityConditionIndex<Object>(Collections.singleton("id"));
+        EntityCondition condition = EntityCondition.makeCondition("amount", Integer.valueOf(5));
+        EntityCondition padded = EntityCondition.makeCondition("amount", "05");
+        index.add(condition);
+        index.add(padded);
+
+        // a decimal row value is not indexed, so the conditions on its field are all candidates
+        assertEquals(2, index.getMatchCandidates(row("amount", new BigDecimal("5.00"))).size());
+        assertEquals(2, index.getChangeCandidates(row("amount", Double.valueOf(5)), null).size());
+        // a string a database would convert to another number is not indexed
+        assertTrue(index.getMatchCandidates(row("amount", Long.valueOf(6))).contains(padded));
+        assertFalse(index.getMatchCandidates(row("amount", Long.valueOf(6))).contains(condition));
+    }
+}
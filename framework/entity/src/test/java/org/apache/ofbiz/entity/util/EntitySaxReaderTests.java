@@ -18,10 +18,17 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.util;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+import org.xml.sax.SAXException;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -63,4 +70,43 @@ public class EntitySaxReaderTests {
         verify(clonedDelegator).makeValue("EntityName");
         assertEquals(1, recordsProcessed);
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failedBatchIsStoredOneByOne() throws Exception {
+        Delegator delegator = mock(Delegator.class);
+        Delegator clonedDelegator = mock(Delegator.class);
+        GenericValue goodValue = mock(GenericValue.class);
+        GenericValue badValue = mock(GenericValue.class);
+        ModelEntity modelEntity = mock(ModelEntity.class);
+        when(delegator.cloneDelegator()).thenReturn(clonedDelegator);
+        when(clonedDelegator.makeValue("EntityName")).thenReturn(goodValue, badValue);
+        for (GenericValue value : new GenericValue[] {goodValue, badValue}) {
+            when(value.getModelEntity()).thenReturn(modelEntity);
+            when(value.containsPrimaryKey()).thenReturn(true);
+        }
+        GenericPK badPK = mock(GenericPK.class);
+        when(badPK.toString()).thenReturn("[bad value]");
+        when(badValue.getPrimaryKey()).thenReturn(badPK);
+        when(modelEntity.isField("fieldName")).thenReturn(true);
+        when(clonedDelegator.storeAll(any(List.class), argThat(new ArgumentMatcher<EntityStoreOptions>() {
+            @Override
+            public boolean matches(Object options) {
+                return options != null && ((EntityStoreOptions) options).getBatchSize() > 1;
+            }
+        }))).thenThrow(new GenericEntityException("batch failure"));
+        when(clonedDelegator.storeAll(eq(Collections.singletonList(badValue)), any(EntityStoreOptions.class))).thenThrow(new GenericEntityException("value failure"));
+
+        EntitySaxReader esr = new EntitySaxReader(delegator);
+        esr.setBatchSize(10);
+        String input = "<entity-engine-xml><EntityName fieldName=\"good\"/><EntityName fieldName=\"bad\"/></entity-engine-xml>";
+        try {
+            esr.parse(input);
+            fail("The batch must fail");
+        } catch (SAXException e) {
+            assertTrue(e.getException().getMessage().contains("[bad value]"));
+        }
+        verify(clonedDelegator).storeAll(eq(Collections.singletonList(goodValue)), any(EntityStoreOptions.class));
+        verify(clonedDelegator).storeAll(eq(Collections.singletonList(badValue)), any(EntityStoreOptions.class));
+    }
 }
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.ofbiz.base.metrics.CallTracer;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
@@ -51,12 +52,14 @@ public final class EntityEcaRule implements java.io.Serializable {
     private final List<Object> actionsAndSets;
     private boolean enabled = true;
     private final List<String> conditionFieldNames  = new ArrayList<String>();
+    private final String traceName;
 
     public EntityEcaRule(Element eca) {
         this.entityName = eca.getAttribute("entity");
         this.operationName = eca.getAttribute("operation");
         this.eventName = eca.getAttribute("event");
         this.runOnError = "true".equals(eca.getAttribute("run-on-error"));
+        this.traceName = this.entityName + ":" + this.operationName + ":" + this.eventName;
         ArrayList<EntityEcaCondition> conditions = new ArrayList<EntityEcaCondition>();
         ArrayList<Object> actionsAndSets = new ArrayList<Object>();
         for (Element element: UtilXml.childElementList(eca)) {
@@ -124,6 +127,19 @@ public final class EntityEcaRule implements java.io.Serializable {
         if (!"any".equals(this.operationName) && this.operationName.indexOf(currentOperation) == -1) {
             return;
         }
+
+        if (!CallTracer.enter("eeca", this.traceName)) {
+            evalConditionsAndActions(dctx, value, actionsRun);
+            return;
+        }
+        try {
+            evalConditionsAndActions(dctx, value, actionsRun);
+        } finally {
+            CallTracer.exit();
+        }
+    }
+
+    private void evalConditionsAndActions(DispatchContext dctx, GenericEntity value, Set<String> actionsRun) throws GenericEntityException {
         // Are fields tested in a condition missing? If so, we need to load them
         List<String> fieldsToLoad = new ArrayList<String>();
         for( String conditionFieldName : conditionFieldNames) {
@@ -68,7 +68,13 @@ public abstract class GenericAbstractDispatcher implements LocalDispatcher {
             try {
                 beganTransaction = TransactionUtil.begin();
                 try {
-                    getJobManager().schedule(jobName, poolName, serviceName, context, startTime, frequency, interval, count, endTime, maxRetry);
+                    String runtimeDataFormat = null;
+                    try {
+                        runtimeDataFormat = getDispatchContext().getModelService(serviceName).runtimeDataFormat;
+                    } catch (GenericServiceException e) {
+                        // unknown services are reported when the job runs
+                    }
+                    getJobManager().schedule(jobName, poolName, serviceName, context, startTime, frequency, interval, count, endTime, maxRetry, runtimeDataFormat);
 
                     if (Debug.verboseOn()) {
                         Debug.logVerbose("[LocalDispatcher.schedule] : Current time : " + (new Date()).getTime(), module);
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.service;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ofbiz.base.util.Debug;
@@ -134,6 +135,17 @@ public class GenericDispatcherFactory implements LocalDispatcherFactory {
             runSyncIgnore(serviceName, ServiceUtil.makeContext(context), transactionTimeout, requireNewTransaction);
         }
 
+        @Override
+        public List<Map<String, Object>> runSyncBatch(String serviceName, List<? extends Map<String, ? extends Object>> contexts) throws GenericServiceException {
+            return runSyncBatch(serviceName, contexts, -1);
+        }
+
+        @Override
+        public List<Map<String, Object>> runSyncBatch(String serviceName, List<? extends Map<String, ? extends Object>> contexts, int commitSize) throws GenericServiceException {
+            ModelService service = ctx.getModelService(serviceName);
+            return dispatcher.runSyncBatch(this.name, service, contexts, commitSize);
+        }
+
         @Override
         public void runAsync(String serviceName, Map<String, ? extends Object> context, GenericRequester requester, boolean persist, int transactionTimeout, boolean requireNewTransaction) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
             ModelService service = ctx.getModelService(serviceName);
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.service;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ofbiz.entity.Delegator;
@@ -101,6 +102,30 @@ public interface LocalDispatcher {
     void runSyncIgnore(String serviceName, Map<String, ? extends Object> context, int transactionTimeout, boolean requireNewTransaction) throws ServiceAuthException, ServiceValidationException, GenericServiceException;
     void runSyncIgnore(String serviceName, int transactionTimeout, boolean requireNewTransaction, Object... context) throws ServiceAuthException, ServiceValidationException, GenericServiceException;
 
+    /**
+     * Run the service synchronously once for each context of the list, each call in its own transaction as
+     * defined by the service, and return the results in the same order. The service model is looked up once.
+     * @param serviceName Name of the service to run.
+     * @param contexts The contexts of the calls, Maps of name, value pairs.
+     * @return The results of the calls; an exception thrown by a call is returned as an error result.
+     * @throws GenericServiceException
+     */
+    List<Map<String, Object>> runSyncBatch(String serviceName, List<? extends Map<String, ? extends Object>> contexts) throws GenericServiceException;
+
+    /**
+     * Run the service synchronously once for each context of the list, committing every <code>commitSize</code>
+     * calls, and return the results in the same order. When a call returns an error the transaction of its
+     * chunk is rolled back: the other calls of the chunk get an error result and the following chunks still run.
+     * The entity-auto create services without ECA rules insert the values of a chunk with a batched statement.
+     * @param serviceName Name of the service to run.
+     * @param contexts The contexts of the calls, Maps of name, value pairs.
+     * @param commitSize The number of calls per transaction: 0 runs the whole batch in one transaction (or in the
+     * current transaction), a negative value runs each call in its own transaction as defined by the service.
+     * @return The results of the calls; an exception thrown by a call is returned as an error result.
+     * @throws GenericServiceException
+     */
+    List<Map<String, Object>> runSyncBatch(String serviceName, List<? extends Map<String, ? extends Object>> contexts, int commitSize) throws GenericServiceException;
+
     /**
      * Run the service asynchronously, passing an instance of GenericRequester that will receive the result.
      * @param serviceName Name of the service to run.
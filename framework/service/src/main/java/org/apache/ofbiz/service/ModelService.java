@@ -161,6 +161,9 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
     /** Sets the max number of times this service will retry when failed (persisted async only) */
     public int maxRetry = -1;
 
+    /** The format the context is stored in when persisted (persisted async only); empty to use the thread-pool setting */
+    public String runtimeDataFormat;
+
     /** Permission service name */
     public String permissionServiceName;
 
@@ -211,6 +214,12 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
      */
     public Metrics metrics = null;
 
+    /** The service implementation resolved by the engine for this model, for example the Java method; not copied */
+    private transient volatile Object resolvedInvoker = null;
+
+    /** The parameters compiled for validate and makeValid; built on first use, reset when parameters are added */
+    private transient volatile ModelServiceValidationPlan validationPlan = null;
+
     public ModelService() {}
 
     public ModelService(ModelService model) {
@@ -239,6 +248,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         }
         this.transactionTimeout = model.transactionTimeout;
         this.maxRetry = model.maxRetry;
+        this.runtimeDataFormat = model.runtimeDataFormat;
         this.permissionServiceName = model.permissionServiceName;
         this.permissionMainAction = model.permissionMainAction;
         this.permissionResourceDesc = model.permissionResourceDesc;
@@ -254,6 +264,27 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         }
     }
 
+    /**
+     * Returns the service implementation the engine resolved for this model, or null. As the service
+     * definitions are reloaded into new models, engines can keep what they resolve here.
+     */
+    public Object getResolvedInvoker() {
+        return this.resolvedInvoker;
+    }
+
+    public void setResolvedInvoker(Object resolvedInvoker) {
+        this.resolvedInvoker = resolvedInvoker;
+    }
+
+    private ModelServiceValidationPlan getValidationPlan() {
+        ModelServiceValidationPlan plan = this.validationPlan;
+        if (plan == null) {
+            plan = new ModelServiceValidationPlan(this);
+            this.validationPlan = plan;
+        }
+        return plan;
+    }
+
     @Override
     public Object get(Object name) {
         Field field = MODEL_SERVICE_FIELD_MAP.get(name.toString());
@@ -399,6 +430,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         if (param != null) {
             contextInfo.put(param.name, param);
             contextParamList.add(param);
+            this.validationPlan = null;
         }
     }
 
@@ -496,8 +528,6 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
      * @param locale the actual locale to use
      */
     public void validate(Map<String, Object> context, String mode, Locale locale) throws ServiceValidationException {
-        Map<String, String> requiredInfo = new HashMap<String, String>();
-        Map<String, String> optionalInfo = new HashMap<String, String>();
         boolean verboseOn = Debug.verboseOn();
 
         if (verboseOn) Debug.logVerbose("[ModelService.validate] : {" + this.name + "} : Validating context - " + context, module);
@@ -510,93 +540,12 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
             }
         }
 
-        // get the info values
-        for (ModelParam modelParam: this.contextParamList) {
-            // Debug.logInfo("In ModelService.validate preparing parameter [" + modelParam.name + (modelParam.optional?"(optional):":"(required):") + modelParam.mode + "] for service [" + this.name + "]", module);
-            if ("INOUT".equals(modelParam.mode) || mode.equals(modelParam.mode)) {
-                if (modelParam.optional) {
-                    optionalInfo.put(modelParam.name, modelParam.type);
-                } else {
-                    requiredInfo.put(modelParam.name, modelParam.type);
-                }
-            }
-        }
-
-        // get the test values
-        Map<String, Object> requiredTest = new HashMap<String, Object>();
-        Map<String, Object> optionalTest = new HashMap<String, Object>();
-
         if (context == null) context = new HashMap<String, Object>();
-        requiredTest.putAll(context);
-
-        List<String> requiredButNull = new LinkedList<String>();
-        List<String> keyList = new LinkedList<String>();
-        keyList.addAll(requiredTest.keySet());
-        for (String key: keyList) {
-            Object value = requiredTest.get(key);
-
-            if (!requiredInfo.containsKey(key)) {
-                requiredTest.remove(key);
-                optionalTest.put(key, value);
-            } else if (value == null) {
-                requiredButNull.add(key);
-            }
-        }
-
-        // check for requiredButNull fields and return an error since null values are not allowed for required fields
-        if (requiredButNull.size() > 0) {
-            List<String> missingMsg = new LinkedList<String>();
-            for (String missingKey: requiredButNull) {
-                String message = this.getParam(missingKey).getPrimaryFailMessage(locale);
-                if (message == null) {
-                    String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
-                    message = errMsg + " [" + this.name + "." + missingKey + "]";
-                }
-                missingMsg.add(message);
-            }
-            throw new ServiceValidationException(missingMsg, this, requiredButNull, null, mode);
-        }
-
+        ModelServiceValidationPlan.ModePlan plan = getValidationPlan().getModePlan(mode);
         if (verboseOn) {
-            StringBuilder requiredNames = new StringBuilder();
-
-            for (String key: requiredInfo.keySet()) {
-                if (requiredNames.length() > 0) {
-                    requiredNames.append(", ");
-                }
-                requiredNames.append(key);
-            }
-            Debug.logVerbose("[ModelService.validate] : required fields - " + requiredNames, module);
-
-            Debug.logVerbose("[ModelService.validate] : {" + name + "} : (" + mode + ") Required - " +
-                requiredTest.size() + " / " + requiredInfo.size(), module);
-            Debug.logVerbose("[ModelService.validate] : {" + name + "} : (" + mode + ") Optional - " +
-                optionalTest.size() + " / " + optionalInfo.size(), module);
-        }
-
-        try {
-            validate(requiredInfo, requiredTest, true, this, mode, locale);
-            validate(optionalInfo, optionalTest, false, this, mode, locale);
-        } catch (ServiceValidationException e) {
-            Debug.logError("[ModelService.validate] : {" + name + "} : (" + mode + ") Required test error: " + e.toString(), module);
-            throw e;
-        }
-
-        // required and type validation complete, do allow-html validation
-        if ("IN".equals(mode)) {
-            List<String> errorMessageList = new LinkedList<String>();
-            for (ModelParam modelParam : this.contextInfo.values()) {
-                // the param is a String, allow-html is not any, and we are looking at an IN parameter during input parameter validation
-                if (context.get(modelParam.name) != null && ("String".equals(modelParam.type) || "java.lang.String".equals(modelParam.type)) 
-                        && !"any".equals(modelParam.allowHtml) && ("INOUT".equals(modelParam.mode) || "IN".equals(modelParam.mode))) {
-                    String value = (String) context.get(modelParam.name);
-                    UtilCodec.checkStringForHtmlStrictNone(modelParam.name, value, errorMessageList);
-                }
-            }
-            if (errorMessageList.size() > 0) {
-                throw new ServiceValidationException(errorMessageList, this, mode);
-            }
+            Debug.logVerbose("[ModelService.validate] : {" + name + "} : (" + mode + ") Parameters - " + plan.getParams().size(), module);
         }
+        plan.validate(this, context, locale);
     }
 
     /**
@@ -881,42 +830,39 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
             }
         }
 
-        for (ModelParam param: contextParamList) {
-            //boolean internalParam = param.internal;
+        for (ModelServiceValidationPlan.ParamPlan paramPlan: getValidationPlan().getModePlan(mode).getParams()) {
+            ModelParam param = paramPlan.getParam();
+            String key = param.name;
 
-            if (param.mode.equals("INOUT") || param.mode.equals(mode)) {
-                String key = param.name;
+            // internal map of strings
+            if (UtilValidate.isNotEmpty(param.stringMapPrefix) && !source.containsKey(key)) {
+                Map<String, Object> paramMap = this.makePrefixMap(source, param);
+                if (UtilValidate.isNotEmpty(paramMap)) {
+                    target.put(key, paramMap);
+                }
+            // internal list of strings
+            } else if (UtilValidate.isNotEmpty(param.stringListSuffix) && !source.containsKey(key)) {
+                List<Object> paramList = this.makeSuffixList(source, param);
+                if (UtilValidate.isNotEmpty(paramList)) {
+                    target.put(key, paramList);
+                }
+            // other attributes
+            } else {
+                if (source.containsKey(key)) {
+                    if ((param.internal && includeInternal) || (!param.internal)) {
+                        Object value = source.get(key);
 
-                // internal map of strings
-                if (UtilValidate.isNotEmpty(param.stringMapPrefix) && !source.containsKey(key)) {
-                    Map<String, Object> paramMap = this.makePrefixMap(source, param);
-                    if (UtilValidate.isNotEmpty(paramMap)) {
-                        target.put(key, paramMap);
-                    }
-                // internal list of strings
-                } else if (UtilValidate.isNotEmpty(param.stringListSuffix) && !source.containsKey(key)) {
-                    List<Object> paramList = this.makeSuffixList(source, param);
-                    if (UtilValidate.isNotEmpty(paramList)) {
-                        target.put(key, paramList);
-                    }
-                // other attributes
-                } else {
-                    if (source.containsKey(key)) {
-                        if ((param.internal && includeInternal) || (!param.internal)) {
-                            Object value = source.get(key);
-
-                            try {
-                                // no need to fail on type conversion; the validator will catch this
-                                value = ObjectType.simpleTypeConvert(value, param.type, null, timeZone, locale, false);
-                            } catch (GeneralException e) {
-                                String errMsg = "Type conversion of field [" + key + "] to type [" + param.type + "] failed for value \"" + value + "\": " + e.toString();
-                                Debug.logWarning("[ModelService.makeValid] : " + errMsg, module);
-                                if (errorMessages != null) {
-                                    errorMessages.add(errMsg);
-                                }
+                        try {
+                            // no need to fail on type conversion; the validator will catch this
+                            value = paramPlan.convert(value, timeZone, locale);
+                        } catch (GeneralException e) {
+                            String errMsg = "Type conversion of field [" + key + "] to type [" + param.type + "] failed for value \"" + value + "\": " + e.toString();
+                            Debug.logWarning("[ModelService.makeValid] : " + errMsg, module);
+                            if (errorMessages != null) {
+                                errorMessages.add(errMsg);
                             }
-                            target.put(key, value);
                         }
+                        target.put(key, value);
                     }
                 }
             }
@@ -1195,6 +1141,9 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
 
             // set the flag so we don't do this again
             this.inheritedParameters = true;
+
+            // the parameters are complete now, compile them for validation
+            this.validationPlan = new ModelServiceValidationPlan(this);
         }
     }
 
@@ -44,6 +44,7 @@ import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.model.ModelFieldType;
 import org.apache.ofbiz.service.ModelParam.ModelParamValidator;
+import org.apache.ofbiz.service.config.model.ThreadPool;
 import org.apache.ofbiz.service.group.GroupModel;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -256,6 +257,14 @@ public class ModelServiceReader implements Serializable {
         }
         service.maxRetry = maxRetry;
 
+        // set the format of persisted contexts
+        String runtimeDataFormat = UtilXml.checkEmpty(serviceElement.getAttribute("runtime-data-format")).intern();
+        if (UtilValidate.isNotEmpty(runtimeDataFormat) && !ThreadPool.isRuntimeDataFormat(runtimeDataFormat)) {
+            Debug.logWarning("Ignoring invalid runtime-data-format [" + runtimeDataFormat + "] of service [" + service.name + "]", module);
+            runtimeDataFormat = "";
+        }
+        service.runtimeDataFormat = runtimeDataFormat;
+
         // get the timeout and convert to int
         String timeoutStr = UtilXml.checkEmpty(serviceElement.getAttribute("transaction-timeout"), serviceElement.getAttribute("transaction-timout"));
         int timeout = 0;
@@ -0,0 +1,446 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import org.apache.ofbiz.base.conversion.ConversionException;
+import org.apache.ofbiz.base.conversion.Converter;
+import org.apache.ofbiz.base.conversion.Converters;
+import org.apache.ofbiz.base.conversion.LocalizedConverter;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.UtilCodec;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.w3c.dom.Node;
+
+/**
+ * The parameters of a ModelService compiled for validate and makeValid: the parameters of each mode by
+ * name, with the parameter types, validator methods and conversion target classes resolved once.
+ * Types that cannot be resolved here are left to ObjectType, so the errors stay those of ObjectType.
+ */
+final class ModelServiceValidationPlan {
+
+    public static final String module = ModelServiceValidationPlan.class.getName();
+
+    private final ModePlan inPlan;
+    private final ModePlan outPlan;
+    private final ModePlan inOutPlan;
+
+    ModelServiceValidationPlan(ModelService model) {
+        Map<ModelParam, ParamPlan> paramPlans = new HashMap<ModelParam, ParamPlan>();
+        this.inPlan = new ModePlan(model, ModelService.IN_PARAM, paramPlans);
+        this.outPlan = new ModePlan(model, ModelService.OUT_PARAM, paramPlans);
+        this.inOutPlan = new ModePlan(model, "INOUT", paramPlans);
+    }
+
+    /** Returns the plan of a mode; as in ModelService.validate, other modes only include the INOUT parameters. */
+    ModePlan getModePlan(String mode) {
+        if (ModelService.IN_PARAM.equals(mode)) {
+            return inPlan;
+        } else if (ModelService.OUT_PARAM.equals(mode)) {
+            return outPlan;
+        }
+        return inOutPlan;
+    }
+
+    static final class ModePlan {
+        private final String mode;
+        private final Map<String, ParamPlan> required = new HashMap<String, ParamPlan>();
+        private final Map<String, ParamPlan> optional = new HashMap<String, ParamPlan>();
+        private final List<ParamPlan> params = new ArrayList<ParamPlan>();
+        private final List<ParamPlan> htmlCheckedParams = new ArrayList<ParamPlan>();
+
+        private ModePlan(ModelService model, String mode, Map<ModelParam, ParamPlan> paramPlans) {
+            this.mode = mode;
+            for (ModelParam modelParam: model.contextParamList) {
+                if ("INOUT".equals(modelParam.mode) || mode.equals(modelParam.mode)) {
+                    ParamPlan paramPlan = getParamPlan(modelParam, paramPlans);
+                    params.add(paramPlan);
+                    if (modelParam.optional) {
+                        optional.put(modelParam.name, paramPlan);
+                    } else {
+                        required.put(modelParam.name, paramPlan);
+                    }
+                }
+            }
+            if (ModelService.IN_PARAM.equals(mode)) {
+                for (ModelParam modelParam: model.contextInfo.values()) {
+                    if (("String".equals(modelParam.type) || "java.lang.String".equals(modelParam.type))
+                            && !"any".equals(modelParam.allowHtml) && ("INOUT".equals(modelParam.mode) || "IN".equals(modelParam.mode))) {
+                        htmlCheckedParams.add(getParamPlan(modelParam, paramPlans));
+                    }
+                }
+            }
+        }
+
+        private static ParamPlan getParamPlan(ModelParam modelParam, Map<ModelParam, ParamPlan> paramPlans) {
+            ParamPlan paramPlan = paramPlans.get(modelParam);
+            if (paramPlan == null) {
+                paramPlan = new ParamPlan(modelParam);
+                paramPlans.put(modelParam, paramPlan);
+            }
+            return paramPlan;
+        }
+
+        /** The parameters of this mode, in the order they are defined in */
+        List<ParamPlan> getParams() {
+            return params;
+        }
+
+        /**
+         * Validates a context against the parameters of this mode, with the same checks and messages as the
+         * required and optional passes of ModelService.validate.
+         */
+        void validate(ModelService model, Map<String, Object> context, Locale locale) throws ServiceValidationException {
+            List<String> requiredButNull = null;
+            Set<String> extra = null;
+            int requiredFound = 0;
+            for (Map.Entry<String, Object> entry: context.entrySet()) {
+                String key = entry.getKey();
+                if (required.containsKey(key)) {
+                    if (entry.getValue() == null) {
+                        if (requiredButNull == null) {
+                            requiredButNull = new LinkedList<String>();
+                        }
+                        requiredButNull.add(key);
+                    }
+                    requiredFound++;
+                } else if (!optional.containsKey(key)) {
+                    if (extra == null) {
+                        extra = new TreeSet<String>();
+                    }
+                    extra.add(key);
+                }
+            }
+
+            // check for requiredButNull fields and return an error since null values are not allowed for required fields
+            if (requiredButNull != null) {
+                List<String> missingMsg = new LinkedList<String>();
+                for (String missingKey: requiredButNull) {
+                    String message = model.getParam(missingKey).getPrimaryFailMessage(locale);
+                    if (message == null) {
+                        String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
+                        message = errMsg + " [" + model.name + "." + missingKey + "]";
+                    }
+                    missingMsg.add(message);
+                }
+                throw new ServiceValidationException(missingMsg, model, requiredButNull, null, mode);
+            }
+
+            try {
+                if (requiredFound < required.size()) {
+                    Set<String> missing = new TreeSet<String>();
+                    for (String key: required.keySet()) {
+                        if (!context.containsKey(key)) {
+                            missing.add(key);
+                        }
+                    }
+                    List<String> missingMsgs = new LinkedList<String>();
+                    for (String key: missing) {
+                        String msg = required.get(key).param.getPrimaryFailMessage(locale);
+                        if (msg == null) {
+                            String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale) ;
+                            msg = errMsg + " [" + mode + "] [" + model.name + "." + key + "]";
+                        }
+                        missingMsgs.add(msg);
+                    }
+                    throw new ServiceValidationException(missingMsgs, model, new LinkedList<String>(missing), null, mode);
+                }
+                typeValidate(model, context, required, locale);
+
+                if (extra != null) {
+                    List<String> extraMsgs = new LinkedList<String>();
+                    for (String key: extra) {
+                        ModelParam param = model.getParam(key);
+                        String msg = null;
+                        if (param != null) {
+                            msg = param.getPrimaryFailMessage(locale);
+                        }
+                        if (msg == null) {
+                            msg = "Unknown parameter found: [" + model.name + "." + key + "]";
+                        }
+                        extraMsgs.add(msg);
+                    }
+                    throw new ServiceValidationException(extraMsgs, model, null, new LinkedList<String>(extra), mode);
+                }
+                typeValidate(model, context, optional, locale);
+            } catch (ServiceValidationException e) {
+                Debug.logError("[ModelService.validate] : {" + model.name + "} : (" + mode + ") Required test error: " + e.toString(), ModelService.module);
+                throw e;
+            }
+
+            // required and type validation complete, do allow-html validation
+            if (!htmlCheckedParams.isEmpty()) {
+                List<String> errorMessageList = new LinkedList<String>();
+                for (ParamPlan paramPlan: htmlCheckedParams) {
+                    Object value = context.get(paramPlan.param.name);
+                    if (value != null) {
+                        UtilCodec.checkStringForHtmlStrictNone(paramPlan.param.name, (String) value, errorMessageList);
+                    }
+                }
+                if (errorMessageList.size() > 0) {
+                    throw new ServiceValidationException(errorMessageList, model, mode);
+                }
+            }
+        }
+
+        private void typeValidate(ModelService model, Map<String, Object> context, Map<String, ParamPlan> paramPlans, Locale locale) throws ServiceValidationException {
+            List<String> typeFailMsgs = null;
+            for (Map.Entry<String, Object> entry: context.entrySet()) {
+                ParamPlan paramPlan = paramPlans.get(entry.getKey());
+                if (paramPlan != null) {
+                    typeFailMsgs = paramPlan.typeValidate(model, entry.getValue(), locale, typeFailMsgs);
+                }
+            }
+            if (typeFailMsgs != null) {
+                throw new ServiceValidationException(typeFailMsgs, model, mode);
+            }
+        }
+    }
+
+    static final class ParamPlan {
+        private final ModelParam param;
+        /** The class values are tested against, or null when ObjectType has to report the type */
+        private final Class<?> infoClass;
+        /** The class values are converted to, or null when the conversion is left to ObjectType */
+        private final Class<?> targetClass;
+        private final List<ValidatorPlan> validators;
+
+        private ParamPlan(ModelParam param) {
+            this.param = param;
+            Class<?> infoClass = null;
+            try {
+                infoClass = ObjectType.loadInfoClass(param.type, null);
+            } catch (RuntimeException e) {
+                // will fail again, the same way, when a value is validated
+            }
+            this.infoClass = infoClass;
+            Class<?> targetClass = null;
+            if (UtilValidate.isNotEmpty(param.type) && !"Object".equals(param.type) && !"java.lang.Object".equals(param.type) && !"PlainString".equals(param.type)) {
+                try {
+                    targetClass = ObjectType.loadClass(param.type);
+                } catch (ClassNotFoundException e) {
+                    // simpleTypeConvert reports this for each conversion
+                }
+            }
+            this.targetClass = targetClass;
+            if (UtilValidate.isNotEmpty(param.validators)) {
+                List<ValidatorPlan> validators = new ArrayList<ValidatorPlan>(param.validators.size());
+                for (ModelParam.ModelParamValidator validator: param.validators) {
+                    validators.add(new ValidatorPlan(validator));
+                }
+                this.validators = Collections.unmodifiableList(validators);
+            } else {
+                this.validators = Collections.emptyList();
+            }
+        }
+
+        ModelParam getParam() {
+            return param;
+        }
+
+        private boolean isInstance(Object value) {
+            if (infoClass == null) {
+                return ObjectType.instanceOf(value, param.type, null);
+            }
+            return ObjectType.instanceOf(value, infoClass);
+        }
+
+        /** Adds the type validation messages of a parameter value to the list, which is created on the first message */
+        private List<String> typeValidate(ModelService model, Object value, Locale locale, List<String> typeFailMsgs) {
+            if (validators.isEmpty()) {
+                if (!isInstance(value)) {
+                    String testType = value == null ? "null" : value.getClass().getName();
+                    typeFailMsgs = addMessage(typeFailMsgs, "Type check failed for field [" + model.name + "." + param.name + "]; expected type is [" + param.type + "]; actual type is [" + testType + "]");
+                }
+                return typeFailMsgs;
+            }
+            for (ValidatorPlan validator: validators) {
+                String msg;
+                if (validator.method == null) {
+                    if (isInstance(value)) {
+                        continue;
+                    }
+                    msg = validator.validator.getFailMessage(locale);
+                } else {
+                    try {
+                        if (validator.test(value)) {
+                            continue;
+                        }
+                        msg = validator.validator.getFailMessage(locale);
+                    } catch (GeneralException e) {
+                        Debug.logError(e, module);
+                        msg = param.getPrimaryFailMessage(locale);
+                    }
+                }
+                if (msg == null) {
+                    msg = "The following parameter failed validation: [" + model.name + "." + param.name + "]";
+                }
+                typeFailMsgs = addMessage(typeFailMsgs, msg);
+            }
+            return typeFailMsgs;
+        }
+
+        private static List<String> addMessage(List<String> messages, String message) {
+            if (messages == null) {
+                messages = new LinkedList<String>();
+            }
+            messages.add(message);
+            return messages;
+        }
+
+        /**
+         * Converts a value to the type of the parameter, like <code>ObjectType.simpleTypeConvert(value, type, null,
+         * timeZone, locale, false)</code> but with the target class resolved and the same class passed through.
+         */
+        @SuppressWarnings("unchecked")
+        Object convert(Object value, TimeZone timeZone, Locale locale) throws GeneralException {
+            if (value == null || value.getClass() == targetClass) {
+                return value;
+            }
+            if (targetClass == null || value instanceof Node) {
+                return ObjectType.simpleTypeConvert(value, param.type, null, timeZone, locale, false);
+            }
+            if (value instanceof String && ((String) value).length() == 0) {
+                return null;
+            }
+            Converter<Object, Object> converter;
+            try {
+                converter = (Converter<Object, Object>) Converters.getConverter(value.getClass(), targetClass);
+            } catch (ClassNotFoundException e) {
+                return ObjectType.simpleTypeConvert(value, param.type, null, timeZone, locale, false);
+            }
+            try {
+                if (converter instanceof LocalizedConverter) {
+                    LocalizedConverter<Object, Object> localizedConverter = UtilGenerics.cast(converter);
+                    return localizedConverter.convert(value, locale != null ? locale : Locale.getDefault(), timeZone != null ? timeZone : TimeZone.getDefault(), null);
+                }
+                return converter.convert(value);
+            } catch (ConversionException e) {
+                Debug.logWarning(e, "Exception thrown while converting type: ", module);
+                throw new GeneralException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class ValidatorPlan {
+        /** The type of the handles: the value to validate returning the result */
+        private static final MethodType TYPE = MethodType.methodType(Object.class, Object.class);
+
+        private final ModelParam.ModelParamValidator validator;
+        /** The validator method name, or null for a plain type check */
+        private final String method;
+        private final MethodHandle handle;
+        private final boolean stringParam;
+        /** Why the validator method could not be resolved, reported each time it is used */
+        private final String error;
+
+        private ValidatorPlan(ModelParam.ModelParamValidator validator) {
+            this.validator = validator;
+            this.method = UtilValidate.isNotEmpty(validator.getMethodName()) ? validator.getMethodName() : null;
+            MethodHandle handle = null;
+            boolean stringParam = false;
+            String error = null;
+            if (this.method != null) {
+                Class<?> validatorClass = null;
+                try {
+                    validatorClass = ObjectType.loadClass(validator.getClassName());
+                } catch (ClassNotFoundException e) {
+                    Debug.logWarning(e, module);
+                }
+                Method validatorMethod = null;
+                if (validatorClass == null) {
+                    error = "Unable to load validation class [" + validator.getClassName() + "]";
+                } else {
+                    try {
+                        // try object type first
+                        validatorMethod = validatorClass.getMethod(method, Object.class);
+                    } catch (NoSuchMethodException e) {
+                        // next try string type
+                        try {
+                            validatorMethod = validatorClass.getMethod(method, String.class);
+                            stringParam = true;
+                        } catch (NoSuchMethodException e2) {
+                            Debug.logWarning(e2, module);
+                            error = "Unable to find validation method [" + method + "] in class [" + validator.getClassName() + "]";
+                        }
+                    }
+                }
+                if (validatorMethod != null) {
+                    if (Modifier.isStatic(validatorMethod.getModifiers())) {
+                        try {
+                            handle = MethodHandles.publicLookup().unreflect(validatorMethod).asType(TYPE);
+                        } catch (IllegalAccessException e) {
+                            Debug.logWarning(e, module);
+                        }
+                    }
+                    if (handle == null) {
+                        error = "Unable to run validation method [" + method + "] in class [" + validator.getClassName() + "]";
+                    }
+                }
+            }
+            this.handle = handle;
+            this.stringParam = stringParam;
+            this.error = error;
+        }
+
+        private boolean test(Object value) throws GeneralException {
+            if (handle == null) {
+                throw new GeneralException(error);
+            }
+            Object param = value;
+            if (stringParam && value != null && !(value instanceof String)) {
+                // convert to string
+                try {
+                    param = ObjectType.simpleTypeConvert(value, "String", null, null);
+                } catch (GeneralException e) {
+                    throw new GeneralException("Unable to convert parameter to String");
+                }
+            }
+            Object result;
+            try {
+                result = handle.invokeExact(param);
+            } catch (Throwable t) {
+                throw new GeneralException("Unable to run validation method [" + method + "] in class [" + validator.getClassName() + "]");
+            }
+            if (!(result instanceof Boolean)) {
+                throw new GeneralException("Validation method [" + method + "] in class [" + validator.getClassName() + "] did not return expected Boolean");
+            }
+            return ((Boolean) result).booleanValue();
+        }
+    }
+}
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,6 +29,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import javax.transaction.Transaction;
 
 import org.apache.ofbiz.base.config.GenericConfigException;
+import org.apache.ofbiz.base.metrics.CallTracer;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralRuntimeException;
 import org.apache.ofbiz.base.util.UtilMisc;
@@ -49,6 +51,7 @@ import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.model.StartupService;
 import org.apache.ofbiz.service.eca.ServiceEcaRule;
 import org.apache.ofbiz.service.eca.ServiceEcaUtil;
+import org.apache.ofbiz.service.engine.EntityAutoEngine;
 import org.apache.ofbiz.service.engine.GenericEngine;
 import org.apache.ofbiz.service.engine.GenericEngineFactory;
 import org.apache.ofbiz.service.group.ServiceGroupReader;
@@ -252,6 +255,17 @@ public class ServiceDispatcher {
      * @throws GenericServiceException
      */
     public Map<String, Object> runSync(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
+        if (!CallTracer.enter("service", modelService.name)) {
+            return runSyncService(localName, modelService, params, validateOut);
+        }
+        try {
+            return runSyncService(localName, modelService, params, validateOut);
+        } finally {
+            CallTracer.exit();
+        }
+    }
+
+    private Map<String, Object> runSyncService(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
         long serviceStartTime = System.currentTimeMillis();
         Map<String, Object> result = new HashMap<String, Object>();
         ServiceSemaphore lock = null;
@@ -469,10 +483,13 @@ public class ServiceDispatcher {
                 } while (needsLockRetry && lockRetriesRemaining > 0);
 
                 // create a new context with the results to pass to ECA services; necessary because caller may reuse this context
-                ecaContext = new HashMap<String, Object>();
-                ecaContext.putAll(context);
-                // copy all results: don't worry parameters that aren't allowed won't be passed to the ECA services
-                ecaContext.putAll(result);
+                // services without ECA rules skip the copy
+                if (eventMap != null) {
+                    ecaContext = new HashMap<String, Object>();
+                    ecaContext.putAll(context);
+                    // copy all results: don't worry parameters that aren't allowed won't be passed to the ECA services
+                    ecaContext.putAll(result);
+                }
 
                 // setup default OUT values
                 modelService.updateDefaultValues(context, ModelService.OUT_PARAM);
@@ -608,6 +625,114 @@ public class ServiceDispatcher {
         return result;
     }
 
+    /**
+     * Run the service synchronously once for each context of the list and return the results in the same order.
+     * The calls of a chunk of <code>commitSize</code> contexts share one transaction: when a call returns an error
+     * or throws an exception the transaction is rolled back, the calls of the chunk that did run get an error result
+     * and the remaining calls of the chunk are not run. The entity-auto create services without ECA rules insert
+     * the values of a chunk with a batched statement at the end of the chunk.
+     * @param localName Name of the context to use.
+     * @param modelService Service model object.
+     * @param contexts The contexts of the calls.
+     * @param commitSize The number of calls per transaction: 0 runs the whole batch in one transaction (or in the
+     * current transaction), a negative value runs each call in its own transaction as defined by the service.
+     * @return The results of the calls, an exception thrown by a call is returned as an error result.
+     * @throws GenericServiceException
+     */
+    public List<Map<String, Object>> runSyncBatch(String localName, ModelService modelService, List<? extends Map<String, ? extends Object>> contexts, int commitSize) throws GenericServiceException {
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>(contexts.size());
+        if (commitSize < 0) {
+            for (Map<String, ? extends Object> context : contexts) {
+                results.add(runBatchCall(localName, modelService, context));
+            }
+            return results;
+        }
+        int chunkSize = commitSize == 0 ? contexts.size() : commitSize;
+        boolean batchCreates = EntityAutoEngine.canBatchCreates(modelService) && ServiceEcaUtil.getServiceEventMap(modelService.name) == null;
+        for (int start = 0; start < contexts.size(); start += chunkSize) {
+            List<? extends Map<String, ? extends Object>> chunk = contexts.subList(start, Math.min(contexts.size(), start + chunkSize));
+            results.addAll(runSyncChunk(localName, modelService, chunk, commitSize > 0, batchCreates));
+        }
+        return results;
+    }
+
+    private List<Map<String, Object>> runSyncChunk(String localName, ModelService modelService, List<? extends Map<String, ? extends Object>> chunk, boolean requireNewTransaction, boolean batchCreates) throws GenericServiceException {
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>(chunk.size());
+        Transaction parentTransaction = null;
+        boolean beganTrans = false;
+        String errMsg = null;
+        try {
+            if (requireNewTransaction && TransactionUtil.isTransactionInPlace()) {
+                parentTransaction = TransactionUtil.suspend();
+            }
+            beganTrans = TransactionUtil.begin(modelService.transactionTimeout);
+            if (batchCreates) {
+                EntityAutoEngine.beginBatchedCreates(modelService.name);
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                Map<String, Object> result = runBatchCall(localName, modelService, chunk.get(i));
+                results.add(result);
+                if (ServiceUtil.isError(result)) {
+                    errMsg = "Batch call [" + (i + 1) + "] of service [" + modelService.name + "] failed: " + ServiceUtil.getErrorMessage(result);
+                    break;
+                }
+            }
+            if (errMsg == null && batchCreates) {
+                try {
+                    EntityAutoEngine.flushBatchedCreates(delegator);
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, module);
+                    errMsg = "Batched inserts of service [" + modelService.name + "] failed: " + e.getMessage();
+                }
+            }
+            if (errMsg == null) {
+                try {
+                    TransactionUtil.commit(beganTrans);
+                } catch (GenericTransactionException e) {
+                    Debug.logError(e, module);
+                    errMsg = "Could not commit transaction for batch of service [" + modelService.name + "]: " + e.getMessage();
+                }
+            } else {
+                Debug.logError(errMsg, module);
+                TransactionUtil.rollback(beganTrans, errMsg, null);
+            }
+        } catch (GenericTransactionException te) {
+            Debug.logError(te, "Problems with the transaction", module);
+            throw new GenericServiceException("Problems with the transaction.", te.getNested());
+        } finally {
+            if (batchCreates) {
+                EntityAutoEngine.endBatchedCreates();
+            }
+            if (parentTransaction != null) {
+                try {
+                    TransactionUtil.resume(parentTransaction);
+                } catch (GenericTransactionException e) {
+                    Debug.logError(e, "Error resuming parent transaction after running batch of service [" + modelService.name + "]: " + e.toString(), module);
+                }
+            }
+        }
+        if (errMsg != null) {
+            // the calls that did run were rolled back with the transaction
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i >= results.size()) {
+                    results.add(ServiceUtil.returnError("Not run: " + errMsg));
+                } else if (!ServiceUtil.isError(results.get(i))) {
+                    results.set(i, ServiceUtil.returnError("Rolled back: " + errMsg));
+                }
+            }
+        }
+        return results;
+    }
+
+    private Map<String, Object> runBatchCall(String localName, ModelService modelService, Map<String, ? extends Object> context) {
+        try {
+            return runSync(localName, modelService, context, true);
+        } catch (GenericServiceException e) {
+            Debug.logError(e, "Batch call of service [" + modelService.name + "] failed", module);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+    }
+
     /**
      * Run the service asynchronously, passing an instance of GenericRequester that will receive the result.
      * @param localName Name of the context to use.
@@ -28,7 +28,12 @@ import org.w3c.dom.Element;
 @ThreadSafe
 public final class RunFromPool {
 
+    public static final int PRIORITY = 0;
+    public static final int WEIGHT = 1;
+
     private final String name;
+    private final int priority;
+    private final int weight;
 
     RunFromPool(Element runFromPoolElement) throws ServiceConfigException {
         String name = runFromPoolElement.getAttribute("name").intern();
@@ -36,9 +41,42 @@ public final class RunFromPool {
             throw new ServiceConfigException("<run-from-pool> element name attribute is empty");
         }
         this.name = name;
+        String priority = runFromPoolElement.getAttribute("priority").intern();
+        if (priority.isEmpty()) {
+            this.priority = PRIORITY;
+        } else {
+            try {
+                this.priority = Integer.parseInt(priority);
+            } catch (Exception e) {
+                throw new ServiceConfigException("<run-from-pool> element priority attribute value is invalid");
+            }
+        }
+        String weight = runFromPoolElement.getAttribute("weight").intern();
+        if (weight.isEmpty()) {
+            this.weight = WEIGHT;
+        } else {
+            try {
+                this.weight = Integer.parseInt(weight);
+                if (this.weight < 1) {
+                    throw new ServiceConfigException("<run-from-pool> element weight attribute value is invalid");
+                }
+            } catch (Exception e) {
+                throw new ServiceConfigException("<run-from-pool> element weight attribute value is invalid");
+            }
+        }
     }
 
     public String getName() {
         return name;
     }
+
+    /** Returns the value of the <code>priority</code> attribute. */
+    public int getPriority() {
+        return priority;
+    }
+
+    /** Returns the value of the <code>weight</code> attribute. */
+    public int getWeight() {
+        return weight;
+    }
 }
@@ -40,6 +40,12 @@ public final class ThreadPool {
     public static final int PURGE_JOBS_DAYS = 30;
     public static final int QUEUE_SIZE = 100;
     public static final int THREAD_TTL = 120000; // Idle thread lifespan - 2 minutes.
+    public static final String CLAIM_SINGLE = "single"; // Claim each due job with its own update.
+    public static final String CLAIM_BATCH = "batch"; // Claim the due jobs with one update per poll.
+    public static final String CLAIM_SKIP_LOCKED = "skip-locked"; // Lock the due jobs with SELECT ... FOR UPDATE SKIP LOCKED.
+    public static final String RUNTIME_DATA_XML = "xml"; // Persist job contexts with the XmlSerializer.
+    public static final String RUNTIME_DATA_BINARY = "binary"; // Persist job contexts with the BinarySerializer.
+    public static final String RUNTIME_DATA_BINARY_COMPRESSED = "binary-compressed"; // As binary, compressed.
 
     private final int failedRetryMin;
     private final int jobs;
@@ -47,8 +53,10 @@ public final class ThreadPool {
     private final int minThreads;
     private final int pollDbMillis;
     private final boolean pollEnabled;
+    private final String pollClaimMode;
     private final int purgeJobDays;
     private final List<RunFromPool> runFromPools;
+    private final String runtimeDataFormat;
     private final String sendToPool;
     private final int ttl;
 
@@ -150,6 +158,22 @@ public final class ThreadPool {
                 throw new ServiceConfigException("<thread-pool> element poll-db-millis attribute value is invalid");
             }
         }
+        String pollClaimMode = poolElement.getAttribute("poll-claim-mode").intern();
+        if (pollClaimMode.isEmpty()) {
+            this.pollClaimMode = CLAIM_BATCH;
+        } else if (CLAIM_SINGLE.equals(pollClaimMode) || CLAIM_BATCH.equals(pollClaimMode) || CLAIM_SKIP_LOCKED.equals(pollClaimMode)) {
+            this.pollClaimMode = pollClaimMode;
+        } else {
+            throw new ServiceConfigException("<thread-pool> element poll-claim-mode attribute value is invalid");
+        }
+        String runtimeDataFormat = poolElement.getAttribute("runtime-data-format").intern();
+        if (runtimeDataFormat.isEmpty()) {
+            this.runtimeDataFormat = RUNTIME_DATA_XML;
+        } else if (isRuntimeDataFormat(runtimeDataFormat)) {
+            this.runtimeDataFormat = runtimeDataFormat;
+        } else {
+            throw new ServiceConfigException("<thread-pool> element runtime-data-format attribute value is invalid");
+        }
         List<? extends Element> runFromPoolElementList = UtilXml.childElementList(poolElement, "run-from-pool");
         if (runFromPoolElementList.isEmpty()) {
             this.runFromPools = Collections.emptyList();
@@ -186,6 +210,15 @@ public final class ThreadPool {
         return pollEnabled;
     }
 
+    public String getPollClaimMode() {
+        return pollClaimMode;
+    }
+
+    /** Returns true if the format is one of the RUNTIME_DATA_ formats. */
+    public static boolean isRuntimeDataFormat(String format) {
+        return RUNTIME_DATA_XML.equals(format) || RUNTIME_DATA_BINARY.equals(format) || RUNTIME_DATA_BINARY_COMPRESSED.equals(format);
+    }
+
     public int getPurgeJobDays() {
         return purgeJobDays;
     }
@@ -194,6 +227,10 @@ public final class ThreadPool {
         return this.runFromPools;
     }
 
+    public String getRuntimeDataFormat() {
+        return runtimeDataFormat;
+    }
+
     public String getSendToPool() {
         return sendToPool;
     }
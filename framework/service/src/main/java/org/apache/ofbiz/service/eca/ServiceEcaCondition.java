@@ -51,6 +51,16 @@ public class ServiceEcaCondition implements java.io.Serializable {
     protected String format = null;
     protected boolean isConstant = false;
     protected boolean isService = false;
+    // comparison resolved when the condition is loaded, see compile()
+    private int compiledCompare = COMPARE_GENERIC;
+
+    private static final int COMPARE_GENERIC = 0;
+    private static final int COMPARE_STRING_EQUALS = 1;
+    private static final int COMPARE_STRING_NOT_EQUALS = 2;
+    private static final int COMPARE_IS_NULL = 3;
+    private static final int COMPARE_IS_NOT_NULL = 4;
+    private static final int COMPARE_IS_EMPTY = 5;
+    private static final int COMPARE_IS_NOT_EMPTY = 6;
 
     protected ServiceEcaCondition() {}
 
@@ -81,6 +91,62 @@ public class ServiceEcaCondition implements java.io.Serializable {
             if (rhsValueName == null) {
                 rhsValueName = "";
             }
+            this.compiledCompare = compile();
+        }
+    }
+
+    /**
+     * Resolves the operator and compare type of the common condition forms once, so that eval
+     * can compare them directly instead of going through ObjectType.doRealCompare each time.
+     */
+    private int compile() {
+        if ("is-null".equals(operator)) {
+            return COMPARE_IS_NULL;
+        } else if ("is-not-null".equals(operator)) {
+            return COMPARE_IS_NOT_NULL;
+        } else if ("is-empty".equals(operator)) {
+            return COMPARE_IS_EMPTY;
+        } else if ("is-not-empty".equals(operator)) {
+            return COMPARE_IS_NOT_EMPTY;
+        }
+        if (isConstant && ("String".equals(compareType) || "java.lang.String".equals(compareType))) {
+            if ("equals".equals(operator)) {
+                return COMPARE_STRING_EQUALS;
+            } else if ("not-equals".equals(operator)) {
+                return COMPARE_STRING_NOT_EQUALS;
+            }
+        }
+        return COMPARE_GENERIC;
+    }
+
+    /**
+     * Evaluates the compiled comparison, returns null when the values need the generic
+     * ObjectType.doRealCompare conversion rules.
+     */
+    private Boolean compiledEval(Object lhsValue) {
+        switch (compiledCompare) {
+        case COMPARE_STRING_EQUALS:
+            if (lhsValue == null) {
+                return Boolean.FALSE;
+            } else if (lhsValue instanceof String) {
+                return lhsValue.equals(rhsValueName);
+            }
+            return null;
+        case COMPARE_STRING_NOT_EQUALS:
+            if (lhsValue == null) {
+                return Boolean.TRUE;
+            } else if (lhsValue instanceof String) {
+                return !lhsValue.equals(rhsValueName);
+            }
+            return null;
+        case COMPARE_IS_NULL:
+        case COMPARE_IS_EMPTY:
+            return lhsValue == null ? Boolean.TRUE : null;
+        case COMPARE_IS_NOT_NULL:
+        case COMPARE_IS_NOT_EMPTY:
+            return lhsValue == null ? Boolean.FALSE : null;
+        default:
+            return null;
         }
     }
 
@@ -157,6 +223,12 @@ public class ServiceEcaCondition implements java.io.Serializable {
             }
         }
 
+        Boolean compiledCond = compiledEval(lhsValue);
+        if (compiledCond != null) {
+            if (Debug.verboseOn()) Debug.logVerbose("Compiled compare : " + lhsValue + " " + operator + " " + rhsValueName + " = " + compiledCond, module);
+            return compiledCond.booleanValue();
+        }
+
         if (isConstant) {
             rhsValue = rhsValueName;
         } else if (UtilValidate.isNotEmpty(rhsMapName)) {
@@ -23,7 +23,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.ofbiz.base.metrics.CallTracer;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
@@ -48,6 +50,11 @@ public final class ServiceEcaRule implements java.io.Serializable {
     protected final List<Object> actionsAndSets = new ArrayList<Object>();
     protected boolean enabled = true;
     protected final String definitionLocation;
+    // evaluation statistics, see ServiceEcaUtil.getRuleStatistics()
+    private final AtomicLong evaluationCount = new AtomicLong();
+    private final AtomicLong fireCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final String traceName;
 
     public ServiceEcaRule(Element eca, String definitionLocation) {
         this.definitionLocation = definitionLocation;
@@ -55,6 +62,7 @@ public final class ServiceEcaRule implements java.io.Serializable {
         this.eventName = eca.getAttribute("event");
         this.runOnFailure = "true".equals(eca.getAttribute("run-on-failure"));
         this.runOnError = "true".equals(eca.getAttribute("run-on-error"));
+        this.traceName = this.serviceName + ":" + this.eventName;
 
         for (Element element: UtilXml.childElementList(eca, "condition")) {
             conditions.add(new ServiceEcaCondition(element, true, false));
@@ -130,6 +138,20 @@ public final class ServiceEcaRule implements java.io.Serializable {
             return;
         }
 
+        boolean traced = CallTracer.enter("seca", this.traceName);
+        long startNanos = System.nanoTime();
+        evaluationCount.incrementAndGet();
+        try {
+            evalConditionsAndActions(serviceName, dctx, context, result, actionsRun);
+        } finally {
+            totalNanos.addAndGet(System.nanoTime() - startNanos);
+            if (traced) {
+                CallTracer.exit();
+            }
+        }
+    }
+
+    private void evalConditionsAndActions(String serviceName, DispatchContext dctx, Map<String, Object> context, Map<String, Object> result, Set<String> actionsRun) throws GenericServiceException {
         boolean allCondTrue = true;
         for (ServiceEcaCondition ec: conditions) {
             if (!ec.eval(serviceName, dctx, context)) {
@@ -147,6 +169,7 @@ public final class ServiceEcaRule implements java.io.Serializable {
 
         // if all conditions are true
         if (allCondTrue) {
+            fireCount.incrementAndGet();
             for (Object setOrAction: actionsAndSets) {
                 if (setOrAction instanceof ServiceEcaAction) {
                     ServiceEcaAction ea = (ServiceEcaAction) setOrAction;
@@ -168,6 +191,21 @@ public final class ServiceEcaRule implements java.io.Serializable {
         }
     }
 
+    /** Returns the number of times this rule has been evaluated. */
+    public long getEvaluationCount() {
+        return evaluationCount.get();
+    }
+
+    /** Returns the number of evaluations where all conditions were true and the actions were run. */
+    public long getFireCount() {
+        return fireCount.get();
+    }
+
+    /** Returns the total time spent evaluating this rule, including its actions, in nanoseconds. */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
     }
@@ -18,7 +18,10 @@
  *******************************************************************************/
 package org.apache.ofbiz.service.eca;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -137,13 +140,13 @@ public final class ServiceEcaUtil {
 
             if (eventMap == null) {
                 eventMap = new HashMap<String, List<ServiceEcaRule>>();
-                rules = new LinkedList<ServiceEcaRule>();
+                rules = new ArrayList<ServiceEcaRule>();
                 ecaCache.put(serviceName, eventMap);
                 eventMap.put(eventName, rules);
             } else {
                 rules = eventMap.get(eventName);
                 if (rules == null) {
-                    rules = new LinkedList<ServiceEcaRule>();
+                    rules = new ArrayList<ServiceEcaRule>();
                     eventMap.put(eventName, rules);
                 }
             }
@@ -172,6 +175,41 @@ public final class ServiceEcaUtil {
         return null;
     }
 
+    /**
+     * Returns the evaluation statistics of all loaded rules that have been evaluated at least once,
+     * most expensive first.
+     */
+    public static List<Map<String, Object>> getRuleStatistics() {
+        List<ServiceEcaRule> evaluatedRules = new ArrayList<ServiceEcaRule>();
+        for (Map<String, List<ServiceEcaRule>> eventMap: ecaCache.values()) {
+            for (List<ServiceEcaRule> rules: eventMap.values()) {
+                for (ServiceEcaRule rule: rules) {
+                    if (rule.getEvaluationCount() > 0) {
+                        evaluatedRules.add(rule);
+                    }
+                }
+            }
+        }
+        Collections.sort(evaluatedRules, new Comparator<ServiceEcaRule>() {
+            @Override
+            public int compare(ServiceEcaRule rule1, ServiceEcaRule rule2) {
+                return Long.compare(rule2.getTotalNanos(), rule1.getTotalNanos());
+            }
+        });
+        List<Map<String, Object>> statistics = new ArrayList<Map<String, Object>>(evaluatedRules.size());
+        for (ServiceEcaRule rule: evaluatedRules) {
+            Map<String, Object> ruleStats = new HashMap<String, Object>();
+            ruleStats.put("serviceName", rule.getServiceName());
+            ruleStats.put("eventName", rule.getEventName());
+            ruleStats.put("definitionLocation", rule.getDefinitionLocation());
+            ruleStats.put("evaluations", rule.getEvaluationCount());
+            ruleStats.put("fires", rule.getFireCount());
+            ruleStats.put("totalMillis", rule.getTotalNanos() / 1000000);
+            statistics.add(ruleStats);
+        }
+        return statistics;
+    }
+
     public static void evalRules(String serviceName, Map<String, List<ServiceEcaRule>> eventMap, String event, DispatchContext dctx, Map<String, Object> context, Map<String, Object> result, boolean isError, boolean isFailure) throws GenericServiceException {
         // if the eventMap is passed we save a Map lookup, but if not that's okay we'll just look it up now
         if (eventMap == null) eventMap = getServiceEventMap(serviceName);
@@ -18,12 +18,15 @@
  */
 package org.apache.ofbiz.service.engine;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
@@ -31,6 +34,9 @@ import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.finder.PrimaryKeyFinder;
 import org.apache.ofbiz.entity.model.ModelEntity;
@@ -51,6 +57,43 @@ public final class EntityAutoEngine extends GenericAsyncEngine {
     public static final String module = EntityAutoEngine.class.getName();
     public static final String resource = "ServiceErrorUiLabels";
     private static final List<String> availableInvokeActionNames = UtilMisc.toList("create", "update", "delete", "expire");
+    private static final ThreadLocal<BatchedCreates> batchedCreates = new ThreadLocal<BatchedCreates>();
+
+    /**
+     * Returns true if the inserts of the service can be deferred by {@link #beginBatchedCreates(String)}:
+     * the service is an entity-auto create.
+     */
+    public static boolean canBatchCreates(ModelService modelService) {
+        return "entity-auto".equals(modelService.engineName) && "create".equals(modelService.invoke);
+    }
+
+    /**
+     * Defers the inserts of the entity-auto create service <code>serviceName</code> run by this thread, until
+     * {@link #flushBatchedCreates(Delegator)} inserts them with a batched statement. Only the values of single
+     * primary key entities that are not read back by the create itself are deferred; the caller must not read
+     * the created values before the flush, which is why <code>LocalDispatcher.runSyncBatch</code> only uses it
+     * for services without ECA rules.
+     */
+    public static void beginBatchedCreates(String serviceName) {
+        batchedCreates.set(new BatchedCreates(serviceName));
+    }
+
+    /** Inserts the deferred values and returns the number of rows inserted. */
+    public static int flushBatchedCreates(Delegator delegator) throws GenericEntityException {
+        BatchedCreates batch = batchedCreates.get();
+        if (batch == null || batch.values.isEmpty()) {
+            return 0;
+        }
+        List<GenericValue> values = batch.values;
+        batch.values = new ArrayList<GenericValue>();
+        batch.primaryKeys.clear();
+        return delegator.createAll(values);
+    }
+
+    /** Stops deferring the inserts of this thread; the values not flushed are discarded. */
+    public static void endBatchedCreates() {
+        batchedCreates.remove();
+    }
 
     public EntityAutoEngine(ServiceDispatcher dispatcher) {
         super(dispatcher);
@@ -359,7 +402,16 @@ public final class EntityAutoEngine extends GenericAsyncEngine {
                 }
             }
         }
-        newEntity.create();
+        BatchedCreates batch = batchedCreates.get();
+        if (batch != null && isSinglePk && batch.serviceName.equals(modelService.name) && !modelEntity.getEntityName().endsWith("Status")) {
+            // the value is inserted with the other values of the batch, the existence check above cannot see them
+            if (!batch.primaryKeys.add(newEntity.getPrimaryKey())) {
+                return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ServiceValueFound", UtilMisc.toMap("pkFields", newEntity.getPkShortValueString()), locale));
+            }
+            batch.values.add(newEntity);
+        } else {
+            newEntity.create();
+        }
         result.put("crudValue", newEntity);
         return result;
     }
@@ -568,4 +620,14 @@ public final class EntityAutoEngine extends GenericAsyncEngine {
             Debug.logInfo(" parameters OUT  : " + parameters, module);
         return ServiceUtil.returnSuccess();
     }
+
+    private static final class BatchedCreates {
+        private final String serviceName;
+        private List<GenericValue> values = new ArrayList<GenericValue>();
+        private final Set<GenericPK> primaryKeys = new HashSet<GenericPK>();
+
+        private BatchedCreates(String serviceName) {
+            this.serviceName = serviceName;
+        }
+    }
 }
@@ -30,7 +30,6 @@ import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.serialize.SerializeException;
-import org.apache.ofbiz.entity.serialize.XmlSerializer;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericRequester;
 import org.apache.ofbiz.service.GenericServiceException;
@@ -41,6 +40,8 @@ import org.apache.ofbiz.service.job.GenericServiceJob;
 import org.apache.ofbiz.service.job.Job;
 import org.apache.ofbiz.service.job.JobManager;
 import org.apache.ofbiz.service.job.JobManagerException;
+import org.apache.ofbiz.service.job.JobPoller;
+import org.apache.ofbiz.service.job.RuntimeDataSerializer;
 
 /**
  * Generic Asynchronous Engine
@@ -91,7 +92,7 @@ public abstract class GenericAsyncEngine extends AbstractEngine {
 
                 GenericValue runtimeData = dispatcher.getDelegator().makeValue("RuntimeData", "runtimeDataId", dataId);
 
-                runtimeData.set("runtimeInfo", XmlSerializer.serialize(context));
+                runtimeData.set("runtimeInfo", RuntimeDataSerializer.serialize(context, modelService.runtimeDataFormat));
                 runtimeData.create();
 
                 // Get the userLoginId out of the context
@@ -118,6 +119,7 @@ public abstract class GenericAsyncEngine extends AbstractEngine {
 
                 jobV = dispatcher.getDelegator().makeValue("JobSandbox", jFields);
                 jobV.create();
+                JobPoller.getInstance().wakeUp();
             } catch (GenericEntityException e) {
                 throw new GenericServiceException("Unable to create persisted job", e);
             } catch (SerializeException e) {
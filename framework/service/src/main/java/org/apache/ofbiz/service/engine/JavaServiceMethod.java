@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.ModelService;
+
+/**
+ * The method of a Java service as a MethodHandle, with the class loader and location it was resolved
+ * with. Used by StandardJavaEngine instead of looking up the class and method for every call.
+ */
+final class JavaServiceMethod {
+
+    /** The type of the handles: (target, DispatchContext, Map) returning Object */
+    private static final MethodType TYPE = MethodType.methodType(Object.class, Object.class, DispatchContext.class, Map.class);
+
+    private final ClassLoader classLoader;
+    private final String location;
+    private final MethodHandle handle;
+    private final MethodHandle constructor;
+
+    private JavaServiceMethod(ClassLoader classLoader, String location, MethodHandle handle, MethodHandle constructor) {
+        this.classLoader = classLoader;
+        this.location = location;
+        this.handle = handle;
+        this.constructor = constructor;
+    }
+
+    /**
+     * Returns the method of a service, resolved once per ModelService and kept with it: the service
+     * definitions are reloaded into new ModelService objects, so a reload also resolves the methods again.
+     */
+    static JavaServiceMethod getServiceMethod(ModelService modelService, String location, ClassLoader cl) throws GenericServiceException {
+        Object resolved = modelService.getResolvedInvoker();
+        if (resolved instanceof JavaServiceMethod) {
+            JavaServiceMethod serviceMethod = (JavaServiceMethod) resolved;
+            if (serviceMethod.classLoader == cl && serviceMethod.location.equals(location)) {
+                return serviceMethod;
+            }
+        }
+        JavaServiceMethod serviceMethod = resolveServiceMethod(modelService, location, cl);
+        modelService.setResolvedInvoker(serviceMethod);
+        return serviceMethod;
+    }
+
+    private static JavaServiceMethod resolveServiceMethod(ModelService modelService, String location, ClassLoader cl) throws GenericServiceException {
+        try {
+            Class<?> c = cl.loadClass(location);
+            Method m = c.getMethod(modelService.invoke, DispatchContext.class, Map.class);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle handle = lookup.unreflect(m);
+            if (Modifier.isStatic(m.getModifiers())) {
+                // ignore the target argument passed for instance methods
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                return new JavaServiceMethod(cl, location, handle.asType(TYPE), null);
+            }
+            MethodHandle constructor = lookup.findConstructor(c, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+            return new JavaServiceMethod(cl, location, handle.asType(TYPE), constructor);
+        } catch (ClassNotFoundException cnfe) {
+            throw new GenericServiceException("Cannot find service [" + modelService.name + "] location class", cnfe);
+        } catch (NoSuchMethodException nsme) {
+            throw new GenericServiceException("Service [" + modelService.name + "] specified Java method (invoke attribute) does not exist", nsme);
+        } catch (SecurityException se) {
+            throw new GenericServiceException("Service [" + modelService.name + "] Access denied", se);
+        } catch (IllegalAccessException iae) {
+            throw new GenericServiceException("Service [" + modelService.name + "] Method not accessible", iae);
+        } catch (NoClassDefFoundError ncdfe) {
+            throw new GenericServiceException("Cannot find service [" + modelService.name + "] location class", ncdfe);
+        }
+    }
+
+    Object invoke(DispatchContext dctx, Map<String, Object> context) throws Throwable {
+        // instance methods run on a new instance, like static ones they keep no state between calls
+        Object target = constructor == null ? null : (Object) constructor.invokeExact();
+        return (Object) handle.invokeExact(target, dctx, context);
+    }
+}
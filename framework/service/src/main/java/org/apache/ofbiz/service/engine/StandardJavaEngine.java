@@ -18,9 +18,6 @@
  */
 package org.apache.ofbiz.service.engine;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.Map;
 
 import org.apache.ofbiz.service.DispatchContext;
@@ -93,35 +90,15 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
             cl = dctx.getClassLoader();
         }
 
+        JavaServiceMethod serviceMethod = JavaServiceMethod.getServiceMethod(modelService, this.getLocation(modelService), cl);
         try {
-            Class<?> c = cl.loadClass(this.getLocation(modelService));
-            Method m = c.getMethod(modelService.invoke, DispatchContext.class, Map.class);
-            if (Modifier.isStatic(m.getModifiers())) {
-                result = m.invoke(null, dctx, context);
-            } else {
-                result = m.invoke(c.newInstance(), dctx, context);
-            }
-        } catch (ClassNotFoundException cnfe) {
-            throw new GenericServiceException("Cannot find service [" + modelService.name + "] location class", cnfe);
-        } catch (NoSuchMethodException nsme) {
-            throw new GenericServiceException("Service [" + modelService.name + "] specified Java method (invoke attribute) does not exist", nsme);
-        } catch (SecurityException se) {
-            throw new GenericServiceException("Service [" + modelService.name + "] Access denied", se);
-        } catch (IllegalAccessException iae) {
-            throw new GenericServiceException("Service [" + modelService.name + "] Method not accessible", iae);
-        } catch (IllegalArgumentException iarge) {
-            throw new GenericServiceException("Service [" + modelService.name + "] Invalid parameter match", iarge);
-        } catch (InvocationTargetException ite) {
-            throw new GenericServiceException("Service [" + modelService.name + "] target threw an unexpected exception", ite.getTargetException());
-        } catch (NullPointerException npe) {
-            throw new GenericServiceException("Service [" + modelService.name + "] ran into an unexpected null object", npe);
+            result = serviceMethod.invoke(dctx, context);
         } catch (ExceptionInInitializerError eie) {
             throw new GenericServiceException("Service [" + modelService.name + "] Initialization failed", eie);
         } catch (Throwable th) {
-            throw new GenericServiceException("Service [" + modelService.name + "] Error or unknown exception", th);
+            throw new GenericServiceException("Service [" + modelService.name + "] target threw an unexpected exception", th);
         }
 
         return result;
     }
 }
-
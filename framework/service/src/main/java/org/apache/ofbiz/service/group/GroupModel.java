@@ -21,9 +21,17 @@ package org.apache.ofbiz.service.group;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.ServiceDispatcher;
@@ -36,11 +44,16 @@ import org.w3c.dom.Element;
 public class GroupModel {
 
     public static final String module = GroupModel.class.getName();
+    public static final int PARALLEL_TIMEOUT = 300;
+    /** Set on the threads running the services of a parallel group */
+    private static final ThreadLocal<Boolean> inParallelGroup = new ThreadLocal<Boolean>();
 
     private String groupName, sendMode;
     private List<GroupServiceModel> services;
     private boolean optional = false;
     private int lastServiceRan;
+    private int timeout = PARALLEL_TIMEOUT;
+    private String mergePolicy = "all";
 
     /**
      * Constructor using DOM Element
@@ -51,6 +64,17 @@ public class GroupModel {
         this.groupName = group.getAttribute("name");
         this.services = new LinkedList<GroupServiceModel>();
         this.lastServiceRan = -1;
+        String timeoutStr = group.getAttribute("timeout");
+        if (!timeoutStr.isEmpty()) {
+            try {
+                this.timeout = Integer.parseInt(timeoutStr);
+            } catch (NumberFormatException e) {
+                Debug.logWarning(e, "Setting timeout of group [" + groupName + "] to " + PARALLEL_TIMEOUT + " seconds (default)", module);
+            }
+        }
+        if (!group.getAttribute("merge-policy").isEmpty()) {
+            this.mergePolicy = group.getAttribute("merge-policy");
+        }
 
         if (groupName == null) {
             throw new IllegalArgumentException("Group Definition found with no name attribute! : " + group);
@@ -114,6 +138,22 @@ public class GroupModel {
         return optional;
     }
 
+    /**
+     * Getter for the number of seconds to wait for the services of a parallel group, 0 for no timeout
+     * @return int
+     */
+    public int getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Getter for the result merge policy of a parallel group (all or successful)
+     * @return String
+     */
+    public String getMergePolicy() {
+        return this.mergePolicy;
+    }
+
     /**
      * Invokes the group of services in order defined
      * @param dispatcher ServiceDispatcher used for invocation
@@ -133,6 +173,8 @@ public class GroupModel {
             return runIndex(dispatcher, localName, context, randomIndex);
         } else if (this.getSendMode().equals("first-available")) {
             return runOne(dispatcher, localName, context);
+        } else if (this.getSendMode().equals("parallel")) {
+            return runParallel(dispatcher, localName, context);
         } else if (this.getSendMode().equals("none")) {
             return new HashMap<String, Object>();
         } else {
@@ -201,4 +243,92 @@ public class GroupModel {
         }
         return result;
     }
+
+    /*
+     * Runs the services of the group at the same time, each one in its own thread and so in its own transaction:
+     * the services do not see the uncommitted changes of the caller and are not rolled back with it. All the
+     * services get the group context, result-to-context does not apply.
+     */
+    private Map<String, Object> runParallel(final ServiceDispatcher dispatcher, final String localName, Map<String, Object> context)
+            throws GenericServiceException {
+        final Map<String, Object> runContext = UtilMisc.makeMapWritable(context);
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>(services.size());
+        if (inParallelGroup.get() != null) {
+            // a parallel group run by a service of a parallel group: run it in this thread, so the
+            // services waiting for their group cannot hold all the threads of the executor
+            for (GroupServiceModel model : services) {
+                try {
+                    results.add(model.invoke(dispatcher, localName, runContext));
+                } catch (GenericServiceException e) {
+                    Debug.logError(e, "Grouped service [" + model.getName() + "] failed.", module);
+                    results.add(ServiceUtil.returnError(e.getMessage()));
+                }
+            }
+            return mergeResults(results);
+        }
+        List<Future<Map<String, Object>>> futures = new ArrayList<Future<Map<String, Object>>>(services.size());
+        for (final GroupServiceModel model : services) {
+            futures.add(ParallelExecutor.executor.submit(new Callable<Map<String, Object>>() {
+                public Map<String, Object> call() throws GenericServiceException {
+                    inParallelGroup.set(Boolean.TRUE);
+                    try {
+                        return model.invoke(dispatcher, localName, runContext);
+                    } finally {
+                        inParallelGroup.remove();
+                    }
+                }
+            }));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        for (int i = 0; i < services.size(); i++) {
+            Future<Map<String, Object>> future = futures.get(i);
+            String serviceName = services.get(i).getName();
+            try {
+                if (timeout > 0) {
+                    results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } else {
+                    results.add(future.get());
+                }
+            } catch (TimeoutException e) {
+                // the transaction of the service is rolled back if the interrupt stops it, else it completes on its own
+                future.cancel(true);
+                Debug.logError("Grouped service [" + serviceName + "] did not finish within the timeout of group [" + groupName + "].", module);
+                results.add(ServiceUtil.returnError("Grouped service [" + serviceName + "] did not finish within " + timeout + " seconds"));
+            } catch (ExecutionException e) {
+                Debug.logError(e.getCause(), "Grouped service [" + serviceName + "] failed.", module);
+                results.add(ServiceUtil.returnError(e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                for (Future<Map<String, Object>> notDone : futures) {
+                    notDone.cancel(true);
+                }
+                throw new GenericServiceException("Interrupted while waiting for the services of group [" + groupName + "]", e);
+            }
+        }
+        return mergeResults(results);
+    }
+
+    // Merges the results of a parallel group in the order of the services.
+    private Map<String, Object> mergeResults(List<Map<String, Object>> results) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        List<String> errorMessages = new LinkedList<String>();
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, Object> thisResult = results.get(i);
+            if (ServiceUtil.isError(thisResult)) {
+                Debug.logError("Grouped service [" + services.get(i).getName() + "] failed.", module);
+                errorMessages.add(ServiceUtil.getErrorMessage(thisResult));
+            } else if (thisResult != null) {
+                result.putAll(thisResult);
+            }
+        }
+        if (!errorMessages.isEmpty() && (errorMessages.size() == results.size() || !"successful".equals(mergePolicy))) {
+            return ServiceUtil.returnError(errorMessages);
+        }
+        return result;
+    }
+
+    // The executor of the parallel groups, created on first use.
+    private static final class ParallelExecutor {
+        private static final ExecutorService executor = ExecutionPool.getScheduledExecutor(null, "OFBiz-ServiceGroup",
+                UtilProperties.getPropertyAsInteger("service", "servicegroup.parallel.threads", 16), 60, false);
+    }
 }
@@ -23,8 +23,11 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 
@@ -42,11 +45,13 @@ import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityExpr;
 import org.apache.ofbiz.entity.condition.EntityJoinOperator;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.config.model.Datasource;
+import org.apache.ofbiz.entity.config.model.EntityConfig;
 import org.apache.ofbiz.entity.serialize.SerializeException;
-import org.apache.ofbiz.entity.serialize.XmlSerializer;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ServiceContainer;
@@ -54,6 +59,7 @@ import org.apache.ofbiz.service.calendar.RecurrenceInfo;
 import org.apache.ofbiz.service.calendar.RecurrenceInfoException;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.model.RunFromPool;
+import org.apache.ofbiz.service.config.model.ThreadPool;
 
 import com.ibm.icu.util.Calendar;
 
@@ -110,10 +116,18 @@ public final class JobManager {
     }
 
     private final Delegator delegator;
+    /** The runByInstanceId of the jobs claimed by this manager, the instanceId except in tests */
+    private final String runByInstanceId;
     private boolean crashedJobsReloaded = false;
 
     private JobManager(Delegator delegator) {
+        this(delegator, instanceId);
+    }
+
+    /** Creates a job manager claiming jobs for another instance, to test how instances sharing a database claim jobs */
+    JobManager(Delegator delegator, String runByInstanceId) {
         this.delegator = delegator;
+        this.runByInstanceId = runByInstanceId;
     }
 
     /** Returns the Delegator. */
@@ -158,7 +172,53 @@ public final class JobManager {
         }
     }
 
-    private static List<String> getRunPools() throws GenericConfigException {
+    /**
+     * Returns the poll-claim-mode of the thread pool; "skip-locked" falls back to "batch" when the
+     * datasource of the JobSandbox entity does not support SKIP LOCKED.
+     */
+    private String getClaimMode() {
+        String claimMode = ThreadPool.CLAIM_BATCH;
+        try {
+            claimMode = ServiceConfigUtil.getServiceEngine().getThreadPool().getPollClaimMode();
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Unable to get the poll claim mode, using batch: ", module);
+        }
+        if (ThreadPool.CLAIM_SKIP_LOCKED.equals(claimMode)) {
+            Datasource datasource = EntityConfig.getDatasource(delegator.getEntityHelperName("JobSandbox"));
+            if (datasource == null || !datasource.getSupportsSkipLocked()) {
+                return ThreadPool.CLAIM_BATCH;
+            }
+        }
+        return claimMode;
+    }
+
+    /**
+     * Claims ownership of the due jobs with a single update, and returns the jobs that
+     * this instance claimed - another instance might have claimed some of them first.
+     */
+    private List<GenericValue> claimJobs(List<GenericValue> candidates) throws GenericEntityException {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        List<String> jobIds = EntityUtil.getFieldListFromEntityList(candidates, "jobId", false);
+        List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
+        int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", runByInstanceId), EntityCondition.makeCondition(updateExpression));
+        if (rowsUpdated == candidates.size()) {
+            return candidates;
+        }
+        List<EntityExpr> claimedExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, runByInstanceId));
+        Set<String> claimedIds = new HashSet<String>(EntityQuery.use(delegator).from("JobSandbox").where(claimedExpression).<String>getFieldList("jobId"));
+        List<GenericValue> claimed = new ArrayList<GenericValue>(claimedIds.size());
+        for (GenericValue candidate : candidates) {
+            if (claimedIds.contains(candidate.getString("jobId"))) {
+                claimed.add(candidate);
+            }
+        }
+        return claimed;
+    }
+
+    /** Returns the names of the run-from-pool job pools of the thread pool configuration. */
+    static List<String> getRunPools() throws GenericConfigException {
         List<RunFromPool> runFromPools = ServiceConfigUtil.getServiceEngine().getThreadPool().getRunFromPools();
         List<String> readPools = new ArrayList<String>(runFromPools.size());
         for (RunFromPool runFromPool : runFromPools) {
@@ -168,44 +228,48 @@ public final class JobManager {
     }
 
     /**
-     * Scans the JobSandbox entity and returns a list of jobs that are due to run.
-     * Returns an empty list if there are no jobs due to run.
+     * Scans the JobSandbox entity for the due jobs of the run pools and of no pool, and claims at most
+     * <code>limit</code> of them in one transaction. The oldest due jobs of each pool are read with a query per pool,
+     * <code>limit</code> per pool at most, so a backlog in one pool cannot hide the due jobs of the other pools.
+     * The job queue chooses among them by pool priority and weight
+     * ({@link JobQueue#select(Map, int)}); the other jobs stay unclaimed for the next poll.
      * This method is called by the {@link JobPoller} polling thread.
      */
-    protected List<Job> poll(int limit) {
+    protected List<Job> poll(List<String> poolIds, int limit, JobQueue queue) {
         assertIsRunning();
-        // The rest of this method logs exceptions and does not throw them.
-        // The idea is to keep the JobPoller working even when a database
-        // connection is not available (possible on a saturated server).
         DispatchContext dctx = getDispatcher().getDispatchContext();
         if (dctx == null) {
             Debug.logWarning("Unable to locate DispatchContext object; not running job!", module);
             return Collections.emptyList();
         }
+        return poll(dctx, getClaimMode(), poolIds, limit, queue);
+    }
+
+    /** Polls the jobs with the given poll-claim-mode, the jobs are created with the dispatch context. */
+    List<Job> poll(DispatchContext dctx, String claimMode, List<String> poolIds, int limit, JobQueue queue) {
+        // the jobs of no pool are polled like the jobs of a run pool
+        List<String> polledPoolIds = new ArrayList<String>(poolIds.size() + 1);
+        polledPoolIds.add(null);
+        polledPoolIds.addAll(poolIds);
+        List<Job> poll = pollJobs(dctx, claimMode, polledPoolIds, limit, queue);
+        if (poll == null) {
+            return Collections.emptyList();
+        }
+        return poll;
+    }
+
+    /** Claims the due jobs of the pools, returns null when the poll failed. */
+    private List<Job> pollJobs(DispatchContext dctx, String claimMode, List<String> poolIds, int limit, JobQueue queue) {
+        // This method logs exceptions and does not throw them.
+        // The idea is to keep the JobPoller working even when a database
+        // connection is not available (possible on a saturated server).
         // basic query
         List<EntityExpr> expressions = UtilMisc.toList(EntityCondition.makeCondition("runTime", EntityOperator.LESS_THAN_EQUAL_TO, UtilDateTime.nowTimestamp()),
                 EntityCondition.makeCondition("startDateTime", EntityOperator.EQUALS, null),
                 EntityCondition.makeCondition("cancelDateTime", EntityOperator.EQUALS, null),
                 EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
-        // limit to just defined pools
-        List<String> pools = null;
-        try {
-            pools = getRunPools();
-        } catch (GenericConfigException e) {
-            Debug.logWarning(e, "Unable to get run pools - not running job: ", module);
-            return Collections.emptyList();
-        }
-        List<EntityExpr> poolsExpr = UtilMisc.toList(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, null));
-        if (!pools.isEmpty()) {
-            for (String poolName : pools) {
-                poolsExpr.add(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, poolName));
-            }
-        }
         List<Job> poll = new ArrayList<Job>(limit);
-        // make the conditions
         EntityCondition baseCondition = EntityCondition.makeCondition(expressions);
-        EntityCondition poolCondition = EntityCondition.makeCondition(poolsExpr, EntityOperator.OR);
-        EntityCondition mainCondition = EntityCondition.makeCondition(UtilMisc.toList(baseCondition, poolCondition));
         EntityListIterator jobsIterator = null;
         boolean beganTransaction = false;
         try {
@@ -214,19 +278,44 @@ public final class JobManager {
                 Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", module);
                 return poll;
             }
-            jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("runTime").queryIterator();
-            GenericValue jobValue = jobsIterator.next();
-            while (jobValue != null) {
-                // Claim ownership of this value. Using storeByCondition to avoid a race condition.
-                List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.EQUALS, jobValue.get("jobId")), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
-                int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", instanceId), EntityCondition.makeCondition(updateExpression));
-                if (rowsUpdated == 1) {
-                    poll.add(new PersistedServiceJob(dctx, jobValue, null));
-                    if (poll.size() == limit) {
+            Map<String, List<GenericValue>> candidatesByPool = new LinkedHashMap<String, List<GenericValue>>();
+            for (String poolId : poolIds) {
+                EntityCondition mainCondition = EntityCondition.makeCondition(baseCondition, EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, poolId));
+                EntityQuery jobsQuery = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("runTime").maxRows(limit);
+                if (ThreadPool.CLAIM_SKIP_LOCKED.equals(claimMode)) {
+                    // the jobs locked by the other servers polling this database are skipped, the ones returned stay locked until the commit
+                    jobsQuery.forUpdateSkipLocked();
+                }
+                List<GenericValue> poolCandidates = new ArrayList<GenericValue>();
+                jobsIterator = jobsQuery.queryIterator();
+                GenericValue jobValue = jobsIterator.next();
+                while (jobValue != null) {
+                    poolCandidates.add(jobValue);
+                    if (poolCandidates.size() == limit) {
                         break;
                     }
+                    jobValue = jobsIterator.next();
+                }
+                jobsIterator.close();
+                jobsIterator = null;
+                if (!poolCandidates.isEmpty()) {
+                    candidatesByPool.put(poolId, poolCandidates);
+                }
+            }
+            List<GenericValue> candidates = queue.select(candidatesByPool, limit);
+            if (ThreadPool.CLAIM_SINGLE.equals(claimMode)) {
+                for (GenericValue candidate : candidates) {
+                    // Claim ownership of this value. Using storeByCondition to avoid a race condition.
+                    List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.EQUALS, candidate.get("jobId")), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
+                    int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", runByInstanceId), EntityCondition.makeCondition(updateExpression));
+                    if (rowsUpdated == 1) {
+                        poll.add(new PersistedServiceJob(dctx, candidate, null));
+                    }
+                }
+            } else {
+                for (GenericValue claimedValue : claimJobs(candidates)) {
+                    poll.add(new PersistedServiceJob(dctx, claimedValue, null));
                 }
-                jobValue = jobsIterator.next();
             }
             TransactionUtil.commit(beganTransaction);
         } catch (Throwable t) {
@@ -237,7 +326,7 @@ public final class JobManager {
                 Debug.logWarning(e, "Exception thrown while rolling back transaction: ", module);
             }
             Debug.logWarning(t, errMsg, module);
-            return Collections.emptyList();
+            return null;
         } finally {
             if (jobsIterator != null) {
                 try {
@@ -247,55 +336,62 @@ public final class JobManager {
                 }
             }
         }
-        if (poll.isEmpty()) {
-            // No jobs to run, see if there are any jobs to purge
-            Calendar cal = Calendar.getInstance();
-            try {
-                int daysToKeep = ServiceConfigUtil.getServiceEngine().getThreadPool().getPurgeJobDays();
-                cal.add(Calendar.DAY_OF_YEAR, -daysToKeep);
-            } catch (GenericConfigException e) {
-                Debug.logWarning(e, "Unable to get purge job days: ", module);
+        return poll;
+    }
+
+    /**
+     * Returns the finished or cancelled jobs of this instance that are old enough to be purged.
+     * This method is called by the {@link JobPoller} polling thread when there are no jobs to run.
+     */
+    protected List<Job> pollPurgeJobs(int limit) {
+        assertIsRunning();
+        List<Job> poll = new ArrayList<Job>(limit);
+        Calendar cal = Calendar.getInstance();
+        try {
+            int daysToKeep = ServiceConfigUtil.getServiceEngine().getThreadPool().getPurgeJobDays();
+            cal.add(Calendar.DAY_OF_YEAR, -daysToKeep);
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Unable to get purge job days: ", module);
+            return Collections.emptyList();
+        }
+        Timestamp purgeTime = new Timestamp(cal.getTimeInMillis());
+        List<EntityExpr> finExp = UtilMisc.toList(EntityCondition.makeCondition("finishDateTime", EntityOperator.NOT_EQUAL, null), EntityCondition.makeCondition("finishDateTime", EntityOperator.LESS_THAN, purgeTime));
+        List<EntityExpr> canExp = UtilMisc.toList(EntityCondition.makeCondition("cancelDateTime", EntityOperator.NOT_EQUAL, null), EntityCondition.makeCondition("cancelDateTime", EntityOperator.LESS_THAN, purgeTime));
+        EntityCondition doneCond = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition(canExp), EntityCondition.makeCondition(finExp)), EntityOperator.OR);
+        EntityCondition mainCondition = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition("runByInstanceId", runByInstanceId), doneCond));
+        boolean beganTransaction = false;
+        EntityListIterator jobsIterator = null;
+        try {
+            beganTransaction = TransactionUtil.begin();
+            if (!beganTransaction) {
+                Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", module);
                 return Collections.emptyList();
             }
-            Timestamp purgeTime = new Timestamp(cal.getTimeInMillis());
-            List<EntityExpr> finExp = UtilMisc.toList(EntityCondition.makeCondition("finishDateTime", EntityOperator.NOT_EQUAL, null), EntityCondition.makeCondition("finishDateTime", EntityOperator.LESS_THAN, purgeTime));
-            List<EntityExpr> canExp = UtilMisc.toList(EntityCondition.makeCondition("cancelDateTime", EntityOperator.NOT_EQUAL, null), EntityCondition.makeCondition("cancelDateTime", EntityOperator.LESS_THAN, purgeTime));
-            EntityCondition doneCond = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition(canExp), EntityCondition.makeCondition(finExp)), EntityOperator.OR);
-            mainCondition = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition("runByInstanceId", instanceId), doneCond));
-            beganTransaction = false;
-            jobsIterator = null;
-            try {
-                beganTransaction = TransactionUtil.begin();
-                if (!beganTransaction) {
-                    Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", module);
-                    return Collections.emptyList();
-                }
-                jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("jobId").queryIterator();
-                GenericValue jobValue = jobsIterator.next();
-                while (jobValue != null) {
-                    poll.add(new PurgeJob(jobValue));
-                    if (poll.size() == limit) {
-                        break;
-                    }
-                    jobValue = jobsIterator.next();
+            jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("jobId").queryIterator();
+            GenericValue jobValue = jobsIterator.next();
+            while (jobValue != null) {
+                poll.add(new PurgeJob(jobValue));
+                if (poll.size() == limit) {
+                    break;
                 }
-                TransactionUtil.commit(beganTransaction);
-            } catch (Throwable t) {
-                String errMsg = "Exception thrown while polling JobSandbox: ";
+                jobValue = jobsIterator.next();
+            }
+            TransactionUtil.commit(beganTransaction);
+        } catch (Throwable t) {
+            String errMsg = "Exception thrown while polling JobSandbox: ";
+            try {
+                TransactionUtil.rollback(beganTransaction, errMsg, t);
+            } catch (GenericEntityException e) {
+                Debug.logWarning(e, "Exception thrown while rolling back transaction: ", module);
+            }
+            Debug.logWarning(t, errMsg, module);
+            return Collections.emptyList();
+        } finally {
+            if (jobsIterator != null) {
                 try {
-                    TransactionUtil.rollback(beganTransaction, errMsg, t);
+                    jobsIterator.close();
                 } catch (GenericEntityException e) {
-                    Debug.logWarning(e, "Exception thrown while rolling back transaction: ", module);
-                }
-                Debug.logWarning(t, errMsg, module);
-                return Collections.emptyList();
-            } finally {
-                if (jobsIterator != null) {
-                    try {
-                        jobsIterator.close();
-                    } catch (GenericEntityException e) {
-                        Debug.logWarning(e, module);
-                    }
+                    Debug.logWarning(e, module);
                 }
             }
         }
@@ -312,7 +408,7 @@ public final class JobManager {
                 EntityCondition.makeCondition("statusId", EntityOperator.EQUALS, "SERVICE_QUEUED"),
                 EntityCondition.makeCondition("statusId", EntityOperator.EQUALS, "SERVICE_RUNNING"));
         EntityCondition statusCondition = EntityCondition.makeCondition(statusExprList, EntityOperator.OR);
-        EntityCondition mainCondition = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition("runByInstanceId", instanceId), statusCondition));
+        EntityCondition mainCondition = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition("runByInstanceId", runByInstanceId), statusCondition));
         try {
             crashed = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("startDateTime").queryList();
         } catch (GenericEntityException e) {
@@ -497,11 +593,42 @@ public final class JobManager {
      */
     public void schedule(String jobName, String poolName, String serviceName, Map<String, ? extends Object> context, long startTime,
             int frequency, int interval, int count, long endTime, int maxRetry) throws JobManagerException {
+        schedule(jobName, poolName, serviceName, context, startTime, frequency, interval, count, endTime, maxRetry, null);
+    }
+
+    /**
+     * Schedule a job to start at a specific time with specific recurrence info
+     * 
+     * @param jobName
+     *            The name of the job
+     *@param poolName
+     *            The name of the pool to run the service from
+     *@param serviceName
+     *            The name of the service to invoke
+     *@param context
+     *            The context for the service
+     *@param startTime
+     *            The time in milliseconds the service should run
+     *@param frequency
+     *            The frequency of the recurrence (HOURLY,DAILY,MONTHLY,etc)
+     *@param interval
+     *            The interval of the frequency recurrence
+     *@param count
+     *            The number of times to repeat
+     *@param endTime
+     *            The time in milliseconds the service should expire
+     *@param maxRetry
+     *            The max number of retries on failure (-1 for no max)
+     *@param runtimeDataFormat
+     *            The format to persist the context in, null for the thread-pool runtime-data-format
+     */
+    public void schedule(String jobName, String poolName, String serviceName, Map<String, ? extends Object> context, long startTime,
+            int frequency, int interval, int count, long endTime, int maxRetry, String runtimeDataFormat) throws JobManagerException {
         // persist the context
         String dataId = null;
         try {
             GenericValue runtimeData = delegator.makeValue("RuntimeData");
-            runtimeData.set("runtimeInfo", XmlSerializer.serialize(context));
+            runtimeData.set("runtimeInfo", RuntimeDataSerializer.serialize(context, runtimeDataFormat));
             runtimeData = delegator.createSetNextSeqId(runtimeData);
             dataId = runtimeData.getString("runtimeDataId");
         } catch (GenericEntityException ee) {
@@ -582,5 +709,8 @@ public final class JobManager {
         } catch (GenericEntityException e) {
             throw new JobManagerException(e.getMessage(), e);
         }
+        if (startTime <= System.currentTimeMillis()) {
+            JobPoller.getInstance().wakeUp();
+        }
     }
 }
@@ -19,24 +19,32 @@
 package org.apache.ofbiz.service.job;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.start.Start;
 import org.apache.ofbiz.base.util.Assert;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.transaction.TransactionFactoryLoader;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.ServiceConfigListener;
 import org.apache.ofbiz.service.config.model.ServiceConfig;
@@ -50,8 +58,11 @@ public final class JobPoller implements ServiceConfigListener {
     public static final String module = JobPoller.class.getName();
     private static final AtomicInteger created = new AtomicInteger();
     private static final ConcurrentHashMap<String, JobManager> jobManagers = new ConcurrentHashMap<String, JobManager>();
+    private static JobQueue queue;
     private static final ThreadPoolExecutor executor = createThreadPoolExecutor();
     private static final JobPoller instance = new JobPoller();
+    /** The shortest time between two polls when the poller is woken up, so a burst of new jobs does not poll for each one */
+    private static final long MIN_WAKE_UP_INTERVAL = 100;
 
     /**
      * Returns the <code>JobPoller</code> instance.
@@ -63,12 +74,15 @@ public final class JobPoller implements ServiceConfigListener {
     private static ThreadPoolExecutor createThreadPoolExecutor() {
         try {
             ThreadPool threadPool = ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool();
+            queue = new JobQueue(threadPool.getJobs());
+            queue.configure(threadPool);
             return new ThreadPoolExecutor(threadPool.getMinThreads(), threadPool.getMaxThreads(), threadPool.getTtl(),
-                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(threadPool.getJobs()), new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+                    TimeUnit.MILLISECONDS, queue, new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
         } catch (GenericConfigException e) {
             Debug.logError(e, "Exception thrown while getting <thread-pool> model, using default <thread-pool> values: ", module);
+            queue = new JobQueue(ThreadPool.QUEUE_SIZE);
             return new ThreadPoolExecutor(ThreadPool.MIN_THREADS, ThreadPool.MAX_THREADS, ThreadPool.THREAD_TTL,
-                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(ThreadPool.QUEUE_SIZE), new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+                    TimeUnit.MILLISECONDS, queue, new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
         }
     }
 
@@ -96,6 +110,7 @@ public final class JobPoller implements ServiceConfigListener {
     // -------------------------------------- //
 
     private final Thread jobManagerPollerThread;
+    private final WakeUpRequest wakeUpRequest = new WakeUpRequest();
 
     private JobPoller() {
         if (pollEnabled()) {
@@ -120,13 +135,16 @@ public final class JobPoller implements ServiceConfigListener {
         poolState.put("maxNumberOfInvokerThreads", executor.getMaximumPoolSize());
         poolState.put("greatestNumberOfInvokerThreads", executor.getLargestPoolSize());
         poolState.put("numberOfCompletedTasks", executor.getCompletedTaskCount());
-        BlockingQueue<Runnable> queue = executor.getQueue();
+        poolState.put("queueCapacity", queue.size() + queue.remainingCapacity());
+        poolState.put("queueSize", queue.size());
+        poolState.put("pools", queue.getPoolStates());
         List<Map<String, Object>> taskList = new ArrayList<Map<String, Object>>();
         Map<String, Object> taskInfo = null;
         for (Runnable task : queue) {
             Job job = (Job) task;
             taskInfo = new HashMap<String, Object>();
             taskInfo.put("id", job.getJobId());
+            taskInfo.put("poolId", JobQueue.getPoolId(job));
             taskInfo.put("name", job.getJobName());
             String serviceName = "";
             if (job instanceof GenericServiceJob) {
@@ -148,6 +166,7 @@ public final class JobPoller implements ServiceConfigListener {
             executor.setCorePoolSize(threadPool.getMinThreads());
             executor.setMaximumPoolSize(threadPool.getMaxThreads());
             executor.setKeepAliveTime(threadPool.getTtl(), TimeUnit.MILLISECONDS);
+            queue.configure(threadPool);
         }
     }
 
@@ -161,7 +180,8 @@ public final class JobPoller implements ServiceConfigListener {
     }
 
     /**
-     * Adds a job to the job queue.
+     * Adds a job to the job queue. When the queue is full the job is dequeued: a persisted job is
+     * left unclaimed in the JobSandbox for a later poll.
      * @throws InvalidJobException if the job is in an invalid state.
      * @throws RejectedExecutionException if the poller is stopped.
      */
@@ -170,10 +190,92 @@ public final class JobPoller implements ServiceConfigListener {
         try {
             executor.execute(job);
         } catch (Exception e) {
+            queue.rejected(job);
             job.deQueue();
         }
     }
 
+    /**
+     * Asks the poller to poll the job managers now instead of at the end of the poll interval, so that
+     * persisted jobs that are due now do not wait for the next poll. Inside a transaction the poll is
+     * requested when the transaction commits, as the new jobs are not visible to the poller before.
+     */
+    public void wakeUp() {
+        if (jobManagerPollerThread == null) {
+            return;
+        }
+        try {
+            TransactionManager tm = TransactionFactoryLoader.getInstance().getTransactionManager();
+            if (tm != null && tm.getStatus() == Status.STATUS_ACTIVE) {
+                Transaction transaction = tm.getTransaction();
+                if (transaction != null) {
+                    wakeUpRequest.requestAfterCommit(transaction);
+                    return;
+                }
+            }
+        } catch (RollbackException e) {
+            Debug.logWarning(e, "Unable to wait for the transaction to commit before waking up the JobPoller: ", module);
+        } catch (SystemException e) {
+            Debug.logWarning(e, "Unable to wait for the transaction to commit before waking up the JobPoller: ", module);
+        }
+        wakeUpRequest.request();
+    }
+
+    /**
+     * The requests to poll before the end of the poll interval. A request made in a transaction is made
+     * when the transaction commits, with a single synchronization per transaction however many jobs it
+     * schedules.
+     */
+    static final class WakeUpRequest {
+        /** Has a permit when a poll was requested */
+        private final Semaphore permit = new Semaphore(0);
+        private final Set<Transaction> pendingTransactions = Collections.newSetFromMap(new ConcurrentHashMap<Transaction, Boolean>());
+
+        void request() {
+            if (permit.availablePermits() == 0) {
+                permit.release();
+            }
+        }
+
+        void requestAfterCommit(final Transaction transaction) throws RollbackException, SystemException {
+            if (!pendingTransactions.add(transaction)) {
+                return;
+            }
+            boolean registered = false;
+            try {
+                transaction.registerSynchronization(new Synchronization() {
+                    public void beforeCompletion() {
+                    }
+
+                    public void afterCompletion(int status) {
+                        pendingTransactions.remove(transaction);
+                        if (status == Status.STATUS_COMMITTED) {
+                            request();
+                        }
+                    }
+                });
+                registered = true;
+            } finally {
+                if (!registered) {
+                    pendingTransactions.remove(transaction);
+                }
+            }
+        }
+
+        /** Waits for a request, and clears the requests made meanwhile; returns false if none was made in time */
+        boolean await(long timeout) throws InterruptedException {
+            if (permit.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                permit.drainPermits();
+                return true;
+            }
+            return false;
+        }
+
+        int getPendingTransactionCount() {
+            return pendingTransactions.size();
+        }
+    }
+
     /**
      * Stops the <code>JobPoller</code>. This method is called when OFBiz shuts down.
      * The <code>JobPoller</code> cannot be restarted.
@@ -214,34 +316,18 @@ public final class JobPoller implements ServiceConfigListener {
                     Thread.sleep(1000);
                 }
                 while (!executor.isShutdown()) {
-                    int remainingCapacity = executor.getQueue().remainingCapacity();
+                    int remainingCapacity = queue.remainingCapacity();
                     if (remainingCapacity > 0) {
-                        // Build "list of lists"
-                        Collection<JobManager> jmCollection = jobManagers.values();
-                        List<Iterator<Job>> pollResults = new ArrayList<Iterator<Job>>();
-                        for (JobManager jm : jmCollection) {
+                        List<JobManager> jmList = new ArrayList<JobManager>();
+                        for (JobManager jm : jobManagers.values()) {
                             if (!jm.isAvailable()) {
                                 if (Debug.infoOn()) Debug.logInfo("The job manager is locked.", module);
                                 continue;
                             }
                             jm.reloadCrashedJobs();
-                            pollResults.add(jm.poll(remainingCapacity).iterator());
+                            jmList.add(jm);
                         }
-                        // Create queue candidate list from "list of lists"
-                        List<Job> queueCandidates = new ArrayList<Job>();
-                        boolean addingJobs = true;
-                        while (addingJobs) {
-                            addingJobs = false;
-                            for (Iterator<Job> jobIterator : pollResults) {
-                                if (jobIterator.hasNext()) {
-                                    queueCandidates.add(jobIterator.next());
-                                    addingJobs = true;
-                                }
-                            }
-                        }
-                        // The candidate list might be larger than the queue remaining capacity,
-                        // but that is okay - the excess jobs will be dequeued and rescheduled.
-                        for (Job job : queueCandidates) {
+                        for (Job job : pollJobManagers(jmList, remainingCapacity)) {
                             try {
                                 queueNow(job);
                             } catch (InvalidJobException e) {
@@ -249,7 +335,13 @@ public final class JobPoller implements ServiceConfigListener {
                             }
                         }
                     }
-                    Thread.sleep(pollWaitTime());
+                    long pollTime = System.currentTimeMillis();
+                    if (wakeUpRequest.await(pollWaitTime())) {
+                        long sincePoll = System.currentTimeMillis() - pollTime;
+                        if (sincePoll < MIN_WAKE_UP_INTERVAL) {
+                            Thread.sleep(MIN_WAKE_UP_INTERVAL - sincePoll);
+                        }
+                    }
                 }
             } catch (InterruptedException e) {
                 // Happens when JobPoller shuts down - nothing to do.
@@ -257,5 +349,44 @@ public final class JobPoller implements ServiceConfigListener {
             }
             Debug.logInfo("JobPoller thread stopped.", module);
         }
+
+        // Claims at most remainingCapacity jobs, in one poll of each job manager over all the run pools. The
+        // job queue splits the capacity among the pools by priority and weight, the jobs over a pool share
+        // stay unclaimed in the JobSandbox, so a busy pool cannot fill the queue ahead of the others.
+        private List<Job> pollJobManagers(List<JobManager> jmList, int remainingCapacity) {
+            List<Job> queueCandidates = new ArrayList<Job>();
+            List<String> runPools;
+            try {
+                runPools = JobManager.getRunPools();
+            } catch (GenericConfigException e) {
+                Debug.logWarning(e, "Unable to get run pools - not running job: ", module);
+                return queueCandidates;
+            }
+            Set<JobManager> claimingManagers = new HashSet<JobManager>();
+            int remaining = remainingCapacity;
+            for (JobManager jm : jmList) {
+                if (remaining <= 0) {
+                    break;
+                }
+                List<Job> jobs = jm.poll(runPools, remaining, queue);
+                if (!jobs.isEmpty()) {
+                    claimingManagers.add(jm);
+                    queueCandidates.addAll(jobs);
+                    remaining -= jobs.size();
+                }
+            }
+            // No jobs to run, see if there are any jobs to purge
+            for (JobManager jm : jmList) {
+                if (remaining <= 0) {
+                    break;
+                }
+                if (!claimingManagers.contains(jm)) {
+                    List<Job> purgeJobs = jm.pollPurgeJobs(remaining);
+                    queueCandidates.addAll(purgeJobs);
+                    remaining -= purgeJobs.size();
+                }
+            }
+            return queueCandidates;
+        }
     }
 }
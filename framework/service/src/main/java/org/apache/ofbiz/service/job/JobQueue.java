@@ -0,0 +1,503 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ofbiz.service.config.model.RunFromPool;
+import org.apache.ofbiz.service.config.model.ThreadPool;
+
+/**
+ * The job queue of the <code>JobPoller</code> executor. Jobs are queued per job pool: the pools with the
+ * highest priority are served first, and pools of the same priority share the invoker threads by
+ * weight (smooth weighted round-robin). The queue keeps the depth and wait time of each pool for
+ * <code>JobPoller.getPoolState</code>.
+ * <p>Jobs without a pool, like the not persisted async jobs, are queued with the settings of the
+ * send-to-pool.</p>
+ */
+final class JobQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    /** The pools by descending priority; a pool stays once it has been used, to keep its statistics */
+    private final TreeMap<Integer, List<PoolQueue>> levels = new TreeMap<Integer, List<PoolQueue>>(Collections.reverseOrder());
+    private final Map<String, PoolQueue> pools = new HashMap<String, PoolQueue>();
+    private volatile Map<String, RunFromPool> runFromPools = Collections.emptyMap();
+    private volatile String sendToPool = null;
+    private int count = 0;
+
+    JobQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** Applies the pool priorities and weights of the thread-pool configuration. */
+    void configure(ThreadPool threadPool) {
+        Map<String, RunFromPool> runFromPools = new HashMap<String, RunFromPool>();
+        for (RunFromPool runFromPool : threadPool.getRunFromPools()) {
+            runFromPools.put(runFromPool.getName(), runFromPool);
+        }
+        lock.lock();
+        try {
+            this.runFromPools = runFromPools;
+            this.sendToPool = threadPool.getSendToPool();
+            List<PoolQueue> poolQueues = new ArrayList<PoolQueue>(pools.values());
+            levels.clear();
+            for (PoolQueue poolQueue : poolQueues) {
+                poolQueue.configure();
+                addToLevel(poolQueue);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the priority of a job pool; the jobs without a pool (null) have the priority of the send-to-pool,
+     * and the pools that are not run-from-pools the default {@link RunFromPool#PRIORITY}.
+     */
+    int getPriority(String poolId) {
+        RunFromPool runFromPool = getRunFromPool(poolId);
+        return runFromPool == null ? RunFromPool.PRIORITY : runFromPool.getPriority();
+    }
+
+    /**
+     * Returns the weight of a job pool; the jobs without a pool (null) have the weight of the send-to-pool,
+     * and the pools that are not run-from-pools the default {@link RunFromPool#WEIGHT}.
+     */
+    int getWeight(String poolId) {
+        RunFromPool runFromPool = getRunFromPool(poolId);
+        return runFromPool == null ? RunFromPool.WEIGHT : runFromPool.getWeight();
+    }
+
+    private RunFromPool getRunFromPool(String poolId) {
+        Map<String, RunFromPool> runFromPools = this.runFromPools;
+        return runFromPools.get(poolId == null ? sendToPool : poolId);
+    }
+
+    /**
+     * Chooses at most <code>limit</code> of the due jobs of a poll, so that a busy pool cannot fill the
+     * queue ahead of the others: the pools are served by descending priority, and the pools of the same
+     * priority share the capacity left by weight. The capacity left by the pools with fewer jobs than
+     * their share goes to the pools that used their share, by descending priority.
+     *
+     * @param candidatesByPool The due jobs of each pool, oldest first; the <code>null</code> key holds the jobs without a pool
+     * @param limit The maximum number of jobs to choose
+     * @return The chosen jobs, the others are left for a later poll
+     */
+    <T> List<T> select(Map<String, List<T>> candidatesByPool, int limit) {
+        TreeMap<Integer, List<String>> selectLevels = new TreeMap<Integer, List<String>>(Collections.reverseOrder());
+        for (String poolId : candidatesByPool.keySet()) {
+            Integer priority = getPriority(poolId);
+            List<String> level = selectLevels.get(priority);
+            if (level == null) {
+                level = new ArrayList<String>();
+                selectLevels.put(priority, level);
+            }
+            level.add(poolId);
+        }
+        Map<String, Integer> taken = new HashMap<String, Integer>();
+        List<String> fullPools = new ArrayList<String>();
+        int remaining = limit;
+        for (List<String> level : selectLevels.values()) {
+            if (remaining <= 0) {
+                break;
+            }
+            int totalWeight = 0;
+            for (String poolId : level) {
+                totalWeight += getWeight(poolId);
+            }
+            int levelCapacity = remaining;
+            for (String poolId : level) {
+                if (remaining <= 0) {
+                    break;
+                }
+                int share = Math.min(remaining, Math.max(1, levelCapacity * getWeight(poolId) / totalWeight));
+                int available = candidatesByPool.get(poolId).size();
+                int poolTaken = Math.min(share, available);
+                taken.put(poolId, poolTaken);
+                remaining -= poolTaken;
+                if (poolTaken < available) {
+                    fullPools.add(poolId);
+                }
+            }
+        }
+        for (String poolId : fullPools) {
+            if (remaining <= 0) {
+                break;
+            }
+            int poolTaken = taken.get(poolId);
+            int more = Math.min(remaining, candidatesByPool.get(poolId).size() - poolTaken);
+            taken.put(poolId, poolTaken + more);
+            remaining -= more;
+        }
+        List<T> selected = new ArrayList<T>(limit - remaining);
+        for (Map.Entry<String, List<T>> poolCandidates : candidatesByPool.entrySet()) {
+            Integer poolTaken = taken.get(poolCandidates.getKey());
+            if (poolTaken != null) {
+                selected.addAll(poolCandidates.getValue().subList(0, poolTaken));
+            }
+        }
+        return selected;
+    }
+
+    /** Returns the pool a job is queued in, null for the jobs without a pool. */
+    static String getPoolId(Runnable task) {
+        if (task instanceof PersistedServiceJob) {
+            return ((PersistedServiceJob) task).getPoolId();
+        }
+        return null;
+    }
+
+    /** Returns the queue depth, wait times and rejected jobs of each pool. */
+    List<Map<String, Object>> getPoolStates() {
+        List<Map<String, Object>> poolStates = new ArrayList<Map<String, Object>>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (List<PoolQueue> level : levels.values()) {
+                for (PoolQueue poolQueue : level) {
+                    Map<String, Object> poolState = new LinkedHashMap<String, Object>();
+                    poolState.put("poolId", poolQueue.poolId == null ? "" : poolQueue.poolId);
+                    poolState.put("priority", poolQueue.priority);
+                    poolState.put("weight", poolQueue.weight);
+                    poolState.put("queuedJobs", poolQueue.entries.size());
+                    poolState.put("oldestQueuedJobWaitMillis", poolQueue.entries.isEmpty() ? 0L : TimeUnit.NANOSECONDS.toMillis(now - poolQueue.entries.peekFirst().queuedNanos));
+                    poolState.put("startedJobs", poolQueue.dequeued);
+                    poolState.put("averageWaitMillis", poolQueue.dequeued == 0 ? 0L : TimeUnit.NANOSECONDS.toMillis(poolQueue.waitNanos / poolQueue.dequeued));
+                    poolState.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(poolQueue.maxWaitNanos));
+                    poolState.put("rejectedJobs", poolQueue.rejected);
+                    poolStates.add(poolState);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return poolStates;
+    }
+
+    /** Counts a job that could not be queued; the poller leaves it to a later poll. */
+    void rejected(Runnable task) {
+        lock.lock();
+        try {
+            getPoolQueue(getPoolId(task)).rejected++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PoolQueue getPoolQueue(String poolId) {
+        PoolQueue poolQueue = pools.get(poolId);
+        if (poolQueue == null) {
+            poolQueue = new PoolQueue(poolId);
+            pools.put(poolId, poolQueue);
+            addToLevel(poolQueue);
+        }
+        return poolQueue;
+    }
+
+    private void addToLevel(PoolQueue poolQueue) {
+        List<PoolQueue> level = levels.get(poolQueue.priority);
+        if (level == null) {
+            level = new ArrayList<PoolQueue>();
+            levels.put(poolQueue.priority, level);
+        }
+        level.add(poolQueue);
+    }
+
+    private void enqueue(Runnable task) {
+        getPoolQueue(getPoolId(task)).entries.addLast(new Entry(task, System.nanoTime()));
+        count++;
+        notEmpty.signal();
+    }
+
+    /** Takes the next job: from the highest priority with jobs, then by smooth weighted round-robin. */
+    private Runnable dequeue() {
+        for (List<PoolQueue> level : levels.values()) {
+            PoolQueue selected = null;
+            int totalWeight = 0;
+            for (PoolQueue poolQueue : level) {
+                if (!poolQueue.entries.isEmpty()) {
+                    poolQueue.currentWeight += poolQueue.weight;
+                    totalWeight += poolQueue.weight;
+                    if (selected == null || poolQueue.currentWeight > selected.currentWeight) {
+                        selected = poolQueue;
+                    }
+                }
+            }
+            if (selected != null) {
+                selected.currentWeight -= totalWeight;
+                Entry entry = selected.entries.pollFirst();
+                long waitNanos = System.nanoTime() - entry.queuedNanos;
+                selected.dequeued++;
+                selected.waitNanos += waitNanos;
+                if (waitNanos > selected.maxWaitNanos) {
+                    selected.maxWaitNanos = waitNanos;
+                }
+                count--;
+                return entry.task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try {
+            if (count >= capacity) {
+                return false;
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+        // the poller does not wait for room, the jobs that do not fit stay in JobSandbox
+        return offer(task);
+    }
+
+    @Override
+    public void put(Runnable task) {
+        if (!offer(task)) {
+            throw new IllegalStateException("Job queue full");
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            for (List<PoolQueue> level : levels.values()) {
+                for (PoolQueue poolQueue : level) {
+                    if (!poolQueue.entries.isEmpty()) {
+                        return poolQueue.entries.peekFirst().task;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object task) {
+        if (task == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (PoolQueue poolQueue : pools.values()) {
+                Iterator<Entry> entries = poolQueue.entries.iterator();
+                while (entries.hasNext()) {
+                    if (entries.next().task.equals(task)) {
+                        entries.remove();
+                        count--;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && count > 0) {
+                c.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns an iterator over a snapshot of the queued jobs, by pool priority. */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot = new ArrayList<Runnable>();
+        lock.lock();
+        try {
+            for (List<PoolQueue> level : levels.values()) {
+                for (PoolQueue poolQueue : level) {
+                    for (Entry entry : poolQueue.entries) {
+                        snapshot.add(entry.task);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new Iterator<Runnable>() {
+            private int next = 0;
+            private Runnable last = null;
+
+            public boolean hasNext() {
+                return next < snapshot.size();
+            }
+
+            public Runnable next() {
+                if (next >= snapshot.size()) {
+                    throw new NoSuchElementException();
+                }
+                last = snapshot.get(next++);
+                return last;
+            }
+
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                JobQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private static final class Entry {
+        private final Runnable task;
+        private final long queuedNanos;
+
+        private Entry(Runnable task, long queuedNanos) {
+            this.task = task;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    /** The jobs and statistics of one pool; guarded by the queue lock. */
+    private final class PoolQueue {
+        private final String poolId;
+        private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+        private int priority;
+        private int weight;
+        private int currentWeight = 0;
+        private long dequeued = 0;
+        private long waitNanos = 0;
+        private long maxWaitNanos = 0;
+        private long rejected = 0;
+
+        private PoolQueue(String poolId) {
+            this.poolId = poolId;
+            configure();
+        }
+
+        private void configure() {
+            this.priority = getPriority(poolId);
+            this.weight = getWeight(poolId);
+            this.currentWeight = 0;
+        }
+    }
+}
@@ -30,13 +30,11 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
-import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.serialize.SerializeException;
-import org.apache.ofbiz.entity.serialize.XmlSerializer;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericRequester;
@@ -270,6 +268,13 @@ public class PersistedServiceJob extends GenericServiceJob {
         }
     }
 
+    /**
+     * Returns the job pool of this job, or null when it has none.
+     */
+    public String getPoolId() {
+        return jobValue.getString("poolId");
+    }
+
     @Override
     protected String getServiceName() {
         if (jobValue == null || jobValue.get("serviceName") == null) {
@@ -285,7 +290,7 @@ public class PersistedServiceJob extends GenericServiceJob {
             if (UtilValidate.isNotEmpty(jobValue.getString("runtimeDataId"))) {
                 GenericValue contextObj = jobValue.getRelatedOne("RuntimeData", false);
                 if (contextObj != null) {
-                    context = UtilGenerics.checkMap(XmlSerializer.deserialize(contextObj.getString("runtimeInfo"), delegator), String.class, Object.class);
+                    context = RuntimeDataSerializer.deserialize(contextObj.getString("runtimeInfo"), delegator);
                 }
             }
             if (context == null) {
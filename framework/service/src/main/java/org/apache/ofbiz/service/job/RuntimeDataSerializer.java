@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.ofbiz.base.config.GenericConfigException;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.serialize.BinarySerializer;
+import org.apache.ofbiz.entity.serialize.SerializeException;
+import org.apache.ofbiz.entity.serialize.XmlSerializer;
+import org.apache.ofbiz.service.config.ServiceConfigUtil;
+import org.apache.ofbiz.service.config.model.ThreadPool;
+import org.xml.sax.SAXException;
+
+/**
+ * Serializes the context of persisted jobs for <code>RuntimeData.runtimeInfo</code>, in the format set on
+ * the service or on the thread-pool, and reads contexts back in any of the formats.
+ */
+public final class RuntimeDataSerializer {
+
+    public static final String module = RuntimeDataSerializer.class.getName();
+
+    private RuntimeDataSerializer() {}
+
+    /**
+     * Serializes a job context.
+     * @param context the context
+     * @param format one of the ThreadPool RUNTIME_DATA_ formats, or null or empty to use the thread-pool setting
+     */
+    public static String serialize(Map<String, ? extends Object> context, String format) throws SerializeException, IOException {
+        if (UtilValidate.isEmpty(format)) {
+            format = getDefaultFormat();
+        }
+        if (ThreadPool.RUNTIME_DATA_BINARY.equals(format)) {
+            return BinarySerializer.serialize(context, false);
+        } else if (ThreadPool.RUNTIME_DATA_BINARY_COMPRESSED.equals(format)) {
+            return BinarySerializer.serialize(context, true);
+        }
+        return XmlSerializer.serialize(context);
+    }
+
+    /** Deserializes a job context stored in any of the formats. */
+    public static Map<String, Object> deserialize(String runtimeInfo, Delegator delegator) throws SerializeException, SAXException, ParserConfigurationException, IOException {
+        Object context;
+        if (BinarySerializer.isBinary(runtimeInfo)) {
+            context = BinarySerializer.deserialize(runtimeInfo, delegator);
+        } else {
+            context = XmlSerializer.deserialize(runtimeInfo, delegator);
+        }
+        return UtilGenerics.checkMap(context, String.class, Object.class);
+    }
+
+    private static String getDefaultFormat() {
+        try {
+            return ServiceConfigUtil.getServiceEngine().getThreadPool().getRuntimeDataFormat();
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Exception thrown while getting service configuration, using the xml runtime data format: ", module);
+            return ThreadPool.RUNTIME_DATA_XML;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.semaphore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+
+import javax.transaction.Transaction;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionFactoryLoader;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+/**
+ * A database advisory lock, used by <code>ServiceSemaphore</code> instead of the ServiceSemaphore
+ * row when <code>semaphore.advisory.lock</code> is set in service.properties. The lock is held by a
+ * dedicated connection, outside of any transaction, until it is unlocked; the database releases it
+ * if the connection is lost.
+ * <p>Each semaphored service call holds this connection from the pool of the ServiceSemaphore
+ * entity group for the whole service run, in addition to the connection of its transaction: the
+ * pool must allow for two connections per concurrently running semaphored service.</p>
+ * <p>Supported databases: PostgreSQL (<code>pg_try_advisory_lock</code>) and MySQL/MariaDB
+ * (<code>GET_LOCK</code>).</p>
+ */
+final class AdvisoryLock {
+
+    public static final String module = AdvisoryLock.class.getName();
+    private static final int POSTGRESQL = 1;
+    private static final int MYSQL = 2;
+    /** The longest lock name MySQL accepts */
+    private static final int MYSQL_MAX_NAME_LENGTH = 64;
+
+    /**
+     * Opens a connection for the advisory lock of the given name.
+     * Returns null when the database has no advisory locks.
+     */
+    static AdvisoryLock open(Delegator delegator, String name) throws SemaphoreFailException {
+        Transaction parent = null;
+        Connection connection = null;
+        try {
+            // the connection must not be enlisted in the current transaction
+            parent = TransactionUtil.suspend();
+            connection = TransactionFactoryLoader.getInstance().getConnection(delegator.getGroupHelperInfo(delegator.getEntityGroupName("ServiceSemaphore")));
+            if (connection == null) {
+                throw new SemaphoreFailException("Unable to establish a connection with the database for the semaphore lock");
+            }
+            String productName = connection.getMetaData().getDatabaseProductName();
+            int database = 0;
+            if (productName.contains("PostgreSQL")) {
+                database = POSTGRESQL;
+            } else if (productName.contains("MySQL") || productName.contains("MariaDB")) {
+                database = MYSQL;
+            }
+            if (database == 0) {
+                connection.close();
+                return null;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.setAutoCommit(true);
+            }
+            return new AdvisoryLock(connection, database, name);
+        } catch (SQLException e) {
+            close(connection);
+            throw new SemaphoreFailException("Unable to open the semaphore advisory lock", e);
+        } catch (GenericEntityException e) {
+            close(connection);
+            throw new SemaphoreFailException("Unable to open the semaphore advisory lock", e);
+        } finally {
+            if (parent != null) {
+                try {
+                    TransactionUtil.resume(parent);
+                } catch (GenericTransactionException e) {
+                    Debug.logError(e, module);
+                }
+            }
+        }
+    }
+
+    private static void close(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                Debug.logWarning(e, module);
+            }
+        }
+    }
+
+    /**
+     * Closes the physical connection instead of returning it to the pool, where it would still hold
+     * the lock that could not be released. The pool discards a connection closed underneath it.
+     */
+    private static void abort(Connection connection) {
+        try {
+            connection.abort(new Executor() {
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+        } catch (SQLException e) {
+            Debug.logError(e, "Unable to abort the semaphore advisory lock connection", module);
+        } catch (AbstractMethodError e) {
+            // a pre JDBC 4.1 driver
+            Debug.logError(e, "Unable to abort the semaphore advisory lock connection", module);
+        }
+        close(connection);
+    }
+
+    /** Returns the 64 bits FNV-1a hash of the name, the PostgreSQL lock key. */
+    private static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // -------------------------------------- //
+
+    private final Connection connection;
+    private final int database;
+    private final String name;
+    private boolean locked = false;
+
+    private AdvisoryLock(Connection connection, int database, String name) {
+        this.connection = connection;
+        this.database = database;
+        this.name = name;
+    }
+
+    /**
+     * Tries to get the lock, waiting at most <code>waitMillis</code> milliseconds. MySQL waits in the
+     * database, PostgreSQL retries every <code>sleepMillis</code> milliseconds.
+     * Returns false when the lock is held by another session at the end of the wait.
+     */
+    boolean tryLock(long waitMillis, long sleepMillis) throws SemaphoreFailException {
+        try {
+            if (database == MYSQL) {
+                locked = queryBoolean("SELECT GET_LOCK(?, " + ((waitMillis + 999) / 1000) + ")", true);
+            } else {
+                long deadline = System.currentTimeMillis() + waitMillis;
+                locked = queryBoolean("SELECT pg_try_advisory_lock(?)", false);
+                while (!locked && System.currentTimeMillis() + sleepMillis <= deadline) {
+                    try {
+                        Thread.sleep(sleepMillis);
+                    } catch (InterruptedException e) {
+                        Debug.logInfo(e, "Sleep interrupted: AdvisoryLock.tryLock()", module);
+                    }
+                    locked = queryBoolean("SELECT pg_try_advisory_lock(?)", false);
+                }
+            }
+            return locked;
+        } catch (SQLException e) {
+            throw new SemaphoreFailException("Unable to get the semaphore advisory lock [" + name + "]", e);
+        }
+    }
+
+    /**
+     * Releases the lock if it is held and closes the connection. When the lock cannot be released,
+     * the connection is aborted so the database drops the lock with the session.
+     */
+    void unlock() {
+        boolean released = false;
+        try {
+            if (locked) {
+                queryBoolean(database == MYSQL ? "SELECT RELEASE_LOCK(?)" : "SELECT pg_advisory_unlock(?)", database == MYSQL);
+                locked = false;
+            }
+            released = true;
+        } catch (SQLException e) {
+            Debug.logError(e, "Unable to release the semaphore advisory lock [" + name + "], aborting its connection", module);
+        } catch (RuntimeException e) {
+            Debug.logError(e, "Unable to release the semaphore advisory lock [" + name + "], aborting its connection", module);
+        } finally {
+            if (released) {
+                close(connection);
+            } else {
+                abort(connection);
+                locked = false;
+            }
+        }
+    }
+
+    private boolean queryBoolean(String sql, boolean nameParameter) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql);
+        try {
+            if (nameParameter) {
+                ps.setString(1, name.length() > MYSQL_MAX_NAME_LENGTH ? "ofbiz." + Long.toHexString(hash(name)) : name);
+            } else {
+                ps.setLong(1, hash(name));
+            }
+            ResultSet rs = ps.executeQuery();
+            try {
+                // GET_LOCK returns 1 when locked, 0 on timeout and NULL on error
+                return rs.next() && rs.getBoolean(1);
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+    }
+}
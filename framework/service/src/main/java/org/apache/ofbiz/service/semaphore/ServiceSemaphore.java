@@ -19,11 +19,18 @@
 package org.apache.ofbiz.service.semaphore;
 
 import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.transaction.Transaction;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
@@ -35,6 +42,11 @@ import org.apache.ofbiz.service.job.JobManager;
 
 /**
  * ServiceSemaphore
+ * <p>The threads of this instance wait for a semaphore in the JVM: they are queued on a striped lock
+ * and woken up when the holder releases it, so only the holder checks the database. The
+ * ServiceSemaphore row (or a database advisory lock, see <code>semaphore.advisory.lock</code> in
+ * service.properties) only excludes the other instances, which are still polled every
+ * <code>semaphore-sleep</code> milliseconds.</p>
  */
 public class ServiceSemaphore {
     // TODO: add something to make sure semaphores are cleaned up on failures and when the thread somehow goes away without cleaning it up
@@ -44,6 +56,18 @@ public class ServiceSemaphore {
     public static final int SEMAPHORE_MODE_FAIL = 0;
     public static final int SEMAPHORE_MODE_WAIT = 1;
     public static final int SEMAPHORE_MODE_NONE = 2;
+    private static final boolean useAdvisoryLock = UtilProperties.getPropertyAsBoolean("service", "semaphore.advisory.lock", false);
+    private static final int STRIPES = 32;
+    private static final ReentrantLock[] stripeLocks = new ReentrantLock[STRIPES];
+    private static final Condition[] stripeReleased = new Condition[STRIPES];
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            stripeLocks[i] = new ReentrantLock();
+            stripeReleased[i] = stripeLocks[i].newCondition();
+        }
+    }
+    /** The semaphores held in this instance, by delegator and service name; changed under the lock of their stripe */
+    private static final Set<String> localSemaphores = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     protected Delegator delegator;
     protected GenericValue lock;
@@ -52,12 +76,16 @@ public class ServiceSemaphore {
     protected int wait = 0;
     protected int mode = SEMAPHORE_MODE_NONE;
     protected Timestamp lockTime = null;
+    private final String localName;
+    private boolean localLock = false;
+    private AdvisoryLock advisoryLock = null;
 
     public ServiceSemaphore(Delegator delegator, ModelService model) {
         this.delegator = delegator;
         this.mode = "wait".equals(model.semaphore) ? SEMAPHORE_MODE_WAIT : ("fail".equals(model.semaphore) ? SEMAPHORE_MODE_FAIL : SEMAPHORE_MODE_NONE);
         this.model = model;
         this.lock = null;
+        this.localName = delegator.getDelegatorName() + ":" + model.name;
     }
 
     public void acquire() throws SemaphoreWaitException, SemaphoreFailException {
@@ -65,17 +93,107 @@ public class ServiceSemaphore {
 
         lockTime = UtilDateTime.nowTimestamp();
 
-        if (this.checkLockNeedToWait()) {
-            waitOrFail();
+        acquireLocal();
+        boolean acquired = false;
+        try {
+            if (useAdvisoryLock) {
+                advisoryLock = AdvisoryLock.open(delegator, localName);
+            }
+            if (advisoryLock != null) {
+                acquireAdvisoryLock();
+            } else if (this.checkLockNeedToWait()) {
+                waitOrFail();
+            }
+            acquired = true;
+        } finally {
+            if (!acquired) {
+                if (advisoryLock != null) {
+                    advisoryLock.unlock();
+                    advisoryLock = null;
+                }
+                releaseLocal();
+            }
         }
     }
 
     public void release() throws SemaphoreFailException {
         if (mode == SEMAPHORE_MODE_NONE) return;
 
-        // remove the lock file
-        if (lock != null) {
-            dbWrite(lock, true);
+        try {
+            if (advisoryLock != null) {
+                advisoryLock.unlock();
+                advisoryLock = null;
+            }
+            // remove the lock file
+            if (lock != null) {
+                dbWrite(lock, true);
+            }
+        } finally {
+            releaseLocal();
+        }
+    }
+
+    private long waitDeadline() {
+        return lockTime.getTime() + model.semaphoreWait * 1000L;
+    }
+
+    private SemaphoreWaitException waitTimeout() {
+        double waitTimeSec = ((System.currentTimeMillis() - lockTime.getTime()) / 1000.0);
+        String errMsg = "Service [" + model.name + "] with wait semaphore exceeded wait timeout, waited [" + waitTimeSec + "], wait started at " + lockTime;
+        Debug.logWarning(errMsg, module);
+        return new SemaphoreWaitException(errMsg);
+    }
+
+    // Takes the semaphore among the threads of this instance, waiting for its release in wait mode.
+    void acquireLocal() throws SemaphoreWaitException, SemaphoreFailException {
+        int stripe = (localName.hashCode() & Integer.MAX_VALUE) % STRIPES;
+        ReentrantLock stripeLock = stripeLocks[stripe];
+        stripeLock.lock();
+        try {
+            while (!localSemaphores.add(localName)) {
+                if (SEMAPHORE_MODE_FAIL == mode) {
+                    throw new SemaphoreFailException("Service [" + model.name + "] is locked");
+                }
+                long waitMillis = waitDeadline() - System.currentTimeMillis();
+                if (waitMillis <= 0) {
+                    throw waitTimeout();
+                }
+                try {
+                    stripeReleased[stripe].await(waitMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Debug.logInfo(e, "Wait interrupted: ServiceSemaphore.acquireLocal()", module);
+                }
+            }
+            localLock = true;
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    void releaseLocal() {
+        if (!localLock) {
+            return;
+        }
+        int stripe = (localName.hashCode() & Integer.MAX_VALUE) % STRIPES;
+        ReentrantLock stripeLock = stripeLocks[stripe];
+        stripeLock.lock();
+        try {
+            localSemaphores.remove(localName);
+            localLock = false;
+            // the stripe is shared by other semaphores, wake up all the waiters to check theirs
+            stripeReleased[stripe].signalAll();
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    private void acquireAdvisoryLock() throws SemaphoreWaitException, SemaphoreFailException {
+        if (SEMAPHORE_MODE_FAIL == mode) {
+            if (!advisoryLock.tryLock(0, 0)) {
+                throw new SemaphoreFailException("Service [" + model.name + "] is locked");
+            }
+        } else if (!advisoryLock.tryLock(Math.max(0, waitDeadline() - System.currentTimeMillis()), model.semaphoreSleep)) {
+            throw waitTimeout();
         }
     }
 
@@ -84,12 +202,13 @@ public class ServiceSemaphore {
             // fail
             throw new SemaphoreFailException("Service [" + model.name + "] is locked");
         } else if (SEMAPHORE_MODE_WAIT == mode) {
-            // get the wait and sleep values
-            long maxWaitCount = ((model.semaphoreWait * 1000) / model.semaphoreSleep);
+            // another instance holds the semaphore: the threads of this instance wait in acquireLocal(),
+            // only this one polls the database until the wait timeout
+            long deadline = waitDeadline();
             long sleep = model.semaphoreSleep;
 
             boolean timedOut = true;
-            while (wait < maxWaitCount) {
+            while (System.currentTimeMillis() + sleep <= deadline) {
                 wait++;
                 try {
                     Thread.sleep(sleep);
@@ -104,10 +223,7 @@ public class ServiceSemaphore {
                 }
             }
             if (timedOut) {
-                double waitTimeSec = ((System.currentTimeMillis() - lockTime.getTime()) / 1000.0);
-                String errMsg = "Service [" + model.name + "] with wait semaphore exceeded wait timeout, waited [" + waitTimeSec + "], wait started at " + lockTime;
-                Debug.logWarning(errMsg, module);
-                throw new SemaphoreWaitException(errMsg);
+                throw waitTimeout();
             }
         } else if (SEMAPHORE_MODE_NONE == mode) {
             Debug.logWarning("Semaphore mode [none] attempted to aquire a lock; but should not have!", module);
@@ -22,6 +22,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
@@ -280,6 +284,40 @@ public class ServiceEngineTestServices {
         return ServiceUtil.returnSuccess();
     }
 
+    private static CyclicBarrier parallelGroupBarrier = null;
+
+    private static synchronized CyclicBarrier getParallelGroupBarrier(int parties) {
+        if (parallelGroupBarrier == null || parallelGroupBarrier.getParties() != parties || parallelGroupBarrier.isBroken()) {
+            parallelGroupBarrier = new CyclicBarrier(parties);
+        }
+        return parallelGroupBarrier;
+    }
+
+    public static Map<String, Object> testServiceParallelGroupMember(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Long awaitMembers = (Long) context.get("awaitMembers");
+        if (awaitMembers != null) {
+            // the barrier is only passed if all the members are running at the same time
+            try {
+                getParallelGroupBarrier(awaitMembers.intValue()).await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return ServiceUtil.returnError("In testServiceParallelGroupMember barrier wait interrupted");
+            } catch (BrokenBarrierException e) {
+                return ServiceUtil.returnError("In testServiceParallelGroupMember barrier broken, the members did not all run at the same time");
+            } catch (TimeoutException e) {
+                return ServiceUtil.returnError("In testServiceParallelGroupMember barrier timed out, the members did not all run at the same time");
+            }
+        }
+        Long sleepMillis = (Long) context.get("sleepMillis");
+        if (sleepMillis != null) {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Debug.logInfo("In testServiceParallelGroupMember sleep interrupted", module);
+            }
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
     // ==================================================
 
     public static Map<String, Object> testServiceOwnTxSubServiceAfterSetRollbackOnlyInParentErrorCatchWrapper(DispatchContext dctx, Map<String, ? extends Object> context) {
@@ -22,6 +22,7 @@ import java.util.Map;
 
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.ServiceUtil;
 import org.apache.ofbiz.service.testtools.OFBizTestCase;
 
 public class ServiceEngineTests extends OFBizTestCase {
@@ -42,4 +43,13 @@ public class ServiceEngineTests extends OFBizTestCase {
         Map<String, Object> result = dispatcher.runSync("testScv", UtilMisc.toMap("message", "Unit Test"));
         assertEquals("Service result success", ModelService.RESPOND_SUCCESS, result.get(ModelService.RESPONSE_MESSAGE));
     }
+
+    public void testParallelGroup() throws Exception {
+        // each of the 3 members waits until all of them reached the same barrier, or fails
+        Map<String, Object> result = dispatcher.runSync("testServiceParallelGroup", UtilMisc.<String, Object>toMap("awaitMembers", 3L));
+        assertTrue("Parallel group members ran at the same time", ServiceUtil.isSuccess(result));
+
+        result = dispatcher.runSync("testServiceParallelGroupTimeout", UtilMisc.<String, Object>toMap("sleepMillis", 3000L));
+        assertTrue("Parallel group result error on timeout", ServiceUtil.isError(result));
+    }
 }
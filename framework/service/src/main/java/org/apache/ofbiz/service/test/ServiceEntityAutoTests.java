@@ -19,7 +19,9 @@
 package org.apache.ofbiz.service.test;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -69,6 +71,32 @@ public class ServiceEntityAutoTests extends OFBizTestCase {
         assertTrue(ServiceUtil.isError(results));
     }
 
+    public void testEntityAutoCreateBatch() throws Exception {
+        //test create in one transaction
+        List<Map<String, Object>> contexts = new ArrayList<Map<String, Object>>();
+        for (int i = 1; i <= 3; i++) {
+            contexts.add(UtilMisc.<String, Object>toMap("testingId", "TESTING_BATCH_" + i, "testingName", "entity auto batch testing"));
+        }
+        List<Map<String, Object>> results = dispatcher.runSyncBatch("testEntityAutoCreateTestingPkPresent", contexts, 0);
+        assertEquals(3, results.size());
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(ServiceUtil.isSuccess(results.get(i - 1)));
+            assertNotNull(EntityQuery.use(delegator).from("Testing").where("testingId", "TESTING_BATCH_" + i).queryOne());
+        }
+
+        //test collision inside a chunk: the chunk is rolled back, the next chunk is committed
+        contexts = new ArrayList<Map<String, Object>>();
+        contexts.add(UtilMisc.<String, Object>toMap("testingId", "TESTING_BATCH_4"));
+        contexts.add(UtilMisc.<String, Object>toMap("testingId", "TESTING_BATCH_4"));
+        contexts.add(UtilMisc.<String, Object>toMap("testingId", "TESTING_BATCH_5"));
+        results = dispatcher.runSyncBatch("testEntityAutoCreateTestingPkPresent", contexts, 2);
+        assertTrue(ServiceUtil.isError(results.get(0)));
+        assertTrue(ServiceUtil.isError(results.get(1)));
+        assertTrue(ServiceUtil.isSuccess(results.get(2)));
+        assertNull(EntityQuery.use(delegator).from("Testing").where("testingId", "TESTING_BATCH_4").queryOne());
+        assertNotNull(EntityQuery.use(delegator).from("Testing").where("testingId", "TESTING_BATCH_5").queryOne());
+    }
+
     public void testEntityAutoCreateDoublePkEntity() throws Exception {
         delegator.create("Testing", "testingId", "TESTING_2");
 
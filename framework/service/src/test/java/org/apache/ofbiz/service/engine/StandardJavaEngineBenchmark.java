@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.engine;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ModelService;
+
+/**
+ * Compares the ways StandardJavaEngine can call a trivial Java service: looking up the class and the
+ * method for every call and using Method.invoke, as it used to, and the MethodHandle it now resolves
+ * once per ModelService.
+ * <p>
+ * Usage: <code>StandardJavaEngineBenchmark [calls]</code>. The dispatcher overhead around the engine
+ * (context validation, transactions, ECAs) is the same for both and is left out.
+ * <p>
+ * This is not run by the unit tests.
+ */
+public final class StandardJavaEngineBenchmark {
+
+    private StandardJavaEngineBenchmark() {
+    }
+
+    public static Map<String, Object> trivialService(DispatchContext dctx, Map<String, Object> context) {
+        return context;
+    }
+
+    public static void main(String[] args) throws Throwable {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        ModelService modelService = new ModelService();
+        modelService.name = "trivialService";
+        modelService.location = StandardJavaEngineBenchmark.class.getName();
+        modelService.invoke = "trivialService";
+        Map<String, Object> context = new HashMap<String, Object>();
+        ClassLoader cl = StandardJavaEngineBenchmark.class.getClassLoader();
+        System.out.println("calls " + calls);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                Class<?> c = cl.loadClass(modelService.location);
+                Method m = c.getMethod(modelService.invoke, DispatchContext.class, Map.class);
+                consume(m.invoke(null, null, context));
+            }
+            report("reflection", start, calls);
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                consume(JavaServiceMethod.getServiceMethod(modelService, modelService.location, cl).invoke(null, context));
+            }
+            report("handle", start, calls);
+        }
+    }
+
+    private static int sink = 0;
+
+    private static void consume(Object result) {
+        if (result == null) {
+            sink++;
+        }
+    }
+
+    private static void report(String name, long start, int calls) {
+        double nanosPerCall = (double) (System.nanoTime() - start) / calls;
+        System.out.println(String.format("%-12s %8.1f ns/call", name, nanosPerCall));
+    }
+}
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityConditionListBase;
+import org.apache.ofbiz.entity.condition.EntityExpr;
+import org.apache.ofbiz.entity.condition.EntityFieldValue;
+import org.apache.ofbiz.entity.util.EntityFindOptions;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.config.model.ServiceConfig;
+import org.apache.ofbiz.service.config.model.ThreadPool;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class JobManagerTests {
+
+    private static final String SERVICE_CONFIG = "<service-config><service-engine name=\"default\">"
+            + "<authorization service-name=\"userLogin\"/>"
+            + "<thread-pool send-to-pool=\"pool\" jobs=\"100\">"
+            + "<run-from-pool name=\"pool\"/>"
+            + "<run-from-pool name=\"urgent\" priority=\"10\"/>"
+            + "</thread-pool></service-engine></service-config>";
+
+    private JobQueue queue;
+    private JobSandbox jobSandbox;
+    private Delegator delegator;
+
+    /**
+     * The JobSandbox rows of the tests: the due jobs by id, in the order of their run time, their pool
+     * and the instance that claimed them. The candidates read with FOR UPDATE SKIP LOCKED stay locked by
+     * the reading instance until it claims them.
+     */
+    private static final class JobSandbox {
+        private final Map<String, String> claimedBy = new TreeMap<String, String>();
+        private final Map<String, String> poolIds = new HashMap<String, String>();
+        private final Map<String, Thread> lockedBy = new HashMap<String, Thread>();
+        private final List<EntityFindOptions> findOptions = new ArrayList<EntityFindOptions>();
+
+        private JobSandbox(int jobCount) {
+            add("job", jobCount, "pool");
+        }
+
+        private void add(String prefix, int jobCount, String poolId) {
+            for (int i = 0; i < jobCount; i++) {
+                String jobId = String.format("%s%04d", prefix, i);
+                claimedBy.put(jobId, null);
+                poolIds.put(jobId, poolId);
+            }
+        }
+
+        private synchronized List<GenericValue> findDue(EntityFindOptions options, Object poolId) {
+            findOptions.add(options);
+            List<GenericValue> due = new ArrayList<GenericValue>();
+            for (Map.Entry<String, String> entry: claimedBy.entrySet()) {
+                Thread locker = lockedBy.get(entry.getKey());
+                if (entry.getValue() != null || (options.getSkipLocked() && locker != null && locker != Thread.currentThread())) {
+                    continue;
+                }
+                if (poolId == null ? poolIds.get(entry.getKey()) != null : !poolId.equals(poolIds.get(entry.getKey()))) {
+                    continue;
+                }
+                if (options.getForUpdate()) {
+                    lockedBy.put(entry.getKey(), Thread.currentThread());
+                }
+                due.add(jobValue(entry.getKey()));
+                if (options.getMaxRows() > 0 && due.size() == options.getMaxRows()) {
+                    break;
+                }
+            }
+            return due;
+        }
+
+        private synchronized List<GenericValue> findClaimed(Collection<?> jobIds, Object instanceId) {
+            List<GenericValue> claimed = new ArrayList<GenericValue>();
+            for (Object jobId: jobIds) {
+                if (instanceId.equals(claimedBy.get(jobId))) {
+                    claimed.add(jobValue((String) jobId));
+                }
+            }
+            return claimed;
+        }
+
+        private synchronized int claim(Collection<?> jobIds, Object instanceId) {
+            int claimed = 0;
+            for (Object jobId: jobIds) {
+                if (claimedBy.containsKey(jobId) && claimedBy.get(jobId) == null) {
+                    claimedBy.put((String) jobId, (String) instanceId);
+                    claimed++;
+                }
+            }
+            return claimed;
+        }
+
+        // the commit of the polling transaction releases the locks; claims are made before
+        private synchronized void unlock() {
+            Iterator<Thread> it = lockedBy.values().iterator();
+            while (it.hasNext()) {
+                if (it.next() == Thread.currentThread()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static GenericValue jobValue(String jobId) {
+        GenericValue jobValue = mock(GenericValue.class);
+        when(jobValue.get("jobId")).thenReturn(jobId);
+        when(jobValue.getString("jobId")).thenReturn(jobId);
+        when(jobValue.getString("jobName")).thenReturn(jobId);
+        when(jobValue.getTimestamp("runTime")).thenReturn(new Timestamp(0));
+        when(jobValue.getLong("currentRetryCount")).thenReturn(0L);
+        return jobValue;
+    }
+
+    private static EntityListIterator iterator(List<GenericValue> values) throws Exception {
+        final Iterator<GenericValue> it = values.iterator();
+        EntityListIterator iterator = mock(EntityListIterator.class);
+        when(iterator.next()).thenAnswer(new Answer<GenericValue>() {
+            public GenericValue answer(InvocationOnMock invocation) {
+                return it.hasNext() ? it.next() : null;
+            }
+        });
+        return iterator;
+    }
+
+    /** Returns the right side of the comparison of a field in a condition or in an AND of conditions */
+    private static Object getValue(EntityCondition condition, String fieldName) {
+        if (condition instanceof EntityConditionListBase<?>) {
+            Iterator<? extends EntityCondition> it = ((EntityConditionListBase<?>) condition).getConditionIterator();
+            while (it.hasNext()) {
+                Object value = getValue(it.next(), fieldName);
+                if (value != null) {
+                    return value;
+                }
+            }
+        } else if (condition instanceof EntityExpr) {
+            EntityExpr expr = (EntityExpr) condition;
+            if (expr.getLhs() instanceof EntityFieldValue && fieldName.equals(((EntityFieldValue) expr.getLhs()).getFieldName())) {
+                return expr.getRhs();
+            }
+        }
+        return null;
+    }
+
+    private static Collection<?> getJobIds(EntityCondition condition) {
+        Object jobIds = getValue(condition, "jobId");
+        return jobIds instanceof Collection<?> ? (Collection<?>) jobIds : Collections.singleton(jobIds);
+    }
+
+    @Before
+    public void initialize() throws Exception {
+        ServiceConfig serviceConfig = ServiceConfig.create(UtilXml.readXmlDocument(SERVICE_CONFIG, false).getDocumentElement());
+        queue = new JobQueue(100);
+        queue.configure(serviceConfig.getServiceEngine("default").getThreadPool());
+        jobSandbox = new JobSandbox(100);
+        delegator = mock(Delegator.class);
+        when(delegator.find(eq("JobSandbox"), any(EntityCondition.class), any(EntityCondition.class), anySetOf(String.class), anyListOf(String.class), any(EntityFindOptions.class))).thenAnswer(new Answer<EntityListIterator>() {
+            public EntityListIterator answer(InvocationOnMock invocation) throws Exception {
+                EntityCondition condition = (EntityCondition) invocation.getArguments()[1];
+                if (invocation.getArguments()[3] != null) {
+                    return iterator(jobSandbox.findClaimed(getJobIds(condition), getValue(condition, "runByInstanceId")));
+                }
+                return iterator(jobSandbox.findDue((EntityFindOptions) invocation.getArguments()[5], getValue(condition, "poolId")));
+            }
+        });
+        when(delegator.storeByCondition(eq("JobSandbox"), anyMapOf(String.class, Object.class), any(EntityCondition.class))).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) {
+                Object instanceId = ((Map<?, ?>) invocation.getArguments()[1]).get("runByInstanceId");
+                return jobSandbox.claim(getJobIds((EntityCondition) invocation.getArguments()[2]), instanceId);
+            }
+        });
+    }
+
+    private List<Job> poll(JobManager jobManager, String claimMode, int limit) {
+        try {
+            return jobManager.poll(mock(DispatchContext.class), claimMode, Arrays.asList("pool", "urgent"), limit, queue);
+        } finally {
+            jobSandbox.unlock();
+        }
+    }
+
+    private static Set<String> getJobIds(List<Job> jobs) {
+        Set<String> jobIds = new HashSet<String>();
+        for (Job job: jobs) {
+            jobIds.add(job.getJobId());
+        }
+        return jobIds;
+    }
+
+    @Test
+    public void skipLockedReadsTheClaimedJobsOnly() throws Exception {
+        JobManager jobManager = new JobManager(delegator, "instance1");
+        List<Job> jobs = poll(jobManager, ThreadPool.CLAIM_SKIP_LOCKED, 10);
+        assertEquals(10, jobs.size());
+        // a query for the jobs of no pool and one for each run pool
+        assertEquals(3, jobSandbox.findOptions.size());
+        for (EntityFindOptions options: jobSandbox.findOptions) {
+            assertTrue("Candidates read for update", options.getForUpdate());
+            assertTrue("Locked candidates skipped", options.getSkipLocked());
+            assertEquals("Candidates read per pool", 10, options.getMaxRows());
+        }
+        assertEquals(10, getJobIds(poll(jobManager, ThreadPool.CLAIM_SKIP_LOCKED, 10)).size());
+        assertEquals(20, jobSandbox.findClaimed(jobSandbox.claimedBy.keySet(), "instance1").size());
+    }
+
+    @Test
+    public void batchReadsWithoutLocking() throws Exception {
+        List<Job> jobs = poll(new JobManager(delegator, "instance1"), ThreadPool.CLAIM_BATCH, 10);
+        assertEquals(10, jobs.size());
+        for (EntityFindOptions options: jobSandbox.findOptions) {
+            assertTrue("Candidates not locked", !options.getForUpdate() && !options.getSkipLocked());
+        }
+    }
+
+    @Test
+    public void backlogDoesNotHideHigherPriorityJobs() throws Exception {
+        // the urgent job is due after all the jobs of the backlog
+        jobSandbox.add("later", 1, "urgent");
+        for (String claimMode: Arrays.asList(ThreadPool.CLAIM_SKIP_LOCKED, ThreadPool.CLAIM_BATCH, ThreadPool.CLAIM_SINGLE)) {
+            JobManager jobManager = new JobManager(delegator, "instance1");
+            List<Job> jobs = poll(jobManager, claimMode, 5);
+            assertEquals(claimMode + ": jobs claimed", 5, jobs.size());
+            assertTrue(claimMode + ": urgent job claimed first", getJobIds(jobs).contains("later0000"));
+            jobSandbox = new JobSandbox(100);
+            jobSandbox.add("later", 1, "urgent");
+        }
+    }
+
+    private void assertNoJobClaimedTwice(final String claimMode) throws Exception {
+        final JobManager[] jobManagers = {new JobManager(delegator, "instance1"), new JobManager(delegator, "instance2")};
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(jobManagers.length);
+        try {
+            List<Future<List<Job>>> futures = new ArrayList<Future<List<Job>>>();
+            for (final JobManager jobManager: jobManagers) {
+                futures.add(executor.submit(new Callable<List<Job>>() {
+                    public List<Job> call() throws Exception {
+                        start.await();
+                        List<Job> claimed = new ArrayList<Job>();
+                        List<Job> jobs = poll(jobManager, claimMode, 7);
+                        while (!jobs.isEmpty()) {
+                            claimed.addAll(jobs);
+                            jobs = poll(jobManager, claimMode, 7);
+                        }
+                        return claimed;
+                    }
+                }));
+            }
+            start.countDown();
+            Set<String> claimedIds = new HashSet<String>();
+            int claimedCount = 0;
+            for (Future<List<Job>> future: futures) {
+                List<Job> claimed = future.get();
+                claimedIds.addAll(getJobIds(claimed));
+                claimedCount += claimed.size();
+            }
+            assertEquals(claimMode + ": every job claimed", 100, claimedIds.size());
+            assertEquals(claimMode + ": no job claimed twice", 100, claimedCount);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void twoInstancesNeverClaimTheSameJob() throws Exception {
+        assertNoJobClaimedTwice(ThreadPool.CLAIM_SKIP_LOCKED);
+        jobSandbox = new JobSandbox(100);
+        assertNoJobClaimedTwice(ThreadPool.CLAIM_BATCH);
+        jobSandbox = new JobSandbox(100);
+        assertNoJobClaimedTwice(ThreadPool.CLAIM_SINGLE);
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.transaction.Transaction;
+
+import org.apache.ofbiz.entity.transaction.TransactionFactoryLoader;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.junit.Test;
+
+public class JobPollerTests {
+
+    private static Transaction getTransaction() throws Exception {
+        return TransactionFactoryLoader.getInstance().getTransactionManager().getTransaction();
+    }
+
+    @Test
+    public void requestOutsideTransactionIsImmediate() throws Exception {
+        JobPoller.WakeUpRequest wakeUpRequest = new JobPoller.WakeUpRequest();
+        wakeUpRequest.request();
+        wakeUpRequest.request();
+        assertTrue("Poll requested", wakeUpRequest.await(0));
+        assertFalse("Requests merged", wakeUpRequest.await(0));
+    }
+
+    @Test
+    public void requestInTransactionWaitsForCommit() throws Exception {
+        JobPoller.WakeUpRequest wakeUpRequest = new JobPoller.WakeUpRequest();
+        boolean beganTransaction = TransactionUtil.begin();
+        assertTrue("Transaction began", beganTransaction);
+        try {
+            for (int i = 0; i < 10; i++) {
+                wakeUpRequest.requestAfterCommit(getTransaction());
+            }
+            assertEquals("One synchronization for the transaction", 1, wakeUpRequest.getPendingTransactionCount());
+            assertFalse("No poll before the commit", wakeUpRequest.await(0));
+        } finally {
+            TransactionUtil.commit(beganTransaction);
+        }
+        assertEquals("Synchronization done", 0, wakeUpRequest.getPendingTransactionCount());
+        assertTrue("Poll requested after the commit", wakeUpRequest.await(0));
+    }
+
+    @Test
+    public void requestInRolledBackTransactionIsDropped() throws Exception {
+        JobPoller.WakeUpRequest wakeUpRequest = new JobPoller.WakeUpRequest();
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            wakeUpRequest.requestAfterCommit(getTransaction());
+        } finally {
+            TransactionUtil.rollback(beganTransaction, "Testing the rollback of a job poller wake up", null);
+        }
+        assertEquals("Synchronization done", 0, wakeUpRequest.getPendingTransactionCount());
+        assertFalse("No poll after the rollback", wakeUpRequest.await(0));
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.config.model.ServiceConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobQueueTests {
+
+    private static final String SERVICE_CONFIG = "<service-config><service-engine name=\"default\">"
+            + "<authorization service-name=\"userLogin\"/>"
+            + "<thread-pool send-to-pool=\"pool\" jobs=\"100\">"
+            + "<run-from-pool name=\"pool\"/>"
+            + "<run-from-pool name=\"urgent\" priority=\"10\"/>"
+            + "<run-from-pool name=\"heavy\" weight=\"3\"/>"
+            + "</thread-pool></service-engine></service-config>";
+
+    private JobQueue queue;
+
+    @Before
+    public void initialize() throws Exception {
+        ServiceConfig serviceConfig = ServiceConfig.create(UtilXml.readXmlDocument(SERVICE_CONFIG, false).getDocumentElement());
+        queue = new JobQueue(100);
+        queue.configure(serviceConfig.getServiceEngine("default").getThreadPool());
+    }
+
+    private static Job job(String jobId, String poolId) {
+        GenericValue jobValue = mock(GenericValue.class);
+        when(jobValue.getString("jobId")).thenReturn(jobId);
+        when(jobValue.getString("jobName")).thenReturn(jobId);
+        when(jobValue.getString("poolId")).thenReturn(poolId);
+        when(jobValue.getTimestamp("runTime")).thenReturn(new Timestamp(0));
+        when(jobValue.getLong("currentRetryCount")).thenReturn(0L);
+        return new PersistedServiceJob(mock(DispatchContext.class), jobValue, null);
+    }
+
+    private static List<String> candidates(String poolId, int count) {
+        List<String> candidates = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            candidates.add(poolId + i);
+        }
+        return candidates;
+    }
+
+    private static List<String> dequeueJobIds(JobQueue queue) {
+        List<String> jobIds = new ArrayList<String>();
+        Runnable task = queue.poll();
+        while (task != null) {
+            jobIds.add(((Job) task).getJobId());
+            task = queue.poll();
+        }
+        return jobIds;
+    }
+
+    @Test
+    public void selectServesHigherPriorityFirst() {
+        Map<String, List<String>> candidatesByPool = new LinkedHashMap<String, List<String>>();
+        candidatesByPool.put("pool", candidates("pool", 5));
+        candidatesByPool.put("urgent", candidates("urgent", 3));
+        assertEquals(Arrays.asList("pool0", "pool1", "urgent0", "urgent1", "urgent2"), queue.select(candidatesByPool, 5));
+    }
+
+    @Test
+    public void selectSharesCapacityByWeight() {
+        Map<String, List<String>> candidatesByPool = new LinkedHashMap<String, List<String>>();
+        candidatesByPool.put("pool", candidates("pool", 10));
+        candidatesByPool.put("heavy", candidates("heavy", 10));
+        List<String> selected = queue.select(candidatesByPool, 8);
+        assertEquals(Arrays.asList("pool0", "pool1", "heavy0", "heavy1", "heavy2", "heavy3", "heavy4", "heavy5"), selected);
+    }
+
+    @Test
+    public void selectGivesLeftoverCapacityToFullPools() {
+        Map<String, List<String>> candidatesByPool = new LinkedHashMap<String, List<String>>();
+        candidatesByPool.put("pool", candidates("pool", 10));
+        candidatesByPool.put("heavy", candidates("heavy", 1));
+        candidatesByPool.put(null, candidates("none", 1));
+        List<String> selected = queue.select(candidatesByPool, 6);
+        // the jobs without a pool are weighted like the send-to-pool
+        assertEquals(Arrays.asList("pool0", "pool1", "pool2", "pool3", "heavy0", "none0"), selected);
+        assertEquals(12, queue.select(candidatesByPool, 100).size());
+    }
+
+    @Test
+    public void dequeueServesHigherPriorityFirst() {
+        queue.offer(job("pool0", "pool"));
+        queue.offer(job("urgent0", "urgent"));
+        queue.offer(job("pool1", "pool"));
+        queue.offer(job("urgent1", "urgent"));
+        assertEquals(Arrays.asList("urgent0", "urgent1", "pool0", "pool1"), dequeueJobIds(queue));
+    }
+
+    @Test
+    public void dequeueRoundRobinsByWeight() {
+        for (int i = 0; i < 4; i++) {
+            queue.offer(job("pool" + i, "pool"));
+            queue.offer(job("heavy" + i, "heavy"));
+        }
+        // smooth weighted round-robin: three heavy jobs for each pool job, interleaved, until the heavy pool is empty
+        assertEquals(Arrays.asList("heavy0", "pool0", "heavy1", "heavy2", "heavy3", "pool1", "pool2", "pool3"), dequeueJobIds(queue));
+    }
+
+    @Test
+    public void offerRejectsOverCapacity() {
+        JobQueue smallQueue = new JobQueue(1);
+        assertEquals(true, smallQueue.offer(job("pool0", "pool")));
+        assertEquals(false, smallQueue.offer(job("pool1", "pool")));
+        assertEquals(1, smallQueue.size());
+    }
+}
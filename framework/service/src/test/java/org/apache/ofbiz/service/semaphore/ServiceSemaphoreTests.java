@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.semaphore;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.service.ModelService;
+import org.junit.Test;
+
+public class ServiceSemaphoreTests {
+
+    private static ServiceSemaphore semaphore(String delegatorName, String serviceName, String mode, int waitSeconds) {
+        Delegator delegator = mock(Delegator.class);
+        when(delegator.getDelegatorName()).thenReturn(delegatorName);
+        ModelService model = new ModelService();
+        model.name = serviceName;
+        model.semaphore = mode;
+        model.semaphoreWait = waitSeconds;
+        model.semaphoreSleep = 10;
+        ServiceSemaphore semaphore = new ServiceSemaphore(delegator, model);
+        semaphore.lockTime = new Timestamp(System.currentTimeMillis());
+        return semaphore;
+    }
+
+    @Test
+    public void failModeExcludesHolder() throws Exception {
+        ServiceSemaphore holder = semaphore("default", "testFailSemaphore", "fail", 0);
+        ServiceSemaphore other = semaphore("default", "testFailSemaphore", "fail", 0);
+        holder.acquireLocal();
+        try {
+            other.acquireLocal();
+            fail("The semaphore is held");
+        } catch (SemaphoreFailException e) {
+            // expected
+        }
+        holder.releaseLocal();
+        other.acquireLocal();
+        other.releaseLocal();
+    }
+
+    @Test
+    public void semaphoresAreIndependent() throws Exception {
+        ServiceSemaphore first = semaphore("default", "testIndependentSemaphore", "fail", 0);
+        ServiceSemaphore otherService = semaphore("default", "testOtherSemaphore", "fail", 0);
+        ServiceSemaphore otherDelegator = semaphore("other", "testIndependentSemaphore", "fail", 0);
+        first.acquireLocal();
+        try {
+            otherService.acquireLocal();
+            otherDelegator.acquireLocal();
+        } finally {
+            otherDelegator.releaseLocal();
+            otherService.releaseLocal();
+            first.releaseLocal();
+        }
+    }
+
+    @Test
+    public void waitModeWakesUpOnRelease() throws Exception {
+        ServiceSemaphore holder = semaphore("default", "testWaitSemaphore", "wait", 60);
+        final ServiceSemaphore waiter = semaphore("default", "testWaitSemaphore", "wait", 60);
+        holder.acquireLocal();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final AtomicBoolean failed = new AtomicBoolean();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    waiter.acquireLocal();
+                    acquired.countDown();
+                    waiter.releaseLocal();
+                } catch (Exception e) {
+                    failed.set(true);
+                }
+            }
+        };
+        thread.start();
+        started.await();
+        assertFalse("The waiter must not get the held semaphore", acquired.await(200, TimeUnit.MILLISECONDS));
+        holder.releaseLocal();
+        assertTrue("The waiter gets the released semaphore", acquired.await(10, TimeUnit.SECONDS));
+        thread.join();
+        assertFalse(failed.get());
+    }
+
+    @Test
+    public void waitModeTimesOut() throws Exception {
+        ServiceSemaphore holder = semaphore("default", "testTimeoutSemaphore", "wait", 60);
+        ServiceSemaphore waiter = semaphore("default", "testTimeoutSemaphore", "wait", 1);
+        holder.acquireLocal();
+        try {
+            waiter.acquireLocal();
+            fail("The wait must time out");
+        } catch (SemaphoreWaitException e) {
+            // expected
+        } finally {
+            holder.releaseLocal();
+        }
+    }
+}
@@ -36,7 +36,7 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.serialize.XmlSerializer;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
-import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.webapp.stats.ServerHitWriter;
 
 /**
  * HttpSessionListener that gathers and tracks various information and statistics
@@ -77,12 +77,9 @@ public class ControlEventListener implements HttpSessionListener {
             // instead of using this message, get directly from session attribute so it won't create a new one: GenericValue visit = VisitHandler.getVisit(session);
             GenericValue visit = (GenericValue) session.getAttribute("visit");
             if (visit != null) {
+                // the Visit itself may still be queued, so the update goes through the same queue
                 Delegator delegator = visit.getDelegator();
-                visit = EntityQuery.use(delegator).from("Visit").where("visitId", visit.get("visitId")).queryOne();
-                if (visit != null) {
-                    visit.set("thruDate", new Timestamp(session.getLastAccessedTime()));
-                    visit.store();
-                }
+                ServerHitWriter.enqueue(delegator.makeValue("Visit", "visitId", visit.get("visitId"), "thruDate", new Timestamp(session.getLastAccessedTime())));
             } else {
                 Debug.logWarning("Could not find visit value object in session [" + ControlActivationEventListener.showSessionId(session) + "] that is being destroyed", module);
             }
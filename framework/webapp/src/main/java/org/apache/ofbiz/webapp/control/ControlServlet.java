@@ -46,6 +46,7 @@ import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.security.Security;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.webapp.stats.ServerHitBin;
+import org.apache.ofbiz.webapp.stats.ServerHitWriter;
 import org.apache.ofbiz.webapp.stats.VisitHandler;
 import freemarker.ext.servlet.ServletContextHashModel;
 
@@ -233,6 +234,16 @@ public class ControlServlet extends HttpServlet {
         // if (Debug.infoOn()) Debug.logInfo("[" + rname + "] Event done, rendering page: " + nextPage, module);
         // if (Debug.timingOn()) timer.timerString("[" + rname + "] Event done, rendering page: " + nextPage, module);
 
+        if (errorPage != null && request.getAttribute("_STREAM_VIEW_") != null) {
+            // a streamed view may already have sent part of the page; the error page can only replace what is still buffered
+            if (response.isCommitted()) {
+                Debug.logError("An error occurred after the streamed response was committed, not going to the errorPage: " + errorPage, module);
+                errorPage = null;
+            } else {
+                response.resetBuffer();
+            }
+        }
+
         if (errorPage != null) {
             Debug.logError("An error occurred, going to the errorPage: " + errorPage, module);
 
@@ -319,6 +330,8 @@ public class ControlServlet extends HttpServlet {
      */
     @Override
     public void destroy() {
+        // write the queued visits and hits while the delegator is still around
+        ServerHitWriter.flush();
         super.destroy();
     }
 
@@ -977,7 +977,15 @@ public class RequestHandler {
         // FireFox has still an open bug entry and "offers" only the noscript plugin
         // https://wiki.mozilla.org/Security/Features/XSS_Filter 
         // https://bugzilla.mozilla.org/show_bug.cgi?id=528661
-        resp.addHeader("X-XSS-Protection","1; mode=block"); 
+        resp.addHeader("X-XSS-Protection","1; mode=block");
+
+        if (viewMap.stream) {
+            // bound the response buffer: once it fills up (or the renderer flushes) the output goes to the client,
+            // so an error page can only replace what is still buffered, see ControlServlet
+            resp.setBufferSize(UtilProperties.getPropertyAsInteger("requestHandler", "view.stream.buffer.size", 8192));
+            req.setAttribute("_STREAM_VIEW_", Boolean.TRUE);
+            if (Debug.verboseOn()) Debug.logVerbose("Streaming view [" + nextPage + "]", module);
+        }
 
         try {
             if (Debug.verboseOn()) Debug.logVerbose("Rendering view [" + nextPage + "] of type [" + viewMap.type + "]", module);
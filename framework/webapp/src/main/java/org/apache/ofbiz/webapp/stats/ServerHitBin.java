@@ -32,10 +32,8 @@ import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.DelegatorFactory;
-import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.model.ModelEntity;
-import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
 
 import com.ibm.icu.util.Calendar;
@@ -228,11 +226,8 @@ public class ServerHitBin {
                         serverHitBin.set("serverIpAddress", VisitHandler.address.getHostAddress());
                         serverHitBin.set("serverHostName", VisitHandler.address.getHostName());
                     }
-                    try {
-                        delegator.createSetNextSeqId(serverHitBin);
-                    } catch (GenericEntityException e) {
-                        Debug.logError(e, "Could not save ServerHitBin:", module);
-                    }
+                    serverHitBin.setNextSeqId();
+                    ServerHitWriter.enqueue(serverHitBin);
                 }
             } else {
                 binList.pollFirst();
@@ -243,11 +238,7 @@ public class ServerHitBin {
 
         bin.addHit(runningTime);
         if (isOriginal) {
-            try {
-                bin.saveHit(request, startTime, runningTime, userLogin);
-            } catch (GenericEntityException e) {
-                Debug.logWarning("Error saving ServerHit: " + e.toString(), module);
-            }
+            bin.saveHit(request, startTime, runningTime, userLogin);
         }
 
         // count since start global and per id hits
@@ -463,9 +454,9 @@ public class ServerHitBin {
             this.maxTime = runningTime;
     }
 
-    private void saveHit(HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) throws GenericEntityException {
+    private void saveHit(HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) {
         // persist record of hit in ServerHit entity if option turned on
-    	Delegator delegator = (Delegator) request.getAttribute("delegator");
+        Delegator delegator = (Delegator) request.getAttribute("delegator");
         if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + ServerHitBin.typeIds[type] + ".hit", "true", delegator)) {
             // if the hit type is ENTITY and the name contains "ServerHit" don't
             // persist; avoids the infinite loop and a bunch of annoying data
@@ -473,32 +464,14 @@ public class ServerHitBin {
                 return;
             }
 
-            // check for type data before running.
-            GenericValue serverHitType = null;
-
-            serverHitType = EntityQuery.use(delegator).from("ServerHitType").where("hitTypeId", ServerHitBin.typeIds[this.type]).cache().queryOne();
-            if (serverHitType == null) {
-                // datamodel data not loaded; not storing hit.
-                Debug.logWarning("The datamodel data has not been loaded; cannot find hitTypeId '" + ServerHitBin.typeIds[this.type] + " not storing ServerHit.", module);
-                return;
-            }
-
-            GenericValue visit = VisitHandler.getVisit(request.getSession());
-            if (visit == null) {
+            // the Visit may still be queued in the ServerHitWriter, which writes it before the hits
+            String visitId = VisitHandler.getVisitId(request.getSession());
+            if (visitId == null) {
                 // no visit info stored, so don't store the ServerHit
                 Debug.logWarning("Could not find a visitId, so not storing ServerHit. This is probably a configuration error. If you turn off persistance of visits you should also turn off persistence of hits.", module);
                 return;
             }
-            String visitId = visit.getString("visitId");
-            visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
-            if (visit == null) {
-                // GenericValue stored in client session does not exist in database.
-                Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.", module);
-                return;
-            }
-            
-            Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName=" + this.delegator.getDelegatorName(), module);
-            
+
             GenericValue serverHit = delegator.makeValue("ServerHit");
 
             serverHit.set("visitId", visitId);
@@ -527,23 +500,11 @@ public class ServerHitBin {
                 serverHit.set("serverHostName", VisitHandler.address.getHostName());
             }
 
-            // The problem with
-            //
-            //     serverHit.create();
-            //
-            // is that if there are two requests with the same startTime (this should only happen with MySQL see https://issues.apache.org/jira/browse/OFBIZ-2208)
-            // then this will go wrong and abort the actual
-            // transaction we are interested in.
-            // Another way instead of using create is to store or update,
-            // that is overwrite in case there already was an entry, thus
-            // avoiding the transaction being aborted which is not
-            // less desirable than having multiple requests with the
-            // same startTime overwriting each other.
-            // This may not satisfy those who want to record each and
-            // every server hit even with equal startTimes but that could be
-            // solved adding a counter to the ServerHit's PK (a counter
-            // counting multiple hits at the same startTime).
-            serverHit.create();
+            // The ServerHitWriter stores the hit (checking the ServerHitType there) with
+            // create-or-update semantics, so two requests with the same startTime
+            // (this should only happen with MySQL see https://issues.apache.org/jira/browse/OFBIZ-2208)
+            // overwrite each other instead of failing.
+            ServerHitWriter.enqueue(serverHit);
         }
     }
 }
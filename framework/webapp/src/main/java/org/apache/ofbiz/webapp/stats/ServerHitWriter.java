@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityStoreOptions;
+
+/**
+ * Writes the Visitor, Visit, ServerHit and ServerHitBin values of the web
+ * request statistics in the background.
+ * <p>Request threads only add values to a bounded lock-free queue; a single
+ * writer thread drains it every stats.writer.flush.millis, or as soon as a
+ * batch is full, and stores the values with batched {@link Delegator#storeAll}
+ * calls in its own transactions. When the queue is full new ServerHit and
+ * ServerHitBin values are dropped and counted instead of making the request
+ * wait. Visitor and Visit values are always queued, over the queue size if
+ * need be: the hits of a dropped parent would fail its foreign key, and an
+ * update of a dropped Visit would create a partial row. There are only a few
+ * of them per session.
+ * <p>Values are stored with create-or-update semantics, so a value may be
+ * queued again to update it. Values must be complete when queued (clone a
+ * value that is still shared with a session), and single field primary keys
+ * must already be set, see {@link GenericValue#setNextSeqId()}.
+ */
+public final class ServerHitWriter {
+    // Debug module name
+    public static final String module = ServerHitWriter.class.getName();
+
+    private static final int queueSize = UtilProperties.getPropertyAsInteger("serverstats", "stats.writer.queue.size", 10000);
+    private static final int batchSize = Math.max(1, UtilProperties.getPropertyAsInteger("serverstats", "stats.writer.batch.size", 200));
+    private static final long flushMillis = Math.max(10, UtilProperties.getPropertyAsLong("serverstats", "stats.writer.flush.millis", 1000));
+
+    private static final Queue<GenericValue> queue = new ConcurrentLinkedQueue<GenericValue>();
+    // the queue size, kept apart because ConcurrentLinkedQueue.size() walks the queue
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private static final AtomicLong enqueuedCount = new AtomicLong();
+    private static final AtomicLong writtenCount = new AtomicLong();
+    private static final AtomicLong droppedCount = new AtomicLong();
+    private static final AtomicLong failedCount = new AtomicLong();
+    // only used by the flushing thread
+    private static long reportedDroppedCount = 0;
+
+    // parents first, so the foreign keys of a batch are satisfied within the batch
+    private static final Comparator<GenericValue> writeOrder = new Comparator<GenericValue>() {
+        public int compare(GenericValue value1, GenericValue value2) {
+            int result = value1.getDelegator().getDelegatorName().compareTo(value2.getDelegator().getDelegatorName());
+            if (result == 0) {
+                result = getWriteRank(value1) - getWriteRank(value2);
+            }
+            return result;
+        }
+    };
+
+    private static final Runnable flusher = new Runnable() {
+        public void run() {
+            // an exception escaping here would cancel the scheduled flushes
+            try {
+                flush();
+            } catch (Throwable t) {
+                Debug.logError(t, "Error writing server hit statistics", module);
+            }
+        }
+    };
+
+    private static final ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(null, "OFBiz-ServerHitWriter", 1, 0, true);
+    static {
+        executor.scheduleWithFixedDelay(flusher, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private ServerHitWriter() {}
+
+    /**
+     * Queues a value to be stored in the background. Never blocks; if the
+     * queue is full a ServerHit or ServerHitBin value is dropped and counted.
+     * @return <code>false</code> if the value was dropped
+     */
+    public static boolean enqueue(GenericValue value) {
+        return enqueue(value, queueSize);
+    }
+
+    static boolean enqueue(GenericValue value, int capacity) {
+        int size = queued.incrementAndGet();
+        if (size > capacity && getWriteRank(value) > 1) {
+            queued.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        queue.offer(value);
+        enqueuedCount.incrementAndGet();
+        if (size >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            executor.execute(flusher);
+        }
+        return true;
+    }
+
+    /** Writes all queued values in the calling thread, also used on shutdown so queued statistics are not lost. */
+    public static synchronized void flush() {
+        flushScheduled.set(false);
+        List<GenericValue> batch = new ArrayList<GenericValue>(batchSize);
+        GenericValue value;
+        while ((value = queue.poll()) != null) {
+            queued.decrementAndGet();
+            batch.add(value);
+            if (batch.size() >= batchSize) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+
+        long dropped = droppedCount.get();
+        if (dropped > reportedDroppedCount) {
+            Debug.logWarning("The server hit queue was full, dropped " + (dropped - reportedDroppedCount) + " ServerHit/ServerHitBin values (" + dropped
+                    + " since start); consider raising stats.writer.queue.size or turning off stats.persist.*.hit", module);
+            reportedDroppedCount = dropped;
+        }
+    }
+
+    static void writeBatch(List<GenericValue> batch) {
+        // a stable sort, so updates of a value stay after its creation
+        Collections.sort(batch, writeOrder);
+        int start = 0;
+        for (int i = 1; i <= batch.size(); i++) {
+            if (i == batch.size() || !batch.get(i).getDelegator().getDelegatorName().equals(batch.get(start).getDelegator().getDelegatorName())) {
+                writeValues(batch.get(start).getDelegator(), batch.subList(start, i));
+                start = i;
+            }
+        }
+    }
+
+    private static void writeValues(Delegator delegator, List<GenericValue> values) {
+        List<GenericValue> toStore = new ArrayList<GenericValue>(values.size());
+        for (GenericValue value: values) {
+            if ("ServerHit".equals(value.getEntityName()) || "ServerHitBin".equals(value.getEntityName())) {
+                if (!isHitTypeLoaded(delegator, value.getString("hitTypeId"))) {
+                    failedCount.incrementAndGet();
+                    continue;
+                }
+            }
+            toStore.add(value);
+        }
+        if (toStore.isEmpty()) {
+            return;
+        }
+
+        try {
+            delegator.storeAll(toStore, new EntityStoreOptions(false, toStore.size()));
+            writtenCount.addAndGet(toStore.size());
+        } catch (GenericEntityException e) {
+            // one bad value fails the whole transaction, store the values one by one so only that one is lost
+            Debug.logWarning("Could not store a batch of " + toStore.size() + " server hit values, storing them one by one: " + e.toString(), module);
+            for (GenericValue value: toStore) {
+                try {
+                    delegator.storeAll(UtilMisc.toList(value));
+                    writtenCount.incrementAndGet();
+                } catch (GenericEntityException e2) {
+                    failedCount.incrementAndGet();
+                    Debug.logWarning("Could not store " + value.getPrimaryKey() + ": " + e2.toString(), module);
+                }
+            }
+        }
+    }
+
+    private static boolean isHitTypeLoaded(Delegator delegator, String hitTypeId) {
+        try {
+            if (EntityQuery.use(delegator).from("ServerHitType").where("hitTypeId", hitTypeId).cache().queryOne() != null) {
+                return true;
+            }
+            // datamodel data not loaded; not storing hit.
+            Debug.logWarning("The datamodel data has not been loaded; cannot find hitTypeId '" + hitTypeId + "', not storing ServerHit.", module);
+        } catch (GenericEntityException e) {
+            Debug.logWarning("Could not check hitTypeId '" + hitTypeId + "': " + e.toString(), module);
+        }
+        return false;
+    }
+
+    private static int getWriteRank(GenericValue value) {
+        String entityName = value.getEntityName();
+        if ("Visitor".equals(entityName)) {
+            return 0;
+        } else if ("Visit".equals(entityName)) {
+            return 1;
+        } else if ("ServerHit".equals(entityName)) {
+            return 3;
+        }
+        return 2;
+    }
+
+    /** Number of values waiting to be written */
+    public static int getQueuedCount() {
+        return queued.get();
+    }
+
+    /** Number of values queued since start */
+    public static long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    /** Number of values written since start */
+    public static long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /** Number of values dropped because the queue was full since start */
+    public static long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /** Number of values that could not be written since start */
+    public static long getFailedCount() {
+        return failedCount.get();
+    }
+}
@@ -68,11 +68,7 @@ public class VisitHandler {
             if (modelUserLogin.isField("partyId")) {
                 visitor.set("partyId", userLogin.get("partyId"));
             }
-            try {
-                visitor.store();
-            } catch (GenericEntityException e) {
-                Debug.logError(e, "Could not update visitor: ", module);
-            }
+            ServerHitWriter.enqueue((GenericValue) visitor.clone());
         }
 
         GenericValue visit = getVisit(session);
@@ -88,11 +84,7 @@ public class VisitHandler {
                 visit.set("visitorId", visitor.get("visitorId"));
             }
 
-            try {
-                visit.store();
-            } catch (GenericEntityException e) {
-                Debug.logError(e, "Could not update visit: ", module);
-            }
+            ServerHitWriter.enqueue((GenericValue) visit.clone());
         }
     }
 
@@ -163,18 +155,10 @@ public class VisitHandler {
                             GenericValue visitor = (GenericValue) session.getAttribute("visitor");
                             if (visitor != null) {
                                 String visitorId = visitor.getString("visitorId");
-                                
-                                // sometimes these values get stale, so check it before we use it
-                                try {
-                                    GenericValue checkVisitor = EntityQuery.use(delegator).from("Visitor").where("visitorId", visitorId).queryOne();
-                                    if (checkVisitor == null) {
-                                        GenericValue newVisitor = delegator.create("Visitor", "visitorId", visitorId);
-                                        session.setAttribute("visitor", newVisitor);
-                                    }
-                                    visit.set("visitorId", visitorId);
-                                } catch (GenericEntityException e) {
-                                    Debug.logWarning("Problem checking the visitorId: " + e.toString(), module);
-                                }
+
+                                // sometimes these values get stale; the ServerHitWriter creates the Visitor if it is missing and leaves it alone otherwise
+                                ServerHitWriter.enqueue(delegator.makeValue("Visitor", "visitorId", visitorId));
+                                visit.set("visitorId", visitorId);
                             }
 
                             // get localhost ip address and hostname to store
@@ -183,13 +167,10 @@ public class VisitHandler {
                                 visit.set("serverHostName", address.getHostName());
                             }
 
-                            try {
-                                visit = delegator.createSetNextSeqId(visit);
-                                session.setAttribute("visit", visit);
-                            } catch (GenericEntityException e) {
-                                Debug.logError(e, "Could not create new visit:", module);
-                                visit = null;
-                            }
+                            // the id is taken now so hits can refer to the visit, the row itself is written in the background
+                            visit.setNextSeqId();
+                            session.setAttribute("visit", visit);
+                            ServerHitWriter.enqueue((GenericValue) visit.clone());
                         }
                     }
                 }
@@ -241,19 +222,16 @@ public class VisitHandler {
                             if (UtilValidate.isEmpty(cookieVisitorId)) {
                                 // no visitor cookie? create visitor and send back cookie too
                                 visitor = delegator.makeValue("Visitor");
-                                try {
-                                    delegator.createSetNextSeqId(visitor);
-                                } catch (GenericEntityException e) {
-                                    Debug.logError(e, "Could not create new visitor:", module);
-                                    visitor = null;
-                                }
+                                visitor.setNextSeqId();
+                                ServerHitWriter.enqueue((GenericValue) visitor.clone());
                             } else {
                                 try {
                                     visitor = EntityQuery.use(delegator).from("Visitor").where("visitorId", cookieVisitorId).queryOne();
                                     if (visitor == null) {
                                         // looks like we have an ID that doesn't exist in our database, so we'll create a new one
                                         visitor = delegator.makeValue("Visitor");
-                                        visitor = delegator.createSetNextSeqId(visitor);
+                                        visitor.setNextSeqId();
+                                        ServerHitWriter.enqueue((GenericValue) visitor.clone());
                                         if (Debug.infoOn()) Debug.logInfo("The visitorId [" + cookieVisitorId + "] found in cookie was invalid, creating new Visitor with ID [" + visitor.getString("visitorId") + "]", module);
                                     }
                                 } catch (GenericEntityException e) {
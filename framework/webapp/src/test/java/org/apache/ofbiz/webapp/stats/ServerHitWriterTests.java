@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.util.EntityFindOptions;
+import org.apache.ofbiz.entity.util.EntityStoreOptions;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ServerHitWriterTests {
+
+    private Delegator delegator;
+
+    @Before
+    public void initialize() throws Exception {
+        delegator = mock(Delegator.class);
+        when(delegator.getDelegatorName()).thenReturn("default");
+        // the ServerHitType of the hits is loaded
+        List<GenericValue> hitTypes = UtilMisc.toList(mock(GenericValue.class));
+        when(delegator.findList(anyString(), any(EntityCondition.class), anySetOf(String.class), anyListOf(String.class), any(EntityFindOptions.class), anyBoolean())).thenReturn(hitTypes);
+    }
+
+    private GenericValue value(String entityName) {
+        GenericValue value = mock(GenericValue.class);
+        when(value.getEntityName()).thenReturn(entityName);
+        when(value.getDelegator()).thenReturn(delegator);
+        when(value.getString("hitTypeId")).thenReturn("REQUEST");
+        return value;
+    }
+
+    @Test
+    public void parentsAreWrittenFirst() throws Exception {
+        GenericValue hit = value("ServerHit");
+        GenericValue bin = value("ServerHitBin");
+        GenericValue visit = value("Visit");
+        GenericValue visitUpdate = value("Visit");
+        GenericValue visitor = value("Visitor");
+        ServerHitWriter.writeBatch(new ArrayList<GenericValue>(Arrays.asList(hit, visit, bin, visitor, visitUpdate)));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<GenericValue>> stored = (ArgumentCaptor<List<GenericValue>>) (ArgumentCaptor<?>) ArgumentCaptor.forClass(List.class);
+        verify(delegator).storeAll(stored.capture(), any(EntityStoreOptions.class));
+        // the update of a value stays after its creation
+        assertEquals(Arrays.asList(visitor, visit, visitUpdate, bin, hit), stored.getValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failedBatchIsStoredOneByOne() throws Exception {
+        GenericValue visitor = value("Visitor");
+        GenericValue visit = value("Visit");
+        GenericValue hit = value("ServerHit");
+        doThrow(new GenericEntityException("batch failure")).when(delegator).storeAll(any(List.class), any(EntityStoreOptions.class));
+        doThrow(new GenericEntityException("row failure")).when(delegator).storeAll(UtilMisc.toList(visit));
+        long written = ServerHitWriter.getWrittenCount();
+        long failed = ServerHitWriter.getFailedCount();
+        ServerHitWriter.writeBatch(new ArrayList<GenericValue>(Arrays.asList(hit, visit, visitor)));
+        verify(delegator).storeAll(UtilMisc.toList(visitor));
+        verify(delegator).storeAll(UtilMisc.toList(visit));
+        verify(delegator).storeAll(UtilMisc.toList(hit));
+        assertEquals(written + 2, ServerHitWriter.getWrittenCount());
+        assertEquals(failed + 1, ServerHitWriter.getFailedCount());
+    }
+
+    @Test
+    public void onlyHitsAreDroppedWhenFull() throws Exception {
+        GenericValue visitor = value("Visitor");
+        GenericValue visit = value("Visit");
+        long dropped = ServerHitWriter.getDroppedCount();
+        assertFalse(ServerHitWriter.enqueue(value("ServerHit"), 0));
+        assertFalse(ServerHitWriter.enqueue(value("ServerHitBin"), 0));
+        assertTrue(ServerHitWriter.enqueue(visitor, 0));
+        assertTrue(ServerHitWriter.enqueue(visit, 0));
+        assertEquals(dropped + 2, ServerHitWriter.getDroppedCount());
+        ServerHitWriter.flush();
+        assertEquals(0, ServerHitWriter.getQueuedCount());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<GenericValue>> stored = (ArgumentCaptor<List<GenericValue>>) (ArgumentCaptor<?>) ArgumentCaptor.forClass(List.class);
+        verify(delegator).storeAll(stored.capture(), any(EntityStoreOptions.class));
+        assertEquals(Arrays.asList(visitor, visit), stored.getValue());
+    }
+}
@@ -323,6 +323,11 @@ List getEcaListForService(String selectedService) {
             }
             conditions.setAccessible(false)
 
+            //evaluation statistics
+            curRuleMap.evaluations = curRule.getEvaluationCount()
+            curRuleMap.fires = curRule.getFireCount()
+            curRuleMap.totalMillis = curRule.getTotalNanos().intdiv(1000000)
+
             ecaMapList.add(curRuleMap)
         }
     }
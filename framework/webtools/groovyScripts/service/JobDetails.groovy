@@ -19,15 +19,14 @@
 
 import org.apache.ofbiz.entity.Delegator
 import org.apache.ofbiz.entity.GenericValue
-import org.apache.ofbiz.base.util.UtilGenerics
-import org.apache.ofbiz.entity.serialize.XmlSerializer
+import org.apache.ofbiz.service.job.RuntimeDataSerializer
 
 GenericValue job = ((Delegator)delegator).findOne("JobSandbox", [jobId:parameters.jobId], false)
 context.job = job
 if (job) {
     GenericValue runtimeData = job.getRelatedOne("RuntimeData", false)
     if (runtimeData) {
-        runtimeInfoMap = UtilGenerics.checkMap(XmlSerializer.deserialize(runtimeData.getString("runtimeInfo"), delegator), String.class, Object.class)
+        runtimeInfoMap = RuntimeDataSerializer.deserialize(runtimeData.getString("runtimeInfo"), delegator)
         runtimeInfoList = []
         runtimeInfoMap.each { key, value ->
             valueMap = [key : key, value : value.toString()]
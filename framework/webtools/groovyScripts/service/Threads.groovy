@@ -36,6 +36,7 @@ uiLabelMap.addBottomResourceBundle("CommonUiLabels")
 threads = []
 poolState = dispatcher.getJobManager().getPoolState()
 context.poolState = poolState
+context.jobPools = poolState.pools
 context.threads = poolState.taskList
 
 // Some stuff for general threads on the server
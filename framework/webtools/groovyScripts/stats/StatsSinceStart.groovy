@@ -99,3 +99,12 @@ while (iterator.hasNext()) {
     }
 }
 context.viewList = viewList
+
+// Persistence of visits and hits
+hitWriterStats = [:]
+hitWriterStats.queued = UtilFormatOut.formatQuantity(ServerHitWriter.getQueuedCount())
+hitWriterStats.enqueued = UtilFormatOut.formatQuantity(ServerHitWriter.getEnqueuedCount())
+hitWriterStats.written = UtilFormatOut.formatQuantity(ServerHitWriter.getWrittenCount())
+hitWriterStats.dropped = UtilFormatOut.formatQuantity(ServerHitWriter.getDroppedCount())
+hitWriterStats.failed = UtilFormatOut.formatQuantity(ServerHitWriter.getFailedCount())
+context.hitWriterStats = hitWriterStats
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webtools;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ofbiz.base.metrics.CallTracer;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilHttp;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.security.Security;
+
+/**
+ * Contains events for the CallTracer class; must be external to access security resources
+ */
+public final class CallTraceEvents {
+
+    public static final String module = CallTraceEvents.class.getName();
+    private static final String resource = "WebtoolsUiLabels";
+
+    private CallTraceEvents() {}
+
+    /** An HTTP WebEvent handler that switches call tracing on or off, depending on the enable parameter
+     * @param request The HTTP request object for the current JSP or Servlet request.
+     * @param response The HTTP response object for the current JSP or Servlet request.
+     * @return "success" or "error"
+     */
+    public static String setEnabledEvent(HttpServletRequest request, HttpServletResponse response) {
+        if (!checkPermission(request)) {
+            return "error";
+        }
+        CallTracer.setEnabled("true".equals(request.getParameter("enable")));
+        return "success";
+    }
+
+    /** An HTTP WebEvent handler that removes all collected call traces
+     * @param request The HTTP request object for the current JSP or Servlet request.
+     * @param response The HTTP response object for the current JSP or Servlet request.
+     * @return "success" or "error"
+     */
+    public static String clearEvent(HttpServletRequest request, HttpServletResponse response) {
+        if (!checkPermission(request)) {
+            return "error";
+        }
+        CallTracer.clear();
+        return "success";
+    }
+
+    /** An HTTP WebEvent handler that writes the collected call traces as folded stacks, the input of flame graph tools
+     * @param request The HTTP request object for the current JSP or Servlet request.
+     * @param response The HTTP response object for the current JSP or Servlet request.
+     * @return "success" or "error"
+     */
+    public static String exportFoldedStacksEvent(HttpServletRequest request, HttpServletResponse response) {
+        if (!checkPermission(request)) {
+            return "error";
+        }
+        try {
+            response.setContentType("text/plain");
+            response.setHeader("Content-Disposition", "attachment; filename=call-traces.txt");
+            PrintWriter out = response.getWriter();
+            out.print(CallTracer.getFoldedStacks());
+            out.close();
+        } catch (IOException e) {
+            Debug.logError(e, "Problems writing servlet output!", module);
+            return "error";
+        }
+        return "success";
+    }
+
+    private static boolean checkPermission(HttpServletRequest request) {
+        Security security = (Security) request.getAttribute("security");
+        if (!security.hasPermission("SERVER_STATS_VIEW", request.getSession())) {
+            Locale locale = UtilHttp.getLocale(request);
+            request.setAttribute("_ERROR_MESSAGE_", UtilProperties.getMessage(resource, "WebtoolsStatsPermissionMsg", locale));
+            return false;
+        }
+        return true;
+    }
+}
@@ -123,6 +123,7 @@ public class WebToolsServices {
         if (txTimeout == null) {
             txTimeout = Integer.valueOf(7200);
         }
+        Integer batchSize = (Integer) context.get("batchSize");
         URL url = null;
 
         // #############################
@@ -180,6 +181,7 @@ public class WebToolsServices {
                                               "checkDataOnly", checkDataOnly,
                                               "maintainTimeStamps", maintainTimeStamps,
                                               "txTimeout", txTimeout,
+                                              "batchSize", batchSize,
                                               "placeholderValues", placeholderValues,
                                               "userLogin", userLogin);
                 if (fulltext != null) {
@@ -224,6 +226,7 @@ public class WebToolsServices {
 
         Integer txTimeout = (Integer)context.get("txTimeout");
         Long filePause = (Long)context.get("filePause");
+        Integer batchSize = (Integer) context.get("batchSize");
 
         if (txTimeout == null) {
             txTimeout = Integer.valueOf(7200);
@@ -259,6 +262,7 @@ public class WebToolsServices {
                                 "checkDataOnly", checkDataOnly,
                                 "maintainTimeStamps", maintainTimeStamps,
                                 "txTimeout", txTimeout,
+                                "batchSize", batchSize,
                                 "placeholderValues", placeholderValues,
                                 "userLogin", userLogin);
 
@@ -436,6 +440,7 @@ public class WebToolsServices {
         boolean createDummyFks = (String) context.get("createDummyFks") != null;
         boolean checkDataOnly = (String) context.get("checkDataOnly") != null;
         Integer txTimeout = (Integer) context.get("txTimeout");
+        Integer batchSize = (Integer) context.get("batchSize");
         Map<String, Object> placeholderValues = UtilGenerics.checkMap(context.get("placeholderValues"));
 
         if (txTimeout == null) {
@@ -451,6 +456,9 @@ public class WebToolsServices {
             reader.setCreateDummyFks(createDummyFks);
             reader.setCheckDataOnly(checkDataOnly);
             reader.setPlaceholderValues(placeholderValues);
+            if (batchSize != null) {
+                reader.setBatchSize(batchSize.intValue());
+            }
 
             long numberRead = (url != null ? reader.parse(url) : reader.parse(xmltext));
             rowProcessed = numberRead;
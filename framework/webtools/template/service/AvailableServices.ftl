@@ -161,6 +161,7 @@ under the License.
             <td>${uiLabelMap.WebtoolsActions}</td>
             <td>${uiLabelMap.WebtoolsConditions}</td>
             <td>${uiLabelMap.WebtoolsSet}</td>
+            <td>${uiLabelMap.WebtoolsSecasStatistics}</td>
           </tr>
           <#list ecaMapList as ecaMap>
             <tr>
@@ -263,8 +264,15 @@ under the License.
                   </#list>
                 </td>
               </#if>
+              <td>
+                <table class='basic-table' cellspacing='0'>
+                  <tr><td><b>${uiLabelMap.WebtoolsSecasEvaluations}</b> ${ecaMap.evaluations}</td></tr>
+                  <tr><td><b>${uiLabelMap.WebtoolsSecasFires}</b> ${ecaMap.fires}</td></tr>
+                  <tr><td><b>${uiLabelMap.WebtoolsSecasTotalTime}</b> ${ecaMap.totalMillis}</td></tr>
+                </table>
+              </td>
             </tr>
-            <tr><td colspan='5'><hr/></td></tr>
+            <tr><td colspan='6'><hr/></td></tr>
           </#list>
         </table>
       </div>
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.widget;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.net.URLEncoder;
@@ -412,4 +413,16 @@ public final class WidgetWorker {
         Delegator delegator = (Delegator) context.get("delegator");
         return delegator;
     }
+
+    /**
+     * Sends what has been rendered so far to the client if the current view is streamed (see the
+     * view-map stream attribute), so the browser can start on the page before the rest is rendered.
+     * Does nothing for other views or when the writer is not a {@link Flushable}.
+     */
+    public static void flushStreamedOutput(Appendable writer, Map<String, Object> context) throws IOException {
+        HttpServletRequest request = (HttpServletRequest) context.get("request");
+        if (request != null && request.getAttribute("_STREAM_VIEW_") != null && writer instanceof Flushable) {
+            ((Flushable) writer).flush();
+        }
+    }
 }
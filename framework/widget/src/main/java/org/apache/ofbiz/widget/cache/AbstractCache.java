@@ -48,7 +48,7 @@ public abstract class AbstractCache {
         return UtilCache.findCache(getCacheName(widgetName));
     }
 
-    protected UtilCache<WidgetContextCacheKey, GenericWidgetOutput> getOrCreateCache(String widgetName) {
+    protected <K,V> UtilCache<K,V> getOrCreateCache(String widgetName) {
         String name = getCacheName(widgetName);
         return UtilCache.getOrCreateUtilCache(name, 0, 0, 0, true, name);
     }
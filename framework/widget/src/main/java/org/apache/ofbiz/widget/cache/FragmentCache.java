@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.cache;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.cache.EntityDependencies;
+import org.apache.ofbiz.entity.cache.EntityReadRecorder;
+
+/**
+ * Caches the output of a part of a screen (a section or an included screen, form or menu with
+ * use-cache set) by the values of its cache key fields, the locale and the delegator.
+ * <p>
+ * The entity reads made while a fragment renders are recorded, and the fragment is dropped as soon as
+ * the entity cache is cleared for a row it could have read, see {@link EntityDependencies}. A fragment
+ * that reads an entity which is never cached is not cached. Changes made without the entity engine
+ * are not seen, as with the entity cache.
+ */
+public final class FragmentCache extends AbstractCache {
+
+    public static final String module = FragmentCache.class.getName();
+
+    /** Renders a fragment when it is not in the cache */
+    public interface FragmentRenderer {
+        void render(Appendable writer) throws GeneralException, IOException;
+    }
+
+    private static final EntityDependencies.Listener invalidator = new EntityDependencies.Listener() {
+        public void invalidate(Object key) {
+            FragmentKey fragmentKey = (FragmentKey) key;
+            UtilCache<FragmentKey, CachedFragment> cache = UtilCache.findCache(fragmentKey.cacheName);
+            if (cache != null) {
+                cache.remove(fragmentKey);
+            }
+        }
+    };
+
+    // unregisters the fragments removed from their cache for another reason, like their expiry
+    private static final CacheListener<FragmentKey, CachedFragment> unregisterer = new CacheListener<FragmentKey, CachedFragment>() {
+        public void noteKeyRemoval(UtilCache<FragmentKey, CachedFragment> cache, FragmentKey key, CachedFragment oldValue) {
+            EntityDependencies.unregister(key, invalidator);
+        }
+
+        public void noteKeyAddition(UtilCache<FragmentKey, CachedFragment> cache, FragmentKey key, CachedFragment newValue) {
+        }
+
+        public void noteKeyUpdate(UtilCache<FragmentKey, CachedFragment> cache, FragmentKey key, CachedFragment newValue, CachedFragment oldValue) {
+        }
+    };
+
+    private static final class FragmentKey {
+        private final String cacheName;
+        private final List<Object> values;
+
+        private FragmentKey(String cacheName, List<Object> values) {
+            this.cacheName = cacheName;
+            this.values = values;
+        }
+
+        @Override
+        public int hashCode() {
+            return cacheName.hashCode() * 31 + values.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FragmentKey)) {
+                return false;
+            }
+            FragmentKey other = (FragmentKey) obj;
+            return cacheName.equals(other.cacheName) && values.equals(other.values);
+        }
+
+        @Override
+        public String toString() {
+            return cacheName + values;
+        }
+    }
+
+    private static final class CachedFragment extends GenericWidgetOutput {
+        private final EntityReadRecorder reads;
+
+        private CachedFragment(String output, EntityReadRecorder reads) {
+            super(output);
+            this.reads = reads;
+        }
+    }
+
+    public FragmentCache() {
+        super("fragment");
+    }
+
+    /**
+     * Writes the cached output of a fragment for the key values, rendering and caching it first if
+     * it is not in the cache.
+     */
+    public void render(String fragmentName, List<Object> keyValues, Map<String, Object> context, Appendable writer, FragmentRenderer renderer) throws GeneralException, IOException {
+        List<Object> values = new ArrayList<Object>(keyValues.size() + 2);
+        Delegator delegator = (Delegator) context.get("delegator");
+        values.add(delegator != null ? delegator.getDelegatorName() : null);
+        values.add(context.get("locale"));
+        values.addAll(keyValues);
+        UtilCache<FragmentKey, CachedFragment> cache = getOrCreateCache(fragmentName);
+        FragmentKey key = new FragmentKey(getCacheName(fragmentName), values);
+        CachedFragment fragment = cache.get(key);
+        if (fragment != null) {
+            // a fragment around this one depends on what this one read
+            if (EntityReadRecorder.isRecording()) {
+                EntityReadRecorder.recordReads(fragment.reads);
+            }
+        } else {
+            StringWriter sw = new StringWriter();
+            EntityReadRecorder reads = EntityReadRecorder.start();
+            try {
+                renderer.render(sw);
+            } finally {
+                reads.stop();
+            }
+            fragment = new CachedFragment(sw.toString(), reads);
+            if (reads.isTrackable()) {
+                // the cache listeners are a set, it is only added once
+                cache.addListener(unregisterer);
+                cache.put(key, fragment);
+                if (!EntityDependencies.register(reads, key, invalidator)) {
+                    cache.remove(key);
+                }
+            } else {
+                if (Debug.verboseOn()) Debug.logVerbose("Not caching fragment [" + key + "], it read an entity that is never cached", module);
+            }
+        }
+        writer.append(fragment.toString());
+    }
+}
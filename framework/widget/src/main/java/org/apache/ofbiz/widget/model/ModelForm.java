@@ -165,6 +165,7 @@ public abstract class ModelForm extends ModelWidget {
     private final FlexibleStringExpander paginateFirstLabel;
     private final FlexibleStringExpander paginateIndexField;
     private final FlexibleStringExpander paginateLastLabel;
+    private final String paginateMode;
     private final FlexibleStringExpander paginateNextLabel;
     private final FlexibleStringExpander paginatePreviousLabel;
     private final FlexibleStringExpander paginateSizeField;
@@ -582,6 +583,11 @@ public abstract class ModelForm extends ModelWidget {
         } else {
             this.paginateStyle = paginateStyle;
         }
+        String paginateMode = formElement.getAttribute("paginate-mode");
+        if (paginateMode.isEmpty() && parentModel != null) {
+            paginateMode = parentModel.paginateMode;
+        }
+        this.paginateMode = paginateMode.isEmpty() ? "offset" : paginateMode;
         FlexibleStringExpander paginate = FlexibleStringExpander.getInstance(formElement.getAttribute("paginate"));
         if (paginate.isEmpty() && parentModel != null) {
             paginate = parentModel.paginate;
@@ -1207,6 +1213,14 @@ public abstract class ModelForm extends ModelWidget {
         return this.paginateStyle;
     }
 
+    public String getPaginateMode() {
+        return this.paginateMode;
+    }
+
+    public boolean isKeysetPaginate() {
+        return "keyset".equals(this.paginateMode);
+    }
+
     public String getPaginateTarget() {
         return paginateTarget.getOriginal();
     }
@@ -33,9 +33,11 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.StringUtil;
 import org.apache.ofbiz.base.util.UtilCodec;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
 import org.apache.ofbiz.base.util.collections.MapStack;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.entity.Delegator;
@@ -43,6 +45,8 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.widget.WidgetFactory;
+import org.apache.ofbiz.widget.WidgetWorker;
+import org.apache.ofbiz.widget.cache.FragmentCache;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.AutoEntityParameters;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.AutoServiceParameters;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.Image;
@@ -67,10 +71,24 @@ public abstract class ModelScreenWidget extends ModelWidget {
     public static final String module = ModelScreenWidget.class.getName();
 
     private final ModelScreen modelScreen;
+    /** The fields the cached output of this widget is keyed by, or null if it is not cached */
+    private final List<FlexibleMapAccessor<Object>> cacheKeyFields;
 
     public ModelScreenWidget(ModelScreen modelScreen, Element widgetElement) {
         super(widgetElement);
         this.modelScreen = modelScreen;
+        if ("true".equals(widgetElement.getAttribute("use-cache"))) {
+            List<FlexibleMapAccessor<Object>> cacheKeyFields = new ArrayList<FlexibleMapAccessor<Object>>();
+            List<String> fieldNames = StringUtil.split(widgetElement.getAttribute("cache-key-fields"), ", ");
+            if (fieldNames != null) {
+                for (String fieldName: fieldNames) {
+                    cacheKeyFields.add(FlexibleMapAccessor.<Object>getInstance(fieldName));
+                }
+            }
+            this.cacheKeyFields = Collections.unmodifiableList(cacheKeyFields);
+        } else {
+            this.cacheKeyFields = null;
+        }
         if (Debug.verboseOn()) Debug.logVerbose("Reading Screen sub-widget with name: " + widgetElement.getNodeName(), module);
     }
 
@@ -103,6 +121,31 @@ public abstract class ModelScreenWidget extends ModelWidget {
         return this.modelScreen;
     }
 
+    public List<FlexibleMapAccessor<Object>> getCacheKeyFields() {
+        return this.cacheKeyFields;
+    }
+
+    /**
+     * Renders the output of this widget through the fragment cache when use-cache is set, otherwise
+     * directly to the writer.
+     * @param fragmentName Tells apart the outputs of this widget that are cached separately, like
+     * the different screens an include-screen can name
+     */
+    protected void renderCachedFragment(String fragmentName, Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer,
+            FragmentCache.FragmentRenderer fragmentRenderer) throws GeneralException, IOException {
+        if (this.cacheKeyFields == null) {
+            fragmentRenderer.render(writer);
+            return;
+        }
+        List<Object> keyValues = new ArrayList<Object>(this.cacheKeyFields.size());
+        for (FlexibleMapAccessor<Object> keyField: this.cacheKeyFields) {
+            keyValues.add(keyField.get(context));
+        }
+        String widgetName = this.modelScreen.getSourceLocation() + "#" + this.modelScreen.getName() + "#" + getStartLine() + ":" + getStartColumn()
+                + "#" + fragmentName + "#" + screenStringRenderer.getRendererName();
+        new FragmentCache().render(widgetName, keyValues, context, writer, fragmentRenderer);
+    }
+
     public static final class SectionsRenderer implements Map<String, ModelScreenWidget> {
         private final Map<String, ModelScreenWidget> sectionMap;
         private final ScreenStringRenderer screenStringRenderer;
@@ -269,22 +312,12 @@ public abstract class ModelScreenWidget extends ModelWidget {
 
             // if condition does not exist or evals to true run actions and render widgets, otherwise render fail-widgets
             if (condTrue) {
-                // run the actions only if true
-                AbstractModelAction.runSubActions(this.actions, context);
-
-                try {
-                    // section by definition do not themselves do anything, so this method will generally do nothing, but we'll call it anyway
-                    screenStringRenderer.renderSectionBegin(writer, context, this);
-
-                    // render sub-widgets
-                    renderSubWidgetsString(this.subWidgets, writer, context, screenStringRenderer);
-
-                    screenStringRenderer.renderSectionEnd(writer, context, this);
-                } catch (IOException e) {
-                    String errMsg = "Error rendering widgets section [" + getName() + "] in screen named [" + getModelScreen().getName() + "]: " + e.toString();
-                    Debug.logError(e, errMsg, module);
-                    throw new RuntimeException(errMsg);
-                }
+                // with use-cache the actions are only run when the widgets are rendered
+                renderCachedFragment(getName(), writer, context, screenStringRenderer, new FragmentCache.FragmentRenderer() {
+                    public void render(Appendable fragmentWriter) throws GeneralException, IOException {
+                        renderWidgets(fragmentWriter, context, screenStringRenderer);
+                    }
+                });
             } else {
                 try {
                     // section by definition do not themselves do anything, so this method will generally do nothing, but we'll call it anyway
@@ -303,6 +336,25 @@ public abstract class ModelScreenWidget extends ModelWidget {
 
         }
 
+        private void renderWidgets(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException {
+            // run the actions only if true
+            AbstractModelAction.runSubActions(this.actions, context);
+
+            try {
+                // section by definition do not themselves do anything, so this method will generally do nothing, but we'll call it anyway
+                screenStringRenderer.renderSectionBegin(writer, context, this);
+
+                // render sub-widgets
+                renderSubWidgetsString(this.subWidgets, writer, context, screenStringRenderer);
+
+                screenStringRenderer.renderSectionEnd(writer, context, this);
+            } catch (IOException e) {
+                String errMsg = "Error rendering widgets section [" + getName() + "] in screen named [" + getModelScreen().getName() + "]: " + e.toString();
+                Debug.logError(e, errMsg, module);
+                throw new RuntimeException(errMsg);
+            }
+        }
+
         @Override
         public String getBoundaryCommentName() {
             if (isMainSection) {
@@ -777,7 +829,12 @@ public abstract class ModelScreenWidget extends ModelWidget {
                 return;
             }
 
-            ScreenFactory.renderReferencedScreen(name, location, this, writer, context, screenStringRenderer);
+            final Map<String, Object> includeContext = context;
+            renderCachedFragment(location + "#" + name, writer, context, screenStringRenderer, new FragmentCache.FragmentRenderer() {
+                public void render(Appendable fragmentWriter) throws GeneralException, IOException {
+                    ScreenFactory.renderReferencedScreen(name, location, IncludeScreen.this, fragmentWriter, includeContext, screenStringRenderer);
+                }
+            });
 
             if (protectScope) {
                 UtilGenerics.<MapStack<String>>cast(context).pop();
@@ -940,6 +997,8 @@ public abstract class ModelScreenWidget extends ModelWidget {
                 if (sections == null) {
                     Debug.logWarning("In decorator-section-include could not find sections object in the context, not rendering section with name [" + getName() + "]", module);
                 } else {
+                    // let the decorator output before this section (headers, menus) go out before the section renders
+                    WidgetWorker.flushStreamedOutput(writer, context);
                     sections.render(getName());
                 }
             }
@@ -1049,8 +1108,21 @@ public abstract class ModelScreenWidget extends ModelWidget {
             }
             try {
                 ModelForm modelForm = getModelForm(context);
-                FormRenderer renderer = new FormRenderer(modelForm, formStringRenderer);
-                renderer.render(writer, context);
+                final FormRenderer renderer = new FormRenderer(modelForm, formStringRenderer);
+                if (getCacheKeyFields() == null) {
+                    renderer.render(writer, context);
+                } else {
+                    final Map<String, Object> formContext = context;
+                    renderCachedFragment(modelForm.getFormLocation() + "#" + modelForm.getName(), writer, context, screenStringRenderer, new FragmentCache.FragmentRenderer() {
+                        public void render(Appendable fragmentWriter) throws GeneralException, IOException {
+                            try {
+                                renderer.render(fragmentWriter, formContext);
+                            } catch (Exception e) {
+                                throw new GeneralException(e);
+                            }
+                        }
+                    });
+                }
             } catch (Exception e) {
                 String errMsg = "Error rendering included form named [" + getName() + "] at location [" + this.getLocation(context) + "]: " + e.toString();
                 Debug.logError(e, errMsg, module);
@@ -1574,15 +1646,29 @@ public abstract class ModelScreenWidget extends ModelWidget {
         }
 
         @Override
-        public void renderWidgetString(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws IOException {
+        public void renderWidgetString(Appendable writer, final Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws IOException {
             // Output format might not support menus, so make menu rendering optional.
-            MenuStringRenderer menuStringRenderer = (MenuStringRenderer) context.get("menuStringRenderer");
+            final MenuStringRenderer menuStringRenderer = (MenuStringRenderer) context.get("menuStringRenderer");
             if (menuStringRenderer == null) {
                 Debug.logVerbose("MenuStringRenderer instance not found in rendering context, menu not rendered.", module);
                 return;
             }
-            ModelMenu modelMenu = getModelMenu(context);
-            modelMenu.renderMenuString(writer, context, menuStringRenderer);
+            final ModelMenu modelMenu = getModelMenu(context);
+            if (getCacheKeyFields() == null) {
+                modelMenu.renderMenuString(writer, context, menuStringRenderer);
+                return;
+            }
+            try {
+                renderCachedFragment(modelMenu.getMenuLocation() + "#" + modelMenu.getName(), writer, context, screenStringRenderer, new FragmentCache.FragmentRenderer() {
+                    public void render(Appendable fragmentWriter) throws IOException {
+                        modelMenu.renderMenuString(fragmentWriter, context, menuStringRenderer);
+                    }
+                });
+            } catch (GeneralException e) {
+                String errMsg = "Error rendering included menu named [" + modelMenu.getName() + "] at location [" + modelMenu.getMenuLocation() + "]: " + e.toString();
+                Debug.logError(e, errMsg, module);
+                throw new RuntimeException(errMsg + e);
+            }
         }
 
         public ModelMenu getModelMenu(Map<String, Object> context) {
@@ -21,6 +21,7 @@ package org.apache.ofbiz.widget.model;
 import java.util.Collection;
 import java.util.Map;
 
+import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
 import org.apache.ofbiz.widget.model.HtmlWidget.HtmlTemplate;
 import org.apache.ofbiz.widget.model.HtmlWidget.HtmlTemplateDecorator;
 import org.apache.ofbiz.widget.model.HtmlWidget.HtmlTemplateDecoratorSection;
@@ -149,6 +150,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         visitModelWidget(form);
         visitAttribute("location", form.getLocationExdr());
         visitAttribute("share-scope", form.getShareScopeExdr());
+        visitCacheAttributes(form);
         writer.append("/>");
     }
 
@@ -199,6 +201,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         visitModelWidget(includeScreen);
         visitAttribute("location", includeScreen.getLocationExdr());
         visitAttribute("share-scope", includeScreen.getShareScopeExdr());
+        visitCacheAttributes(includeScreen);
         writer.append("/>");
     }
 
@@ -233,6 +236,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         writer.append("<include-menu");
         visitModelWidget(menu);
         visitAttribute("location", menu.getLocationExdr());
+        visitCacheAttributes(menu);
         writer.append("/>");
     }
 
@@ -500,6 +504,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
     public void visit(Section section) throws Exception {
         writer.append("<section");
         visitModelWidget(section);
+        visitCacheAttributes(section);
         writer.append(">");
         if (section.getCondition() != null) {
             writer.append("<condition>");
@@ -591,6 +596,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         visitAttribute("paginate-last-label", modelForm.getPaginateLastLabel());
         visitAttribute("paginate-viewsize-label", modelForm.getPaginateViewSizeLabel());
         visitAttribute("paginate-style", modelForm.getPaginateStyle());
+        visitAttribute("paginate-mode", modelForm.getPaginateMode());
         visitAttribute("paginate", modelForm.getPaginate());
         visitAttribute("skip-start", modelForm.getSkipStart());
         visitAttribute("skip-end", modelForm.getSkipEnd());
@@ -644,6 +650,20 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         visitUpdateAreas(modelForm.getOnSubmitUpdateAreas());
     }
 
+    private void visitCacheAttributes(ModelScreenWidget widget) throws Exception {
+        if (widget.getCacheKeyFields() != null) {
+            visitAttribute("use-cache", Boolean.TRUE);
+            StringBuilder sb = new StringBuilder();
+            for (FlexibleMapAccessor<Object> keyField : widget.getCacheKeyFields()) {
+                if (sb.length() > 0) {
+                    sb.append(",");
+                }
+                sb.append(keyField.getOriginalName());
+            }
+            visitAttribute("cache-key-fields", sb.toString());
+        }
+    }
+
     private void visitSubWidgets(Collection<? extends ModelWidget> subWidgets) throws Exception {
         for (ModelWidget subWidget : subWidgets) {
             subWidget.accept(this);
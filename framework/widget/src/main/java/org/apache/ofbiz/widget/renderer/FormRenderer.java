@@ -35,11 +35,13 @@ import java.util.TreeSet;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.collections.MapStack;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.util.EntityKeyset;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.widget.WidgetWorker;
 import org.apache.ofbiz.widget.model.AbstractModelAction;
@@ -68,6 +70,8 @@ public class FormRenderer {
      */
 
     public static final String module = FormRenderer.class.getName();
+    // for streamed views, send the list rows to the client every this many rows
+    private static final int streamFlushRows = UtilProperties.getPropertyAsInteger("widget", "widget.form.streamFlushRows", 50);
 
     public static String getCurrentContainerId(ModelForm modelForm, Map<String, Object> context) {
         Locale locale = UtilMisc.ensureLocale(context.get("locale"));
@@ -237,6 +241,9 @@ public class FormRenderer {
         // Populate the viewSize and viewIndex so they are available for use during form actions
         context.put("viewIndex", Paginator.getViewIndex(modelForm, context));
         context.put("viewSize", Paginator.getViewSize(modelForm, context));
+        if (modelForm instanceof ModelGrid) {
+            Paginator.prepareKeyset(modelForm, context);
+        }
 
         modelForm.runFormActions(context);
 
@@ -702,7 +709,8 @@ public class FormRenderer {
         int highIndex = ((Integer) context.get("highIndex")).intValue();
 
         // we're passed a subset of the list, so use (0, viewSize) range
-        if (modelForm.isOverridenListSize()) {
+        EntityKeyset.Page keysetPage = Paginator.getKeysetPage(modelForm, context);
+        if (modelForm.isOverridenListSize() || keysetPage != null) {
             lowIndex = 0;
             highIndex = ((Integer) context.get("viewSize")).intValue();
         }
@@ -894,15 +902,21 @@ public class FormRenderer {
                                 fieldListByPosition, currentPosition, numOfColumns);
                     }
                 } // iteration on positions
+                if (streamFlushRows > 0 && (itemIndex - lowIndex + 1) % streamFlushRows == 0) {
+                    WidgetWorker.flushStreamedOutput(writer, context);
+                }
             } // iteration on items
 
-            // reduce the highIndex if number of items falls short
-            if ((itemIndex + 1) < highIndex) {
-                highIndex = itemIndex + 1;
-                // if list size is overridden, use full listSize
-                context.put("highIndex", Integer.valueOf(modelForm.isOverridenListSize() ? listSize : highIndex));
+            // the indexes of a keyset page are already set
+            if (keysetPage == null) {
+                // reduce the highIndex if number of items falls short
+                if ((itemIndex + 1) < highIndex) {
+                    highIndex = itemIndex + 1;
+                    // if list size is overridden, use full listSize
+                    context.put("highIndex", Integer.valueOf(modelForm.isOverridenListSize() ? listSize : highIndex));
+                }
+                context.put("actualPageSize", Integer.valueOf(highIndex - lowIndex));
             }
-            context.put("actualPageSize", Integer.valueOf(highIndex - lowIndex));
 
             if (iter instanceof EntityListIterator) {
                 try {
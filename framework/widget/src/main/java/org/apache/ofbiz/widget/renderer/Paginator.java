@@ -30,6 +30,7 @@ import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.collections.PagedList;
 import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.util.EntityKeyset;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.widget.WidgetWorker;
 import org.apache.ofbiz.widget.model.ModelForm;
@@ -92,6 +93,26 @@ public final class Paginator {
             lowIndex = 0;
             highIndex = ModelForm.MAX_PAGE_SIZE;
         }
+        EntityKeyset.Page keysetPage = getKeysetPage(modelForm, context);
+        if (keysetPage != null) {
+            // the list is the page, the indexes only tell where it is, and the list size may be an estimate
+            if (!keysetPage.hasPrevious()) {
+                viewIndex = 0;
+            }
+            int pageSize = keysetPage.getData().size();
+            lowIndex = viewIndex * viewSize;
+            highIndex = lowIndex + pageSize;
+            if (keysetPage.hasNext()) {
+                listSize = Math.max(listSize, highIndex + 1);
+            } else if (highIndex > listSize && listSize >= pageSize) {
+                // a full last page read backward from the end of the list: its rows are the last ones
+                highIndex = listSize;
+                lowIndex = highIndex - pageSize;
+            } else {
+                listSize = highIndex;
+            }
+            context.put("actualPageSize", Integer.valueOf(highIndex - lowIndex));
+        }
         context.put("listSize", Integer.valueOf(listSize));
         context.put("viewIndex", Integer.valueOf(viewIndex));
         context.put("viewSize", Integer.valueOf(viewSize));
@@ -99,6 +120,47 @@ public final class Paginator {
         context.put("highIndex", Integer.valueOf(highIndex));
     }
 
+    /**
+     * Returns the page read with keyset pagination for a list form with paginate-mode="keyset", as
+     * the keysetPage field of the context or of the result of the performFindList service, or null
+     * if the list was not read by keyset.
+     */
+    public static EntityKeyset.Page getKeysetPage(ModelForm modelForm, Map<String, Object> context) {
+        if (!modelForm.isKeysetPaginate()) {
+            return null;
+        }
+        Object keysetPage = context.get("keysetPage");
+        if (keysetPage == null && context.get("result") instanceof Map<?, ?>) {
+            Map<String, Object> resultMap = UtilGenerics.checkMap(context.get("result"));
+            keysetPage = resultMap.get("keysetPage");
+        }
+        return keysetPage instanceof EntityKeyset.Page ? (EntityKeyset.Page) keysetPage : null;
+    }
+
+    public static String getKeysetAfterParam(Map<String, Object> context) {
+        return "KEYSET_AFTER_" + WidgetWorker.getPaginatorNumber(context);
+    }
+
+    public static String getKeysetBeforeParam(Map<String, Object> context) {
+        return "KEYSET_BEFORE_" + WidgetWorker.getPaginatorNumber(context);
+    }
+
+    /**
+     * Puts the paginate mode and the keyset cursors of the request in the context, as paginateMode,
+     * keysetAfter and keysetBefore, so the form actions can pass them to performFindList.
+     */
+    public static void prepareKeyset(ModelForm modelForm, Map<String, Object> context) {
+        context.put("paginateMode", modelForm.getPaginateMode());
+        if (!modelForm.isKeysetPaginate()) {
+            return;
+        }
+        Map<String, Object> parameters = UtilGenerics.cast(context.get("parameters"));
+        if (parameters != null) {
+            context.put("keysetAfter", parameters.get(getKeysetAfterParam(context)));
+            context.put("keysetBefore", parameters.get(getKeysetBeforeParam(context)));
+        }
+    }
+
     public static int getListSize(Map<String, Object> context) {
         Integer value = (Integer) context.get("listSize");
         return value != null ? value.intValue() : 0;
@@ -211,7 +273,8 @@ public final class Paginator {
             highIndex = ((Integer) context.get("viewSize")).intValue();
         }
 
-        if (iter == null)
+        // a keyset page is already counted
+        if (iter == null || getKeysetPage(modelForm, context) != null)
             return;
 
         // count item rows
@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer.macro;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
+
+import freemarker.core.Environment;
+import freemarker.template.SimpleHash;
+import freemarker.template.SimpleNumber;
+import freemarker.template.SimpleScalar;
+import freemarker.template.SimpleSequence;
+import freemarker.template.Template;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+
+/**
+ * A FreeMarker macro call, as built by the Macro*Renderer classes, parsed into the macro name and
+ * its literal argument values.
+ * <p>The renderers build every call as a string like <code>&lt;@renderTextField name="..." disabled=false /&gt;</code>.
+ * Instead of parsing each of these strings as a new FreeMarker template, the argument values are
+ * parsed here and the macro is called through a small template that only depends on the macro
+ * name and the argument names, so it is parsed once and cached.</p>
+ * <p>Only string, number and boolean literals and lists and hashes of them are supported;
+ * {@link #parse(String)} returns null for anything else (string interpolations, expressions,
+ * nested content...) and the caller must render such a call as a template.</p>
+ */
+public final class MacroCall {
+
+    public static final String module = MacroCall.class.getName();
+    private static final String ARGUMENTS_VARIABLE = "_macroCallArguments";
+    // the call templates by macro name and argument names; their number is bounded by the renderer code
+    private static final ConcurrentMap<String, Template> callTemplates = new ConcurrentHashMap<String, Template>();
+
+    private final String macroName;
+    private final List<String> argumentNames;
+    private final String callShape;
+    private final SimpleHash arguments;
+
+    private MacroCall(String macroName, List<String> argumentNames, String callShape, SimpleHash arguments) {
+        this.macroName = macroName;
+        this.argumentNames = argumentNames;
+        this.callShape = callShape;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Parses a macro call.
+     * @param macro The FreeMarker source of a single macro call
+     * @return the parsed call, or null if the call uses anything but literal arguments
+     */
+    public static MacroCall parse(String macro) {
+        return new Parser(macro).parseCall();
+    }
+
+    /** Renders this call in an environment where the macro is defined. */
+    public void render(Environment environment) throws TemplateException, IOException {
+        Template template = callTemplates.get(callShape);
+        if (template == null) {
+            StringBuilder source = new StringBuilder("<@").append(macroName);
+            for (String argumentName : argumentNames) {
+                source.append(' ').append(argumentName).append('=').append(ARGUMENTS_VARIABLE).append('.').append(argumentName);
+            }
+            source.append(" />");
+            template = new Template(callShape, new StringReader(source.toString()), FreeMarkerWorker.getDefaultOfbizConfig());
+            Template existing = callTemplates.putIfAbsent(callShape, template);
+            if (existing != null) {
+                template = existing;
+            }
+        }
+        environment.setVariable(ARGUMENTS_VARIABLE, arguments);
+        try {
+            environment.include(template);
+        } finally {
+            // the arguments must not be seen by the templates rendered after this call
+            environment.getCurrentNamespace().remove(ARGUMENTS_VARIABLE);
+        }
+    }
+
+    /** Parser for the macro call subset of FTL; every method returns null for unsupported input. */
+    private static final class Parser {
+        private final String source;
+        private int pos = 0;
+
+        private Parser(String source) {
+            this.source = source;
+        }
+
+        private MacroCall parseCall() {
+            skipWhitespace();
+            if (!source.startsWith("<@", pos)) {
+                return null;
+            }
+            pos += 2;
+            String macroName = parseName();
+            if (macroName == null) {
+                return null;
+            }
+            List<String> argumentNames = new ArrayList<String>();
+            Map<String, TemplateModel> argumentValues = new LinkedHashMap<String, TemplateModel>();
+            StringBuilder callShape = new StringBuilder(macroName);
+            while (true) {
+                skipWhitespace();
+                if (source.startsWith("/>", pos)) {
+                    pos += 2;
+                    break;
+                }
+                if (pos < source.length() && source.charAt(pos) == ',' && !argumentNames.isEmpty()) {
+                    pos++;
+                    skipWhitespace();
+                }
+                String argumentName = parseName();
+                if (argumentName == null || argumentValues.containsKey(argumentName)) {
+                    return null;
+                }
+                skipWhitespace();
+                if (pos >= source.length() || source.charAt(pos) != '=') {
+                    return null;
+                }
+                pos++;
+                skipWhitespace();
+                TemplateModel value = parseValue();
+                if (value == null) {
+                    return null;
+                }
+                argumentNames.add(argumentName);
+                argumentValues.put(argumentName, value);
+                callShape.append(' ').append(argumentName);
+            }
+            skipWhitespace();
+            if (pos != source.length()) {
+                return null;
+            }
+            return new MacroCall(macroName, argumentNames, callShape.toString(), new SimpleHash(argumentValues, FreeMarkerWorker.getDefaultOfbizWrapper()));
+        }
+
+        private String parseName() {
+            int start = pos;
+            while (pos < source.length()) {
+                char c = source.charAt(pos);
+                if (Character.isLetter(c) || c == '_' || (pos > start && Character.isDigit(c))) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            return pos > start ? source.substring(start, pos) : null;
+        }
+
+        private TemplateModel parseValue() {
+            if (pos >= source.length()) {
+                return null;
+            }
+            char c = source.charAt(pos);
+            if (c == '"' || c == '\'') {
+                String value = parseString(false);
+                return value == null ? null : new SimpleScalar(value);
+            } else if (c == 'r' && pos + 1 < source.length() && (source.charAt(pos + 1) == '"' || source.charAt(pos + 1) == '\'')) {
+                pos++;
+                String value = parseString(true);
+                return value == null ? null : new SimpleScalar(value);
+            } else if (c == '[') {
+                return parseList();
+            } else if (c == '{') {
+                return parseHash();
+            } else if (Character.isDigit(c)) {
+                int start = pos;
+                while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+                    pos++;
+                }
+                try {
+                    return new SimpleNumber(new BigDecimal(source.substring(start, pos)));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            String name = parseName();
+            if ("true".equals(name)) {
+                return TemplateBooleanModel.TRUE;
+            } else if ("false".equals(name)) {
+                return TemplateBooleanModel.FALSE;
+            }
+            // a variable or an expression
+            return null;
+        }
+
+        private String parseString(boolean raw) {
+            char quote = source.charAt(pos++);
+            StringBuilder sb = new StringBuilder();
+            while (pos < source.length()) {
+                char c = source.charAt(pos++);
+                if (c == quote) {
+                    return sb.toString();
+                }
+                if (raw) {
+                    sb.append(c);
+                } else if (c == '\\') {
+                    if (pos >= source.length()) {
+                        return null;
+                    }
+                    char escaped = source.charAt(pos++);
+                    switch (escaped) {
+                    case '"': case '\'': case '\\': case '{': sb.append(escaped); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'l': sb.append('<'); break;
+                    case 'g': sb.append('>'); break;
+                    case 'a': sb.append('&'); break;
+                    case 'x':
+                        int start = pos;
+                        while (pos < source.length() && pos - start < 4 && Character.digit(source.charAt(pos), 16) >= 0) {
+                            pos++;
+                        }
+                        if (pos == start) {
+                            return null;
+                        }
+                        sb.append((char) Integer.parseInt(source.substring(start, pos), 16));
+                        break;
+                    default:
+                        return null;
+                    }
+                } else if ((c == '$' || c == '#') && pos < source.length() && source.charAt(pos) == '{') {
+                    // an interpolation, the value depends on the environment
+                    return null;
+                } else {
+                    sb.append(c);
+                }
+            }
+            return null;
+        }
+
+        private TemplateModel parseList() {
+            pos++;
+            SimpleSequence list = new SimpleSequence(FreeMarkerWorker.getDefaultOfbizWrapper());
+            skipWhitespace();
+            if (pos < source.length() && source.charAt(pos) == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                skipWhitespace();
+                TemplateModel value = parseValue();
+                if (value == null) {
+                    return null;
+                }
+                list.add(value);
+                skipWhitespace();
+                if (pos >= source.length()) {
+                    return null;
+                }
+                char c = source.charAt(pos++);
+                if (c == ']') {
+                    return list;
+                } else if (c != ',') {
+                    return null;
+                }
+            }
+        }
+
+        private TemplateModel parseHash() {
+            pos++;
+            Map<String, TemplateModel> hash = new LinkedHashMap<String, TemplateModel>();
+            skipWhitespace();
+            if (pos < source.length() && source.charAt(pos) == '}') {
+                pos++;
+                return new SimpleHash(hash, FreeMarkerWorker.getDefaultOfbizWrapper());
+            }
+            while (true) {
+                skipWhitespace();
+                if (pos >= source.length() || (source.charAt(pos) != '"' && source.charAt(pos) != '\'')) {
+                    return null;
+                }
+                String key = parseString(false);
+                if (key == null) {
+                    return null;
+                }
+                skipWhitespace();
+                if (pos >= source.length() || source.charAt(pos) != ':') {
+                    return null;
+                }
+                pos++;
+                skipWhitespace();
+                TemplateModel value = parseValue();
+                if (value == null) {
+                    return null;
+                }
+                hash.put(key, value);
+                skipWhitespace();
+                if (pos >= source.length()) {
+                    return null;
+                }
+                char c = source.charAt(pos++);
+                if (c == '}') {
+                    return new SimpleHash(hash, FreeMarkerWorker.getDefaultOfbizWrapper());
+                } else if (c != ',') {
+                    return null;
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
@@ -51,6 +51,7 @@ import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.util.EntityKeyset;
 import org.apache.ofbiz.webapp.control.RequestHandler;
 import org.apache.ofbiz.webapp.taglib.ContentUrlTag;
 import org.apache.ofbiz.widget.WidgetWorker;
@@ -139,10 +140,15 @@ public final class MacroFormRenderer implements FormStringRenderer {
     private void executeMacro(Appendable writer, String macro) throws IOException {
         try {
             Environment environment = getEnvironment(writer);
-            Reader templateReader = new StringReader(macro);
-            Template template = new Template(new UID().toString(), templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
-            templateReader.close();
-            environment.include(template);
+            MacroCall macroCall = MacroCall.parse(macro);
+            if (macroCall != null) {
+                macroCall.render(environment);
+            } else {
+                Reader templateReader = new StringReader(macro);
+                Template template = new Template(new UID().toString(), templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
+                templateReader.close();
+                environment.include(template);
+            }
         } catch (TemplateException e) {
             Debug.logError(e, "Error rendering screen thru ftl macro: " + macro, module);
         } catch (IOException e) {
@@ -2318,6 +2324,8 @@ public final class MacroFormRenderer implements FormStringRenderer {
         Set<String> paramNames = new HashSet<String>();
         paramNames.add(viewIndexParam);
         paramNames.add(viewSizeParam);
+        paramNames.add(Paginator.getKeysetAfterParam(context));
+        paramNames.add(Paginator.getKeysetBeforeParam(context));
         queryString = UtilHttp.stripNamedParamsFromQueryString(queryString, paramNames);
         String anchor = "";
         String paginateAnchor = modelForm.getPaginateTargetAnchor();
@@ -2349,6 +2357,17 @@ public final class MacroFormRenderer implements FormStringRenderer {
             prepLinkText = prepLinkText.replace("?", "");
             prepLinkText = prepLinkText.replace("&amp;", "&");
         }
+        // with keyset pagination the previous, next and last pages are read from the rows around this page
+        String previousKeysetText = "";
+        String nextKeysetText = "";
+        String lastKeysetText = "";
+        EntityKeyset.Page keysetPage = Paginator.getKeysetPage(modelForm, context);
+        if (keysetPage != null) {
+            String separator = ajaxEnabled ? "&" : "&amp;";
+            previousKeysetText = makeKeysetParam(separator, Paginator.getKeysetBeforeParam(context), keysetPage.getFirstCursor());
+            nextKeysetText = makeKeysetParam(separator, Paginator.getKeysetAfterParam(context), keysetPage.getLastCursor());
+            lastKeysetText = makeKeysetParam(separator, Paginator.getKeysetBeforeParam(context), EntityKeyset.LAST_PAGE_CURSOR);
+        }
         String linkText;
         String paginateStyle = modelForm.getPaginateStyle();
         String paginateFirstStyle = modelForm.getPaginateFirstStyle();
@@ -2382,9 +2401,9 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         if (viewIndex > 0) {
             if (ajaxEnabled) {
-                ajaxPreviousUrl = createAjaxParamsFromUpdateAreas(updateAreas, prepLinkText + (viewIndex - 1) + anchor, context);
+                ajaxPreviousUrl = createAjaxParamsFromUpdateAreas(updateAreas, prepLinkText + (viewIndex - 1) + previousKeysetText + anchor, context);
             } else {
-                linkText = prepLinkText + (viewIndex - 1) + anchor;
+                linkText = prepLinkText + (viewIndex - 1) + previousKeysetText + anchor;
                 previousUrl = rh.makeLink(this.request, this.response, urlPath + linkText);
             }
         }
@@ -2403,9 +2422,9 @@ public final class MacroFormRenderer implements FormStringRenderer {
         // Next button
         if (highIndex < listSize) {
             if (ajaxEnabled) {
-                ajaxNextUrl = createAjaxParamsFromUpdateAreas(updateAreas, prepLinkText + (viewIndex + 1) + anchor, context);
+                ajaxNextUrl = createAjaxParamsFromUpdateAreas(updateAreas, prepLinkText + (viewIndex + 1) + nextKeysetText + anchor, context);
             } else {
-                linkText = prepLinkText + (viewIndex + 1) + anchor;
+                linkText = prepLinkText + (viewIndex + 1) + nextKeysetText + anchor;
                 nextUrl = rh.makeLink(this.request, this.response, urlPath + linkText);
             }
         }
@@ -2413,9 +2432,9 @@ public final class MacroFormRenderer implements FormStringRenderer {
         if (highIndex < listSize) {
             int lastIndex = UtilMisc.getViewLastIndex(listSize, viewSize);
             if (ajaxEnabled) {
-                ajaxLastUrl = createAjaxParamsFromUpdateAreas(updateAreas, prepLinkText + lastIndex + anchor, context);
+                ajaxLastUrl = createAjaxParamsFromUpdateAreas(updateAreas, prepLinkText + lastIndex + lastKeysetText + anchor, context);
             } else {
-                linkText = prepLinkText + lastIndex + anchor;
+                linkText = prepLinkText + lastIndex + lastKeysetText + anchor;
                 lastUrl = rh.makeLink(this.request, this.response, urlPath + linkText);
             }
         }
@@ -2501,6 +2520,14 @@ public final class MacroFormRenderer implements FormStringRenderer {
         executeMacro(writer, sr.toString());
     }
 
+    private static String makeKeysetParam(String separator, String paramName, String cursor) {
+        if (cursor == null) {
+            // the page can not be sought, it is read by its index
+            return "";
+        }
+        return separator + paramName + "=" + UtilCodec.getEncoder("url").encode(cursor);
+    }
+
     public void renderFileField(Appendable writer, Map<String, Object> context, FileField textField) throws IOException {
         ModelFormField modelFormField = textField.getModelFormField();
         String className = "";
@@ -2853,6 +2880,9 @@ public final class MacroFormRenderer implements FormStringRenderer {
             paramMap.putAll(UtilHttp.getQueryStringOnlyParameterMap(qbeString));
         }
         paramMap.put(modelForm.getSortFieldParameterName(), newSortField);
+        // a keyset cursor is only valid for the order it was made for
+        paramMap.remove(Paginator.getKeysetAfterParam(context));
+        paramMap.remove(Paginator.getKeysetBeforeParam(context));
         UtilHttp.canonicalizeParameterMap(paramMap);
         String linkUrl = null;
         if (ajaxEnabled) {
@@ -97,6 +97,11 @@ public class MacroMenuRenderer implements MenuStringRenderer {
 
     private void executeMacro(Appendable writer, String macro) throws IOException, TemplateException {
         Environment environment = getEnvironment(writer);
+        MacroCall macroCall = MacroCall.parse(macro);
+        if (macroCall != null) {
+            macroCall.render(environment);
+            return;
+        }
         Reader templateReader = new StringReader(macro);
         macroCount++;
         String templateName = toString().concat("_") + macroCount;
@@ -98,11 +98,16 @@ public class MacroScreenRenderer implements ScreenStringRenderer {
     private void executeMacro(Appendable writer, String macro) throws IOException {
         try {
             Environment environment = getEnvironment(writer);
-            Reader templateReader = new StringReader(macro);
-            // FIXME: I am using a Date as an hack to provide a unique name for the template...
-            Template template = new Template((new java.util.Date()).toString(), templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
-            templateReader.close();
-            environment.include(template);
+            MacroCall macroCall = MacroCall.parse(macro);
+            if (macroCall != null) {
+                macroCall.render(environment);
+            } else {
+                Reader templateReader = new StringReader(macro);
+                // FIXME: I am using a Date as an hack to provide a unique name for the template...
+                Template template = new Template((new java.util.Date()).toString(), templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
+                templateReader.close();
+                environment.include(template);
+            }
         } catch (TemplateException e) {
             Debug.logError(e, "Error rendering screen macro [" + macro + "] thru ftl", module);
         } catch (IOException e) {
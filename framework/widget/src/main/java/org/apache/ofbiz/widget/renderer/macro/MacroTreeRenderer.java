@@ -67,12 +67,17 @@ public class MacroTreeRenderer implements TreeStringRenderer {
 
     private void executeMacro(String macro) throws IOException {
         try {
-            Reader templateReader = new StringReader(macro);
-            // FIXME: I am using a Date as an hack to provide a unique name for the template...
-            Template template = new Template((new java.util.Date()).toString(), templateReader,
-                    FreeMarkerWorker.getDefaultOfbizConfig());
-            templateReader.close();
-            this.environment.include(template);
+            MacroCall macroCall = MacroCall.parse(macro);
+            if (macroCall != null) {
+                macroCall.render(this.environment);
+            } else {
+                Reader templateReader = new StringReader(macro);
+                // FIXME: I am using a Date as an hack to provide a unique name for the template...
+                Template template = new Template((new java.util.Date()).toString(), templateReader,
+                        FreeMarkerWorker.getDefaultOfbizConfig());
+                templateReader.close();
+                this.environment.include(template);
+            }
         } catch (TemplateException e) {
             Debug.logError(e, "Error rendering tree thru ftl", module);
         } catch (IOException e) {
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer.macro;
+
+import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.rmi.server.UID;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
+
+import freemarker.core.Environment;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Compares the time to render the macro calls of a large list form (rows of display fields)
+ * with the HTML form macro library: parsing every call as a new template, as the Macro*Renderer
+ * classes used to, and running it as a {@link MacroCall}. The calls are built the way
+ * MacroFormRenderer builds them, and both ways must produce the same output.
+ * <p>
+ * Usage: <code>MacroCallBenchmark [rows] [columns] [macro library file]</code>, run from the
+ * OFBiz home directory.
+ * <p>
+ * This is not run by the unit tests.
+ */
+public final class MacroCallBenchmark {
+
+    // a plain configuration, the auto imports of the OFBiz one need a running instance
+    private static final Configuration config = new Configuration(FreeMarkerWorker.version);
+
+    private MacroCallBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String libraryFile = args.length > 2 ? args[2] : "framework/widget/templates/HtmlFormMacroLibrary.ftl";
+        config.setObjectWrapper(FreeMarkerWorker.getDefaultOfbizWrapper());
+        Reader libraryReader = new FileReader(libraryFile);
+        Template macroLibrary = new Template(libraryFile, libraryReader, config);
+        libraryReader.close();
+        List<String> calls = buildListFormCalls(rows, columns);
+        System.out.println(rows + " rows, " + columns + " columns, " + calls.size() + " macro calls per form");
+
+        String parsedOutput = renderParsed(macroLibrary, calls);
+        String compiledOutput = renderCompiled(macroLibrary, calls);
+        if (!parsedOutput.equals(compiledOutput)) {
+            throw new IllegalStateException("The rendered forms differ");
+        }
+        int forms = 50;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < forms; i++) {
+                renderParsed(macroLibrary, calls);
+            }
+            report("parsed", start, forms);
+            start = System.nanoTime();
+            for (int i = 0; i < forms; i++) {
+                renderCompiled(macroLibrary, calls);
+            }
+            report("compiled", start, forms);
+        }
+    }
+
+    private static List<String> buildListFormCalls(int rows, int columns) {
+        List<String> calls = new ArrayList<String>();
+        for (int row = 0; row < rows; row++) {
+            calls.add("<@renderFormatItemRowOpen  formName=\"ListBenchmark\" itemIndex=" + row
+                    + " altRowStyles=\"\" evenRowStyle=\"\" oddRowStyle=\"alternate-row\" />");
+            for (int column = 0; column < columns; column++) {
+                String fieldName = "field" + column;
+                calls.add("<@renderFormatItemRowCellOpen  fieldName=\"" + fieldName + "\" style=\"\" positionSpan=1 />");
+                calls.add("<@renderDisplayField type=\"text\" imageLocation=\"\" idName=\"\" description=\"Value \\\"" + row + "-" + column
+                        + "\\\" & more\" title=\"\" class=\"\" alert=\"false\" />");
+                calls.add("<@renderFormatItemRowCellClose fieldName=\"" + fieldName + "\"/>");
+            }
+            calls.add("<@renderFormatItemRowClose  formName=\"ListBenchmark\"/>");
+        }
+        return calls;
+    }
+
+    private static String renderParsed(Template macroLibrary, List<String> calls) throws Exception {
+        StringWriter writer = new StringWriter();
+        Environment environment = createEnvironment(macroLibrary, writer);
+        for (String call : calls) {
+            Reader templateReader = new StringReader(call);
+            Template template = new Template(new UID().toString(), templateReader, config);
+            templateReader.close();
+            environment.include(template);
+        }
+        return writer.toString();
+    }
+
+    private static String renderCompiled(Template macroLibrary, List<String> calls) throws Exception {
+        StringWriter writer = new StringWriter();
+        Environment environment = createEnvironment(macroLibrary, writer);
+        for (String call : calls) {
+            MacroCall.parse(call).render(environment);
+        }
+        return writer.toString();
+    }
+
+    private static Environment createEnvironment(Template macroLibrary, StringWriter writer) throws Exception {
+        Map<String, Object> input = new HashMap<String, Object>();
+        input.put("key", null);
+        Environment environment = macroLibrary.createProcessingEnvironment(input, writer);
+        environment.process();
+        return environment;
+    }
+
+    private static void report(String name, long start, int forms) {
+        double millisPerForm = (System.nanoTime() - start) / 1000000.0 / forms;
+        System.out.println(String.format("%-12s %8.2f ms/form", name, millisPerForm));
+    }
+}
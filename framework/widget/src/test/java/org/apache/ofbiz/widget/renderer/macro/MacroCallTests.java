@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer.macro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+
+import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.core.Environment;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class MacroCallTests {
+
+    private static final String LIBRARY = "<#macro show a b=\"\" c=[] d={}>[${a}|${b}|<#list c as x>${x},</#list>|<#list d?keys as k>${k}=${d[k]};</#list>]</#macro>";
+
+    private Template library;
+
+    @Before
+    public void initialize() throws Exception {
+        System.setProperty("ofbiz.home", System.getProperty("user.dir"));
+        Configuration config = new Configuration(FreeMarkerWorker.version);
+        config.setObjectWrapper(FreeMarkerWorker.getDefaultOfbizWrapper());
+        library = new Template("library", new StringReader(LIBRARY), config);
+    }
+
+    private Environment createEnvironment(StringWriter writer) throws Exception {
+        Environment environment = library.createProcessingEnvironment(new HashMap<String, Object>(), writer);
+        environment.process();
+        return environment;
+    }
+
+    // renders the call as a template, the way the renderers do for the calls MacroCall does not parse
+    private String renderTemplate(String call) throws Exception {
+        StringWriter writer = new StringWriter();
+        Environment environment = createEnvironment(writer);
+        environment.include(new Template("call", new StringReader(call), library.getConfiguration()));
+        return writer.toString();
+    }
+
+    private String renderMacroCall(String call) throws Exception {
+        MacroCall macroCall = MacroCall.parse(call);
+        assertNotNull("Parsed " + call, macroCall);
+        StringWriter writer = new StringWriter();
+        Environment environment = createEnvironment(writer);
+        macroCall.render(environment);
+        assertNull("Arguments removed", environment.getCurrentNamespace().get("_macroCallArguments"));
+        return writer.toString();
+    }
+
+    private void assertSameOutput(String expected, String call) throws Exception {
+        assertEquals("Template output of " + call, expected, renderTemplate(call));
+        assertEquals("MacroCall output of " + call, expected, renderMacroCall(call));
+    }
+
+    @Test
+    public void stringEscapes() throws Exception {
+        assertSameOutput("[a \"quoted\" \\ 'value'|{x}||]", "<@show a=\"a \\\"quoted\\\" \\\\ \\'value\\'\" b='\\{x}'/>");
+        assertSameOutput("[A\u00e9B|<&>||]", "<@show a=\"\\x41\\xe9\\x0042\" b=\"\\l\\a\\g\" />");
+        assertSameOutput("[line\nbreak\ttab|x||]", "<@show a=\"line\\nbreak\\ttab\" b=\"x\" />");
+    }
+
+    @Test
+    public void rawStrings() throws Exception {
+        assertSameOutput("[C:\\dir\\n|${notInterpolated}||]", "<@show a=r\"C:\\dir\\n\" b=r'${notInterpolated}' />");
+    }
+
+    @Test
+    public void literals() throws Exception {
+        assertSameOutput("[12.5|7||]", "<@show a=12.5 b=7 />");
+        assertNotNull("Boolean", MacroCall.parse("<@show a=true b=false />"));
+        assertSameOutput("[a|b|1,two,|]", "<@show a=\"a\" b=\"b\" c=[1, \"two\"] />");
+        assertSameOutput("[a|b||k1=v1;k2=2;]", "<@show a=\"a\" b=\"b\" d={\"k1\": \"v1\", 'k2': 2} />");
+        assertSameOutput("[a|||]", "<@show a=\"a\" c=[] d={} />");
+    }
+
+    @Test
+    public void unsupportedCallsAreNotParsed() {
+        assertNull("Interpolation", MacroCall.parse("<@show a=\"${value}\" />"));
+        assertNull("Hash interpolation", MacroCall.parse("<@show a=\"#{value}\" />"));
+        assertNull("Variable", MacroCall.parse("<@show a=value />"));
+        assertNull("Expression", MacroCall.parse("<@show a=1+2 />"));
+        assertNull("Nested content", MacroCall.parse("<@show a=\"a\">content</@show>"));
+        assertNull("Unknown escape", MacroCall.parse("<@show a=\"\\q\" />"));
+        assertNull("Unterminated string", MacroCall.parse("<@show a=\"a />"));
+        assertNull("Duplicate argument", MacroCall.parse("<@show a=\"a\" a=\"b\" />"));
+        assertNull("Trailing content", MacroCall.parse("<@show a=\"a\" /> text"));
+        assertNull("Not a macro call", MacroCall.parse("text"));
+    }
+}